@@ -0,0 +1,98 @@
+package com.ordererp.backend.bench;
+
+import com.ordererp.backend.wms.service.WmsStockLedger;
+import com.ordererp.backend.wms.service.WmsStockLedger.StockKey;
+import com.ordererp.backend.wms.service.WmsStockLedger.StockLine;
+import com.ordererp.backend.wms.service.WmsStockLedger.StockQty;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 单据行的 BigDecimal 数量/金额计算与库存不变量校验。
+ *
+ * <ul>
+ *   <li>{@link #orderAmount}：与销售/采购单创建时相同的算法——空值按 0 处理（各 Service 的 safeQty/safeMoney），
+ *       行金额 {@code price × qty} 保留 2 位 HALF_UP，再累加为单据总额；</li>
+ *   <li>{@link #stockShortages}：{@code WmsStockLedger.lockAll} 加锁后在内存中的两步——
+ *       {@link WmsStockLedger#mergeLines} 按 (仓库, 商品) 有序合并，{@link WmsStockLedger#shortages} 逐个与
+ *       {@link StockQty#available()}（stock_qty - locked_qty）比较。</li>
+ * </ul>
+ *
+ * <p>数量 3 位小数、单价 2 位小数，与表结构 decimal(…,3)/decimal(…,2) 一致；约 5% 的行单价为空。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DecimalArithmeticBenchmark {
+    @Param({"10", "200"})
+    int lines;
+
+    BigDecimal[] qtys;
+    BigDecimal[] prices;
+    List<StockLine> stockLines;
+    Map<StockKey, StockQty> stock;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        qtys = new BigDecimal[lines];
+        prices = new BigDecimal[lines];
+        stockLines = new ArrayList<>(lines);
+        stock = new HashMap<>();
+        for (int i = 0; i < lines; i++) {
+            qtys[i] = BigDecimal.valueOf(1 + random.nextInt(100_000), 3);
+            prices[i] = random.nextInt(20) == 0 ? null : BigDecimal.valueOf(random.nextInt(1_000_000), 2);
+            // 约一半的行与前面的行是同一 SKU（拆行下单），合并后再校验
+            long productId = random.nextBoolean() && i > 0 ? 1 + random.nextInt(i) : 1 + i;
+            stockLines.add(new StockLine(1L, productId, qtys[i]));
+            stock.put(new StockKey(1L, productId), new StockQty(BigDecimal.valueOf(500_000, 3),
+                    BigDecimal.valueOf(random.nextInt(400_000), 3)));
+        }
+    }
+
+    @Benchmark
+    public BigDecimal orderAmount() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < lines; i++) {
+            BigDecimal qty = safe(qtys[i]);
+            BigDecimal price = prices[i];
+            if (price != null) {
+                total = total.add(price.multiply(qty).setScale(2, RoundingMode.HALF_UP));
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int stockShortages() {
+        Map<StockKey, BigDecimal> required = WmsStockLedger.mergeLines(stockLines);
+        return WmsStockLedger.shortages(required, key -> {
+            StockQty row = stock.get(key);
+            return row == null ? BigDecimal.ZERO : row.available();
+        }).size();
+    }
+
+    private static BigDecimal safe(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+}
@@ -0,0 +1,117 @@
+package com.ordererp.backend.bench;
+
+import com.ordererp.backend.base.entity.BasePartner;
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.excel.ProductExcelRow;
+import com.ordererp.backend.base.service.BaseExcelService;
+import com.ordererp.backend.wms.dto.WmsStockLogResponse;
+import com.ordererp.backend.wms.service.WmsStockLogService;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Excel 导出的行转换：每个基准转换一批（与 {@code app.excel.export.batch-size} 默认值相同的 2000 行），
+ * 与 ExcelStreamExporter 每批调用的 {@code batch.stream().map(toRow).toList()} 一致。
+ * 商品行的分类编码表在导出开始时加载一次，这里用内存中的 50 个分类代替。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExcelRowMappingBenchmark {
+    static final int BATCH_SIZE = 2000;
+
+    List<WmsStockLogResponse> stockLogs;
+    List<BaseWarehouse> warehouses;
+    List<BasePartner> partners;
+    List<BaseProduct> products;
+    Function<BaseProduct, ProductExcelRow> productRowMapper;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 8, 0);
+        stockLogs = new ArrayList<>(BATCH_SIZE);
+        warehouses = new ArrayList<>(BATCH_SIZE);
+        partners = new ArrayList<>(BATCH_SIZE);
+        products = new ArrayList<>(BATCH_SIZE);
+        Map<Long, String> categoryIdToCode = new HashMap<>();
+        for (long c = 1; c <= 50; c++) {
+            categoryIdToCode.put(c, "CAT-" + c);
+        }
+        productRowMapper = BaseExcelService.productRowMapper(categoryIdToCode);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            stockLogs.add(new WmsStockLogResponse((long) i, 1L, "主仓", (long) i, "SKU-" + i, "商品" + i,
+                    "SALES_OUT", "SO20250101-" + i, new BigDecimal("-2.000"), new BigDecimal("98.000"),
+                    now.plusSeconds(i)));
+
+            BaseWarehouse w = new BaseWarehouse();
+            w.setWarehouseCode("WH-" + i);
+            w.setWarehouseName("仓库" + i);
+            w.setLocation("A-" + i);
+            w.setManager("manager");
+            w.setStatus(1);
+            warehouses.add(w);
+
+            BasePartner p = new BasePartner();
+            p.setPartnerCode("CUS-" + i);
+            p.setPartnerName("客户" + i);
+            p.setType(2);
+            p.setContact("contact");
+            p.setPhone("13800000000");
+            p.setEmail("c" + i + "@example.com");
+            p.setCreditLimit(new BigDecimal("10000.00"));
+            p.setStatus(1);
+            partners.add(p);
+
+            BaseProduct product = new BaseProduct();
+            product.setCategoryId(1L + i % 50);
+            product.setProductCode("SKU-" + i);
+            product.setProductName("商品" + i);
+            product.setUnit("个");
+            product.setPurchasePrice(new BigDecimal("8.50"));
+            product.setSalePrice(new BigDecimal("12.00"));
+            product.setLowStock(10);
+            product.setStatus(1);
+            products.add(product);
+        }
+    }
+
+    @Benchmark
+    public List<?> stockLogRows() {
+        return stockLogs.stream().map(WmsStockLogService::toExcelRow).toList();
+    }
+
+    @Benchmark
+    public List<?> warehouseRows() {
+        return warehouses.stream().map(BaseExcelService::toWarehouseRow).toList();
+    }
+
+    @Benchmark
+    public List<?> partnerRows() {
+        return partners.stream().map(BaseExcelService::toPartnerRow).toList();
+    }
+
+    @Benchmark
+    public List<?> productRows() {
+        return products.stream().map(productRowMapper).toList();
+    }
+}
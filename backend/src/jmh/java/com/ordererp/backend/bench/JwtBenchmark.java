@@ -0,0 +1,60 @@
+package com.ordererp.backend.bench;
+
+import com.ordererp.backend.system.security.JwtProperties;
+import com.ordererp.backend.system.security.JwtService;
+import com.ordererp.backend.system.security.SysUserDetails;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * JWT 签发与验签（{@link JwtService}）。每个已登录请求都会在过滤器里验签一次，
+ * 这是认证链路上唯一不走缓存的 CPU 开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JwtBenchmark {
+    JwtService jwtService;
+    SysUserDetails user;
+    String token;
+
+    @Setup
+    public void setUp() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret("ordererp-benchmark-secret-key-at-least-32-chars");
+        properties.setExpirationMinutes(720);
+        jwtService = new JwtService(properties);
+        user = new SysUserDetails(1L, "admin", "{noop}secret", "管理员", true,
+                List.of(new SimpleGrantedAuthority("sys:user:list")));
+        token = jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public JwtService.TokenClaims parse() {
+        return jwtService.parse(token);
+    }
+
+    @Benchmark
+    public boolean parseAndValidate() {
+        return jwtService.isTokenValid(jwtService.parse(token), user);
+    }
+}
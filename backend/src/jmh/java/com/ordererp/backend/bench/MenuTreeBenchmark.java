@@ -0,0 +1,82 @@
+package com.ordererp.backend.bench;
+
+import com.ordererp.backend.system.dto.MenuRouterDto;
+import com.ordererp.backend.system.entity.SysMenu;
+import com.ordererp.backend.system.service.SysMenuService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 菜单列表 -> 路由树（{@link SysMenuService#buildRouters}）。路由树按角色集合缓存，缓存未命中（角色/菜单变更后）时
+ * 每个请求都要重建一次，菜单量大时的构建耗时直接体现在登录后首屏。
+ *
+ * <p>菜单按“目录 M -> 菜单 C -> 按钮 F”三层生成，乱序输入（与数据库按 id 返回的顺序无关）。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MenuTreeBenchmark {
+    @Param({"100", "1000", "5000"})
+    int menuCount;
+
+    List<SysMenu> menus;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        menus = new ArrayList<>(menuCount);
+        long id = 1;
+        int directories = Math.max(1, menuCount / 50);
+        List<Long> pages = new ArrayList<>();
+        for (int d = 0; d < directories && menus.size() < menuCount; d++) {
+            long dirId = id++;
+            menus.add(menu(dirId, 0L, "M", random.nextInt(100)));
+            for (int c = 0; c < 9 && menus.size() < menuCount; c++) {
+                long pageId = id++;
+                pages.add(pageId);
+                menus.add(menu(pageId, dirId, "C", random.nextInt(100)));
+            }
+        }
+        while (menus.size() < menuCount) {
+            menus.add(menu(id++, pages.get(random.nextInt(pages.size())), "F", random.nextInt(100)));
+        }
+        Collections.shuffle(menus, random);
+    }
+
+    @Benchmark
+    public List<MenuRouterDto> buildRouters() {
+        return SysMenuService.buildRouters(menus);
+    }
+
+    private static SysMenu menu(long id, long parentId, String type, int sort) {
+        SysMenu m = new SysMenu();
+        m.setId(id);
+        m.setParentId(parentId);
+        m.setMenuName("menu-" + id);
+        m.setPath("/p" + id);
+        m.setComponent("C".equals(type) ? "views/Page" + id + ".vue" : null);
+        m.setPerms("F".equals(type) ? "perm:" + id : null);
+        m.setIcon("icon");
+        m.setMenuType(type);
+        m.setSort(sort);
+        m.setVisible(1);
+        return m;
+    }
+}
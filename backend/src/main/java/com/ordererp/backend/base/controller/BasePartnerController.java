@@ -6,6 +6,8 @@ import com.ordererp.backend.base.dto.PartnerUpdateRequest;
 import com.ordererp.backend.base.service.BasePartnerService;
 import com.ordererp.backend.base.service.BaseExcelService;
 import com.ordererp.backend.common.dto.PageResponse;
+import com.ordererp.backend.common.excel.ExcelStreamExporter;
+import com.ordererp.backend.base.entity.BasePartner;
 import com.ordererp.backend.common.dto.ImportResult;
 import com.ordererp.backend.common.util.ExcelHttpUtil;
 import com.ordererp.backend.base.excel.PartnerExcelRow;
@@ -36,10 +38,13 @@ import org.springframework.web.bind.annotation.RequestPart;
 public class BasePartnerController {
     private final BasePartnerService partnerService;
     private final BaseExcelService excelService;
+    private final ExcelStreamExporter excelExporter;
 
-    public BasePartnerController(BasePartnerService partnerService, BaseExcelService excelService) {
+    public BasePartnerController(BasePartnerService partnerService, BaseExcelService excelService,
+            ExcelStreamExporter excelExporter) {
         this.partnerService = partnerService;
         this.excelService = excelService;
+        this.excelExporter = excelExporter;
     }
 
     @GetMapping
@@ -86,9 +91,10 @@ public class BasePartnerController {
     @GetMapping("/export")
     @PreAuthorize("hasAuthority('base:partner:export')")
     public void export(@RequestParam(required = false) String keyword, HttpServletResponse response) throws IOException {
-        ExcelHttpUtil.prepareXlsxResponse(response, "partners.xlsx");
-        List<PartnerExcelRow> rows = excelService.exportPartners(keyword);
-        EasyExcel.write(response.getOutputStream(), PartnerExcelRow.class).sheet("Partners").doWrite(rows);
+        // 按 id 游标分批写出，内存只保留一批
+        excelExporter.export(response, "partners.xlsx", "Partners", PartnerExcelRow.class,
+                (afterId, limit) -> excelService.exportPartnerBatch(keyword, afterId, limit),
+                BasePartner::getId, BaseExcelService::toPartnerRow);
     }
 
     @GetMapping("/import-template")
@@ -110,7 +116,6 @@ public class BasePartnerController {
     @PostMapping("/import")
     @PreAuthorize("hasAuthority('base:partner:import')")
     public ImportResult importExcel(@RequestPart("file") MultipartFile file) throws IOException {
-        List<PartnerExcelRow> rows = EasyExcel.read(file.getInputStream()).head(PartnerExcelRow.class).sheet().doReadSync();
-        return excelService.importPartners(rows);
+        return excelService.importPartners(file.getInputStream());
     }
 }
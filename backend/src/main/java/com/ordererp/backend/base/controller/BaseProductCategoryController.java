@@ -107,7 +107,6 @@ public class BaseProductCategoryController {
     @PostMapping("/import")
     @PreAuthorize("hasAuthority('base:category:import')")
     public ImportResult importExcel(@RequestPart("file") MultipartFile file) throws IOException {
-        List<CategoryExcelRow> rows = EasyExcel.read(file.getInputStream()).head(CategoryExcelRow.class).sheet().doReadSync();
-        return excelService.importCategories(rows);
+        return excelService.importCategories(file.getInputStream());
     }
 }
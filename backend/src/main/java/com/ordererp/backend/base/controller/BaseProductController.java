@@ -6,17 +6,24 @@ import com.ordererp.backend.base.dto.ProductUpdateRequest;
 import com.ordererp.backend.base.service.BaseProductService;
 import com.ordererp.backend.base.service.BaseExcelService;
 import com.ordererp.backend.common.dto.PageResponse;
+import com.ordererp.backend.common.excel.ExcelStreamExporter;
+import com.ordererp.backend.base.entity.BaseProduct;
 import com.ordererp.backend.common.dto.ImportResult;
 import com.ordererp.backend.common.util.ExcelHttpUtil;
 import com.ordererp.backend.base.excel.ProductExcelRow;
+import com.ordererp.backend.system.dto.SysJobResponse;
+import com.ordererp.backend.system.security.SysUserDetails;
+import com.ordererp.backend.system.service.SysJobService;
 import com.alibaba.excel.EasyExcel;
 import jakarta.validation.Valid;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -36,10 +43,15 @@ import org.springframework.web.bind.annotation.RequestPart;
 public class BaseProductController {
     private final BaseProductService productService;
     private final BaseExcelService excelService;
+    private final ExcelStreamExporter excelExporter;
+    private final SysJobService jobService;
 
-    public BaseProductController(BaseProductService productService, BaseExcelService excelService) {
+    public BaseProductController(BaseProductService productService, BaseExcelService excelService,
+            ExcelStreamExporter excelExporter, SysJobService jobService) {
         this.productService = productService;
         this.excelService = excelService;
+        this.excelExporter = excelExporter;
+        this.jobService = jobService;
     }
 
     @GetMapping
@@ -85,10 +97,14 @@ public class BaseProductController {
 
     @GetMapping("/export")
     @PreAuthorize("hasAuthority('base:product:export')")
-    public void export(@RequestParam(required = false) String keyword, HttpServletResponse response) throws IOException {
-        ExcelHttpUtil.prepareXlsxResponse(response, "products.xlsx");
-        List<ProductExcelRow> rows = excelService.exportProducts(keyword);
-        EasyExcel.write(response.getOutputStream(), ProductExcelRow.class).sheet("Products").doWrite(rows);
+    public void export(@RequestParam(required = false) String keyword, HttpServletResponse response,
+            Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        // 在后台任务线程池中执行（直接写本次响应）；按 id 游标分批写出，内存只保留一批
+        jobService.runAndWait("product-export", "商品导出", user.getUsername(),
+                job -> excelExporter.export(response, "products.xlsx", "Products", ProductExcelRow.class,
+                        (afterId, limit) -> excelService.exportProductBatch(keyword, afterId, limit),
+                        BaseProduct::getId, excelService.productRowMapper()));
     }
 
     @GetMapping("/import-template")
@@ -108,10 +124,29 @@ public class BaseProductController {
         EasyExcel.write(response.getOutputStream(), ProductExcelRow.class).sheet("Template").doWrite(List.of(sample));
     }
 
+    /**
+     * 同步导入：在后台任务线程池中执行并等待结果（受 app.job.workers 并发上限约束）。
+     */
     @PostMapping("/import")
     @PreAuthorize("hasAuthority('base:product:import')")
-    public ImportResult importExcel(@RequestPart("file") MultipartFile file) throws IOException {
-        List<ProductExcelRow> rows = EasyExcel.read(file.getInputStream()).head(ProductExcelRow.class).sheet().doReadSync();
-        return excelService.importProducts(rows);
+    public ImportResult importExcel(@RequestPart("file") MultipartFile file, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return jobService.runAndWait("product-import", "商品导入：" + file.getOriginalFilename(), user.getUsername(),
+                job -> {
+                    try (InputStream in = file.getInputStream()) {
+                        return excelService.importProducts(in, job::checkpoint);
+                    }
+                });
+    }
+
+    /**
+     * 后台导入：文件落盘后立即返回任务，进度/结果通过 /api/jobs/{id} 查询。
+     */
+    @PostMapping("/import-job")
+    @PreAuthorize("hasAuthority('base:product:import')")
+    public SysJobResponse importJob(@RequestPart("file") MultipartFile file, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return jobService.submitUpload("product-import", "商品导入：" + file.getOriginalFilename(), user.getUsername(),
+                file, (in, job) -> excelService.importProducts(in, job::checkpoint));
     }
 }
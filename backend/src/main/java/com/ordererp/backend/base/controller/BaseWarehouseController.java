@@ -6,6 +6,8 @@ import com.ordererp.backend.base.dto.WarehouseUpdateRequest;
 import com.ordererp.backend.base.service.BaseWarehouseService;
 import com.ordererp.backend.base.service.BaseExcelService;
 import com.ordererp.backend.common.dto.PageResponse;
+import com.ordererp.backend.common.excel.ExcelStreamExporter;
+import com.ordererp.backend.base.entity.BaseWarehouse;
 import com.ordererp.backend.common.dto.ImportResult;
 import com.ordererp.backend.common.util.ExcelHttpUtil;
 import com.ordererp.backend.base.excel.WarehouseExcelRow;
@@ -36,10 +38,13 @@ import org.springframework.web.bind.annotation.RequestPart;
 public class BaseWarehouseController {
     private final BaseWarehouseService warehouseService;
     private final BaseExcelService excelService;
+    private final ExcelStreamExporter excelExporter;
 
-    public BaseWarehouseController(BaseWarehouseService warehouseService, BaseExcelService excelService) {
+    public BaseWarehouseController(BaseWarehouseService warehouseService, BaseExcelService excelService,
+            ExcelStreamExporter excelExporter) {
         this.warehouseService = warehouseService;
         this.excelService = excelService;
+        this.excelExporter = excelExporter;
     }
 
     @GetMapping
@@ -86,9 +91,10 @@ public class BaseWarehouseController {
     @GetMapping("/export")
     @PreAuthorize("hasAuthority('base:warehouse:export')")
     public void export(@RequestParam(required = false) String keyword, HttpServletResponse response) throws IOException {
-        ExcelHttpUtil.prepareXlsxResponse(response, "warehouses.xlsx");
-        List<WarehouseExcelRow> rows = excelService.exportWarehouses(keyword);
-        EasyExcel.write(response.getOutputStream(), WarehouseExcelRow.class).sheet("Warehouses").doWrite(rows);
+        // 按 id 游标分批写出，内存只保留一批
+        excelExporter.export(response, "warehouses.xlsx", "Warehouses", WarehouseExcelRow.class,
+                (afterId, limit) -> excelService.exportWarehouseBatch(keyword, afterId, limit),
+                BaseWarehouse::getId, BaseExcelService::toWarehouseRow);
     }
 
     @GetMapping("/import-template")
@@ -107,7 +113,6 @@ public class BaseWarehouseController {
     @PostMapping("/import")
     @PreAuthorize("hasAuthority('base:warehouse:import')")
     public ImportResult importExcel(@RequestPart("file") MultipartFile file) throws IOException {
-        List<WarehouseExcelRow> rows = EasyExcel.read(file.getInputStream()).head(WarehouseExcelRow.class).sheet().doReadSync();
-        return excelService.importWarehouses(rows);
+        return excelService.importWarehouses(file.getInputStream());
     }
 }
@@ -1,6 +1,9 @@
 package com.ordererp.backend.base.repository;
 
 import com.ordererp.backend.base.entity.BasePartner;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -11,8 +14,12 @@ import org.springframework.data.repository.query.Param;
 public interface BasePartnerRepository extends JpaRepository<BasePartner, Long> {
     Optional<BasePartner> findByIdAndDeleted(Long id, Integer deleted);
 
+    List<BasePartner> findByIdInAndDeleted(Collection<Long> ids, Integer deleted);
+
     Optional<BasePartner> findFirstByPartnerCode(String partnerCode);
 
+    List<BasePartner> findByPartnerCodeIn(Collection<String> partnerCodes);
+
     boolean existsByPartnerCodeAndDeleted(String partnerCode, Integer deleted);
 
     boolean existsByPartnerCodeAndDeletedAndIdNot(String partnerCode, Integer deleted, Long id);
@@ -25,13 +32,67 @@ public interface BasePartnerRepository extends JpaRepository<BasePartner, Long>
             """)
     Page<BasePartner> search(@Param("kw") String keyword, Pageable pageable);
 
+    /**
+     * 导出取数（keyset）：按 id 倒序取 afterId 之后的一批；返回 List 不触发 count。
+     */
     @Query("""
             select p from BasePartner p
             where (p.deleted is null or p.deleted = 0)
-              and (p.status is null or p.status = 1)
               and (:kw is null or :kw = '' or lower(p.partnerCode) like lower(concat('%', :kw, '%'))
                    or lower(p.partnerName) like lower(concat('%', :kw, '%')))
+              and (:afterId is null or p.id < :afterId)
+            order by p.id desc
+            """)
+    List<BasePartner> seek(@Param("kw") String keyword, @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 下拉选项（无关键词）：启用的前 N 条，按 id 升序；返回 List 不触发 count。
+     */
+    @Query("""
+            select p from BasePartner p
+            where (p.deleted is null or p.deleted = 0)
+              and (p.status is null or p.status = 1)
+            order by p.id asc
+            """)
+    List<BasePartner> options(Pageable pageable);
+
+    /**
+     * 下拉选项回退查询（内存索引未就绪时）：单字关键词只做编码前缀匹配，可走唯一索引。
+     */
+    @Query("""
+            select p from BasePartner p
+            where (p.deleted is null or p.deleted = 0)
+              and (p.status is null or p.status = 1)
+              and p.partnerCode like concat(:kw, '%')
+            order by p.id asc
+            """)
+    List<BasePartner> optionsByCodePrefix(@Param("kw") String keyword, Pageable pageable);
+
+    /**
+     * 下拉选项回退查询（内存索引未就绪时）：FULLTEXT ngram 短语匹配（V47），代替 like '%kw%' 全表扫描。
+     * 排序与内存索引一致：编码全等、编码前缀、名称前缀优先，其余按 id。
+     */
+    @Query(value = """
+            select p.* from base_partner p
+            where match(p.partner_code, p.partner_name) against (:phrase in boolean mode)
+              and coalesce(p.deleted, 0) = 0
+              and coalesce(p.status, 1) = 1
+            order by p.partner_code = :kw desc,
+                     p.partner_code like concat(:kw, '%') desc,
+                     p.partner_name like concat(:kw, '%') desc,
+                     p.id asc
+            limit :limit
+            """, nativeQuery = true)
+    List<BasePartner> optionsFulltext(@Param("kw") String keyword, @Param("phrase") String phrase, @Param("limit") int limit);
+
+    /**
+     * 搜索索引增量同步：update_time 不早于 since 的记录（含已删除/停用的，用于从索引移除），按 id 游标分批。
+     */
+    @Query("""
+            select p from BasePartner p
+            where p.updateTime >= :since
+              and (:afterId is null or p.id > :afterId)
             order by p.id asc
             """)
-    Page<BasePartner> options(@Param("kw") String keyword, Pageable pageable);
+    List<BasePartner> changedSince(@Param("since") LocalDateTime since, @Param("afterId") Long afterId, Pageable pageable);
 }
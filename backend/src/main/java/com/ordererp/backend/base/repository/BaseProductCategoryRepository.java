@@ -1,6 +1,8 @@
 package com.ordererp.backend.base.repository;
 
 import com.ordererp.backend.base.entity.BaseProductCategory;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -13,6 +15,8 @@ public interface BaseProductCategoryRepository extends JpaRepository<BaseProduct
 
     Optional<BaseProductCategory> findFirstByCategoryCode(String categoryCode);
 
+    List<BaseProductCategory> findByCategoryCodeIn(Collection<String> categoryCodes);
+
     Optional<BaseProductCategory> findByCategoryCodeAndDeleted(String categoryCode, Integer deleted);
 
     boolean existsByCategoryCodeAndDeleted(String categoryCode, Integer deleted);
@@ -1,18 +1,26 @@
 package com.ordererp.backend.base.repository;
 
 import com.ordererp.backend.base.entity.BaseProduct;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 public interface BaseProductRepository extends JpaRepository<BaseProduct, Long> {
     Optional<BaseProduct> findByIdAndDeleted(Long id, Integer deleted);
 
+    List<BaseProduct> findByIdInAndDeleted(Collection<Long> ids, Integer deleted);
+
     Optional<BaseProduct> findFirstByProductCode(String productCode);
 
+    List<BaseProduct> findByProductCodeIn(Collection<String> productCodes);
+
     boolean existsByProductCodeAndDeleted(String productCode, Integer deleted);
 
     boolean existsByProductCodeAndDeletedAndIdNot(String productCode, Integer deleted, Long id);
@@ -25,13 +33,106 @@ public interface BaseProductRepository extends JpaRepository<BaseProduct, Long>
             """)
     Page<BaseProduct> search(@Param("kw") String keyword, Pageable pageable);
 
+    /**
+     * 导出取数（keyset）：按 id 倒序取 afterId 之后的一批；返回 List 不触发 count。
+     */
     @Query("""
             select p from BaseProduct p
             where (p.deleted is null or p.deleted = 0)
-              and (p.status is null or p.status = 1)
               and (:kw is null or :kw = '' or lower(p.productCode) like lower(concat('%', :kw, '%'))
                    or lower(p.productName) like lower(concat('%', :kw, '%')))
+              and (:afterId is null or p.id < :afterId)
+            order by p.id desc
+            """)
+    List<BaseProduct> seek(@Param("kw") String keyword, @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 下拉选项（无关键词）：启用的前 N 条，按 id 升序；返回 List 不触发 count。
+     */
+    @Query("""
+            select p from BaseProduct p
+            where (p.deleted is null or p.deleted = 0)
+              and (p.status is null or p.status = 1)
             order by p.id asc
             """)
-    Page<BaseProduct> options(@Param("kw") String keyword, Pageable pageable);
+    List<BaseProduct> options(Pageable pageable);
+
+    /**
+     * 下拉选项回退查询（内存索引未就绪时）：单字关键词只做编码前缀匹配，可走唯一索引。
+     */
+    @Query("""
+            select p from BaseProduct p
+            where (p.deleted is null or p.deleted = 0)
+              and (p.status is null or p.status = 1)
+              and p.productCode like concat(:kw, '%')
+            order by p.id asc
+            """)
+    List<BaseProduct> optionsByCodePrefix(@Param("kw") String keyword, Pageable pageable);
+
+    /**
+     * 下拉选项回退查询（内存索引未就绪时）：FULLTEXT ngram 短语匹配（V47），代替 like '%kw%' 全表扫描。
+     * 排序与内存索引一致：编码全等、编码前缀、名称前缀优先，其余按 id。
+     */
+    @Query(value = """
+            select p.* from base_product p
+            where match(p.product_code, p.product_name) against (:phrase in boolean mode)
+              and coalesce(p.deleted, 0) = 0
+              and coalesce(p.status, 1) = 1
+            order by p.product_code = :kw desc,
+                     p.product_code like concat(:kw, '%') desc,
+                     p.product_name like concat(:kw, '%') desc,
+                     p.id asc
+            limit :limit
+            """, nativeQuery = true)
+    List<BaseProduct> optionsFulltext(@Param("kw") String keyword, @Param("phrase") String phrase, @Param("limit") int limit);
+
+    /**
+     * 搜索索引增量同步：update_time 不早于 since 的记录（含已删除/停用的，用于从索引移除），按 id 游标分批。
+     */
+    @Query("""
+            select p from BaseProduct p
+            where p.updateTime >= :since
+              and (:afterId is null or p.id > :afterId)
+            order by p.id asc
+            """)
+    List<BaseProduct> changedSince(@Param("since") LocalDateTime since, @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 把商品的低库存阈值同步到库存汇总表（wms_stock_product_summary.low_stock），低库存预警按该列建索引。
+     * 已删除商品同步为 null，不再参与预警。
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            insert into wms_stock_product_summary (product_id, low_stock)
+            select p.id, case when coalesce(p.deleted, 0) = 0 then p.low_stock end
+            from base_product p
+            where p.id = :id
+            on duplicate key update low_stock = values(low_stock)
+            """, nativeQuery = true)
+    int syncStockSummaryLowStock(@Param("id") Long id);
+
+    /**
+     * 全量同步低库存阈值（Excel 批量导入后使用）。
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            insert into wms_stock_product_summary (product_id, low_stock)
+            select p.id, case when coalesce(p.deleted, 0) = 0 then p.low_stock end
+            from base_product p
+            on duplicate key update low_stock = values(low_stock)
+            """, nativeQuery = true)
+    int syncAllStockSummaryLowStock();
+
+    /**
+     * 按商品编码同步低库存阈值（Excel 分批导入时每批提交前调用）。
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            insert into wms_stock_product_summary (product_id, low_stock)
+            select p.id, case when coalesce(p.deleted, 0) = 0 then p.low_stock end
+            from base_product p
+            where p.product_code in (:codes)
+            on duplicate key update low_stock = values(low_stock)
+            """, nativeQuery = true)
+    int syncStockSummaryLowStockByCodes(@Param("codes") Collection<String> codes);
 }
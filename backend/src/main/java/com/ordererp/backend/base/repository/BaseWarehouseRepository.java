@@ -1,6 +1,9 @@
 package com.ordererp.backend.base.repository;
 
 import com.ordererp.backend.base.entity.BaseWarehouse;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -11,8 +14,12 @@ import org.springframework.data.repository.query.Param;
 public interface BaseWarehouseRepository extends JpaRepository<BaseWarehouse, Long> {
     Optional<BaseWarehouse> findByIdAndDeleted(Long id, Integer deleted);
 
+    List<BaseWarehouse> findByIdInAndDeleted(Collection<Long> ids, Integer deleted);
+
     Optional<BaseWarehouse> findFirstByWarehouseCode(String warehouseCode);
 
+    List<BaseWarehouse> findByWarehouseCodeIn(Collection<String> warehouseCodes);
+
     boolean existsByWarehouseCodeAndDeleted(String warehouseCode, Integer deleted);
 
     boolean existsByWarehouseCodeAndDeletedAndIdNot(String warehouseCode, Integer deleted, Long id);
@@ -25,13 +32,67 @@ public interface BaseWarehouseRepository extends JpaRepository<BaseWarehouse, Lo
             """)
     Page<BaseWarehouse> search(@Param("kw") String keyword, Pageable pageable);
 
+    /**
+     * 导出取数（keyset）：按 id 倒序取 afterId 之后的一批；返回 List 不触发 count。
+     */
     @Query("""
             select w from BaseWarehouse w
             where (w.deleted is null or w.deleted = 0)
-              and (w.status is null or w.status = 1)
               and (:kw is null or :kw = '' or lower(w.warehouseCode) like lower(concat('%', :kw, '%'))
                    or lower(w.warehouseName) like lower(concat('%', :kw, '%')))
+              and (:afterId is null or w.id < :afterId)
+            order by w.id desc
+            """)
+    List<BaseWarehouse> seek(@Param("kw") String keyword, @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 下拉选项（无关键词）：启用的前 N 条，按 id 升序；返回 List 不触发 count。
+     */
+    @Query("""
+            select w from BaseWarehouse w
+            where (w.deleted is null or w.deleted = 0)
+              and (w.status is null or w.status = 1)
+            order by w.id asc
+            """)
+    List<BaseWarehouse> options(Pageable pageable);
+
+    /**
+     * 下拉选项回退查询（内存索引未就绪时）：单字关键词只做编码前缀匹配，可走唯一索引。
+     */
+    @Query("""
+            select w from BaseWarehouse w
+            where (w.deleted is null or w.deleted = 0)
+              and (w.status is null or w.status = 1)
+              and w.warehouseCode like concat(:kw, '%')
+            order by w.id asc
+            """)
+    List<BaseWarehouse> optionsByCodePrefix(@Param("kw") String keyword, Pageable pageable);
+
+    /**
+     * 下拉选项回退查询（内存索引未就绪时）：FULLTEXT ngram 短语匹配（V47），代替 like '%kw%' 全表扫描。
+     * 排序与内存索引一致：编码全等、编码前缀、名称前缀优先，其余按 id。
+     */
+    @Query(value = """
+            select w.* from base_warehouse w
+            where match(w.warehouse_code, w.warehouse_name) against (:phrase in boolean mode)
+              and coalesce(w.deleted, 0) = 0
+              and coalesce(w.status, 1) = 1
+            order by w.warehouse_code = :kw desc,
+                     w.warehouse_code like concat(:kw, '%') desc,
+                     w.warehouse_name like concat(:kw, '%') desc,
+                     w.id asc
+            limit :limit
+            """, nativeQuery = true)
+    List<BaseWarehouse> optionsFulltext(@Param("kw") String keyword, @Param("phrase") String phrase, @Param("limit") int limit);
+
+    /**
+     * 搜索索引增量同步：update_time 不早于 since 的记录（含已删除/停用的，用于从索引移除），按 id 游标分批。
+     */
+    @Query("""
+            select w from BaseWarehouse w
+            where w.updateTime >= :since
+              and (:afterId is null or w.id > :afterId)
             order by w.id asc
             """)
-    Page<BaseWarehouse> options(@Param("kw") String keyword, Pageable pageable);
+    List<BaseWarehouse> changedSince(@Param("since") LocalDateTime since, @Param("afterId") Long afterId, Pageable pageable);
 }
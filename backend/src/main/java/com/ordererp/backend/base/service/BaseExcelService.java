@@ -13,40 +13,94 @@ import com.ordererp.backend.base.repository.BaseProductCategoryRepository;
 import com.ordererp.backend.base.repository.BaseProductRepository;
 import com.ordererp.backend.base.repository.BaseWarehouseRepository;
 import com.ordererp.backend.common.dto.ImportResult;
-import com.ordererp.backend.common.dto.ImportResult.RowError;
+import com.ordererp.backend.common.excel.ExcelChunkImporter;
+import com.ordererp.backend.common.excel.ExcelChunkImporter.ImportRow;
+import com.ordererp.backend.common.excel.ExcelChunkImporter.ProgressListener;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class BaseExcelService {
+    /**
+     * 商品导入写库：按 product_code 唯一索引 upsert。更新时保留 create_time 和 Excel 里没有的列（条码、规格等），
+     * 并把逻辑删除的商品恢复为正常。
+     */
+    private static final String UPSERT_PRODUCT_SQL = """
+            insert into base_product (category_id, product_code, product_name, unit, purchase_price, sale_price,
+              low_stock, image_url, status, deleted, create_time, update_time)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?, ?)
+            on duplicate key update
+              category_id = values(category_id),
+              product_code = values(product_code),
+              product_name = values(product_name),
+              unit = values(unit),
+              purchase_price = values(purchase_price),
+              sale_price = values(sale_price),
+              low_stock = values(low_stock),
+              image_url = values(image_url),
+              status = values(status),
+              deleted = 0,
+              update_time = values(update_time)
+            """;
+
     private final BaseProductRepository productRepository;
     private final BaseWarehouseRepository warehouseRepository;
     private final BasePartnerRepository partnerRepository;
     private final BaseProductCategoryRepository categoryRepository;
+    private final BaseMasterDataCache masterDataCache;
+    private final BaseSearchIndex searchIndex;
+    private final ExcelChunkImporter excelImporter;
+    private final JdbcTemplate jdbcTemplate;
 
     public BaseExcelService(BaseProductRepository productRepository, BaseWarehouseRepository warehouseRepository,
-            BasePartnerRepository partnerRepository, BaseProductCategoryRepository categoryRepository) {
+            BasePartnerRepository partnerRepository, BaseProductCategoryRepository categoryRepository,
+            BaseMasterDataCache masterDataCache, BaseSearchIndex searchIndex, ExcelChunkImporter excelImporter,
+            JdbcTemplate jdbcTemplate) {
         this.productRepository = productRepository;
         this.warehouseRepository = warehouseRepository;
         this.partnerRepository = partnerRepository;
         this.categoryRepository = categoryRepository;
+        this.masterDataCache = masterDataCache;
+        this.searchIndex = searchIndex;
+        this.excelImporter = excelImporter;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     public List<ProductExcelRow> exportProducts(String keyword) {
-        // 简化实现：导出所有未删除且匹配 keyword 的数据行。
+        // 简化实现：导出所有未删除且匹配 keyword 的数据行（大数据量导出走 exportProductBatch 流式写出）。
         List<BaseProduct> items = productRepository.search(trimToNull(keyword),
                 org.springframework.data.domain.Pageable.unpaged()).getContent();
-        Map<Long, String> categoryIdToCode = loadCategoryIdToCode();
+        return items.stream().map(productRowMapper()).toList();
+    }
+
+    /**
+     * 导出取数：按 id 倒序取 afterId 之后的一批（供 Excel 流式导出逐批调用）。
+     */
+    public List<BaseProduct> exportProductBatch(String keyword, Long afterId, int limit) {
+        return productRepository.seek(trimToNull(keyword), afterId, PageRequest.of(0, limit));
+    }
 
-        List<ProductExcelRow> rows = new ArrayList<>();
-        for (BaseProduct p : items) {
+    /**
+     * 商品 -> Excel 行；分类编码表在创建 mapper 时加载一次，整个导出过程复用。
+     */
+    public Function<BaseProduct, ProductExcelRow> productRowMapper() {
+        return productRowMapper(loadCategoryIdToCode());
+    }
+
+    public static Function<BaseProduct, ProductExcelRow> productRowMapper(Map<Long, String> categoryIdToCode) {
+        return p -> {
             ProductExcelRow r = new ProductExcelRow();
             if (p.getCategoryId() != null) {
                 r.setCategoryCode(categoryIdToCode.get(p.getCategoryId()));
@@ -59,220 +113,237 @@ public class BaseExcelService {
             r.setLowStock(p.getLowStock());
             r.setImageUrl(p.getImageUrl());
             r.setStatus(p.getStatus());
-            rows.add(r);
-        }
-        return rows;
+            return r;
+        };
     }
 
-    @Transactional
-    public ImportResult importProducts(List<ProductExcelRow> rows) {
-        List<RowError> errors = new ArrayList<>();
-        int inserted = 0;
-        int updated = 0;
+    /**
+     * 导入商品：分批处理，每批一次 in 查询区分新增/更新，再用一条批量 upsert 写入（已逻辑删除的同编码商品会被“复活”）。
+     */
+    public ImportResult importProducts(InputStream in) {
+        return importProducts(in, ProgressListener.NONE);
+    }
 
+    public ImportResult importProducts(InputStream in, ProgressListener progress) {
         Map<String, Long> categoryCodeToId = loadCategoryCodeToId();
-        Map<String, Boolean> seen = new HashMap<>();
-
-        int rowNum = 1; // Excel 表头是第 1 行，数据从第 2 行开始；这里用 (rowNum+1) 回报数据行号。
-        for (ProductExcelRow r : rows) {
-            rowNum++;
-            String code = normalizeCode(r.getProductCode());
-            if (code == null) {
-                errors.add(new RowError(rowNum, "SKU is required"));
-                continue;
-            }
-            String name = normalizeName(r.getProductName());
-            if (name == null) {
-                errors.add(new RowError(rowNum, "productName is required"));
-                continue;
-            }
-            String key = code.toLowerCase(Locale.ROOT);
-            if (seen.putIfAbsent(key, true) != null) {
-                errors.add(new RowError(rowNum, "duplicate SKU in file: " + code));
-                continue;
-            }
-
-            Long categoryId = null;
-            String catCode = trimToNull(r.getCategoryCode());
-            if (catCode != null) {
-                categoryId = categoryCodeToId.get(catCode);
-                if (categoryId == null) {
-                    errors.add(new RowError(rowNum, "unknown categoryCode: " + catCode));
+        Set<String> seen = new HashSet<>();
+        return excelImporter.importSheet(in, ProductExcelRow.class, "products", null, (rows, ctx) -> {
+            // 导入可能批量改动主数据：整体失效（提交后会再失效一次）
+            masterDataCache.invalidateAllProducts();
+            LocalDateTime now = LocalDateTime.now();
+            List<String> codes = new ArrayList<>(rows.size());
+            List<Object[]> args = new ArrayList<>(rows.size());
+            for (ImportRow<ProductExcelRow> row : rows) {
+                ProductExcelRow r = row.data();
+                String code = normalizeCode(r.getProductCode());
+                if (code == null) {
+                    ctx.reject(row.rowNum(), "SKU is required");
+                    continue;
+                }
+                String name = normalizeName(r.getProductName());
+                if (name == null) {
+                    ctx.reject(row.rowNum(), "productName is required");
+                    continue;
+                }
+                if (!seen.add(code.toLowerCase(Locale.ROOT))) {
+                    ctx.reject(row.rowNum(), "duplicate SKU in file: " + code);
                     continue;
                 }
-            }
 
-            BaseProduct p = productRepository.findFirstByProductCode(code).orElseGet(BaseProduct::new);
-            boolean isNew = p.getId() == null;
-            if (isNew) {
-                p.setDeleted(0);
-                p.setCreateTime(LocalDateTime.now());
-            } else if (p.getDeleted() != null && p.getDeleted() == 1) {
-                // 唯一索引不允许重复插入：把逻辑删除的数据当作“复活/更新”。
-                p.setDeleted(0);
-            }
+                Long categoryId = null;
+                String catCode = trimToNull(r.getCategoryCode());
+                if (catCode != null) {
+                    categoryId = categoryCodeToId.get(catCode);
+                    if (categoryId == null) {
+                        ctx.reject(row.rowNum(), "unknown categoryCode: " + catCode);
+                        continue;
+                    }
+                }
 
-            p.setCategoryId(categoryId);
-            p.setProductCode(code);
-            p.setProductName(name);
-            p.setUnit(defaultIfBlank(r.getUnit(), "个"));
-            p.setPurchasePrice(r.getPurchasePrice());
-            p.setSalePrice(r.getSalePrice());
-            p.setLowStock(r.getLowStock() == null ? 10 : r.getLowStock());
-            p.setImageUrl(trimToNull(r.getImageUrl()));
-            p.setStatus(normalizeStatus(r.getStatus()));
-            p.setUpdateTime(LocalDateTime.now());
-
-            productRepository.save(p);
-            if (isNew) {
-                inserted++;
-            } else {
-                updated++;
+                codes.add(code);
+                args.add(new Object[] {
+                        categoryId,
+                        code,
+                        name,
+                        defaultIfBlank(r.getUnit(), "个"),
+                        r.getPurchasePrice(),
+                        r.getSalePrice(),
+                        r.getLowStock() == null ? 10 : r.getLowStock(),
+                        trimToNull(r.getImageUrl()),
+                        normalizeStatus(r.getStatus()),
+                        now,
+                        now
+                });
             }
-        }
-
-        return ImportResult.ok(rows.size(), inserted, updated, errors);
+            if (codes.isEmpty()) return;
+
+            int updated = indexByCode(productRepository.findByProductCodeIn(codes), BaseProduct::getProductCode).size();
+            jdbcTemplate.batchUpdate(UPSERT_PRODUCT_SQL, args);
+            // 低库存阈值可能批量变化：同步到库存汇总表
+            productRepository.syncStockSummaryLowStockByCodes(codes);
+            // 本批提交后刷新下拉搜索索引
+            searchIndex.refreshProductsByCodes(codes);
+            ctx.addInserted(codes.size() - updated);
+            ctx.addUpdated(updated);
+        }, progress);
     }
 
     public List<WarehouseExcelRow> exportWarehouses(String keyword) {
         List<BaseWarehouse> items = warehouseRepository.search(trimToNull(keyword),
                 org.springframework.data.domain.Pageable.unpaged()).getContent();
-        List<WarehouseExcelRow> rows = new ArrayList<>();
-        for (BaseWarehouse w : items) {
-            WarehouseExcelRow r = new WarehouseExcelRow();
-            r.setWarehouseCode(w.getWarehouseCode());
-            r.setWarehouseName(w.getWarehouseName());
-            r.setLocation(w.getLocation());
-            r.setManager(w.getManager());
-            r.setStatus(w.getStatus());
-            rows.add(r);
-        }
-        return rows;
+        return items.stream().map(BaseExcelService::toWarehouseRow).toList();
     }
 
-    @Transactional
-    public ImportResult importWarehouses(List<WarehouseExcelRow> rows) {
-        List<RowError> errors = new ArrayList<>();
-        int inserted = 0;
-        int updated = 0;
-        Map<String, Boolean> seen = new HashMap<>();
-
-        int rowNum = 1;
-        for (WarehouseExcelRow r : rows) {
-            rowNum++;
-            String code = normalizeCode(r.getWarehouseCode());
-            String name = normalizeName(r.getWarehouseName());
-            if (code == null) {
-                errors.add(new RowError(rowNum, "warehouseCode is required"));
-                continue;
-            }
-            if (name == null) {
-                errors.add(new RowError(rowNum, "warehouseName is required"));
-                continue;
-            }
-            String key = code.toLowerCase(Locale.ROOT);
-            if (seen.putIfAbsent(key, true) != null) {
-                errors.add(new RowError(rowNum, "duplicate warehouseCode in file: " + code));
-                continue;
-            }
+    public List<BaseWarehouse> exportWarehouseBatch(String keyword, Long afterId, int limit) {
+        return warehouseRepository.seek(trimToNull(keyword), afterId, PageRequest.of(0, limit));
+    }
 
-            BaseWarehouse w = warehouseRepository.findFirstByWarehouseCode(code).orElseGet(BaseWarehouse::new);
-            boolean isNew = w.getId() == null;
-            if (isNew) {
-                w.setDeleted(0);
-                w.setCreateTime(LocalDateTime.now());
-            } else if (w.getDeleted() != null && w.getDeleted() == 1) {
+    public static WarehouseExcelRow toWarehouseRow(BaseWarehouse w) {
+        WarehouseExcelRow r = new WarehouseExcelRow();
+        r.setWarehouseCode(w.getWarehouseCode());
+        r.setWarehouseName(w.getWarehouseName());
+        r.setLocation(w.getLocation());
+        r.setManager(w.getManager());
+        r.setStatus(w.getStatus());
+        return r;
+    }
+
+    public ImportResult importWarehouses(InputStream in) {
+        Set<String> seen = new HashSet<>();
+        return excelImporter.importSheet(in, WarehouseExcelRow.class, "warehouses", (rows, ctx) -> {
+            // 导入可能批量改动主数据：整体失效（提交后会再失效一次）
+            masterDataCache.invalidateAllWarehouses();
+            List<CodedRow<WarehouseExcelRow>> valid = new ArrayList<>(rows.size());
+            for (ImportRow<WarehouseExcelRow> row : rows) {
+                WarehouseExcelRow r = row.data();
+                String code = normalizeCode(r.getWarehouseCode());
+                String name = normalizeName(r.getWarehouseName());
+                if (code == null) {
+                    ctx.reject(row.rowNum(), "warehouseCode is required");
+                    continue;
+                }
+                if (name == null) {
+                    ctx.reject(row.rowNum(), "warehouseName is required");
+                    continue;
+                }
+                if (!seen.add(code.toLowerCase(Locale.ROOT))) {
+                    ctx.reject(row.rowNum(), "duplicate warehouseCode in file: " + code);
+                    continue;
+                }
+                valid.add(new CodedRow<>(code, r));
+            }
+            if (valid.isEmpty()) return;
+
+            Map<String, BaseWarehouse> existing = indexByCode(
+                    warehouseRepository.findByWarehouseCodeIn(codesOf(valid)), BaseWarehouse::getWarehouseCode);
+            LocalDateTime now = LocalDateTime.now();
+            List<BaseWarehouse> toSave = new ArrayList<>(valid.size());
+            for (CodedRow<WarehouseExcelRow> v : valid) {
+                WarehouseExcelRow r = v.row();
+                BaseWarehouse w = existing.get(v.code().toLowerCase(Locale.ROOT));
+                if (w == null) {
+                    w = new BaseWarehouse();
+                    w.setCreateTime(now);
+                }
+                // 唯一索引不允许重复插入：把逻辑删除的数据当作“复活/更新”。
                 w.setDeleted(0);
+                w.setWarehouseCode(v.code());
+                w.setWarehouseName(normalizeName(r.getWarehouseName()));
+                w.setLocation(trimToNull(r.getLocation()));
+                w.setManager(trimToNull(r.getManager()));
+                w.setStatus(normalizeStatus(r.getStatus()));
+                w.setUpdateTime(now);
+                toSave.add(w);
             }
-
-            w.setWarehouseCode(code);
-            w.setWarehouseName(name);
-            w.setLocation(trimToNull(r.getLocation()));
-            w.setManager(trimToNull(r.getManager()));
-            w.setStatus(normalizeStatus(r.getStatus()));
-            w.setUpdateTime(LocalDateTime.now());
-            warehouseRepository.save(w);
-            if (isNew) inserted++;
-            else updated++;
-        }
-
-        return ImportResult.ok(rows.size(), inserted, updated, errors);
+            warehouseRepository.saveAll(toSave);
+            searchIndex.refreshWarehousesByCodes(codesOf(valid));
+            ctx.addInserted(valid.size() - existing.size());
+            ctx.addUpdated(existing.size());
+        });
     }
 
     public List<PartnerExcelRow> exportPartners(String keyword) {
         List<BasePartner> items = partnerRepository.search(trimToNull(keyword),
                 org.springframework.data.domain.Pageable.unpaged()).getContent();
-        List<PartnerExcelRow> rows = new ArrayList<>();
-        for (BasePartner p : items) {
-            PartnerExcelRow r = new PartnerExcelRow();
-            r.setPartnerCode(p.getPartnerCode());
-            r.setPartnerName(p.getPartnerName());
-            r.setType(p.getType());
-            r.setContact(p.getContact());
-            r.setPhone(p.getPhone());
-            r.setEmail(p.getEmail());
-            r.setCreditLimit(p.getCreditLimit());
-            r.setStatus(p.getStatus());
-            rows.add(r);
-        }
-        return rows;
+        return items.stream().map(BaseExcelService::toPartnerRow).toList();
     }
 
-    @Transactional
-    public ImportResult importPartners(List<PartnerExcelRow> rows) {
-        List<RowError> errors = new ArrayList<>();
-        int inserted = 0;
-        int updated = 0;
-        Map<String, Boolean> seen = new HashMap<>();
-
-        int rowNum = 1;
-        for (PartnerExcelRow r : rows) {
-            rowNum++;
-            String code = normalizeCode(r.getPartnerCode());
-            String name = normalizeName(r.getPartnerName());
-            if (code == null) {
-                errors.add(new RowError(rowNum, "partnerCode is required"));
-                continue;
-            }
-            if (name == null) {
-                errors.add(new RowError(rowNum, "partnerName is required"));
-                continue;
-            }
-            Integer type = r.getType();
-            if (type == null || (type != 1 && type != 2)) {
-                errors.add(new RowError(rowNum, "type must be 1 or 2"));
-                continue;
-            }
-            String key = code.toLowerCase(Locale.ROOT);
-            if (seen.putIfAbsent(key, true) != null) {
-                errors.add(new RowError(rowNum, "duplicate partnerCode in file: " + code));
-                continue;
-            }
+    public List<BasePartner> exportPartnerBatch(String keyword, Long afterId, int limit) {
+        return partnerRepository.seek(trimToNull(keyword), afterId, PageRequest.of(0, limit));
+    }
 
-            BasePartner p = partnerRepository.findFirstByPartnerCode(code).orElseGet(BasePartner::new);
-            boolean isNew = p.getId() == null;
-            if (isNew) {
-                p.setDeleted(0);
-                p.setCreateTime(LocalDateTime.now());
-            } else if (p.getDeleted() != null && p.getDeleted() == 1) {
+    public static PartnerExcelRow toPartnerRow(BasePartner p) {
+        PartnerExcelRow r = new PartnerExcelRow();
+        r.setPartnerCode(p.getPartnerCode());
+        r.setPartnerName(p.getPartnerName());
+        r.setType(p.getType());
+        r.setContact(p.getContact());
+        r.setPhone(p.getPhone());
+        r.setEmail(p.getEmail());
+        r.setCreditLimit(p.getCreditLimit());
+        r.setStatus(p.getStatus());
+        return r;
+    }
+
+    public ImportResult importPartners(InputStream in) {
+        Set<String> seen = new HashSet<>();
+        return excelImporter.importSheet(in, PartnerExcelRow.class, "partners", (rows, ctx) -> {
+            // 导入可能批量改动主数据：整体失效（提交后会再失效一次）
+            masterDataCache.invalidateAllPartners();
+            List<CodedRow<PartnerExcelRow>> valid = new ArrayList<>(rows.size());
+            for (ImportRow<PartnerExcelRow> row : rows) {
+                PartnerExcelRow r = row.data();
+                String code = normalizeCode(r.getPartnerCode());
+                String name = normalizeName(r.getPartnerName());
+                if (code == null) {
+                    ctx.reject(row.rowNum(), "partnerCode is required");
+                    continue;
+                }
+                if (name == null) {
+                    ctx.reject(row.rowNum(), "partnerName is required");
+                    continue;
+                }
+                Integer type = r.getType();
+                if (type == null || (type != 1 && type != 2)) {
+                    ctx.reject(row.rowNum(), "type must be 1 or 2");
+                    continue;
+                }
+                if (!seen.add(code.toLowerCase(Locale.ROOT))) {
+                    ctx.reject(row.rowNum(), "duplicate partnerCode in file: " + code);
+                    continue;
+                }
+                valid.add(new CodedRow<>(code, r));
+            }
+            if (valid.isEmpty()) return;
+
+            Map<String, BasePartner> existing = indexByCode(
+                    partnerRepository.findByPartnerCodeIn(codesOf(valid)), BasePartner::getPartnerCode);
+            LocalDateTime now = LocalDateTime.now();
+            List<BasePartner> toSave = new ArrayList<>(valid.size());
+            for (CodedRow<PartnerExcelRow> v : valid) {
+                PartnerExcelRow r = v.row();
+                BasePartner p = existing.get(v.code().toLowerCase(Locale.ROOT));
+                if (p == null) {
+                    p = new BasePartner();
+                    p.setCreateTime(now);
+                }
                 p.setDeleted(0);
+                p.setPartnerCode(v.code());
+                p.setPartnerName(normalizeName(r.getPartnerName()));
+                p.setType(r.getType());
+                p.setContact(trimToNull(r.getContact()));
+                p.setPhone(trimToNull(r.getPhone()));
+                p.setEmail(trimToNull(r.getEmail()));
+                p.setCreditLimit(r.getCreditLimit());
+                p.setStatus(normalizeStatus(r.getStatus()));
+                p.setUpdateTime(now);
+                toSave.add(p);
             }
-
-            p.setPartnerCode(code);
-            p.setPartnerName(name);
-            p.setType(type);
-            p.setContact(trimToNull(r.getContact()));
-            p.setPhone(trimToNull(r.getPhone()));
-            p.setEmail(trimToNull(r.getEmail()));
-            p.setCreditLimit(r.getCreditLimit());
-            p.setStatus(normalizeStatus(r.getStatus()));
-            p.setUpdateTime(LocalDateTime.now());
-            partnerRepository.save(p);
-            if (isNew) inserted++;
-            else updated++;
-        }
-
-        return ImportResult.ok(rows.size(), inserted, updated, errors);
+            partnerRepository.saveAll(toSave);
+            searchIndex.refreshPartnersByCodes(codesOf(valid));
+            ctx.addInserted(valid.size() - existing.size());
+            ctx.addUpdated(existing.size());
+        });
     }
 
     public List<CategoryExcelRow> exportCategories(String keyword) {
@@ -295,65 +366,69 @@ public class BaseExcelService {
         return rows;
     }
 
-    @Transactional
-    public ImportResult importCategories(List<CategoryExcelRow> rows) {
-        List<RowError> errors = new ArrayList<>();
-        int inserted = 0;
-        int updated = 0;
-        Map<String, Boolean> seen = new HashMap<>();
-
+    public ImportResult importCategories(InputStream in) {
         Map<String, Long> codeToId = loadCategoryCodeToId();
-        int rowNum = 1;
-        for (CategoryExcelRow r : rows) {
-            rowNum++;
-            String code = normalizeCode(r.getCategoryCode());
-            String name = normalizeName(r.getCategoryName());
-            if (code == null) {
-                errors.add(new RowError(rowNum, "categoryCode is required"));
-                continue;
-            }
-            if (name == null) {
-                errors.add(new RowError(rowNum, "categoryName is required"));
-                continue;
-            }
-            String key = code.toLowerCase(Locale.ROOT);
-            if (seen.putIfAbsent(key, true) != null) {
-                errors.add(new RowError(rowNum, "duplicate categoryCode in file: " + code));
-                continue;
-            }
-
-            Long parentId = 0L;
-            String parentCode = trimToNull(r.getParentCategoryCode());
-            if (parentCode != null) {
-                Long pid = codeToId.get(parentCode);
-                if (pid == null) {
-                    errors.add(new RowError(rowNum, "unknown parentCategoryCode: " + parentCode));
+        Set<String> seen = new HashSet<>();
+        return excelImporter.importSheet(in, CategoryExcelRow.class, "categories", (rows, ctx) -> {
+            List<CodedRow<CategoryExcelRow>> valid = new ArrayList<>(rows.size());
+            List<Long> parentIds = new ArrayList<>(rows.size());
+            for (ImportRow<CategoryExcelRow> row : rows) {
+                CategoryExcelRow r = row.data();
+                String code = normalizeCode(r.getCategoryCode());
+                String name = normalizeName(r.getCategoryName());
+                if (code == null) {
+                    ctx.reject(row.rowNum(), "categoryCode is required");
+                    continue;
+                }
+                if (name == null) {
+                    ctx.reject(row.rowNum(), "categoryName is required");
+                    continue;
+                }
+                if (!seen.add(code.toLowerCase(Locale.ROOT))) {
+                    ctx.reject(row.rowNum(), "duplicate categoryCode in file: " + code);
                     continue;
                 }
-                parentId = pid;
-            }
 
-            BaseProductCategory c = categoryRepository.findFirstByCategoryCode(code).orElseGet(BaseProductCategory::new);
-            boolean isNew = c.getId() == null;
-            if (isNew) {
-                c.setDeleted(0);
-                c.setCreateTime(LocalDateTime.now());
-            } else if (c.getDeleted() != null && c.getDeleted() == 1) {
+                Long parentId = 0L;
+                String parentCode = trimToNull(r.getParentCategoryCode());
+                if (parentCode != null) {
+                    Long pid = codeToId.get(parentCode);
+                    if (pid == null) {
+                        ctx.reject(row.rowNum(), "unknown parentCategoryCode: " + parentCode);
+                        continue;
+                    }
+                    parentId = pid;
+                }
+                valid.add(new CodedRow<>(code, r));
+                parentIds.add(parentId);
+            }
+            if (valid.isEmpty()) return;
+
+            Map<String, BaseProductCategory> existing = indexByCode(
+                    categoryRepository.findByCategoryCodeIn(codesOf(valid)), BaseProductCategory::getCategoryCode);
+            LocalDateTime now = LocalDateTime.now();
+            List<BaseProductCategory> toSave = new ArrayList<>(valid.size());
+            for (int i = 0; i < valid.size(); i++) {
+                CodedRow<CategoryExcelRow> v = valid.get(i);
+                CategoryExcelRow r = v.row();
+                BaseProductCategory c = existing.get(v.code().toLowerCase(Locale.ROOT));
+                if (c == null) {
+                    c = new BaseProductCategory();
+                    c.setCreateTime(now);
+                }
                 c.setDeleted(0);
+                c.setParentId(parentIds.get(i));
+                c.setCategoryCode(v.code());
+                c.setCategoryName(normalizeName(r.getCategoryName()));
+                c.setSort(r.getSort() == null ? 0 : r.getSort());
+                c.setStatus(normalizeStatus(r.getStatus()));
+                c.setUpdateTime(now);
+                toSave.add(c);
             }
-            c.setParentId(parentId);
-            c.setCategoryCode(code);
-            c.setCategoryName(name);
-            c.setSort(r.getSort() == null ? 0 : r.getSort());
-            c.setStatus(normalizeStatus(r.getStatus()));
-            c.setUpdateTime(LocalDateTime.now());
-            categoryRepository.save(c);
-
-            if (isNew) inserted++;
-            else updated++;
-        }
-
-        return ImportResult.ok(rows.size(), inserted, updated, errors);
+            categoryRepository.saveAll(toSave);
+            ctx.addInserted(valid.size() - existing.size());
+            ctx.addUpdated(existing.size());
+        });
     }
 
     private Map<String, Long> loadCategoryCodeToId() {
@@ -378,6 +453,28 @@ public class BaseExcelService {
         return map;
     }
 
+    /**
+     * 按编码（忽略大小写，与 MySQL 默认排序规则一致）建立索引。
+     */
+    private static <E> Map<String, E> indexByCode(List<E> items, Function<E, String> codeOf) {
+        Map<String, E> map = new HashMap<>();
+        for (E e : items) {
+            String code = codeOf.apply(e);
+            if (code != null) map.put(code.toLowerCase(Locale.ROOT), e);
+        }
+        return map;
+    }
+
+    private static List<String> codesOf(List<? extends CodedRow<?>> rows) {
+        return rows.stream().map(CodedRow::code).toList();
+    }
+
+    /**
+     * 通过校验的行及其规范化后的编码。
+     */
+    private record CodedRow<R>(String code, R row) {
+    }
+
     private static String trimToNull(String value) {
         if (value == null) return null;
         String s = value.trim();
@@ -0,0 +1,218 @@
+package com.ordererp.backend.base.service;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.ordererp.backend.base.entity.BasePartner;
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 主数据（商品/仓库/往来单位）只读缓存。
+ *
+ * <p>单据创建/执行时需要逐行校验商品、仓库是否存在且启用；以前每行一次 {@code findByIdAndDeleted}，
+ * 500 行的单据就是 500 次查询。这里按 id 缓存不可变快照：</p>
+ * <ul>
+ *   <li>有界：按条数上限淘汰，写入后 TTL 到期自动重载（兜底直接改库的场景）；</li>
+ *   <li>批量：{@code getProducts(ids)} 对未命中的 id 只发一条 {@code where id in (...)}；</li>
+ *   <li>不缓存“不存在”：新建的主数据无需失效即可查到；</li>
+ *   <li>失效：主数据增删改、Excel 导入时调用 invalidate，事务提交后会再失效一次，
+ *       避免并发读在提交前把旧值重新放回缓存；</li>
+ *   <li>指标：三个缓存以 cache=product/warehouse/partner 注册到 Micrometer
+ *       （{@code cache.gets} 按 result=hit/miss、{@code cache.size}、{@code cache.evictions} 等）。</li>
+ * </ul>
+ *
+ * <p>返回的是快照 record 而不是 JPA 实体：缓存对象跨线程共享，不能被调用方修改或 save。</p>
+ */
+@Service
+public class BaseMasterDataCache {
+    private final LoadingCache<Long, Optional<ProductInfo>> products;
+    private final LoadingCache<Long, Optional<WarehouseInfo>> warehouses;
+    private final LoadingCache<Long, Optional<PartnerInfo>> partners;
+
+    public BaseMasterDataCache(BaseProductRepository productRepository, BaseWarehouseRepository warehouseRepository,
+            BasePartnerRepository partnerRepository, MeterRegistry meterRegistry,
+            @Value("${app.cache.master-data.max-size:20000}") long maxSize,
+            @Value("${app.cache.master-data.ttl-seconds:600}") long ttlSeconds) {
+        this.products = build(maxSize, ttlSeconds,
+                ids -> productRepository.findByIdInAndDeleted(ids, 0).stream()
+                        .collect(Collectors.toMap(BaseProduct::getId, ProductInfo::of)));
+        this.warehouses = build(maxSize, ttlSeconds,
+                ids -> warehouseRepository.findByIdInAndDeleted(ids, 0).stream()
+                        .collect(Collectors.toMap(BaseWarehouse::getId, WarehouseInfo::of)));
+        this.partners = build(maxSize, ttlSeconds,
+                ids -> partnerRepository.findByIdInAndDeleted(ids, 0).stream()
+                        .collect(Collectors.toMap(BasePartner::getId, PartnerInfo::of)));
+        CaffeineCacheMetrics.monitor(meterRegistry, products, "product");
+        CaffeineCacheMetrics.monitor(meterRegistry, warehouses, "warehouse");
+        CaffeineCacheMetrics.monitor(meterRegistry, partners, "partner");
+    }
+
+    public Optional<ProductInfo> getProduct(Long id) {
+        return getOne(products, id);
+    }
+
+    /**
+     * 批量读取商品（未删除）；结果只包含存在的 id，调用方按需判断缺失。
+     */
+    public Map<Long, ProductInfo> getProducts(Collection<Long> ids) {
+        return getAll(products, ids);
+    }
+
+    public Optional<WarehouseInfo> getWarehouse(Long id) {
+        return getOne(warehouses, id);
+    }
+
+    public Map<Long, WarehouseInfo> getWarehouses(Collection<Long> ids) {
+        return getAll(warehouses, ids);
+    }
+
+    public Optional<PartnerInfo> getPartner(Long id) {
+        return getOne(partners, id);
+    }
+
+    public Map<Long, PartnerInfo> getPartners(Collection<Long> ids) {
+        return getAll(partners, ids);
+    }
+
+    public void invalidateProduct(Long id) {
+        invalidate(products, id);
+    }
+
+    public void invalidateWarehouse(Long id) {
+        invalidate(warehouses, id);
+    }
+
+    public void invalidatePartner(Long id) {
+        invalidate(partners, id);
+    }
+
+    public void invalidateAllProducts() {
+        invalidateAll(products);
+    }
+
+    public void invalidateAllWarehouses() {
+        invalidateAll(warehouses);
+    }
+
+    public void invalidateAllPartners() {
+        invalidateAll(partners);
+    }
+
+    private static <V> LoadingCache<Long, Optional<V>> build(long maxSize, long ttlSeconds,
+            Function<Set<Long>, Map<Long, V>> bulkLoader) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build(new CacheLoader<Long, Optional<V>>() {
+                    @Override
+                    public Optional<V> load(Long id) {
+                        return Optional.ofNullable(bulkLoader.apply(Set.of(id)).get(id));
+                    }
+
+                    @Override
+                    public Map<Long, Optional<V>> loadAll(Set<? extends Long> ids) {
+                        Map<Long, V> found = bulkLoader.apply(Set.copyOf(ids));
+                        Map<Long, Optional<V>> m = new HashMap<>();
+                        for (Long id : ids) {
+                            m.put(id, Optional.ofNullable(found.get(id)));
+                        }
+                        return m;
+                    }
+                });
+    }
+
+    private static <V> Optional<V> getOne(LoadingCache<Long, Optional<V>> cache, Long id) {
+        if (id == null) return Optional.empty();
+        Optional<V> v = cache.get(id);
+        if (v.isEmpty()) cache.invalidate(id);
+        return v;
+    }
+
+    private static <V> Map<Long, V> getAll(LoadingCache<Long, Optional<V>> cache, Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) return Map.of();
+        Set<Long> keys = ids.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<Long, V> m = new HashMap<>();
+        cache.getAll(keys).forEach((id, v) -> v.ifPresent(x -> m.put(id, x)));
+        // 不缓存“不存在”：缺失的 id 立刻移除，后续新建后可直接查到
+        for (Long id : keys) {
+            if (!m.containsKey(id)) cache.invalidate(id);
+        }
+        return m;
+    }
+
+    private static void invalidate(LoadingCache<Long, ?> cache, Long id) {
+        if (id == null) return;
+        cache.invalidate(id);
+        afterCommit(() -> cache.invalidate(id));
+    }
+
+    private static void invalidateAll(LoadingCache<Long, ?> cache) {
+        cache.invalidateAll();
+        afterCommit(cache::invalidateAll);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    public record ProductInfo(Long id, String productCode, String productName, String unit,
+            BigDecimal purchasePrice, BigDecimal salePrice, Integer lowStock, Integer status) {
+        static ProductInfo of(BaseProduct p) {
+            return new ProductInfo(p.getId(), p.getProductCode(), p.getProductName(), p.getUnit(),
+                    p.getPurchasePrice(), p.getSalePrice(), p.getLowStock(), p.getStatus());
+        }
+
+        public boolean enabled() {
+            return status == null || status == 1;
+        }
+    }
+
+    public record WarehouseInfo(Long id, String warehouseCode, String warehouseName, Integer status) {
+        static WarehouseInfo of(BaseWarehouse w) {
+            return new WarehouseInfo(w.getId(), w.getWarehouseCode(), w.getWarehouseName(), w.getStatus());
+        }
+
+        public boolean enabled() {
+            return status == null || status == 1;
+        }
+    }
+
+    public record PartnerInfo(Long id, String partnerCode, String partnerName, Integer type,
+            BigDecimal creditLimit, Integer status) {
+        static PartnerInfo of(BasePartner p) {
+            return new PartnerInfo(p.getId(), p.getPartnerCode(), p.getPartnerName(), p.getType(),
+                    p.getCreditLimit(), p.getStatus());
+        }
+
+        public boolean enabled() {
+            return status == null || status == 1;
+        }
+    }
+}
@@ -6,8 +6,10 @@ import com.ordererp.backend.base.dto.PartnerResponse;
 import com.ordererp.backend.base.dto.PartnerUpdateRequest;
 import com.ordererp.backend.base.entity.BasePartner;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.common.search.FulltextPhrase;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.PageRequest;
@@ -19,9 +21,14 @@ import org.springframework.web.server.ResponseStatusException;
 @Service
 public class BasePartnerService {
     private final BasePartnerRepository partnerRepository;
+    private final BaseMasterDataCache masterDataCache;
+    private final BaseSearchIndex searchIndex;
 
-    public BasePartnerService(BasePartnerRepository partnerRepository) {
+    public BasePartnerService(BasePartnerRepository partnerRepository, BaseMasterDataCache masterDataCache,
+            BaseSearchIndex searchIndex) {
         this.partnerRepository = partnerRepository;
+        this.masterDataCache = masterDataCache;
+        this.searchIndex = searchIndex;
     }
 
     public Page<PartnerResponse> page(String keyword, Pageable pageable) {
@@ -34,10 +41,26 @@ public class BasePartnerService {
         return toResponse(p);
     }
 
+    /**
+     * 下拉选项：有关键词时走内存索引（{@link BaseSearchIndex}）；索引未就绪时回退到编码前缀 / FULLTEXT 查询。
+     * 单字关键词只做前缀匹配（内存索引匹配编码或名称前缀，回退查询只匹配编码前缀），不再是旧的 like '%kw%' 包含匹配。
+     */
     public List<PartnerOptionResponse> options(String keyword, int limit) {
         int size = Math.min(Math.max(limit, 1), 200);
-        Page<BasePartner> page = partnerRepository.options(trimToNull(keyword), PageRequest.of(0, size));
-        return page.getContent().stream()
+        String kw = trimToNull(keyword);
+        if (kw != null) {
+            Optional<List<PartnerOptionResponse>> indexed = searchIndex.searchPartners(kw, size);
+            if (indexed.isPresent()) return indexed.get();
+        }
+        List<BasePartner> rows;
+        if (kw == null) {
+            rows = partnerRepository.options(PageRequest.of(0, size));
+        } else if (kw.length() < 2) {
+            rows = partnerRepository.optionsByCodePrefix(kw, PageRequest.of(0, size));
+        } else {
+            rows = partnerRepository.optionsFulltext(kw, FulltextPhrase.of(kw), size);
+        }
+        return rows.stream()
                 .map(p -> new PartnerOptionResponse(p.getId(), p.getPartnerCode(), p.getPartnerName(), p.getType()))
                 .toList();
     }
@@ -66,7 +89,10 @@ public class BasePartnerService {
         p.setStatus(request.status() == null ? 1 : request.status());
         p.setDeleted(0);
         p.setUpdateTime(LocalDateTime.now());
-        return toResponse(partnerRepository.save(p));
+        p = partnerRepository.save(p);
+        masterDataCache.invalidatePartner(p.getId());
+        searchIndex.refreshPartner(p.getId());
+        return toResponse(p);
     }
 
     @Transactional
@@ -104,7 +130,10 @@ public class BasePartnerService {
             p.setStatus(request.status());
         }
         p.setUpdateTime(LocalDateTime.now());
-        return toResponse(partnerRepository.save(p));
+        p = partnerRepository.save(p);
+        masterDataCache.invalidatePartner(p.getId());
+        searchIndex.refreshPartner(p.getId());
+        return toResponse(p);
     }
 
     @Transactional
@@ -114,6 +143,8 @@ public class BasePartnerService {
         p.setDeleted(1);
         p.setUpdateTime(LocalDateTime.now());
         partnerRepository.save(p);
+        masterDataCache.invalidatePartner(id);
+        searchIndex.refreshPartner(id);
     }
 
     private static PartnerResponse toResponse(BasePartner p) {
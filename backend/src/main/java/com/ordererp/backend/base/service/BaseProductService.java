@@ -6,7 +6,9 @@ import com.ordererp.backend.base.dto.ProductResponse;
 import com.ordererp.backend.base.dto.ProductUpdateRequest;
 import com.ordererp.backend.base.entity.BaseProduct;
 import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.common.search.FulltextPhrase;
 import java.util.List;
+import java.util.Optional;
 import java.time.LocalDateTime;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -19,9 +21,14 @@ import org.springframework.web.server.ResponseStatusException;
 @Service
 public class BaseProductService {
     private final BaseProductRepository productRepository;
+    private final BaseMasterDataCache masterDataCache;
+    private final BaseSearchIndex searchIndex;
 
-    public BaseProductService(BaseProductRepository productRepository) {
+    public BaseProductService(BaseProductRepository productRepository, BaseMasterDataCache masterDataCache,
+            BaseSearchIndex searchIndex) {
         this.productRepository = productRepository;
+        this.masterDataCache = masterDataCache;
+        this.searchIndex = searchIndex;
     }
 
     public Page<ProductResponse> page(String keyword, Pageable pageable) {
@@ -34,10 +41,26 @@ public class BaseProductService {
         return toResponse(p);
     }
 
+    /**
+     * 下拉选项：有关键词时走内存索引（{@link BaseSearchIndex}）；索引未就绪时回退到编码前缀 / FULLTEXT 查询。
+     * 单字关键词只做前缀匹配（内存索引匹配编码或名称前缀，回退查询只匹配编码前缀），不再是旧的 like '%kw%' 包含匹配。
+     */
     public List<ProductOptionResponse> options(String keyword, int limit) {
         int size = Math.min(Math.max(limit, 1), 200);
-        Page<BaseProduct> page = productRepository.options(trimToNull(keyword), PageRequest.of(0, size));
-        return page.getContent().stream()
+        String kw = trimToNull(keyword);
+        if (kw != null) {
+            Optional<List<ProductOptionResponse>> indexed = searchIndex.searchProducts(kw, size);
+            if (indexed.isPresent()) return indexed.get();
+        }
+        List<BaseProduct> rows;
+        if (kw == null) {
+            rows = productRepository.options(PageRequest.of(0, size));
+        } else if (kw.length() < 2) {
+            rows = productRepository.optionsByCodePrefix(kw, PageRequest.of(0, size));
+        } else {
+            rows = productRepository.optionsFulltext(kw, FulltextPhrase.of(kw), size);
+        }
+        return rows.stream()
                 .map(p -> new ProductOptionResponse(p.getId(), p.getCategoryId(), p.getProductCode(), p.getProductName(),
                         p.getUnit()))
                 .toList();
@@ -71,7 +94,11 @@ public class BaseProductService {
         p.setDeleted(0);
         p.setUpdateTime(LocalDateTime.now());
 
-        return toResponse(productRepository.save(p));
+        p = productRepository.save(p);
+        masterDataCache.invalidateProduct(p.getId());
+        searchIndex.refreshProduct(p.getId());
+        productRepository.syncStockSummaryLowStock(p.getId());
+        return toResponse(p);
     }
 
     @Transactional
@@ -122,7 +149,11 @@ public class BaseProductService {
         }
         p.setUpdateTime(LocalDateTime.now());
 
-        return toResponse(productRepository.save(p));
+        p = productRepository.save(p);
+        masterDataCache.invalidateProduct(p.getId());
+        searchIndex.refreshProduct(p.getId());
+        productRepository.syncStockSummaryLowStock(p.getId());
+        return toResponse(p);
     }
 
     @Transactional
@@ -132,6 +163,9 @@ public class BaseProductService {
         p.setDeleted(1);
         p.setUpdateTime(LocalDateTime.now());
         productRepository.save(p);
+        masterDataCache.invalidateProduct(id);
+        searchIndex.refreshProduct(id);
+        productRepository.syncStockSummaryLowStock(id);
     }
 
     private static ProductResponse toResponse(BaseProduct p) {
@@ -0,0 +1,269 @@
+package com.ordererp.backend.base.service;
+
+import com.ordererp.backend.base.dto.PartnerOptionResponse;
+import com.ordererp.backend.base.dto.ProductOptionResponse;
+import com.ordererp.backend.base.dto.WarehouseOptionResponse;
+import com.ordererp.backend.base.entity.BasePartner;
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.common.search.KeywordIndex;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 主数据（商品/往来单位/仓库）下拉框搜索索引：只收录未删除且启用的记录，{@code /options} 直接从内存查询并排序。
+ *
+ * <p>同步方式：</p>
+ * <ul>
+ *   <li>启动完成后全量加载（按 id 游标分批读取）；加载完成前 {@link #searchProducts} 等返回 empty，调用方回退到
+ *       FULLTEXT ngram 查询；</li>
+ *   <li>主数据增删改、Excel 导入在事务提交后登记刷新（按 id / 编码重新读库），由单个后台线程顺序执行：
+ *       刷新总是读取最新的已提交数据，且与全量加载串行，不会出现旧值覆盖新值；</li>
+ *   <li>提交后刷新只覆盖本节点的修改；其他节点（多实例部署）或直接改库的修改，由 {@link #refreshChanged} 定时按
+ *       update_time 增量拉取（含停用/删除的记录，用于移除），最长延迟为一个同步周期；</li>
+ *   <li>刷新是异步的，提交后到可搜到通常在毫秒级；下拉框搜索允许这点延迟，单据校验走 BaseMasterDataCache。</li>
+ * </ul>
+ */
+@Service
+public class BaseSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(BaseSearchIndex.class);
+    private static final int LOAD_BATCH_SIZE = 5000;
+
+    private final BaseProductRepository productRepository;
+    private final BasePartnerRepository partnerRepository;
+    private final BaseWarehouseRepository warehouseRepository;
+    private final boolean enabled;
+    private final Duration deltaOverlap;
+    private final KeywordIndex<ProductOptionResponse> products = new KeywordIndex<>();
+    private final KeywordIndex<PartnerOptionResponse> partners = new KeywordIndex<>();
+    private final KeywordIndex<WarehouseOptionResponse> warehouses = new KeywordIndex<>();
+    private final ExecutorService executor;
+    /** 上次同步（全量或增量）开始的时间；只在后台线程读写，null 表示全量加载尚未完成。 */
+    private LocalDateTime syncedSince;
+
+    public BaseSearchIndex(BaseProductRepository productRepository, BasePartnerRepository partnerRepository,
+            BaseWarehouseRepository warehouseRepository, @Value("${app.search.enabled:true}") boolean enabled,
+            @Value("${app.search.delta-overlap-seconds:120}") long deltaOverlapSeconds) {
+        this.productRepository = productRepository;
+        this.partnerRepository = partnerRepository;
+        this.warehouseRepository = warehouseRepository;
+        this.enabled = enabled;
+        this.deltaOverlap = Duration.ofSeconds(Math.max(0, deltaOverlapSeconds));
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "base-search-index");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void loadOnStartup() {
+        if (!enabled) return;
+        submit(() -> {
+            LocalDateTime loadStart = LocalDateTime.now();
+            long start = System.nanoTime();
+            products.replaceAll(loadAll(
+                    afterId -> productRepository.seek(null, afterId, PageRequest.of(0, LOAD_BATCH_SIZE)),
+                    BaseProduct::getId, BaseSearchIndex::productDoc));
+            partners.replaceAll(loadAll(
+                    afterId -> partnerRepository.seek(null, afterId, PageRequest.of(0, LOAD_BATCH_SIZE)),
+                    BasePartner::getId, BaseSearchIndex::partnerDoc));
+            warehouses.replaceAll(loadAll(
+                    afterId -> warehouseRepository.seek(null, afterId, PageRequest.of(0, LOAD_BATCH_SIZE)),
+                    BaseWarehouse::getId, BaseSearchIndex::warehouseDoc));
+            log.info("base search index loaded products={} partners={} warehouses={} elapsedMs={}",
+                    products.size(), partners.size(), warehouses.size(), (System.nanoTime() - start) / 1_000_000);
+            syncedSince = loadStart;
+        });
+    }
+
+    /**
+     * 增量同步：读取 update_time 不早于“上次同步开始时间 - 重叠窗口”的记录并逐条应用（重复应用是幂等的）。
+     * 重叠窗口（{@code app.search.delta-overlap-seconds}）容忍节点间时钟偏差，以及 update_time 早于提交时间的事务。
+     * 与全量加载、提交后刷新在同一个后台线程串行执行。
+     */
+    @Scheduled(fixedDelayString = "${app.search.delta-refresh-interval-ms:30000}",
+            initialDelayString = "${app.search.delta-refresh-interval-ms:30000}")
+    public void refreshChanged() {
+        if (!enabled) return;
+        submit(() -> {
+            if (syncedSince == null) return;
+            LocalDateTime next = LocalDateTime.now();
+            LocalDateTime since = syncedSince.minus(deltaOverlap);
+            int changed = forEachBatch(
+                    afterId -> productRepository.changedSince(since, afterId, PageRequest.of(0, LOAD_BATCH_SIZE)),
+                    BaseProduct::getId, p -> apply(products, p.getId(), productDoc(p)));
+            changed += forEachBatch(
+                    afterId -> partnerRepository.changedSince(since, afterId, PageRequest.of(0, LOAD_BATCH_SIZE)),
+                    BasePartner::getId, p -> apply(partners, p.getId(), partnerDoc(p)));
+            changed += forEachBatch(
+                    afterId -> warehouseRepository.changedSince(since, afterId, PageRequest.of(0, LOAD_BATCH_SIZE)),
+                    BaseWarehouse::getId, w -> apply(warehouses, w.getId(), warehouseDoc(w)));
+            syncedSince = next;
+            log.debug("base search index delta since={} rows={}", since, changed);
+        });
+    }
+
+    public Optional<List<ProductOptionResponse>> searchProducts(String keyword, int limit) {
+        return search(products, keyword, limit);
+    }
+
+    public Optional<List<PartnerOptionResponse>> searchPartners(String keyword, int limit) {
+        return search(partners, keyword, limit);
+    }
+
+    public Optional<List<WarehouseOptionResponse>> searchWarehouses(String keyword, int limit) {
+        return search(warehouses, keyword, limit);
+    }
+
+    public void refreshProduct(Long id) {
+        afterCommit(() -> productRepository.findById(id).ifPresentOrElse(
+                p -> apply(products, p.getId(), productDoc(p)), () -> products.remove(id)));
+    }
+
+    public void refreshPartner(Long id) {
+        afterCommit(() -> partnerRepository.findById(id).ifPresentOrElse(
+                p -> apply(partners, p.getId(), partnerDoc(p)), () -> partners.remove(id)));
+    }
+
+    public void refreshWarehouse(Long id) {
+        afterCommit(() -> warehouseRepository.findById(id).ifPresentOrElse(
+                w -> apply(warehouses, w.getId(), warehouseDoc(w)), () -> warehouses.remove(id)));
+    }
+
+    /**
+     * Excel 导入按批调用：只刷新本批涉及的编码，不触发全量重建。
+     */
+    public void refreshProductsByCodes(Collection<String> codes) {
+        List<String> snapshot = List.copyOf(codes);
+        afterCommit(() -> productRepository.findByProductCodeIn(snapshot)
+                .forEach(p -> apply(products, p.getId(), productDoc(p))));
+    }
+
+    public void refreshPartnersByCodes(Collection<String> codes) {
+        List<String> snapshot = List.copyOf(codes);
+        afterCommit(() -> partnerRepository.findByPartnerCodeIn(snapshot)
+                .forEach(p -> apply(partners, p.getId(), partnerDoc(p))));
+    }
+
+    public void refreshWarehousesByCodes(Collection<String> codes) {
+        List<String> snapshot = List.copyOf(codes);
+        afterCommit(() -> warehouseRepository.findByWarehouseCodeIn(snapshot)
+                .forEach(w -> apply(warehouses, w.getId(), warehouseDoc(w))));
+    }
+
+    private static <T> Optional<List<T>> search(KeywordIndex<T> index, String keyword, int limit) {
+        if (!index.isReady()) return Optional.empty();
+        return Optional.of(index.search(keyword, limit));
+    }
+
+    /**
+     * doc 为 null 表示已删除或停用，从索引移除。
+     */
+    private static <T> void apply(KeywordIndex<T> index, Long id, KeywordIndex.Doc<T> doc) {
+        if (doc == null) {
+            index.remove(id);
+        } else {
+            index.put(doc);
+        }
+    }
+
+    private static <E, T> List<KeywordIndex.Doc<T>> loadAll(Function<Long, List<E>> batch, Function<E, Long> idOf,
+            Function<E, KeywordIndex.Doc<T>> toDoc) {
+        List<KeywordIndex.Doc<T>> docs = new ArrayList<>();
+        forEachBatch(batch, idOf, row -> {
+            KeywordIndex.Doc<T> doc = toDoc.apply(row);
+            if (doc != null) docs.add(doc);
+        });
+        return docs;
+    }
+
+    /**
+     * 按 id 游标逐批读取（batch 以上一批最后一行的 id 为游标），返回读取的行数。
+     */
+    private static <E> int forEachBatch(Function<Long, List<E>> batch, Function<E, Long> idOf, Consumer<E> action) {
+        int total = 0;
+        Long afterId = null;
+        while (true) {
+            List<E> rows = batch.apply(afterId);
+            rows.forEach(action);
+            total += rows.size();
+            if (rows.size() < LOAD_BATCH_SIZE) return total;
+            afterId = idOf.apply(rows.get(rows.size() - 1));
+        }
+    }
+
+    private static KeywordIndex.Doc<ProductOptionResponse> productDoc(BaseProduct p) {
+        if (!active(p.getDeleted(), p.getStatus())) return null;
+        return new KeywordIndex.Doc<>(p.getId(), p.getProductCode(), p.getProductName(),
+                new ProductOptionResponse(p.getId(), p.getCategoryId(), p.getProductCode(), p.getProductName(),
+                        p.getUnit()));
+    }
+
+    private static KeywordIndex.Doc<PartnerOptionResponse> partnerDoc(BasePartner p) {
+        if (!active(p.getDeleted(), p.getStatus())) return null;
+        return new KeywordIndex.Doc<>(p.getId(), p.getPartnerCode(), p.getPartnerName(),
+                new PartnerOptionResponse(p.getId(), p.getPartnerCode(), p.getPartnerName(), p.getType()));
+    }
+
+    private static KeywordIndex.Doc<WarehouseOptionResponse> warehouseDoc(BaseWarehouse w) {
+        if (!active(w.getDeleted(), w.getStatus())) return null;
+        return new KeywordIndex.Doc<>(w.getId(), w.getWarehouseCode(), w.getWarehouseName(),
+                new WarehouseOptionResponse(w.getId(), w.getWarehouseCode(), w.getWarehouseName()));
+    }
+
+    private static boolean active(Integer deleted, Integer status) {
+        return (deleted == null || deleted == 0) && (status == null || status == 1);
+    }
+
+    private void afterCommit(Runnable task) {
+        if (!enabled) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(task);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                submit(task);
+            }
+        });
+    }
+
+    private void submit(Runnable task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.warn("base search index refresh failed", e);
+            }
+        });
+    }
+}
@@ -6,8 +6,10 @@ import com.ordererp.backend.base.dto.WarehouseResponse;
 import com.ordererp.backend.base.dto.WarehouseUpdateRequest;
 import com.ordererp.backend.base.entity.BaseWarehouse;
 import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.common.search.FulltextPhrase;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.PageRequest;
@@ -19,9 +21,14 @@ import org.springframework.web.server.ResponseStatusException;
 @Service
 public class BaseWarehouseService {
     private final BaseWarehouseRepository warehouseRepository;
+    private final BaseMasterDataCache masterDataCache;
+    private final BaseSearchIndex searchIndex;
 
-    public BaseWarehouseService(BaseWarehouseRepository warehouseRepository) {
+    public BaseWarehouseService(BaseWarehouseRepository warehouseRepository, BaseMasterDataCache masterDataCache,
+            BaseSearchIndex searchIndex) {
         this.warehouseRepository = warehouseRepository;
+        this.masterDataCache = masterDataCache;
+        this.searchIndex = searchIndex;
     }
 
     public Page<WarehouseResponse> page(String keyword, Pageable pageable) {
@@ -34,10 +41,26 @@ public class BaseWarehouseService {
         return toResponse(w);
     }
 
+    /**
+     * 下拉选项：有关键词时走内存索引（{@link BaseSearchIndex}）；索引未就绪时回退到编码前缀 / FULLTEXT 查询。
+     * 单字关键词只做前缀匹配（内存索引匹配编码或名称前缀，回退查询只匹配编码前缀），不再是旧的 like '%kw%' 包含匹配。
+     */
     public List<WarehouseOptionResponse> options(String keyword, int limit) {
         int size = Math.min(Math.max(limit, 1), 200);
-        Page<BaseWarehouse> page = warehouseRepository.options(trimToNull(keyword), PageRequest.of(0, size));
-        return page.getContent().stream()
+        String kw = trimToNull(keyword);
+        if (kw != null) {
+            Optional<List<WarehouseOptionResponse>> indexed = searchIndex.searchWarehouses(kw, size);
+            if (indexed.isPresent()) return indexed.get();
+        }
+        List<BaseWarehouse> rows;
+        if (kw == null) {
+            rows = warehouseRepository.options(PageRequest.of(0, size));
+        } else if (kw.length() < 2) {
+            rows = warehouseRepository.optionsByCodePrefix(kw, PageRequest.of(0, size));
+        } else {
+            rows = warehouseRepository.optionsFulltext(kw, FulltextPhrase.of(kw), size);
+        }
+        return rows.stream()
                 .map(w -> new WarehouseOptionResponse(w.getId(), w.getWarehouseCode(), w.getWarehouseName()))
                 .toList();
     }
@@ -61,7 +84,10 @@ public class BaseWarehouseService {
         w.setStatus(request.status() == null ? 1 : request.status());
         w.setDeleted(0);
         w.setUpdateTime(LocalDateTime.now());
-        return toResponse(warehouseRepository.save(w));
+        w = warehouseRepository.save(w);
+        masterDataCache.invalidateWarehouse(w.getId());
+        searchIndex.refreshWarehouse(w.getId());
+        return toResponse(w);
     }
 
     @Transactional
@@ -90,7 +116,10 @@ public class BaseWarehouseService {
             w.setStatus(request.status());
         }
         w.setUpdateTime(LocalDateTime.now());
-        return toResponse(warehouseRepository.save(w));
+        w = warehouseRepository.save(w);
+        masterDataCache.invalidateWarehouse(w.getId());
+        searchIndex.refreshWarehouse(w.getId());
+        return toResponse(w);
     }
 
     @Transactional
@@ -100,6 +129,8 @@ public class BaseWarehouseService {
         w.setDeleted(1);
         w.setUpdateTime(LocalDateTime.now());
         warehouseRepository.save(w);
+        masterDataCache.invalidateWarehouse(id);
+        searchIndex.refreshWarehouse(id);
     }
 
     private static WarehouseResponse toResponse(BaseWarehouse w) {
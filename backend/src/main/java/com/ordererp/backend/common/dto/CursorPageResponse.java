@@ -0,0 +1,38 @@
+package com.ordererp.backend.common.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页响应（keyset pagination）：适用于无限滚动、API 拉取等“只往后翻”的场景。
+ *
+ * <p>请求下一页时把 {@code nextCursor} 作为 {@code afterId} 传回；{@code hasMore=false} 表示已到末尾。
+ * {@code totalElements} 仅在调用方显式要求时计算（count 在大表上很慢），否则为 null。</p>
+ */
+public record CursorPageResponse<T>(List<T> content, Long nextCursor, boolean hasMore, int size, Long totalElements) {
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 500;
+
+    /**
+     * 规范化 limit：默认 20，上限 500。
+     */
+    public static int clampLimit(Integer limit) {
+        if (limit == null || limit <= 0) return DEFAULT_LIMIT;
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * @param fetched 查询结果（调用方按 limit + 1 查询，多出的一行仅用于判断 hasMore）
+     */
+    public static <R, T> CursorPageResponse<T> of(List<R> fetched, int limit, Function<R, Long> idOf,
+            Function<R, T> mapper, Long totalElements) {
+        boolean hasMore = fetched.size() > limit;
+        List<R> rows = hasMore ? fetched.subList(0, limit) : fetched;
+        Long nextCursor = hasMore && !rows.isEmpty() ? idOf.apply(rows.get(rows.size() - 1)) : null;
+        return new CursorPageResponse<>(rows.stream().map(mapper).toList(), nextCursor, hasMore, limit, totalElements);
+    }
+
+    public <U> CursorPageResponse<U> map(Function<T, U> mapper) {
+        return new CursorPageResponse<>(content.stream().map(mapper).toList(), nextCursor, hasMore, size, totalElements);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ordererp.backend.common.exception;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 带明细的业务异常：除 message 外，{@link GlobalExceptionHandler} 会把 {@link #getDetails()} 的各项原样并入响应体，
+ * 便于前端按明细逐行提示（例如批量锁库时列出所有库存不足的商品）。
+ *
+ * <p>各模块的具体异常继承本类，common 包不依赖业务模块。</p>
+ */
+public class DetailedStatusException extends ResponseStatusException {
+    private final Map<String, Object> details;
+
+    public DetailedStatusException(HttpStatusCode status, String reason, Map<String, ?> details) {
+        super(status, reason);
+        this.details = details == null ? Map.of() : new LinkedHashMap<>(details);
+    }
+
+    public Map<String, Object> getDetails() {
+        return details;
+    }
+}
@@ -1,5 +1,7 @@
 package com.ordererp.backend.common.exception;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +28,12 @@ import java.util.Map;
 public class GlobalExceptionHandler {
     private static final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
+    private final MeterRegistry meterRegistry;
+
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @ExceptionHandler(AccessDeniedException.class)
     public ResponseEntity<Map<String, Object>> handleAccessDenied(AccessDeniedException e, HttpServletRequest req) {
         return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body(HttpStatus.FORBIDDEN, e.getMessage(), req));
@@ -33,6 +41,15 @@ public class GlobalExceptionHandler {
 
     @ExceptionHandler({ObjectOptimisticLockingFailureException.class, OptimisticLockException.class})
     public ResponseEntity<Map<String, Object>> handleOptimisticLock(Exception e, HttpServletRequest req) {
+        // 乐观锁冲突直接以 409 返回由调用方重试（服务端不再循环重试），这里按实体计数以观察冲突热点
+        String entity = e instanceof ObjectOptimisticLockingFailureException o && o.getPersistentClassName() != null
+                ? o.getPersistentClassName().substring(o.getPersistentClassName().lastIndexOf('.') + 1)
+                : "unknown";
+        Counter.builder("erp.optimistic.lock.conflicts")
+                .description("Optimistic lock conflicts returned to clients as 409")
+                .tag("entity", entity)
+                .register(meterRegistry)
+                .increment();
         return ResponseEntity.status(HttpStatus.CONFLICT).body(body(HttpStatus.CONFLICT, "conflict, please retry", req));
     }
 
@@ -41,6 +58,16 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body(HttpStatus.BAD_REQUEST, e.getMessage(), req));
     }
 
+    @ExceptionHandler(DetailedStatusException.class)
+    public ResponseEntity<Map<String, Object>> handleDetailed(DetailedStatusException e, HttpServletRequest req) {
+        // 例如批量锁库失败：除 message 外额外返回 shortages 明细，前端可逐行标红
+        HttpStatus status = HttpStatus.resolve(e.getStatusCode().value());
+        if (status == null) status = HttpStatus.BAD_REQUEST;
+        Map<String, Object> m = body(status, e.getReason(), req);
+        e.getDetails().forEach(m::putIfAbsent);
+        return ResponseEntity.status(status).body(m);
+    }
+
     @ExceptionHandler(ErrorResponseException.class)
     public ResponseEntity<Map<String, Object>> handleErrorResponseException(ErrorResponseException e, HttpServletRequest req) {
         HttpStatus status = HttpStatus.resolve(e.getStatusCode().value());
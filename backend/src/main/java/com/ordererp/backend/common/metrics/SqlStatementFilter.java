@@ -0,0 +1,53 @@
+package com.ordererp.backend.common.metrics;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * 为每个 HTTP 请求开启一个 {@link SqlStatementStats} 作用域，请求结束后按 "方法 + 路由模板" 上报
+ * （如 {@code POST /api/sales/orders/{id}/audit}）。排在安全过滤器之前，认证时查用户/权限的语句也计入。
+ *
+ * <p>只统计处理请求的线程；导出等提交到后台任务的工作在任务线程里执行，按事务单独统计。</p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SqlStatementFilter extends OncePerRequestFilter {
+    private final SqlStatementMonitor monitor;
+    private final boolean enabled;
+
+    public SqlStatementFilter(SqlStatementMonitor monitor, @Value("${app.sql-monitor.enabled:false}") boolean enabled) {
+        this.monitor = monitor;
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try (SqlStatementStats stats = SqlStatementStats.open()) {
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                monitor.report("request", requestName(request), stats, true);
+            }
+        }
+    }
+
+    private static String requestName(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : "unmatched");
+    }
+}
@@ -0,0 +1,43 @@
+package com.ordererp.backend.common.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 开发模式（{@code app.sql-monitor.response-headers=true}）下，把本次请求到目前为止的 SQL 语句数/数据库耗时
+ * 写到响应头 {@code X-Sql-Count} / {@code X-Sql-Time-Ms}，前端调试时在浏览器网络面板即可看到。
+ *
+ * <p>响应头必须在写响应体之前设置，所以放在 ResponseBodyAdvice 里而不是过滤器里（过滤器返回时响应往往已提交）；
+ * 直接写 OutputStream 的接口（Excel 导出等）没有这两个头。</p>
+ */
+@ControllerAdvice
+public class SqlStatementHeaderAdvice implements ResponseBodyAdvice<Object> {
+    private final boolean enabled;
+
+    public SqlStatementHeaderAdvice(@Value("${app.sql-monitor.response-headers:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return enabled;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+            Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+            ServerHttpResponse response) {
+        SqlStatementStats stats = SqlStatementStats.current();
+        if (stats != null) {
+            response.getHeaders().set("X-Sql-Count", String.valueOf(stats.statements()));
+            response.getHeaders().set("X-Sql-Time-Ms", String.valueOf(stats.elapsedMillis()));
+        }
+        return body;
+    }
+}
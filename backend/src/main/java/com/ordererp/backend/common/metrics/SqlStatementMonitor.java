@@ -0,0 +1,132 @@
+package com.ordererp.backend.common.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * SQL 语句计数与 N+1 检测。
+ *
+ * <p>挂在代理后的 DataSource 上（见 {@code SqlMonitorConfig}），JPA 与 JdbcTemplate 的语句都会经过这里。
+ * 每条语句同时计入：</p>
+ * <ul>
+ *   <li>当前线程的 {@link SqlStatementStats} 作用域（HTTP 请求由 {@link SqlStatementFilter} 开启，测试可自行开启）；</li>
+ *   <li>当前事务：第一次执行语句时向事务注册一个同步器，事务结束时按事务名（即 @Transactional 方法，
+ *       如 {@code SalOrderService.audit}）上报。REQUIRES_NEW 的内层事务会挂起外层同步器，分别统计。</li>
+ * </ul>
+ *
+ * <p>指标：{@code erp.sql.statements}（语句数分布）、{@code erp.sql.time}（数据库耗时），
+ * 按 scope=request/transaction 与 name 打标签。语句数超过 {@code app.sql-monitor.warn-threshold}，
+ * 或同一条语句重复执行达到 {@code app.sql-monitor.repeat-threshold}（疑似 N+1）时记 warn 日志；
+ * 请求内的事务不重复告警，由请求统一告警。</p>
+ */
+@Component
+public class SqlStatementMonitor implements QueryExecutionListener {
+    private static final Logger log = LoggerFactory.getLogger(SqlStatementMonitor.class);
+    private static final int LOGGED_SQL_MAX_LENGTH = 300;
+
+    private final MeterRegistry meterRegistry;
+    private final int warnThreshold;
+    private final int repeatThreshold;
+
+    public SqlStatementMonitor(MeterRegistry meterRegistry,
+            @Value("${app.sql-monitor.warn-threshold:50}") int warnThreshold,
+            @Value("${app.sql-monitor.repeat-threshold:10}") int repeatThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.warnThreshold = warnThreshold;
+        this.repeatThreshold = repeatThreshold;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        String sql = queryInfoList.isEmpty() ? "" : queryInfoList.get(0).getQuery();
+        long elapsedMillis = execInfo.getElapsedTime();
+        SqlStatementStats.recordCurrent(sql, elapsedMillis);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            transactionStats().record(sql, elapsedMillis);
+        }
+    }
+
+    /**
+     * 上报一个已结束的作用域：记录指标，超过阈值时告警。
+     */
+    public void report(String scope, String name, SqlStatementStats stats, boolean warn) {
+        DistributionSummary.builder("erp.sql.statements")
+                .description("SQL statements executed per request / transaction")
+                .tag("scope", scope)
+                .tag("name", name)
+                .register(meterRegistry)
+                .record(stats.statements());
+        Timer.builder("erp.sql.time")
+                .description("Database time spent per request / transaction")
+                .tag("scope", scope)
+                .tag("name", name)
+                .register(meterRegistry)
+                .record(stats.elapsedMillis(), TimeUnit.MILLISECONDS);
+        if (!warn) return;
+
+        if (stats.statements() > warnThreshold) {
+            log.warn("sql statements over threshold scope={} name={} statements={} dbTimeMs={} threshold={}",
+                    scope, name, stats.statements(), stats.elapsedMillis(), warnThreshold);
+        }
+        Map.Entry<String, Integer> top = stats.mostRepeated();
+        if (top != null && top.getValue() >= repeatThreshold) {
+            log.warn("possible N+1 scope={} name={} executions={} sql={}", scope, name, top.getValue(), abbreviate(top.getKey()));
+        }
+    }
+
+    private SqlStatementStats transactionStats() {
+        for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+            if (s instanceof TransactionScope scope) return scope.stats;
+        }
+        TransactionScope scope = new TransactionScope(
+                transactionName(TransactionSynchronizationManager.getCurrentTransactionName()));
+        TransactionSynchronizationManager.registerSynchronization(scope);
+        return scope.stats;
+    }
+
+    /**
+     * 声明式事务的事务名是 "包名.类名.方法名"，去掉包名；TransactionTemplate 未命名时归为 programmatic。
+     */
+    static String transactionName(String name) {
+        if (name == null || name.isBlank()) return "programmatic";
+        int method = name.lastIndexOf('.');
+        int type = method > 0 ? name.lastIndexOf('.', method - 1) : -1;
+        return type >= 0 ? name.substring(type + 1) : name;
+    }
+
+    private static String abbreviate(String sql) {
+        String oneLine = sql.replaceAll("\\s+", " ").trim();
+        return oneLine.length() <= LOGGED_SQL_MAX_LENGTH ? oneLine : oneLine.substring(0, LOGGED_SQL_MAX_LENGTH) + "...";
+    }
+
+    private final class TransactionScope implements TransactionSynchronization {
+        private final String name;
+        private final SqlStatementStats stats = new SqlStatementStats(null);
+
+        TransactionScope(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            report("transaction", name, stats, SqlStatementStats.current() == null);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ordererp.backend.common.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一段作用域内（一次 HTTP 请求、一个事务、测试里的一段代码）执行的 SQL 语句数与数据库耗时。
+ *
+ * <p>作用域按线程嵌套：{@link #open()} 开启后，本线程执行的每条语句都会计入当前作用域及其所有外层作用域，
+ * 因此测试里包住一次 MockMvc 调用，与请求过滤器开启的请求作用域可以同时计数。后台线程里执行的语句
+ * 不会计入发起请求的作用域。</p>
+ *
+ * <p>同时按语句文本统计重复次数（参数化 SQL，文本相同即同一条），用于发现“每行一次查询”的 N+1。
+ * 批量执行（executeBatch）算一条语句——关心的是数据库往返次数。</p>
+ */
+public final class SqlStatementStats implements AutoCloseable {
+    private static final ThreadLocal<SqlStatementStats> CURRENT = new ThreadLocal<>();
+
+    private final SqlStatementStats parent;
+    private final Map<String, Integer> executionsBySql = new HashMap<>();
+    private int statements;
+    private long elapsedMillis;
+    private boolean closed;
+
+    SqlStatementStats(SqlStatementStats parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * 在当前线程开启一个作用域，必须在同一线程 close（try-with-resources）。
+     */
+    public static SqlStatementStats open() {
+        SqlStatementStats stats = new SqlStatementStats(CURRENT.get());
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     * 当前线程最内层的作用域；没有则返回 null。
+     */
+    public static SqlStatementStats current() {
+        return CURRENT.get();
+    }
+
+    static void recordCurrent(String sql, long elapsedMillis) {
+        for (SqlStatementStats s = CURRENT.get(); s != null; s = s.parent) {
+            s.record(sql, elapsedMillis);
+        }
+    }
+
+    void record(String sql, long elapsedMillis) {
+        statements++;
+        this.elapsedMillis += elapsedMillis;
+        executionsBySql.merge(sql, 1, Integer::sum);
+    }
+
+    public int statements() {
+        return statements;
+    }
+
+    public long elapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 重复次数最多的语句及其次数；没有执行过语句时返回 null。
+     */
+    public Map.Entry<String, Integer> mostRepeated() {
+        Map.Entry<String, Integer> top = null;
+        for (Map.Entry<String, Integer> e : executionsBySql.entrySet()) {
+            if (top == null || e.getValue() > top.getValue()) top = e;
+        }
+        return top == null ? null : Map.entry(top.getKey(), top.getValue());
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        if (CURRENT.get() != this) {
+            throw new IllegalStateException("SQL statement scopes must be closed in reverse order on the opening thread");
+        }
+        if (parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(parent);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.ordererp.backend.common.search;
+
+/**
+ * MySQL FULLTEXT boolean 模式的短语参数：整个关键词作为一个短语（ngram 解析器下即“连续包含”），
+ * 去掉双引号以免破坏短语边界；引号内的 + - * 等运算符不生效，无需转义。
+ */
+public final class FulltextPhrase {
+    private FulltextPhrase() {
+    }
+
+    public static String of(String keyword) {
+        return "\"" + keyword.replace('"', ' ') + "\"";
+    }
+}
@@ -0,0 +1,253 @@
+package com.ordererp.backend.common.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存关键字索引（编码 + 名称），用于主数据下拉框的“包含”搜索。
+ *
+ * <p>结构：每条记录占一个槽位（slot），对编码、名称的小写形式建二元组（bigram）倒排表；另外为编码、名称的首字符
+ * 建一份倒排表，服务单字关键词（单字只做前缀匹配，否则一个字母会命中大半个商品库）。</p>
+ *
+ * <p>查询：取关键词各 bigram 中倒排表最短的一个作为候选集，逐个用 {@code contains} 复核（bigram 命中不代表连续命中），
+ * 再按匹配质量排序取前 N 条：编码全等 &gt; 编码前缀 &gt; 名称全等 &gt; 名称前缀 &gt; 编码包含 &gt; 名称包含，同级按 id。</p>
+ *
+ * <p>更新：put/remove 把旧槽位置空、新记录追加到末尾（倒排表只追加，保持有序）；空槽超过一半时整体重建。
+ * 读写用读写锁；全量重建在锁外构建好再替换，替换前的查询照常读旧数据。</p>
+ */
+public final class KeywordIndex<T> {
+    private static final int COMPACT_MIN_DEAD_SLOTS = 1024;
+
+    private static final int SCORE_CODE_EQUALS = 0;
+    private static final int SCORE_CODE_PREFIX = 1;
+    private static final int SCORE_NAME_EQUALS = 2;
+    private static final int SCORE_NAME_PREFIX = 3;
+    private static final int SCORE_CODE_CONTAINS = 4;
+    private static final int SCORE_NAME_CONTAINS = 5;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private State<T> state = new State<>();
+    private volatile boolean ready;
+
+    /**
+     * 一条被索引的记录；value 是查询时原样返回的对象（应为不可变快照）。
+     */
+    public record Doc<T>(long id, String code, String name, T value) {
+    }
+
+    /**
+     * 是否已完成过一次全量加载；加载前调用方应回退到数据库查询。
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return state.slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 用全量数据替换索引内容，并标记为就绪。
+     */
+    public void replaceAll(Collection<Doc<T>> docs) {
+        State<T> next = new State<>();
+        for (Doc<T> doc : docs) {
+            next.add(doc);
+        }
+        lock.writeLock().lock();
+        try {
+            state = next;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+    }
+
+    public void put(Doc<T> doc) {
+        lock.writeLock().lock();
+        try {
+            state.remove(doc.id());
+            state.add(doc);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            state.remove(id);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按关键词查询，最多返回 limit 条；关键词为空时返回空列表（由调用方决定空关键词的默认结果）。
+     *
+     * <p>关键词只有一个字符时只匹配编码或名称的前缀（例如 "螺" 命中 "螺丝"，不命中 "小螺母"）；
+     * 两个字符及以上才是“包含”匹配。</p>
+     */
+    public List<T> search(String keyword, int limit) {
+        String q = normalize(keyword);
+        if (q.isEmpty() || limit <= 0) return List.of();
+
+        lock.readLock().lock();
+        try {
+            IntList candidates = state.candidates(q);
+            if (candidates == null) return List.of();
+
+            Comparator<Match<T>> ranking = Comparator.<Match<T>>comparingInt(Match::score)
+                    .thenComparingLong(Match::id);
+            // 大顶堆保留最好的 limit 条
+            PriorityQueue<Match<T>> top = new PriorityQueue<>(limit + 1, ranking.reversed());
+            for (int i = 0; i < candidates.size; i++) {
+                Slot<T> s = state.slots.get(candidates.values[i]);
+                if (s == null) continue;
+                int score = score(s, q);
+                if (score < 0) continue;
+                top.add(new Match<>(score, s.doc().id(), s.doc().value()));
+                if (top.size() > limit) top.poll();
+            }
+            List<Match<T>> sorted = new ArrayList<>(top);
+            sorted.sort(ranking);
+            List<T> result = new ArrayList<>(sorted.size());
+            for (Match<T> m : sorted) {
+                result.add(m.value());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void compactIfSparse() {
+        if (state.deadSlots > COMPACT_MIN_DEAD_SLOTS && state.deadSlots > state.slotById.size()) {
+            state = state.compact();
+        }
+    }
+
+    private static int score(Slot<?> s, String q) {
+        if (q.length() == 1) {
+            if (s.codeKey().startsWith(q)) return s.codeKey().length() == 1 ? SCORE_CODE_EQUALS : SCORE_CODE_PREFIX;
+            if (s.nameKey().startsWith(q)) return s.nameKey().length() == 1 ? SCORE_NAME_EQUALS : SCORE_NAME_PREFIX;
+            return -1;
+        }
+        if (s.codeKey().equals(q)) return SCORE_CODE_EQUALS;
+        if (s.codeKey().startsWith(q)) return SCORE_CODE_PREFIX;
+        if (s.nameKey().equals(q)) return SCORE_NAME_EQUALS;
+        if (s.nameKey().startsWith(q)) return SCORE_NAME_PREFIX;
+        if (s.codeKey().contains(q)) return SCORE_CODE_CONTAINS;
+        if (s.nameKey().contains(q)) return SCORE_NAME_CONTAINS;
+        return -1;
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 倒排表的键：bigram 为 (c1 &lt;&lt; 16 | c2)；首字符为 c（高 16 位为 0，正常文本不会出现 '\0' 开头的 bigram）。
+     */
+    private static int bigramKey(char c1, char c2) {
+        return (c1 << 16) | c2;
+    }
+
+    private static int firstCharKey(char c) {
+        return c;
+    }
+
+    private record Slot<T>(Doc<T> doc, String codeKey, String nameKey) {
+    }
+
+    private record Match<T>(int score, long id, T value) {
+    }
+
+    private static final class State<T> {
+        private final List<Slot<T>> slots = new ArrayList<>();
+        private final Map<Long, Integer> slotById = new HashMap<>();
+        private final Map<Integer, IntList> postings = new HashMap<>();
+        private int deadSlots;
+
+        void add(Doc<T> doc) {
+            String codeKey = normalize(doc.code());
+            String nameKey = normalize(doc.name());
+            int slot = slots.size();
+            slots.add(new Slot<>(doc, codeKey, nameKey));
+            slotById.put(doc.id(), slot);
+
+            Set<Integer> keys = new HashSet<>();
+            collectKeys(codeKey, keys);
+            collectKeys(nameKey, keys);
+            for (Integer key : keys) {
+                postings.computeIfAbsent(key, k -> new IntList()).add(slot);
+            }
+        }
+
+        void remove(long id) {
+            Integer slot = slotById.remove(id);
+            if (slot == null) return;
+            slots.set(slot, null);
+            deadSlots++;
+        }
+
+        State<T> compact() {
+            State<T> next = new State<>();
+            for (Slot<T> s : slots) {
+                if (s != null) next.add(s.doc());
+            }
+            return next;
+        }
+
+        /**
+         * 候选槽位（已排序，可能含已删除槽位与假阳性，由调用方复核）；没有候选时返回 null。
+         */
+        IntList candidates(String q) {
+            if (q.length() == 1) {
+                return postings.get(firstCharKey(q.charAt(0)));
+            }
+            IntList shortest = null;
+            for (int i = 0; i + 1 < q.length(); i++) {
+                IntList list = postings.get(bigramKey(q.charAt(i), q.charAt(i + 1)));
+                if (list == null) return null;
+                if (shortest == null || list.size < shortest.size) shortest = list;
+            }
+            return shortest;
+        }
+
+        private static void collectKeys(String key, Set<Integer> out) {
+            if (key.isEmpty()) return;
+            out.add(firstCharKey(key.charAt(0)));
+            for (int i = 0; i + 1 < key.length(); i++) {
+                out.add(bigramKey(key.charAt(i), key.charAt(i + 1)));
+            }
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.ordererp.backend.common.sequence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 单据号分配：按前缀维护流水，号段预分配（segment）。
+ *
+ * <p>每个前缀在 sys_doc_sequence 中有一行 next_val。节点一次领取 [next_val, next_val + segmentSize) 一段号码，
+ * 在内存中逐个发放；当前号段剩余不足 20% 时在后台线程预取下一段，发放过程基本不访问数据库。</p>
+ * <ul>
+ *   <li>唯一：领取号段是对同一行的原子自增（独立事务，立即提交），多个应用节点拿到的号段互不重叠；</li>
+ *   <li>有序：同一节点同一前缀的流水严格递增；不同节点之间按号段交错；</li>
+ *   <li>允许跳号：节点重启时未用完的号段直接丢弃，业务回滚的号码也不回收；</li>
+ *   <li>独立连接池：领号段走专用的小连接池（{@code app.doc-no.pool-size}），业务事务内同步领号不会再向主连接池
+ *       要第二个连接，主池被业务事务占满时也不会互相等待。</li>
+ * </ul>
+ *
+ * <p>号码格式：前缀 + yyyyMMdd + "-" + 流水（至少 6 位，不足补 0）。日期只用于阅读，流水不按天重置。</p>
+ */
+@Component
+public class DocNumberAllocator {
+    private static final Logger log = LoggerFactory.getLogger(DocNumberAllocator.class);
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String ALLOCATE_SQL = """
+            insert into sys_doc_sequence (seq_key, next_val) values (?, ?)
+            on duplicate key update next_val = next_val + values(next_val) - 1
+            """;
+
+    private static final String READ_SQL = "select next_val from sys_doc_sequence where seq_key = ?";
+
+    private final HikariDataSource pool;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate allocateTx;
+    private final int segmentSize;
+    private final ExecutorService refillExecutor;
+    private final Map<String, Sequence> sequences = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DocNumberAllocator(DataSourceProperties dataSourceProperties,
+            @Value("${app.doc-no.segment-size:100}") int segmentSize,
+            @Value("${app.doc-no.pool-size:2}") int poolSize) {
+        // 领号段不能挂在业务事务上（否则序列行锁要持有到业务提交，所有同前缀的单据会排队），
+        // 也不能从主连接池再借一个连接（业务事务已占着一个，池满时会互相等待）：用专用连接池上的独立事务
+        this.pool = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.pool.setPoolName("doc-no");
+        this.pool.setMaximumPoolSize(Math.max(1, poolSize));
+        this.pool.setMinimumIdle(0);
+        this.jdbcTemplate = new JdbcTemplate(pool);
+        this.allocateTx = new TransactionTemplate(new DataSourceTransactionManager(pool));
+        this.segmentSize = Math.max(1, segmentSize);
+        this.refillExecutor = newRefillExecutor();
+    }
+
+    /**
+     * 指定领号段用的 JdbcTemplate 与事务管理器（基准测试用内存实现代替数据库）。
+     */
+    public DocNumberAllocator(JdbcTemplate jdbcTemplate, PlatformTransactionManager txManager, int segmentSize) {
+        this.pool = null;
+        this.jdbcTemplate = jdbcTemplate;
+        this.allocateTx = new TransactionTemplate(txManager);
+        this.segmentSize = Math.max(1, segmentSize);
+        this.refillExecutor = newRefillExecutor();
+    }
+
+    private static ExecutorService newRefillExecutor() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "doc-no-refill");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 取下一个单据号，如 next("SO") -> SO20250101-000123。
+     */
+    public String next(String prefix) {
+        long seq = nextValue(prefix);
+        return prefix + LocalDate.now().format(DAY) + "-" + String.format("%06d", seq);
+    }
+
+    /**
+     * 取前缀的下一个流水值。
+     */
+    public long nextValue(String prefix) {
+        if (prefix == null || prefix.isBlank()) throw new IllegalArgumentException("prefix is required");
+        return sequences.computeIfAbsent(prefix, Sequence::new).next();
+    }
+
+    /**
+     * 直接领取连续 count 个流水值，返回第一个（不经过内存号段）：批量写入时一次拿到整段，按需自行编号。
+     */
+    public long reserve(String prefix, int count) {
+        if (prefix == null || prefix.isBlank()) throw new IllegalArgumentException("prefix is required");
+        if (count <= 0) throw new IllegalArgumentException("count must be > 0");
+        return allocate(prefix, count).next;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refillExecutor.shutdownNow();
+        if (pool != null) pool.close();
+    }
+
+    /**
+     * 领取一段号码 [start, start + segmentSize)。专用连接池上的独立事务：更新后立即提交、释放行锁。
+     */
+    private Segment allocate(String key) {
+        return allocate(key, segmentSize);
+    }
+
+    private Segment allocate(String key, int size) {
+        Long end = allocateTx.execute(status -> {
+            // 新行：next_val = 1 + size；已有行：next_val += size
+            jdbcTemplate.update(ALLOCATE_SQL, key, 1L + size);
+            return jdbcTemplate.queryForObject(READ_SQL, Long.class, key);
+        });
+        if (end == null) throw new IllegalStateException("doc sequence allocation failed: " + key);
+        return new Segment(end - size, end);
+    }
+
+    private final class Sequence {
+        private final String key;
+        private Segment current;
+        private CompletableFuture<Segment> prefetch;
+
+        Sequence(String key) {
+            this.key = key;
+        }
+
+        synchronized long next() {
+            while (current == null || current.exhausted()) {
+                current = nextSegment();
+            }
+            long value = current.take();
+            if (prefetch == null && current.remaining() * 5L <= segmentSize) {
+                prefetch = CompletableFuture.supplyAsync(() -> allocate(key), refillExecutor);
+            }
+            return value;
+        }
+
+        private Segment nextSegment() {
+            CompletableFuture<Segment> pending = prefetch;
+            prefetch = null;
+            if (pending != null) {
+                try {
+                    return pending.join();
+                } catch (CompletionException e) {
+                    log.warn("doc sequence prefetch failed key={}, allocating synchronously", key, e.getCause());
+                }
+            }
+            return allocate(key);
+        }
+    }
+
+    private static final class Segment {
+        private long next;
+        private final long end;
+
+        Segment(long start, long end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        boolean exhausted() {
+            return next >= end;
+        }
+
+        long remaining() {
+            return end - next;
+        }
+
+        long take() {
+            return next++;
+        }
+    }
+}
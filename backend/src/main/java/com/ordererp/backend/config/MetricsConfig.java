@@ -0,0 +1,43 @@
+package com.ordererp.backend.config;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import java.util.concurrent.TimeUnit;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 指标定制。
+ *
+ * <p>Spring Data 仓库调用已由 Actuator 自动计时（{@code spring.data.repository.invocations}，按 repository/method 打标签）。
+ * 其中 {@code findByIdForUpdate}（select ... for update）的耗时基本就是行锁等待时间，这里只给它发布固定桶的直方图，
+ * 用于观察单据锁竞争；其他仓库方法仍只有 count/sum/max，避免每个方法都产生一组 bucket 时间序列。</p>
+ */
+@Configuration
+public class MetricsConfig {
+    static final String REPOSITORY_INVOCATIONS = "spring.data.repository.invocations";
+    static final String LOCK_METHOD = "findByIdForUpdate";
+
+    @Bean
+    public MeterFilter rowLockWaitHistogram() {
+        DistributionStatisticConfig lockWaitBuckets = DistributionStatisticConfig.builder()
+                .serviceLevelObjectives(
+                        millis(1), millis(5), millis(10), millis(25), millis(50), millis(100), millis(250),
+                        millis(500), millis(1000), millis(2500), millis(5000), millis(10000), millis(30000))
+                .build();
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (REPOSITORY_INVOCATIONS.equals(id.getName()) && LOCK_METHOD.equals(id.getTag("method"))) {
+                    return lockWaitBuckets.merge(config);
+                }
+                return config;
+            }
+        };
+    }
+
+    private static double millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+}
@@ -0,0 +1,12 @@
+package com.ordererp.backend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 启用 {@code @Scheduled} 定时任务（如信用占用对账）；单个任务可把 cron 配置为 "-" 关闭。
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -2,6 +2,8 @@ package com.ordererp.backend.config;
 
 import com.ordererp.backend.system.security.JwtAuthenticationFilter;
 import com.ordererp.backend.system.security.JwtProperties;
+import com.ordererp.backend.system.security.MetricsScrapeTokenFilter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -22,8 +24,8 @@ import org.springframework.http.HttpMethod;
 @EnableConfigurationProperties(JwtProperties.class)
 public class SecurityConfig {
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtAuthenticationFilter jwtFilter)
-            throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtAuthenticationFilter jwtFilter,
+            @Value("${app.metrics.scrape-token:}") String scrapeToken) throws Exception {
         http.csrf(csrf -> csrf.disable())
                 .cors(Customizer.withDefaults())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
@@ -33,7 +35,11 @@ public class SecurityConfig {
                         .requestMatchers("/api/auth/login", "/api/health").permitAll()
                         .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
                         .requestMatchers("/error").permitAll()
+                        // Prometheus 抓取用独立的 scrape token（不是用户 JWT）；其余 actuator 端点仍需登录
+                        .requestMatchers(HttpMethod.GET, "/actuator/prometheus")
+                        .hasAuthority(MetricsScrapeTokenFilter.AUTHORITY)
                         .anyRequest().authenticated())
+                .addFilterBefore(new MetricsScrapeTokenFilter(scrapeToken), UsernamePasswordAuthenticationFilter.class)
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
         return http.build();
     }
@@ -0,0 +1,59 @@
+package com.ordererp.backend.config;
+
+import com.ordererp.backend.common.metrics.SqlStatementMonitor;
+import java.util.List;
+import javax.sql.DataSource;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.function.SingletonSupplier;
+
+/**
+ * 用 datasource-proxy 包装 DataSource，JPA/Hibernate 与 JdbcTemplate（库存台账、单据号、报表等）执行的语句
+ * 都交给 {@link SqlStatementMonitor} 计数。只用 Hibernate StatementInspector 会漏掉 JdbcTemplate 的语句，
+ * 而且拿不到执行耗时。
+ *
+ * <p>每条语句都要经过代理并向当前事务登记同步器，因此默认不包装，只在 dev/test profile 下开启
+ * （{@code app.sql-monitor.enabled=true}）。Hikari 连接池指标通过 unwrap 取到原始连接池，不受影响。</p>
+ */
+@Configuration
+public class SqlMonitorConfig {
+
+    /**
+     * BeanPostProcessor 必须是 static，且监听器延迟到第一次执行语句时才取 monitor（此时 MeterRegistry 已就绪）。
+     */
+    @Bean
+    public static BeanPostProcessor sqlMonitorDataSourceProxy(Environment env,
+            ObjectProvider<SqlStatementMonitor> monitor) {
+        boolean enabled = env.getProperty("app.sql-monitor.enabled", Boolean.class, false);
+        SingletonSupplier<SqlStatementMonitor> listener = SingletonSupplier.of(monitor::getObject);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!enabled || !(bean instanceof DataSource dataSource) || bean instanceof ProxyDataSource) {
+                    return bean;
+                }
+                return ProxyDataSourceBuilder.create(dataSource)
+                        .name(beanName)
+                        .listener(new QueryExecutionListener() {
+                            @Override
+                            public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+                            }
+
+                            @Override
+                            public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+                                listener.obtain().afterQuery(execInfo, queryInfoList);
+                            }
+                        })
+                        .build();
+            }
+        };
+    }
+}
@@ -4,10 +4,13 @@ import com.ordererp.backend.common.dto.PageResponse;
 import com.ordererp.backend.finance.dto.FinAccountCreateRequest;
 import com.ordererp.backend.finance.dto.FinAccountOptionResponse;
 import com.ordererp.backend.finance.dto.FinAccountResponse;
+import com.ordererp.backend.finance.dto.FinAccountStatementResponse;
 import com.ordererp.backend.finance.repository.FinAccountRepository;
 import com.ordererp.backend.finance.service.FinAccountService;
+import com.ordererp.backend.finance.service.FinAccountStatementService;
 import com.ordererp.backend.system.security.SysUserDetails;
 import jakarta.validation.Valid;
+import java.time.LocalDate;
 import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -15,6 +18,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,10 +29,13 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/finance/accounts")
 public class FinAccountController {
     private final FinAccountService accountService;
+    private final FinAccountStatementService statementService;
     private final FinAccountRepository accountRepository;
 
-    public FinAccountController(FinAccountService accountService, FinAccountRepository accountRepository) {
+    public FinAccountController(FinAccountService accountService, FinAccountStatementService statementService,
+            FinAccountRepository accountRepository) {
         this.accountService = accountService;
+        this.statementService = statementService;
         this.accountRepository = accountRepository;
     }
 
@@ -60,6 +67,17 @@ public class FinAccountController {
         return accountService.options(keyword, limit);
     }
 
+    @GetMapping("/{id}/statement")
+    @PreAuthorize("hasAuthority('fin:account:view')")
+    public FinAccountStatementResponse statement(@PathVariable Long id,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        Pageable pageable = PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, 200)));
+        return statementService.statement(id, startDate, endDate, pageable);
+    }
+
     @PostMapping
     @PreAuthorize("hasAuthority('fin:account:add')")
     public FinAccountResponse create(@Valid @RequestBody FinAccountCreateRequest request, Authentication authentication) {
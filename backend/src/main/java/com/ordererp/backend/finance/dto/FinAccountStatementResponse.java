@@ -0,0 +1,32 @@
+package com.ordererp.backend.finance.dto;
+
+import com.ordererp.backend.common.dto.PageResponse;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record FinAccountStatementResponse(
+        Long accountId,
+        String accountName,
+        LocalDate startDate,
+        LocalDate endDate,
+        BigDecimal openingBalance,
+        BigDecimal receiptAmount,
+        BigDecimal paymentAmount,
+        BigDecimal closingBalance,
+        PageResponse<Line> lines) {
+    public record Line(
+            Long id,
+            String payNo,
+            LocalDate payDate,
+            Integer type,
+            Integer bizType,
+            String bizNo,
+            Long partnerId,
+            String partnerName,
+            String method,
+            String remark,
+            BigDecimal receiptAmount,
+            BigDecimal paymentAmount,
+            BigDecimal balance) {
+    }
+}
@@ -1,23 +1,22 @@
 package com.ordererp.backend.finance.repository;
 
 import com.ordererp.backend.finance.entity.FinAccount;
-import jakarta.persistence.LockModeType;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+/**
+ * 资金账户。列表/下拉框的余额取余额槽位合计（fin_account_balance_slot，实时值）；
+ * fin_account.balance 是定时汇总后的值，见 FinAccountBalanceRollup。
+ */
 public interface FinAccountRepository extends JpaRepository<FinAccount, Long> {
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("select a from FinAccount a where a.id = :id")
-    Optional<FinAccount> findByIdForUpdate(@Param("id") Long id);
-
     Optional<FinAccount> findFirstByDeletedAndStatusOrderByIdAsc(Integer deleted, Integer status);
 
     @Query(value = """
@@ -25,7 +24,8 @@ public interface FinAccountRepository extends JpaRepository<FinAccount, Long> {
               a.id as id,
               a.account_name as accountName,
               a.account_no as accountNo,
-              a.balance as balance,
+              coalesce((select sum(s.balance) from fin_account_balance_slot s where s.account_id = a.id), a.balance)
+                as balance,
               a.remark as remark,
               a.status as status,
               a.create_by as createBy,
@@ -54,7 +54,8 @@ public interface FinAccountRepository extends JpaRepository<FinAccount, Long> {
             select
               a.id as id,
               a.account_name as accountName,
-              a.balance as balance
+              coalesce((select sum(s.balance) from fin_account_balance_slot s where s.account_id = a.id), a.balance)
+                as balance
             from fin_account a
             where a.deleted = 0
               and a.status = 1
@@ -66,6 +67,39 @@ public interface FinAccountRepository extends JpaRepository<FinAccount, Long> {
             """, nativeQuery = true)
     List<FinAccountOptionRow> optionRows(@Param("kw") String keyword, @Param("limit") int limit);
 
+    /**
+     * 每日合计 fin_account_daily 在 [startDate, endDate] 内的收款/付款合计（只含已汇总的变动）。
+     */
+    @Query(value = """
+            select
+              coalesce(sum(d.receipt_amount), 0.00) as receiptAmount,
+              coalesce(sum(d.payment_amount), 0.00) as paymentAmount
+            from fin_account_daily d
+            where d.account_id = :accountId
+              and d.biz_date >= :startDate
+              and d.biz_date <= :endDate
+            """, nativeQuery = true)
+    FinAmountTotalsRow sumDaily(@Param("accountId") Long accountId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate);
+
+    /**
+     * 尚未汇总进每日合计的变动在 [startDate, endDate] 内的收款/付款合计（口径同 FinAccountBalanceRollup）。
+     */
+    @Query(value = """
+            select
+              coalesce(sum(case when m.pay_type = 1 then m.amount else 0.00 end), 0.00) as receiptAmount,
+              coalesce(sum(case when m.pay_type = 1 then 0.00 else 0.00 - m.amount end), 0.00) as paymentAmount
+            from fin_account_movement m
+            where m.rolled = 0
+              and m.account_id = :accountId
+              and m.biz_date >= :startDate
+              and m.biz_date <= :endDate
+            """, nativeQuery = true)
+    FinAmountTotalsRow sumUnrolled(@Param("accountId") Long accountId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate);
+
     interface FinAccountRow {
         Long getId();
 
@@ -0,0 +1,9 @@
+package com.ordererp.backend.finance.repository;
+
+import java.math.BigDecimal;
+
+public interface FinAmountTotalsRow {
+    BigDecimal getReceiptAmount();
+
+    BigDecimal getPaymentAmount();
+}
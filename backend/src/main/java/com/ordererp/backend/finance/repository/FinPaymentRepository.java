@@ -75,6 +75,85 @@ public interface FinPaymentRepository extends JpaRepository<FinPayment, Long> {
             @Param("endDate") LocalDate endDate,
             Pageable pageable);
 
+    /**
+     * 对账单明细：账户在日期区间内未作废的流水，按 (交易日期, id) 升序（索引 idx_fin_payment_account_date）。
+     */
+    @Query(value = """
+            select
+              p.id as id,
+              p.pay_no as payNo,
+              p.pay_date as payDate,
+              p.type as type,
+              p.biz_type as bizType,
+              p.biz_no as bizNo,
+              p.partner_id as partnerId,
+              bp.partner_name as partnerName,
+              p.method as method,
+              p.remark as remark,
+              p.amount as amount
+            from fin_payment p
+            left join base_partner bp on bp.id = p.partner_id
+            where p.account_id = :accountId
+              and p.pay_date >= :startDate
+              and p.pay_date <= :endDate
+              and p.status = 1
+            order by p.pay_date asc, p.id asc
+            """,
+            countQuery = """
+            select count(*)
+            from fin_payment p
+            where p.account_id = :accountId
+              and p.pay_date >= :startDate
+              and p.pay_date <= :endDate
+              and p.status = 1
+            """,
+            nativeQuery = true)
+    Page<StatementLineRow> statementLines(@Param("accountId") Long accountId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            Pageable pageable);
+
+    /**
+     * 同一交易日内排在指定流水之前（id 更小）的未作废流水合计，用于计算分页后第一行之前的余额。
+     */
+    @Query(value = """
+            select
+              coalesce(sum(case when p.type = 1 then p.amount else 0.00 end), 0.00) as receiptAmount,
+              coalesce(sum(case when p.type = 2 then p.amount else 0.00 end), 0.00) as paymentAmount
+            from fin_payment p
+            where p.account_id = :accountId
+              and p.pay_date = :payDate
+              and p.id < :beforeId
+              and p.status = 1
+            """, nativeQuery = true)
+    FinAmountTotalsRow sumSameDayBefore(@Param("accountId") Long accountId,
+            @Param("payDate") LocalDate payDate,
+            @Param("beforeId") Long beforeId);
+
+    interface StatementLineRow {
+        Long getId();
+
+        String getPayNo();
+
+        LocalDate getPayDate();
+
+        Integer getType();
+
+        Integer getBizType();
+
+        String getBizNo();
+
+        Long getPartnerId();
+
+        String getPartnerName();
+
+        String getMethod();
+
+        String getRemark();
+
+        BigDecimal getAmount();
+    }
+
     interface FinPaymentRow {
         Long getId();
 
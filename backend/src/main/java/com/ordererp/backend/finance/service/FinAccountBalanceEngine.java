@@ -0,0 +1,175 @@
+package com.ordererp.backend.finance.service;
+
+import com.ordererp.backend.finance.entity.FinPayment;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+/**
+ * 资金账户余额引擎：余额拆成每个账户 N 个槽位（fin_account_balance_slot），收付款不再锁 fin_account 行。
+ *
+ * <ul>
+ *   <li>收款：随机选一个槽位 {@code balance = balance + ?}，并发收款大多落在不同的行上；</li>
+ *   <li>付款：先非锁定地读各槽位余额，挑一个够扣的槽位做带条件的扣减（{@code balance >= ?}）；
+ *       没有够扣的槽位（或被并发扣走）时，按槽位顺序锁住该账户全部槽位，合计够扣则把余额合并到一个槽位后扣减，
+ *       不够则返回 false，由调用方按原口径报“余额不足”。账户总余额始终不为负。</li>
+ *   <li>每笔变动同时追加一行 fin_account_movement（记原流水的类型与交易日期，作废也记在原日期上），
+ *       由 {@link FinAccountBalanceRollup} 定时汇总进 fin_account.balance 与每日合计 fin_account_daily。</li>
+ * </ul>
+ *
+ * <p>合并路径会锁住账户全部槽位：两个事务各自已持有同一账户的一个槽位、又同时走到合并路径时会死锁，
+ * 由数据库回滚其中一个（ConcurrencyFailureException），调用方重试即可；只在账户余额接近用尽时才会出现。</p>
+ *
+ * <p>须在事务内调用（与收付款流水同一事务）。</p>
+ */
+@Component
+public class FinAccountBalanceEngine {
+    private static final String CREDIT_SQL = """
+            insert into fin_account_balance_slot (account_id, slot, balance, update_time)
+            values (?, ?, ?, ?)
+            on duplicate key update balance = balance + values(balance), update_time = values(update_time)
+            """;
+
+    private static final String TRY_DEBIT_SQL = """
+            update fin_account_balance_slot
+            set balance = balance - ?, update_time = ?
+            where account_id = ? and slot = ? and balance >= ?
+            """;
+
+    private static final String SLOTS_SQL = """
+            select slot, balance
+            from fin_account_balance_slot
+            where account_id = ?
+            """;
+
+    private static final String LOCK_SLOTS_SQL = """
+            select slot, balance
+            from fin_account_balance_slot
+            where account_id = ?
+            order by slot
+            for update
+            """;
+
+    private static final String SET_SLOT_SQL = """
+            update fin_account_balance_slot
+            set balance = ?, update_time = ?
+            where account_id = ? and slot = ?
+            """;
+
+    private static final String BALANCE_SQL = """
+            select coalesce(sum(balance), 0.00)
+            from fin_account_balance_slot
+            where account_id = ?
+            """;
+
+    private static final String MOVEMENT_SQL = """
+            insert into fin_account_movement (account_id, payment_id, amount, pay_type, biz_date, create_time)
+            values (?, ?, ?, ?, ?, ?)
+            """;
+
+    /** 快速路径最多尝试的槽位数，超过后直接走合并路径。 */
+    private static final int MAX_FAST_ATTEMPTS = 2;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int slots;
+
+    public FinAccountBalanceEngine(JdbcTemplate jdbcTemplate, @Value("${app.finance.balance.slots:8}") int slots) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.slots = Math.max(1, slots);
+    }
+
+    /**
+     * 新建账户时写入期初余额（0 号槽位）；期初余额已在 fin_account.balance 中，不记变动。
+     */
+    public void open(Long accountId, BigDecimal openingBalance) {
+        jdbcTemplate.update(CREDIT_SQL, accountId, 0, safeMoney(openingBalance), now());
+    }
+
+    /**
+     * 增加余额（收款、作废付款），payment 为引起变动的收付款流水（须已保存）。
+     */
+    public void credit(Long accountId, BigDecimal amount, FinPayment payment) {
+        Timestamp now = now();
+        jdbcTemplate.update(CREDIT_SQL, accountId, ThreadLocalRandom.current().nextInt(slots), amount, now);
+        appendMovement(accountId, amount, payment, now);
+    }
+
+    /**
+     * 扣减余额（付款、作废收款）；账户总余额不足时不做任何修改并返回 false。
+     */
+    public boolean debit(Long accountId, BigDecimal amount, FinPayment payment) {
+        Timestamp now = now();
+        if (!tryDebitOneSlot(accountId, amount, now) && !debitConsolidated(accountId, amount, now)) {
+            return false;
+        }
+        appendMovement(accountId, amount.negate(), payment, now);
+        return true;
+    }
+
+    /**
+     * 账户当前余额（槽位合计）。
+     */
+    public BigDecimal balanceOf(Long accountId) {
+        return safeMoney(jdbcTemplate.queryForObject(BALANCE_SQL, BigDecimal.class, accountId));
+    }
+
+    private boolean tryDebitOneSlot(Long accountId, BigDecimal amount, Timestamp now) {
+        List<Integer> candidates = new ArrayList<>();
+        for (Slot s : jdbcTemplate.query(SLOTS_SQL, Slot.MAPPER, accountId)) {
+            if (s.balance().compareTo(amount) >= 0) candidates.add(s.slot());
+        }
+        if (candidates.isEmpty()) return false;
+        // 从随机位置开始轮询，避免并发付款都挤在第一个够扣的槽位上
+        int start = ThreadLocalRandom.current().nextInt(candidates.size());
+        int attempts = Math.min(MAX_FAST_ATTEMPTS, candidates.size());
+        for (int i = 0; i < attempts; i++) {
+            int slot = candidates.get((start + i) % candidates.size());
+            if (jdbcTemplate.update(TRY_DEBIT_SQL, amount, now, accountId, slot, amount) == 1) return true;
+        }
+        return false;
+    }
+
+    private boolean debitConsolidated(Long accountId, BigDecimal amount, Timestamp now) {
+        List<Slot> locked = jdbcTemplate.query(LOCK_SLOTS_SQL, Slot.MAPPER, accountId);
+        BigDecimal total = BigDecimal.ZERO;
+        for (Slot s : locked) {
+            total = total.add(s.balance());
+        }
+        if (locked.isEmpty() || total.compareTo(amount) < 0) return false;
+
+        List<Object[]> updates = new ArrayList<>();
+        updates.add(new Object[] { total.subtract(amount), now, accountId, locked.get(0).slot() });
+        for (int i = 1; i < locked.size(); i++) {
+            if (locked.get(i).balance().signum() != 0) {
+                updates.add(new Object[] { BigDecimal.ZERO, now, accountId, locked.get(i).slot() });
+            }
+        }
+        jdbcTemplate.batchUpdate(SET_SLOT_SQL, updates);
+        return true;
+    }
+
+    private void appendMovement(Long accountId, BigDecimal signedAmount, FinPayment payment, Timestamp now) {
+        jdbcTemplate.update(MOVEMENT_SQL, accountId, payment.getId(), signedAmount, payment.getType(),
+                Date.valueOf(payment.getPayDate()), now);
+    }
+
+    private static Timestamp now() {
+        return Timestamp.valueOf(LocalDateTime.now());
+    }
+
+    private static BigDecimal safeMoney(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+
+    private record Slot(int slot, BigDecimal balance) {
+        static final RowMapper<Slot> MAPPER = (rs, i) -> new Slot(rs.getInt(1), safeMoney(rs.getBigDecimal(2)));
+    }
+}
@@ -0,0 +1,162 @@
+package com.ordererp.backend.finance.service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 把 fin_account_movement 中未汇总的变动定时累加进 fin_account.balance 与每日合计 fin_account_daily
+ * （{@link FinAccountBalanceEngine} 的另一半；每日合计供 {@link FinAccountStatementService} 出对账单）。
+ *
+ * <p>每批在一个事务内：读取一批未汇总变动 → 按账户升序累加到 fin_account.balance、按 (账户, 日期) 累加到每日合计
+ * → 把这批变动标记为已汇总。
+ * 标记时带 {@code rolled = 0} 条件，实际标记行数与读到的不一致（多实例同时汇总）就回滚整批，下一轮重来。
+ * 只有汇总会写 fin_account 行，且每批只持锁很短时间，收付款不再与它竞争。</p>
+ *
+ * <p>定时间隔由 {@code app.finance.balance.rollup-interval-ms} 控制（默认 60 秒）。</p>
+ */
+@Service
+public class FinAccountBalanceRollup {
+    private static final Logger log = LoggerFactory.getLogger(FinAccountBalanceRollup.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String PENDING_SQL = """
+            select id, account_id, amount, pay_type, biz_date
+            from fin_account_movement
+            where rolled = 0
+            order by id
+            limit ?
+            """;
+
+    private static final String ADD_BALANCE_SQL = """
+            update fin_account
+            set balance = balance + ?, update_time = update_time
+            where id = ?
+            """;
+
+    private static final String ADD_DAILY_SQL = """
+            insert into fin_account_daily (account_id, biz_date, receipt_amount, payment_amount, update_time)
+            values (?, ?, ?, ?, ?)
+            on duplicate key update
+              receipt_amount = receipt_amount + values(receipt_amount),
+              payment_amount = payment_amount + values(payment_amount),
+              update_time = values(update_time)
+            """;
+
+    private static final String MARK_ROLLED_SQL = """
+            update fin_account_movement
+            set rolled = 1
+            where id in (:ids) and rolled = 0
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate txTemplate;
+
+    public FinAccountBalanceRollup(JdbcTemplate jdbcTemplate, PlatformTransactionManager txManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.txTemplate = new TransactionTemplate(txManager);
+    }
+
+    @Scheduled(fixedDelayString = "${app.finance.balance.rollup-interval-ms:60000}", initialDelay = 15000)
+    public void scheduledRollup() {
+        try {
+            rollup();
+        } catch (RuntimeException e) {
+            log.warn("fund account balance rollup failed", e);
+        }
+    }
+
+    /**
+     * 汇总全部未汇总变动，返回本次汇总的变动行数。
+     */
+    public int rollup() {
+        long startNanos = System.nanoTime();
+        int total = 0;
+        while (true) {
+            Integer rolled = txTemplate.execute(this::rollupBatch);
+            if (rolled == null || rolled < 0) break;
+            total += rolled;
+            if (rolled < BATCH_SIZE) break;
+        }
+        if (total > 0) {
+            log.info("fund account balance rollup movements={} elapsedMs={}",
+                    total, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+        return total;
+    }
+
+    /**
+     * 返回本批汇总的行数；与其他实例冲突时回滚并返回 -1。
+     */
+    private int rollupBatch(TransactionStatus status) {
+        List<Movement> pending = jdbcTemplate.query(PENDING_SQL, (rs, i) -> new Movement(rs.getLong(1),
+                rs.getLong(2), rs.getBigDecimal(3), rs.getInt(4), rs.getObject(5, LocalDate.class)), BATCH_SIZE);
+        if (pending.isEmpty()) return 0;
+
+        List<Long> ids = new ArrayList<>(pending.size());
+        // TreeMap：按 account_id（及日期）升序写入，与其他实例的加锁顺序一致
+        Map<Long, BigDecimal> byAccount = new TreeMap<>();
+        Map<DayKey, BigDecimal[]> byDay = new TreeMap<>();
+        for (Movement m : pending) {
+            ids.add(m.id());
+            byAccount.merge(m.accountId(), m.amount(), BigDecimal::add);
+            if (m.bizDate() == null) continue;
+            BigDecimal[] day = byDay.computeIfAbsent(new DayKey(m.accountId(), m.bizDate()),
+                    k -> new BigDecimal[] { BigDecimal.ZERO, BigDecimal.ZERO });
+            // 收款（及其作废）计入收款合计；付款变动为负数，取反后计入付款合计
+            if (m.payType() == FinPaymentService.TYPE_RECEIPT) {
+                day[0] = day[0].add(m.amount());
+            } else {
+                day[1] = day[1].subtract(m.amount());
+            }
+        }
+
+        int marked = namedJdbcTemplate.update(MARK_ROLLED_SQL, new MapSqlParameterSource("ids", ids));
+        if (marked != ids.size()) {
+            log.warn("fund account balance rollup raced with another instance, expected={} marked={}",
+                    ids.size(), marked);
+            status.setRollbackOnly();
+            return -1;
+        }
+        List<Object[]> updates = new ArrayList<>(byAccount.size());
+        byAccount.forEach((accountId, delta) -> updates.add(new Object[] { delta, accountId }));
+        jdbcTemplate.batchUpdate(ADD_BALANCE_SQL, updates);
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> days = new ArrayList<>(byDay.size());
+        byDay.forEach((key, sums) -> days.add(new Object[] {
+                key.accountId(), Date.valueOf(key.bizDate()), sums[0], sums[1], now }));
+        jdbcTemplate.batchUpdate(ADD_DAILY_SQL, days);
+        return ids.size();
+    }
+
+    private record Movement(long id, long accountId, BigDecimal amount, int payType, LocalDate bizDate) {
+    }
+
+    private record DayKey(long accountId, LocalDate bizDate) implements Comparable<DayKey> {
+        @Override
+        public int compareTo(DayKey o) {
+            int c = Long.compare(accountId, o.accountId);
+            return c != 0 ? c : bizDate.compareTo(o.bizDate);
+        }
+    }
+}
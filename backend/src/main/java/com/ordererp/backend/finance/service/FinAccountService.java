@@ -18,9 +18,11 @@ public class FinAccountService {
     public static final int STATUS_ENABLED = 1;
 
     private final FinAccountRepository accountRepository;
+    private final FinAccountBalanceEngine balanceEngine;
 
-    public FinAccountService(FinAccountRepository accountRepository) {
+    public FinAccountService(FinAccountRepository accountRepository, FinAccountBalanceEngine balanceEngine) {
         this.accountRepository = accountRepository;
+        this.balanceEngine = balanceEngine;
     }
 
     public List<FinAccountOptionResponse> options(String keyword, int limit) {
@@ -53,6 +55,7 @@ public class FinAccountService {
         a.setUpdateBy(trimToNull(operator));
         a.setUpdateTime(now);
         a = accountRepository.saveAndFlush(a);
+        balanceEngine.open(a.getId(), opening);
         return toResponse(a);
     }
 
@@ -0,0 +1,148 @@
+package com.ordererp.backend.finance.service;
+
+import com.ordererp.backend.common.dto.PageResponse;
+import com.ordererp.backend.finance.dto.FinAccountStatementResponse;
+import com.ordererp.backend.finance.entity.FinAccount;
+import com.ordererp.backend.finance.repository.FinAccountRepository;
+import com.ordererp.backend.finance.repository.FinAmountTotalsRow;
+import com.ordererp.backend.finance.repository.FinPaymentRepository;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 资金账户对账单：期初余额、区间内逐笔流水及每笔后的余额、期末余额。
+ *
+ * <p>余额不再从头扫 fin_payment 求和，而是从当前余额（槽位合计）倒推：</p>
+ * <ul>
+ *   <li>期末余额 = 当前余额 - 交易日期晚于截止日的收支净额；</li>
+ *   <li>期初余额 = 期末余额 - 区间内收支净额；</li>
+ *   <li>分页时本页第一行之前的余额 = 期初余额 + 区间开始到该行前一天的净额 + 同一天内 id 更小的流水净额。</li>
+ * </ul>
+ * <p>按天的净额取每日合计 fin_account_daily 加上尚未汇总的变动（fin_account_movement.rolled = 0），
+ * 代价与天数相关、与流水笔数无关。所有读取在同一个只读事务（同一快照）内完成，汇总任务并发运行也不会重复或遗漏。</p>
+ */
+@Service
+public class FinAccountStatementService {
+    /** MySQL date 类型的取值范围，作为开区间的边界。 */
+    private static final LocalDate MIN_DATE = LocalDate.of(1000, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private final FinAccountRepository accountRepository;
+    private final FinPaymentRepository paymentRepository;
+    private final FinAccountBalanceEngine balanceEngine;
+
+    public FinAccountStatementService(FinAccountRepository accountRepository, FinPaymentRepository paymentRepository,
+            FinAccountBalanceEngine balanceEngine) {
+        this.accountRepository = accountRepository;
+        this.paymentRepository = paymentRepository;
+        this.balanceEngine = balanceEngine;
+    }
+
+    /**
+     * @param startDate 默认为截止日所在月的第一天
+     * @param endDate   默认为今天
+     */
+    @Transactional(readOnly = true)
+    public FinAccountStatementResponse statement(Long accountId, LocalDate startDate, LocalDate endDate,
+            Pageable pageable) {
+        FinAccount account = accountRepository.findById(accountId)
+                .filter(a -> a.getDeleted() == null || a.getDeleted() == 0)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "资金账户不存在"));
+        LocalDate end = endDate == null ? LocalDate.now() : endDate;
+        LocalDate start = startDate == null ? end.withDayOfMonth(1) : startDate;
+        if (start.isAfter(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "startDate must be <= endDate");
+        }
+        if (start.isBefore(MIN_DATE) || end.isAfter(MAX_DATE)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "date out of range");
+        }
+
+        BigDecimal current = balanceEngine.balanceOf(accountId);
+        BigDecimal closing = end.equals(MAX_DATE) ? current : current.subtract(net(accountId, end.plusDays(1), MAX_DATE));
+        Totals range = totals(accountId, start, end);
+        BigDecimal opening = closing.subtract(range.net());
+
+        Page<FinPaymentRepository.StatementLineRow> rows =
+                paymentRepository.statementLines(accountId, start, end, pageable);
+        List<FinAccountStatementResponse.Line> lines = new ArrayList<>(rows.getNumberOfElements());
+        if (rows.hasContent()) {
+            FinPaymentRepository.StatementLineRow first = rows.getContent().get(0);
+            BigDecimal balance = opening;
+            if (first.getPayDate().isAfter(start)) {
+                balance = balance.add(net(accountId, start, first.getPayDate().minusDays(1)));
+            }
+            balance = balance.add(Totals.of(paymentRepository.sumSameDayBefore(accountId, first.getPayDate(),
+                    first.getId())).net());
+            for (FinPaymentRepository.StatementLineRow r : rows.getContent()) {
+                boolean receipt = r.getType() != null && r.getType() == FinPaymentService.TYPE_RECEIPT;
+                BigDecimal amount = safeMoney(r.getAmount());
+                balance = receipt ? balance.add(amount) : balance.subtract(amount);
+                lines.add(new FinAccountStatementResponse.Line(
+                        r.getId(),
+                        r.getPayNo(),
+                        r.getPayDate(),
+                        r.getType(),
+                        r.getBizType(),
+                        r.getBizNo(),
+                        r.getPartnerId(),
+                        r.getPartnerName(),
+                        r.getMethod(),
+                        r.getRemark(),
+                        receipt ? amount : BigDecimal.ZERO,
+                        receipt ? BigDecimal.ZERO : amount,
+                        balance));
+            }
+        }
+
+        return new FinAccountStatementResponse(
+                account.getId(),
+                account.getAccountName(),
+                start,
+                end,
+                opening,
+                range.receipt(),
+                range.payment(),
+                closing,
+                PageResponse.from(new PageImpl<>(lines, rows.getPageable(), rows.getTotalElements())));
+    }
+
+    private BigDecimal net(Long accountId, LocalDate startDate, LocalDate endDate) {
+        return totals(accountId, startDate, endDate).net();
+    }
+
+    /**
+     * 区间内的收款/付款合计：已汇总的每日合计 + 尚未汇总的变动。
+     */
+    private Totals totals(Long accountId, LocalDate startDate, LocalDate endDate) {
+        return Totals.of(accountRepository.sumDaily(accountId, startDate, endDate))
+                .plus(Totals.of(accountRepository.sumUnrolled(accountId, startDate, endDate)));
+    }
+
+    private static BigDecimal safeMoney(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+
+    private record Totals(BigDecimal receipt, BigDecimal payment) {
+        static Totals of(FinAmountTotalsRow row) {
+            return row == null ? new Totals(BigDecimal.ZERO, BigDecimal.ZERO)
+                    : new Totals(safeMoney(row.getReceiptAmount()), safeMoney(row.getPaymentAmount()));
+        }
+
+        Totals plus(Totals o) {
+            return new Totals(receipt.add(o.receipt), payment.add(o.payment));
+        }
+
+        BigDecimal net() {
+            return receipt.subtract(payment);
+        }
+    }
+}
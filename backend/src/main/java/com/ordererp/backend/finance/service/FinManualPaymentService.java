@@ -1,5 +1,6 @@
 package com.ordererp.backend.finance.service;
 
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
 import com.ordererp.backend.finance.dto.FinManualPaymentCreateRequest;
 import com.ordererp.backend.finance.dto.FinManualPaymentResponse;
 import com.ordererp.backend.finance.entity.FinManualPayment;
@@ -7,7 +8,6 @@ import com.ordererp.backend.finance.repository.FinManualPaymentRepository;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
@@ -22,10 +22,13 @@ public class FinManualPaymentService {
 
     private final FinManualPaymentRepository manualRepository;
     private final FinPaymentService paymentService;
+    private final DocNumberAllocator docNumbers;
 
-    public FinManualPaymentService(FinManualPaymentRepository manualRepository, FinPaymentService paymentService) {
+    public FinManualPaymentService(FinManualPaymentRepository manualRepository, FinPaymentService paymentService,
+            DocNumberAllocator docNumbers) {
         this.manualRepository = manualRepository;
         this.paymentService = paymentService;
+        this.docNumbers = docNumbers;
     }
 
     @Transactional
@@ -134,10 +137,8 @@ public class FinManualPaymentService {
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateManualNo(int type) {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return (type == FinPaymentService.TYPE_RECEIPT ? "MREC" : "MPAY") + ts + "-" + rand;
+    private String generateManualNo(int type) {
+        return docNumbers.next(type == FinPaymentService.TYPE_RECEIPT ? "MREC" : "MPAY");
     }
 }
 
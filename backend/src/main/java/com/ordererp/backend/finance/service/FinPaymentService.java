@@ -1,9 +1,11 @@
 package com.ordererp.backend.finance.service;
 
+import com.ordererp.backend.common.metrics.DocTransitionMetrics;
 import com.ordererp.backend.finance.entity.FinAccount;
 import com.ordererp.backend.finance.entity.FinPayment;
 import com.ordererp.backend.finance.repository.FinAccountRepository;
 import com.ordererp.backend.finance.repository.FinPaymentRepository;
+import com.ordererp.backend.ledger.LedgerOutbox;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -32,11 +34,19 @@ public class FinPaymentService {
     private final FinAccountRepository accountRepository;
     private final FinPaymentRepository paymentRepository;
     private final FinAccountService accountService;
+    private final FinAccountBalanceEngine balanceEngine;
+    private final DocTransitionMetrics transitionMetrics;
+    private final LedgerOutbox ledgerOutbox;
 
-    public FinPaymentService(FinAccountRepository accountRepository, FinPaymentRepository paymentRepository, FinAccountService accountService) {
+    public FinPaymentService(FinAccountRepository accountRepository, FinPaymentRepository paymentRepository,
+            FinAccountService accountService, FinAccountBalanceEngine balanceEngine,
+            DocTransitionMetrics transitionMetrics, LedgerOutbox ledgerOutbox) {
         this.accountRepository = accountRepository;
         this.paymentRepository = paymentRepository;
         this.accountService = accountService;
+        this.balanceEngine = balanceEngine;
+        this.transitionMetrics = transitionMetrics;
+        this.ledgerOutbox = ledgerOutbox;
     }
 
     @Transactional
@@ -52,6 +62,22 @@ public class FinPaymentService {
             String method,
             String remark,
             String operator) {
+        return transitionMetrics.record("fin_payment", "record", () -> doRecordPayment(payNo, type, partnerId,
+                accountId, amount, bizType, bizId, bizNo, payDate, method, remark, operator));
+    }
+
+    private FinPayment doRecordPayment(String payNo,
+            int type,
+            Long partnerId,
+            Long accountId,
+            BigDecimal amount,
+            int bizType,
+            Long bizId,
+            String bizNo,
+            LocalDate payDate,
+            String method,
+            String remark,
+            String operator) {
         if (payNo == null || payNo.isBlank()) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "payNo is required");
         if (bizId == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bizId is required");
         if (partnerId == null && !isPartnerOptionalBizType(bizType)) {
@@ -78,7 +104,8 @@ public class FinPaymentService {
             actualAccountId = accountService.requireDefaultAccount().getId();
         }
 
-        FinAccount account = accountRepository.findByIdForUpdate(actualAccountId)
+        // 不锁账户行：余额由 FinAccountBalanceEngine 按槽位增减，账户状态只做普通读取校验
+        FinAccount account = accountRepository.findById(actualAccountId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "资金账户不存在"));
         if (account.getDeleted() != null && account.getDeleted() != 0) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "资金账户已删除");
@@ -87,14 +114,6 @@ public class FinPaymentService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "资金账户未启用");
         }
 
-        BigDecimal bal = safeMoney(account.getBalance());
-        BigDecimal newBal = type == TYPE_RECEIPT ? bal.add(amt) : bal.subtract(amt);
-        if (type == TYPE_PAYMENT && newBal.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "资金账户余额不足，当前余额：" + bal);
-        }
-        account.setBalance(newBal);
-        accountRepository.save(account);
-
         LocalDateTime now = LocalDateTime.now();
         FinPayment p = new FinPayment();
         p.setPayNo(trimToNull(payNo));
@@ -111,7 +130,19 @@ public class FinPaymentService {
         p.setStatus(STATUS_COMPLETED);
         p.setCreateBy(trimToNull(operator));
         p.setCreateTime(now);
-        return paymentRepository.saveAndFlush(p);
+        p = paymentRepository.saveAndFlush(p);
+
+        if (type == TYPE_RECEIPT) {
+            balanceEngine.credit(actualAccountId, amt, p);
+        } else if (!balanceEngine.debit(actualAccountId, amt, p)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "资金账户余额不足，当前余额：" + balanceEngine.balanceOf(actualAccountId));
+        }
+        String eventType = ledgerEventType(p.getBizType());
+        if (eventType != null) {
+            ledgerOutbox.publish(eventType, p.getId(), p.getPayNo(), p.getPayDate(), amt, p.getBizNo());
+        }
+        return p;
     }
 
     @Transactional
@@ -124,22 +155,40 @@ public class FinPaymentService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "收付款流水状态不允许作废");
         }
 
-        FinAccount account = accountRepository.findByIdForUpdate(p.getAccountId())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT, "资金账户不存在，无法作废该流水"));
+        if (!accountRepository.existsById(p.getAccountId())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "资金账户不存在，无法作废该流水");
+        }
 
         BigDecimal amt = safeMoney(p.getAmount());
-        BigDecimal bal = safeMoney(account.getBalance());
-        BigDecimal newBal = p.getType() == TYPE_RECEIPT ? bal.subtract(amt) : bal.add(amt);
-        if (newBal.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "资金账户余额异常，无法作废该流水");
+        if (p.getType() == TYPE_RECEIPT) {
+            if (!balanceEngine.debit(p.getAccountId(), amt, p)) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "资金账户余额异常，无法作废该流水");
+            }
+        } else {
+            balanceEngine.credit(p.getAccountId(), amt, p);
         }
-        account.setBalance(newBal);
-        accountRepository.save(account);
 
         p.setStatus(STATUS_CANCELED);
         p.setCancelBy(trimToNull(operator));
         p.setCancelTime(LocalDateTime.now());
         paymentRepository.save(p);
+        // 作废：按作废日冲销原凭证
+        String eventType = ledgerEventType(p.getBizType());
+        if (eventType != null) {
+            ledgerOutbox.reverse(eventType, p.getId(), p.getPayNo(), LocalDate.now(), "作废 " + p.getPayNo());
+        }
+    }
+
+    /**
+     * 应收收款 / 应付付款写入记账发件箱；调拨与手工收付款不自动记账。
+     */
+    private static String ledgerEventType(Integer bizType) {
+        if (bizType == null) return null;
+        return switch (bizType) {
+            case BIZ_TYPE_SALES_AR_RECEIPT -> LedgerOutbox.AR_RECEIPT;
+            case BIZ_TYPE_PURCHASE_AP_PAYMENT -> LedgerOutbox.AP_PAYMENT;
+            default -> null;
+        };
     }
 
     private static BigDecimal safeMoney(BigDecimal v) {
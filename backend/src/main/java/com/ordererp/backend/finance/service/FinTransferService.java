@@ -1,5 +1,6 @@
 package com.ordererp.backend.finance.service;
 
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
 import com.ordererp.backend.finance.dto.FinTransferCreateRequest;
 import com.ordererp.backend.finance.dto.FinTransferResponse;
 import com.ordererp.backend.finance.entity.FinTransfer;
@@ -7,7 +8,6 @@ import com.ordererp.backend.finance.repository.FinTransferRepository;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
@@ -22,10 +22,13 @@ public class FinTransferService {
 
     private final FinTransferRepository transferRepository;
     private final FinPaymentService paymentService;
+    private final DocNumberAllocator docNumbers;
 
-    public FinTransferService(FinTransferRepository transferRepository, FinPaymentService paymentService) {
+    public FinTransferService(FinTransferRepository transferRepository, FinPaymentService paymentService,
+            DocNumberAllocator docNumbers) {
         this.transferRepository = transferRepository;
         this.paymentService = paymentService;
+        this.docNumbers = docNumbers;
     }
 
     @Transactional
@@ -140,16 +143,12 @@ public class FinTransferService {
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateTransferNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "TRF" + ts + "-" + rand;
+    private String generateTransferNo() {
+        return docNumbers.next("TRF");
     }
 
-    private static String generateTransferPayNo(String prefix) {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return prefix + ts + "-" + rand;
+    private String generateTransferPayNo(String prefix) {
+        return docNumbers.next(prefix);
     }
 }
 
@@ -0,0 +1,93 @@
+package com.ordererp.backend.ledger;
+
+import com.ordererp.backend.ledger.dto.LedgerPeriodBalanceResponse;
+import com.ordererp.backend.ledger.dto.LedgerTrialBalanceResponse;
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 科目余额查询：只读 ledger_period_balance（由 {@link LedgerPeriodBalanceUpdater} 维护），不扫描 ledger_entry。
+ */
+@Service
+public class LedgerBalanceService {
+    /** 一次最多查询的月份数（按科目查询时为单个科目，不限科目时为全部科目）。 */
+    private static final int MAX_PERIODS = 120;
+
+    private final LedgerEntryRepository repository;
+
+    public LedgerBalanceService(LedgerEntryRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 月度余额：有发生额的 (科目, 月份) 各一行，期初余额 = 期末余额 - (借方 - 贷方)。
+     */
+    public List<LedgerPeriodBalanceResponse> periodBalances(String accountCode, YearMonth from, YearMonth to) {
+        YearMonth end = to == null ? YearMonth.now() : to;
+        YearMonth start = from == null ? end.withMonth(1) : from;
+        if (start.isAfter(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be <= to");
+        }
+        if (start.plusMonths(MAX_PERIODS).isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "at most " + MAX_PERIODS + " months per query");
+        }
+        String code = accountCode == null || accountCode.isBlank() ? null : accountCode.trim();
+        return repository.periodBalances(code, period(start), period(end)).stream()
+                .map(r -> toResponse(r, true))
+                .toList();
+    }
+
+    /**
+     * 指定月份的试算平衡表：每个科目一行（该月没有发生额的科目沿用最近一个月的期末余额，借贷发生额为 0）。
+     */
+    public LedgerTrialBalanceResponse trialBalance(YearMonth month) {
+        YearMonth target = month == null ? YearMonth.now() : month;
+        int period = period(target);
+        List<LedgerPeriodBalanceResponse> accounts = new ArrayList<>();
+        BigDecimal opening = BigDecimal.ZERO;
+        BigDecimal debit = BigDecimal.ZERO;
+        BigDecimal credit = BigDecimal.ZERO;
+        BigDecimal closing = BigDecimal.ZERO;
+        for (LedgerEntryRepository.PeriodBalanceRow r : repository.latestBalances(period)) {
+            LedgerPeriodBalanceResponse line = toResponse(r, r.getPeriod() != null && r.getPeriod() == period);
+            accounts.add(new LedgerPeriodBalanceResponse(line.getAccountCode(), target, line.getOpeningBalance(),
+                    line.getDebit(), line.getCredit(), line.getClosingBalance(), line.getEntryCount()));
+            opening = opening.add(line.getOpeningBalance());
+            debit = debit.add(line.getDebit());
+            credit = credit.add(line.getCredit());
+            closing = closing.add(line.getClosingBalance());
+        }
+        boolean balanced = debit.compareTo(credit) == 0 && opening.signum() == 0 && closing.signum() == 0;
+        return new LedgerTrialBalanceResponse(target, accounts, opening, debit, credit, closing, balanced);
+    }
+
+    /**
+     * @param inPeriod false 表示该行是更早月份的余额，本期发生额按 0 计
+     */
+    private static LedgerPeriodBalanceResponse toResponse(LedgerEntryRepository.PeriodBalanceRow r,
+            boolean inPeriod) {
+        BigDecimal closing = safeMoney(r.getClosingBalance());
+        BigDecimal debit = inPeriod ? safeMoney(r.getDebitTotal()) : BigDecimal.ZERO;
+        BigDecimal credit = inPeriod ? safeMoney(r.getCreditTotal()) : BigDecimal.ZERO;
+        int count = inPeriod && r.getEntryCount() != null ? r.getEntryCount() : 0;
+        return new LedgerPeriodBalanceResponse(r.getAccountCode(), toYearMonth(r.getPeriod()),
+                closing.subtract(debit.subtract(credit)), debit, credit, closing, count);
+    }
+
+    private static int period(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+
+    private static YearMonth toYearMonth(Integer period) {
+        return period == null ? null : YearMonth.of(period / 100, period % 100);
+    }
+
+    private static BigDecimal safeMoney(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+}
@@ -17,6 +17,10 @@ public class LedgerEntry {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /** 批量过账写入的分录所属凭证（ledger_voucher.id）；单条录入的分录为空。 */
+    @Column(name = "voucher_id", updatable = false)
+    private Long voucherId;
+
     @Column(name = "entry_date", nullable = false)
     private LocalDate entryDate;
 
@@ -39,6 +43,10 @@ public class LedgerEntry {
         return id;
     }
 
+    public Long getVoucherId() {
+        return voucherId;
+    }
+
     public LocalDate getEntryDate() {
         return entryDate;
     }
@@ -2,7 +2,12 @@ package com.ordererp.backend.ledger;
 
 import com.ordererp.backend.ledger.dto.LedgerEntryCreateRequest;
 import com.ordererp.backend.ledger.dto.LedgerEntryResponse;
+import com.ordererp.backend.ledger.dto.LedgerPeriodBalanceResponse;
+import com.ordererp.backend.ledger.dto.LedgerTrialBalanceResponse;
 import jakarta.validation.Valid;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -19,16 +24,33 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/ledger-entries")
 public class LedgerEntryController {
     private final LedgerEntryService service;
+    private final LedgerBalanceService balanceService;
 
-    public LedgerEntryController(LedgerEntryService service) {
+    public LedgerEntryController(LedgerEntryService service, LedgerBalanceService balanceService) {
         this.service = service;
+        this.balanceService = balanceService;
     }
 
     @GetMapping
     public Page<LedgerEntryResponse> page(@RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String accountCode,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate) {
         Pageable pageable = PageRequest.of(page, size);
-        return service.page(pageable).map(LedgerEntryController::toResponse);
+        return service.page(accountCode, startDate, endDate, pageable).map(LedgerEntryController::toResponse);
+    }
+
+    @GetMapping("/balances")
+    public List<LedgerPeriodBalanceResponse> balances(@RequestParam(required = false) String accountCode,
+            @RequestParam(required = false) YearMonth from,
+            @RequestParam(required = false) YearMonth to) {
+        return balanceService.periodBalances(accountCode, from, to);
+    }
+
+    @GetMapping("/trial-balance")
+    public LedgerTrialBalanceResponse trialBalance(@RequestParam(required = false) YearMonth period) {
+        return balanceService.trialBalance(period);
     }
 
     @GetMapping("/{id}")
@@ -49,6 +71,7 @@ public class LedgerEntryController {
     private static LedgerEntryResponse toResponse(LedgerEntry entry) {
         return new LedgerEntryResponse(
                 entry.getId(),
+                entry.getVoucherId(),
                 entry.getEntryDate(),
                 entry.getAccountCode(),
                 entry.getDescription(),
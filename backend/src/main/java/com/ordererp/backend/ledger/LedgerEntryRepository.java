@@ -1,7 +1,81 @@
 package com.ordererp.backend.ledger;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
-}
+    @Query("""
+            select e from LedgerEntry e
+            where (:accountCode is null or e.accountCode = :accountCode)
+              and (:startDate is null or e.entryDate >= :startDate)
+              and (:endDate is null or e.entryDate <= :endDate)
+            order by e.entryDate desc, e.id desc
+            """)
+    Page<LedgerEntry> search(@Param("accountCode") String accountCode,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            Pageable pageable);
+
+    /**
+     * 月度余额行（ledger_period_balance），按科目、月份升序。
+     */
+    @Query(value = """
+            select
+              b.account_code as accountCode,
+              b.period as period,
+              b.debit_total as debitTotal,
+              b.credit_total as creditTotal,
+              b.closing_balance as closingBalance,
+              b.entry_count as entryCount
+            from ledger_period_balance b
+            where (:accountCode is null or b.account_code = :accountCode)
+              and b.period >= :fromPeriod
+              and b.period <= :toPeriod
+            order by b.account_code asc, b.period asc
+            """, nativeQuery = true)
+    List<PeriodBalanceRow> periodBalances(@Param("accountCode") String accountCode,
+            @Param("fromPeriod") int fromPeriod,
+            @Param("toPeriod") int toPeriod);
+
+    /**
+     * 每个科目截至指定月份的最近一行月度余额（该月没有发生额时取更早的月份，期末余额沿用）。
+     */
+    @Query(value = """
+            select
+              b.account_code as accountCode,
+              b.period as period,
+              b.debit_total as debitTotal,
+              b.credit_total as creditTotal,
+              b.closing_balance as closingBalance,
+              b.entry_count as entryCount
+            from ledger_period_balance b
+            join (
+              select account_code, max(period) as period
+              from ledger_period_balance
+              where period <= :period
+              group by account_code
+            ) last on last.account_code = b.account_code and last.period = b.period
+            order by b.account_code asc
+            """, nativeQuery = true)
+    List<PeriodBalanceRow> latestBalances(@Param("period") int period);
+
+    interface PeriodBalanceRow {
+        String getAccountCode();
+
+        Integer getPeriod();
 
+        BigDecimal getDebitTotal();
+
+        BigDecimal getCreditTotal();
+
+        BigDecimal getClosingBalance();
+
+        Integer getEntryCount();
+    }
+}
@@ -3,22 +3,29 @@ package com.ordererp.backend.ledger;
 import com.ordererp.backend.ledger.dto.LedgerEntryCreateRequest;
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.LocalDate;
 import org.springframework.lang.NonNull;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
 @Service
 public class LedgerEntryService {
     private final LedgerEntryRepository repository;
+    private final LedgerPeriodBalanceUpdater balanceUpdater;
 
-    public LedgerEntryService(LedgerEntryRepository repository) {
+    public LedgerEntryService(LedgerEntryRepository repository, LedgerPeriodBalanceUpdater balanceUpdater) {
         this.repository = repository;
+        this.balanceUpdater = balanceUpdater;
     }
 
-    public Page<LedgerEntry> page(@NonNull Pageable pageable) {
-        return repository.findAll(pageable);
+    public Page<LedgerEntry> page(String accountCode, LocalDate startDate, LocalDate endDate,
+            @NonNull Pageable pageable) {
+        String code = accountCode == null || accountCode.isBlank() ? null : accountCode.trim();
+        return repository.search(code, startDate, endDate, pageable);
     }
 
     public LedgerEntry get(@NonNull Long id) {
@@ -34,12 +41,21 @@ public class LedgerEntryService {
         entry.setDebit(nonNull(request.getDebit()));
         entry.setCredit(nonNull(request.getCredit()));
         entry.setCreatedAt(Instant.now());
-        return repository.save(entry);
+        entry = repository.save(entry);
+        balanceUpdater.entryCreated(entry);
+        return entry;
     }
 
     @Transactional
     public void delete(@NonNull Long id) {
-        repository.deleteById(id);
+        repository.findById(id).ifPresent(entry -> {
+            if (entry.getVoucherId() != null) {
+                // 单独删除一行会让凭证借贷不平衡
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "凭证分录不能单独删除");
+            }
+            repository.delete(entry);
+            balanceUpdater.entryDeleted(entry);
+        });
     }
 
     private static BigDecimal nonNull(BigDecimal value) {
@@ -0,0 +1,88 @@
+package com.ordererp.backend.ledger;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 业务事件发件箱（ledger_outbox_event）：在业务事务内记一行事件，由 {@link LedgerOutboxRelay} 异步转成凭证。
+ *
+ * <p>必须在业务事务内调用：事件与单据一起提交或回滚，不会出现“单据成功、账上没有”或反过来的情况。
+ * 金额带符号，负数表示冲销，转发时借贷方向对调。金额为 0 的事件不记。
+ * 冲销（{@link #reverse}）不重新计价，直接取同一单据此前事件金额合计的相反数。</p>
+ *
+ * <p>系统没有存货计价，出库类成本（{@link #STOCK_OUT}、{@link #SALES_COST}、{@link #SALES_RETURN_COST}）
+ * 一律按商品当前采购价 × 数量估算；采购入库/退货按单据单价计。</p>
+ */
+@Component
+public class LedgerOutbox {
+    public static final String STOCK_OUT = "STOCK_OUT";
+    public static final String PURCHASE_IN = "PURCHASE_IN";
+    public static final String SALES_SHIP = "SALES_SHIP";
+    public static final String SALES_COST = "SALES_COST";
+    public static final String SALES_RETURN = "SALES_RETURN";
+    public static final String SALES_RETURN_COST = "SALES_RETURN_COST";
+    public static final String PURCHASE_RETURN = "PURCHASE_RETURN";
+    public static final String AR_RECEIPT = "AR_RECEIPT";
+    public static final String AP_PAYMENT = "AP_PAYMENT";
+
+    private static final String INSERT_SQL = """
+            insert into ledger_outbox_event (event_type, biz_id, biz_no, event_date, amount, remark, status, create_time)
+            values (?, ?, ?, ?, ?, ?, 0, ?)
+            """;
+
+    private static final String REVERSE_SQL = """
+            insert into ledger_outbox_event (event_type, biz_id, biz_no, event_date, amount, remark, status, create_time)
+            select ?, ?, ?, ?, -sum(amount), ?, 0, ?
+            from ledger_outbox_event
+            where event_type = ? and biz_id = ?
+            having sum(amount) <> 0
+            """;
+
+    private static final int MAX_REMARK_LENGTH = 255;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LedgerOutbox(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void publish(String eventType, Long bizId, String bizNo, LocalDate eventDate, BigDecimal amount,
+            String remark) {
+        requireTransaction();
+        BigDecimal amt = amount == null ? BigDecimal.ZERO : amount.setScale(2, RoundingMode.HALF_UP);
+        if (amt.signum() == 0) return;
+        jdbcTemplate.update(INSERT_SQL, eventType, bizId, bizNo, dateOf(eventDate), amt, truncate(remark),
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * 冲销同一单据（event_type + biz_id）此前记下的事件：写一条金额为其合计相反数的事件；合计为 0（没有或已冲销）时不写。
+     */
+    public void reverse(String eventType, Long bizId, String bizNo, LocalDate eventDate, String remark) {
+        requireTransaction();
+        if (bizId == null) return;
+        jdbcTemplate.update(REVERSE_SQL, eventType, bizId, bizNo, dateOf(eventDate), truncate(remark),
+                Timestamp.valueOf(LocalDateTime.now()), eventType, bizId);
+    }
+
+    private static void requireTransaction() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("outbox events must be written inside the business transaction");
+        }
+    }
+
+    private static Date dateOf(LocalDate date) {
+        return Date.valueOf(date == null ? LocalDate.now() : date);
+    }
+
+    private static String truncate(String remark) {
+        return remark == null || remark.length() <= MAX_REMARK_LENGTH ? remark : remark.substring(0, MAX_REMARK_LENGTH);
+    }
+}
@@ -0,0 +1,59 @@
+package com.ordererp.backend.ledger;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 发件箱记账规则：事件类型 -> 借方科目 / 贷方科目（app.ledger.outbox.rules）。
+ *
+ * <p>配置里的键用小写中划线（SALES_SHIP 写作 sales-ship）。没有规则或规则停用的事件类型不生成凭证，事件标记为 SKIPPED。</p>
+ */
+@ConfigurationProperties(prefix = "app.ledger.outbox")
+public class LedgerOutboxProperties {
+    private Map<String, Rule> rules = new LinkedHashMap<>();
+
+    public Map<String, Rule> getRules() {
+        return rules;
+    }
+
+    public void setRules(Map<String, Rule> rules) {
+        this.rules = rules;
+    }
+
+    public Rule ruleFor(String eventType) {
+        if (eventType == null) return null;
+        return rules.get(eventType.toLowerCase(Locale.ROOT).replace('_', '-'));
+    }
+
+    public static class Rule {
+        private String debitAccount;
+        private String creditAccount;
+        private boolean enabled = true;
+
+        public String getDebitAccount() {
+            return debitAccount;
+        }
+
+        public void setDebitAccount(String debitAccount) {
+            this.debitAccount = debitAccount;
+        }
+
+        public String getCreditAccount() {
+            return creditAccount;
+        }
+
+        public void setCreditAccount(String creditAccount) {
+            this.creditAccount = creditAccount;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.ordererp.backend.ledger;
+
+import com.ordererp.backend.ledger.dto.LedgerVoucherBatchRequest;
+import com.ordererp.backend.ledger.dto.LedgerVoucherBatchResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 发件箱转发：把 ledger_outbox_event 中待处理的业务事件按记账规则转成凭证（{@link LedgerPostingService}）。
+ *
+ * <p>每批在一个事务内：{@code for update skip locked} 领取一批待处理事件（多实例各领各的）→ 每个事件按
+ * {@link LedgerOutboxProperties} 的规则生成一张两行凭证，整批过账 → 标记事件已处理并记下凭证 id。
+ * 凭证的 externalId 为 "OUTBOX-" + 事件 id，同一事件无论转发几次都只对应一张凭证（已存在时取回已有凭证）。</p>
+ *
+ * <ul>
+ *   <li>没有规则或规则停用：标记 SKIPPED，不生成凭证；</li>
+ *   <li>规则配置错误导致凭证校验不通过：该事件标记 FAILED（记下原因），同批其他事件照常过账；</li>
+ *   <li>整批事务抛异常（例如写余额时数据库报错）：整批回滚后逐条各用一个事务重试，失败的事件在另一个事务里
+ *   记下失败次数（attempts）和原因（last_error），按指数退避推迟下次领取（next_attempt_time），
+ *   失败达到 {@code app.ledger.outbox.max-attempts} 次标记 FAILED；一条坏事件不会卡住后面的事件；</li>
+ *   <li>指标：{@code erp.ledger.outbox.lag}（事件写入到过账的延迟，事务提交后记录）、
+ *   {@code erp.ledger.outbox.oldest.pending.seconds}（最早一条待处理事件的等待秒数）、{@code erp.ledger.outbox.failed}。</li>
+ * </ul>
+ *
+ * <p>转发间隔由 {@code app.ledger.outbox.relay-interval-ms} 控制（默认 5 秒）。</p>
+ */
+@Service
+@EnableConfigurationProperties(LedgerOutboxProperties.class)
+public class LedgerOutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(LedgerOutboxRelay.class);
+
+    static final int STATUS_POSTED = 1;
+    static final int STATUS_SKIPPED = 2;
+    static final int STATUS_FAILED = 3;
+
+    static final String EXTERNAL_ID_PREFIX = "OUTBOX-";
+
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private static final String PENDING_SQL = """
+            select id, event_type, biz_no, event_date, amount, remark, create_time, attempts
+            from ledger_outbox_event
+            where status = 0 and (next_attempt_time is null or next_attempt_time <= ?)
+            order by id
+            limit ?
+            for update skip locked
+            """;
+
+    private static final String CLAIM_ONE_SQL = """
+            select id, event_type, biz_no, event_date, amount, remark, create_time, attempts
+            from ledger_outbox_event
+            where id = ? and status = 0
+            for update skip locked
+            """;
+
+    private static final String MARK_SQL = """
+            update ledger_outbox_event
+            set status = ?, voucher_id = ?, last_error = ?, process_time = ?
+            where id = ?
+            """;
+
+    private static final String RETRY_SQL = """
+            update ledger_outbox_event
+            set status = ?, attempts = ?, last_error = ?, next_attempt_time = ?, process_time = ?
+            where id = ? and status = 0
+            """;
+
+    private static final String OLDEST_PENDING_SQL = """
+            select min(create_time) from ledger_outbox_event where status = 0
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate txTemplate;
+    private final LedgerPostingService postingService;
+    private final LedgerOutboxProperties properties;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final Timer lagTimer;
+    private final Counter failedCounter;
+    private final AtomicLong oldestPendingSeconds = new AtomicLong();
+
+    public LedgerOutboxRelay(JdbcTemplate jdbcTemplate, PlatformTransactionManager txManager,
+            LedgerPostingService postingService, LedgerOutboxProperties properties, MeterRegistry meterRegistry,
+            @Value("${app.ledger.outbox.batch-size:500}") int batchSize,
+            @Value("${app.ledger.outbox.max-attempts:10}") int maxAttempts,
+            @Value("${app.ledger.outbox.retry-backoff-ms:5000}") long retryBackoffMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.postingService = postingService;
+        this.properties = properties;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMs = Math.max(0, retryBackoffMs);
+        this.lagTimer = Timer.builder("erp.ledger.outbox.lag")
+                .description("Delay between a business event being written to the outbox and its voucher being posted")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("erp.ledger.outbox.failed")
+                .description("Outbox events given up on (voucher rejected by validation or retries exhausted)")
+                .register(meterRegistry);
+        Gauge.builder("erp.ledger.outbox.oldest.pending.seconds", oldestPendingSeconds, AtomicLong::get)
+                .description("Age of the oldest outbox event not yet posted (as of the last relay run)")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.ledger.outbox.relay-interval-ms:5000}", initialDelay = 10000)
+    public void scheduledRelay() {
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            log.warn("ledger outbox relay failed", e);
+        }
+    }
+
+    /**
+     * 转发全部待处理事件，返回本次处理的事件数。
+     */
+    public int relay() {
+        long startNanos = System.nanoTime();
+        int total = 0;
+        while (true) {
+            List<Event> claimed = new ArrayList<>();
+            int handled;
+            try {
+                List<Event> posted = txTemplate.execute(status -> relayBatch(claimed));
+                recordLag(posted);
+                handled = claimed.size();
+            } catch (RuntimeException e) {
+                if (claimed.isEmpty()) throw e;
+                log.warn("ledger outbox batch failed, retrying events one by one events={}", claimed.size(), e);
+                handled = relayOneByOne(claimed);
+            }
+            if (handled == 0) break;
+            total += handled;
+            if (handled < batchSize) break;
+        }
+        refreshOldestPending();
+        if (total > 0) {
+            log.info("ledger outbox relay events={} elapsedMs={}", total, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+        return total;
+    }
+
+    /**
+     * 领取一批事件（记入 claimed，供整批失败时逐条重试）并过账，返回过账成功的事件。
+     */
+    private List<Event> relayBatch(List<Event> claimed) {
+        claimed.addAll(jdbcTemplate.query(PENDING_SQL, LedgerOutboxRelay::event, Timestamp.valueOf(LocalDateTime.now()),
+                batchSize));
+        return post(claimed);
+    }
+
+    /**
+     * 整批回滚后逐条重试：每个事件一个事务，失败的在另一个事务里记下失败次数并退避，不影响其他事件。
+     */
+    private int relayOneByOne(List<Event> events) {
+        for (Event e : events) {
+            try {
+                List<Event> posted = txTemplate.execute(status -> {
+                    List<Event> one = jdbcTemplate.query(CLAIM_ONE_SQL, LedgerOutboxRelay::event, e.id());
+                    return post(one);
+                });
+                recordLag(posted);
+            } catch (RuntimeException ex) {
+                recordFailure(e, ex);
+            }
+        }
+        return events.size();
+    }
+
+    private void recordFailure(Event e, RuntimeException ex) {
+        int attempts = e.attempts() + 1;
+        boolean giveUp = attempts >= maxAttempts;
+        LocalDateTime now = LocalDateTime.now();
+        String error = truncate(String.valueOf(NestedExceptionUtils.getMostSpecificCause(ex)), MAX_ERROR_LENGTH);
+        // 退避：retry-backoff-ms × 2^(attempts-1)
+        LocalDateTime nextAttempt = giveUp ? null
+                : now.plus(Duration.ofMillis(retryBackoffMs << Math.min(attempts - 1, 16)));
+        txTemplate.executeWithoutResult(status -> jdbcTemplate.update(RETRY_SQL, giveUp ? STATUS_FAILED : 0,
+                attempts, error, nextAttempt == null ? null : Timestamp.valueOf(nextAttempt), Timestamp.valueOf(now),
+                e.id()));
+        if (giveUp) {
+            failedCounter.increment();
+            log.warn("ledger outbox event failed id={} type={} attempts={}", e.id(), e.eventType(), attempts, ex);
+        } else {
+            log.warn("ledger outbox event retry id={} type={} attempts={} next={} error={}", e.id(), e.eventType(),
+                    attempts, nextAttempt, error);
+        }
+    }
+
+    /**
+     * 在当前事务内把事件转成凭证并标记，返回过账成功的事件（lag 在事务提交后由调用方记录）。
+     */
+    private List<Event> post(List<Event> events) {
+        List<Event> posted = new ArrayList<>(events.size());
+        if (events.isEmpty()) return posted;
+
+        Timestamp processTime = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> marks = new ArrayList<>(events.size());
+        List<Event> postable = new ArrayList<>(events.size());
+        List<LedgerVoucherBatchRequest.Voucher> vouchers = new ArrayList<>(events.size());
+        for (Event e : events) {
+            LedgerOutboxProperties.Rule rule = properties.ruleFor(e.eventType());
+            if (rule == null || !rule.isEnabled() || isBlank(rule.getDebitAccount()) || isBlank(rule.getCreditAccount())) {
+                marks.add(new Object[] { STATUS_SKIPPED, null, "no posting rule for " + e.eventType(), processTime,
+                        e.id() });
+                continue;
+            }
+            postable.add(e);
+            vouchers.add(toVoucher(e, rule));
+        }
+
+        // 整批模式：有凭证不合法时整批不写，剔除后重来（只可能是规则配置错误，例如科目过长）
+        while (!postable.isEmpty()) {
+            LedgerVoucherBatchRequest request = new LedgerVoucherBatchRequest();
+            request.setAtomic(true);
+            request.setVouchers(vouchers);
+            LedgerVoucherBatchResponse response = postingService.post(request);
+            List<LedgerVoucherBatchResponse.Result> results = response.getResults();
+            if (response.getRejected() == 0) {
+                for (int i = 0; i < postable.size(); i++) {
+                    Event e = postable.get(i);
+                    marks.add(new Object[] { STATUS_POSTED, results.get(i).getVoucherId(), null, processTime, e.id() });
+                    posted.add(e);
+                }
+                break;
+            }
+            List<Event> retryEvents = new ArrayList<>(postable.size());
+            List<LedgerVoucherBatchRequest.Voucher> retryVouchers = new ArrayList<>(postable.size());
+            for (int i = 0; i < postable.size(); i++) {
+                LedgerVoucherBatchResponse.Result r = results.get(i);
+                Event e = postable.get(i);
+                if (LedgerVoucherBatchResponse.REJECTED.equals(r.getStatus())) {
+                    log.warn("ledger outbox event rejected id={} type={} errors={}", e.id(), e.eventType(), r.getErrors());
+                    failedCounter.increment();
+                    marks.add(new Object[] { STATUS_FAILED, null, truncate(String.join("; ", r.getErrors()),
+                            MAX_ERROR_LENGTH), processTime, e.id() });
+                } else {
+                    retryEvents.add(e);
+                    retryVouchers.add(vouchers.get(i));
+                }
+            }
+            postable = retryEvents;
+            vouchers = retryVouchers;
+        }
+
+        jdbcTemplate.batchUpdate(MARK_SQL, marks);
+        return posted;
+    }
+
+    private void recordLag(List<Event> posted) {
+        if (posted == null) return;
+        LocalDateTime now = LocalDateTime.now();
+        for (Event e : posted) {
+            if (e.createTime() != null) lagTimer.record(Duration.between(e.createTime(), now));
+        }
+    }
+
+    private static LedgerVoucherBatchRequest.Voucher toVoucher(Event e, LedgerOutboxProperties.Rule rule) {
+        // 负数金额为冲销：借贷方向对调
+        boolean reversal = e.amount().signum() < 0;
+        BigDecimal amount = e.amount().abs();
+        String debitAccount = reversal ? rule.getCreditAccount() : rule.getDebitAccount();
+        String creditAccount = reversal ? rule.getDebitAccount() : rule.getCreditAccount();
+
+        LedgerVoucherBatchRequest.Voucher v = new LedgerVoucherBatchRequest.Voucher();
+        v.setExternalId(EXTERNAL_ID_PREFIX + e.id());
+        v.setVoucherDate(e.eventDate());
+        String description = e.eventType() + (e.bizNo() == null ? "" : " " + e.bizNo())
+                + (e.remark() == null ? "" : " " + e.remark());
+        v.setDescription(truncate(description, MAX_TEXT_LENGTH));
+        v.setLines(List.of(
+                new LedgerVoucherBatchRequest.Line(debitAccount.trim(), e.bizNo(), amount, BigDecimal.ZERO),
+                new LedgerVoucherBatchRequest.Line(creditAccount.trim(), e.bizNo(), BigDecimal.ZERO, amount)));
+        return v;
+    }
+
+    private static Event event(ResultSet rs, int rowNum) throws SQLException {
+        return new Event(
+                rs.getLong(1),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getObject(4, LocalDate.class),
+                rs.getBigDecimal(5),
+                rs.getString(6),
+                rs.getObject(7, LocalDateTime.class),
+                rs.getInt(8));
+    }
+
+    private void refreshOldestPending() {
+        LocalDateTime oldest = jdbcTemplate.queryForObject(OLDEST_PENDING_SQL, LocalDateTime.class);
+        oldestPendingSeconds.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).getSeconds()));
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    private static String truncate(String s, int max) {
+        return s == null || s.length() <= max ? s : s.substring(0, max);
+    }
+
+    private record Event(long id, String eventType, String bizNo, LocalDate eventDate, BigDecimal amount, String remark,
+            LocalDateTime createTime, int attempts) {
+    }
+}
@@ -0,0 +1,162 @@
+package com.ordererp.backend.ledger;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 科目月度余额维护：把分录新增/删除引起的借贷差额累加到 ledger_period_balance。
+ *
+ * <p>差额先在事务内按 (科目, 月份) 合并，提交前按科目、月份升序写入（与 SalCreditExposureUpdater 同样的做法）：
+ * 一次批量过账只写每个 (科目, 月份) 一次，不同事务的加锁顺序也一致。没有活动事务时直接写入。</p>
+ *
+ * <p>写入一个 (科目, 月份)：锁住该科目此前最近一个月的余额行，取其期末余额作为新行的初值（行不存在时）；
+ * 再把本月借贷发生额加到本月行、把净额加到本月及以后各月的期末余额。补录以前月份的分录时，以后各月都会更新。</p>
+ */
+@Component
+public class LedgerPeriodBalanceUpdater {
+    private static final String PREVIOUS_CLOSING_SQL = """
+            select closing_balance
+            from ledger_period_balance
+            where account_code = ? and period < ?
+            order by period desc
+            limit 1
+            for update
+            """;
+
+    private static final String ENSURE_ROW_SQL = """
+            insert into ledger_period_balance (account_code, period, closing_balance, update_time)
+            values (?, ?, ?, ?)
+            on duplicate key update update_time = values(update_time)
+            """;
+
+    private static final String APPLY_SQL = """
+            update ledger_period_balance
+            set debit_total = debit_total + if(period = ?, ?, 0.00),
+                credit_total = credit_total + if(period = ?, ?, 0.00),
+                entry_count = entry_count + if(period = ?, ?, 0),
+                closing_balance = closing_balance + ?
+            where account_code = ? and period >= ?
+            """;
+
+    /** 排在默认顺序之前执行 beforeCommit。 */
+    private static final int SYNCHRONIZATION_ORDER = 0;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LedgerPeriodBalanceUpdater(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public static int periodOf(LocalDate date) {
+        return date.getYear() * 100 + date.getMonthValue();
+    }
+
+    public void entryCreated(LedgerEntry entry) {
+        add(entry.getAccountCode(), entry.getEntryDate(), new Delta(entry.getDebit(), entry.getCredit(), 1));
+    }
+
+    public void entryDeleted(LedgerEntry entry) {
+        add(entry.getAccountCode(), entry.getEntryDate(),
+                new Delta(safeMoney(entry.getDebit()).negate(), safeMoney(entry.getCredit()).negate(), -1));
+    }
+
+    /**
+     * 记录一个 (科目, 日期) 上的借贷变化。
+     */
+    public void add(String accountCode, LocalDate entryDate, Delta delta) {
+        if (accountCode == null || entryDate == null || delta == null || delta.isZero()) return;
+        Key key = new Key(accountCode, periodOf(entryDate));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(new TreeMap<>(Map.of(key, delta)));
+            return;
+        }
+        pending().merge(key, delta, Delta::plus);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Key, Delta> pending() {
+        Map<Key, Delta> pending = (Map<Key, Delta>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<Key, Delta> created = new TreeMap<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public int getOrder() {
+                    return SYNCHRONIZATION_ORDER;
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    write(created);
+                    created.clear();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(LedgerPeriodBalanceUpdater.this);
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+
+    private void write(Map<Key, Delta> byKey) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        // TreeMap：按科目、月份升序写入
+        for (Map.Entry<Key, Delta> e : byKey.entrySet()) {
+            Key k = e.getKey();
+            Delta d = e.getValue();
+            if (d.isZero()) continue;
+            List<BigDecimal> previous = jdbcTemplate.queryForList(PREVIOUS_CLOSING_SQL, BigDecimal.class,
+                    k.accountCode(), k.period());
+            BigDecimal opening = previous.isEmpty() ? BigDecimal.ZERO : safeMoney(previous.get(0));
+            jdbcTemplate.update(ENSURE_ROW_SQL, k.accountCode(), k.period(), opening, now);
+            jdbcTemplate.update(APPLY_SQL,
+                    k.period(), d.debit(),
+                    k.period(), d.credit(),
+                    k.period(), d.count(),
+                    d.debit().subtract(d.credit()),
+                    k.accountCode(), k.period());
+        }
+    }
+
+    private static BigDecimal safeMoney(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+
+    private record Key(String accountCode, int period) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key o) {
+            int c = accountCode.compareTo(o.accountCode);
+            return c != 0 ? c : Integer.compare(period, o.period);
+        }
+    }
+
+    /**
+     * 借方/贷方发生额与分录条数的变化。
+     */
+    public record Delta(BigDecimal debit, BigDecimal credit, int count) {
+        public Delta {
+            debit = safeMoney(debit);
+            credit = safeMoney(credit);
+        }
+
+        Delta plus(Delta o) {
+            return new Delta(debit.add(o.debit), credit.add(o.credit), count + o.count);
+        }
+
+        boolean isZero() {
+            return debit.signum() == 0 && credit.signum() == 0 && count == 0;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.ordererp.backend.ledger;
+
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import com.ordererp.backend.ledger.dto.LedgerVoucherBatchRequest;
+import com.ordererp.backend.ledger.dto.LedgerVoucherBatchResponse;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 凭证批量过账：一次请求接收大量凭证，一次遍历完成校验，再用 JDBC 批量写入凭证头与分录。
+ *
+ * <ul>
+ *   <li>校验：每张凭证至少两行；每行只有借方或贷方一方有金额、非负、最多两位小数；借贷合计相等且大于 0；
+ *   同一请求内 externalId 不重复。</li>
+ *   <li>凭证 id：每块一次从 sys_doc_sequence 领取连续一段（{@link DocNumberAllocator#reserve}），
+ *   凭证号由 id 推出，批量 insert 后不必回读就能逐张返回；分录用自增 id 批量写入。</li>
+ *   <li>科目月度余额：分录的借贷发生额交给 {@link LedgerPeriodBalanceUpdater}，按 (科目, 月份) 合并后在提交前写一次。</li>
+ *   <li>幂等：带 externalId 的凭证先查已有凭证，已过账的返回 DUPLICATE；并发提交同一 externalId 由唯一键兜底。</li>
+ * </ul>
+ *
+ * <p>两种模式：atomic = true 时任一凭证不合法则整批不写，否则所有凭证在一个事务内写入；
+ * atomic = false 时按 {@code app.ledger.posting.chunk-lines} 行一块分块提交，某块写入失败只影响该块的凭证（FAILED，可重试）。
+ * 在外层事务中调用时（如 outbox 转发），整批模式加入外层事务。</p>
+ */
+@Service
+public class LedgerPostingService {
+    private static final Logger log = LoggerFactory.getLogger(LedgerPostingService.class);
+
+    /** sys_doc_sequence 中凭证 id 的序列名。 */
+    static final String VOUCHER_SEQUENCE = "LEDGER_VOUCHER";
+    private static final String VOUCHER_PREFIX = "JV";
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final int MAX_ACCOUNT_CODE_LENGTH = 64;
+    private static final int MAX_DESCRIPTION_LENGTH = 255;
+    private static final int MAX_EXTERNAL_ID_LENGTH = 128;
+    /** decimal(19, 2) 的整数部分最多 17 位。 */
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal("1E17");
+    /** 每张凭证最多返回的错误条数。 */
+    private static final int MAX_ERRORS = 10;
+
+    private static final String EXISTING_SQL = """
+            select id, voucher_no, external_id
+            from ledger_voucher
+            where external_id in (:externalIds)
+            """;
+
+    private static final String INSERT_VOUCHER_SQL = """
+            insert into ledger_voucher
+              (id, voucher_no, voucher_date, description, external_id, line_count, debit_total, created_at)
+            values (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_LINE_SQL = """
+            insert into ledger_entry (voucher_id, entry_date, account_code, description, debit, credit, created_at)
+            values (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate txTemplate;
+    private final DocNumberAllocator docNumbers;
+    private final LedgerPeriodBalanceUpdater balanceUpdater;
+    private final int chunkLines;
+    private final int maxLines;
+
+    public LedgerPostingService(JdbcTemplate jdbcTemplate, PlatformTransactionManager txManager,
+            DocNumberAllocator docNumbers, LedgerPeriodBalanceUpdater balanceUpdater,
+            @Value("${app.ledger.posting.chunk-lines:5000}") int chunkLines,
+            @Value("${app.ledger.posting.max-lines:100000}") int maxLines) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.docNumbers = docNumbers;
+        this.balanceUpdater = balanceUpdater;
+        this.chunkLines = Math.max(1, chunkLines);
+        this.maxLines = Math.max(1, maxLines);
+    }
+
+    public LedgerVoucherBatchResponse post(LedgerVoucherBatchRequest request) {
+        long startNanos = System.nanoTime();
+        List<LedgerVoucherBatchRequest.Voucher> vouchers = request == null ? null : request.getVouchers();
+        if (vouchers == null || vouchers.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "vouchers is required");
+        }
+        long requestLines = 0;
+        for (LedgerVoucherBatchRequest.Voucher v : vouchers) {
+            requestLines += v == null || v.getLines() == null ? 0 : v.getLines().size();
+        }
+        if (requestLines > maxLines) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "单次最多过账 " + maxLines + " 行分录");
+        }
+
+        LedgerVoucherBatchResponse.Result[] results = new LedgerVoucherBatchResponse.Result[vouchers.size()];
+        List<Prepared> valid = new ArrayList<>(vouchers.size());
+        Set<String> externalIds = new HashSet<>();
+        for (int i = 0; i < vouchers.size(); i++) {
+            LedgerVoucherBatchRequest.Voucher v = vouchers.get(i);
+            String externalId = v == null ? null : trimToNull(v.getExternalId());
+            List<String> errors = new ArrayList<>();
+            Prepared prepared = validate(i, v, externalId, externalIds, errors);
+            if (prepared == null) {
+                results[i] = new LedgerVoucherBatchResponse.Result(i, externalId,
+                        LedgerVoucherBatchResponse.REJECTED, null, null, errors);
+            } else {
+                valid.add(prepared);
+            }
+        }
+
+        boolean atomic = request.isAtomic();
+        if (atomic && valid.size() < vouchers.size()) {
+            for (Prepared p : valid) {
+                results[p.index()] = new LedgerVoucherBatchResponse.Result(p.index(), p.externalId(),
+                        LedgerVoucherBatchResponse.SKIPPED, null, null, List.of());
+            }
+        } else if (atomic) {
+            try {
+                apply(results, txTemplate.execute(status -> postChunk(valid)));
+            } catch (DataIntegrityViolationException e) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "凭证重复提交（externalId 冲突），请重试", e);
+            }
+        } else {
+            for (List<Prepared> chunk : chunks(valid)) {
+                try {
+                    apply(results, txTemplate.execute(status -> postChunk(chunk)));
+                } catch (DataAccessException e) {
+                    log.warn("ledger voucher chunk failed vouchers={} firstIndex={}", chunk.size(),
+                            chunk.get(0).index(), e);
+                    String reason = e instanceof DataIntegrityViolationException
+                            ? "externalId 冲突（并发提交），可重试"
+                            : "写入失败，可重试";
+                    for (Prepared p : chunk) {
+                        results[p.index()] = new LedgerVoucherBatchResponse.Result(p.index(), p.externalId(),
+                                LedgerVoucherBatchResponse.FAILED, null, null, List.of(reason));
+                    }
+                }
+            }
+        }
+
+        int posted = 0;
+        int duplicates = 0;
+        int rejected = 0;
+        int failed = 0;
+        long lineCount = 0;
+        for (LedgerVoucherBatchResponse.Result r : results) {
+            switch (r.getStatus()) {
+                case LedgerVoucherBatchResponse.POSTED -> {
+                    posted++;
+                    lineCount += vouchers.get(r.getIndex()).getLines().size();
+                }
+                case LedgerVoucherBatchResponse.DUPLICATE -> duplicates++;
+                case LedgerVoucherBatchResponse.REJECTED -> rejected++;
+                case LedgerVoucherBatchResponse.FAILED -> failed++;
+                default -> {
+                    // SKIPPED
+                }
+            }
+        }
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        log.info("ledger voucher batch vouchers={} posted={} duplicates={} rejected={} failed={} lines={} elapsedMs={}",
+                vouchers.size(), posted, duplicates, rejected, failed, lineCount, elapsedMs);
+        return new LedgerVoucherBatchResponse(posted, duplicates, rejected, failed, lineCount, elapsedMs,
+                List.of(results));
+    }
+
+    /**
+     * 校验一张凭证；不合法时把原因写入 errors 并返回 null。
+     */
+    private static Prepared validate(int index, LedgerVoucherBatchRequest.Voucher v, String externalId,
+            Set<String> externalIds, List<String> errors) {
+        if (v == null) {
+            errors.add("凭证不能为空");
+            return null;
+        }
+        if (v.getVoucherDate() == null) errors.add("凭证日期不能为空");
+        if (v.getDescription() != null && v.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+            errors.add("摘要不能超过 " + MAX_DESCRIPTION_LENGTH + " 个字符");
+        }
+        if (externalId != null) {
+            if (externalId.length() > MAX_EXTERNAL_ID_LENGTH) {
+                errors.add("externalId 不能超过 " + MAX_EXTERNAL_ID_LENGTH + " 个字符");
+            } else if (!externalIds.add(externalId)) {
+                errors.add("externalId 在本次请求中重复：" + externalId);
+            }
+        }
+        List<LedgerVoucherBatchRequest.Line> lines = v.getLines();
+        if (lines == null || lines.size() < 2) {
+            errors.add("凭证至少需要两行分录");
+            return null;
+        }
+
+        BigDecimal debitTotal = BigDecimal.ZERO;
+        BigDecimal creditTotal = BigDecimal.ZERO;
+        List<Line> prepared = new ArrayList<>(lines.size());
+        for (int j = 0; j < lines.size() && errors.size() < MAX_ERRORS; j++) {
+            LedgerVoucherBatchRequest.Line line = lines.get(j);
+            String at = "第 " + (j + 1) + " 行：";
+            if (line == null) {
+                errors.add(at + "分录不能为空");
+                continue;
+            }
+            String accountCode = trimToNull(line.getAccountCode());
+            if (accountCode == null) {
+                errors.add(at + "科目不能为空");
+            } else if (accountCode.length() > MAX_ACCOUNT_CODE_LENGTH) {
+                errors.add(at + "科目不能超过 " + MAX_ACCOUNT_CODE_LENGTH + " 个字符");
+            }
+            if (line.getDescription() != null && line.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+                errors.add(at + "摘要不能超过 " + MAX_DESCRIPTION_LENGTH + " 个字符");
+            }
+            BigDecimal debit = line.getDebit() == null ? BigDecimal.ZERO : line.getDebit();
+            BigDecimal credit = line.getCredit() == null ? BigDecimal.ZERO : line.getCredit();
+            String amountError = amountError(debit, credit);
+            if (amountError != null) {
+                errors.add(at + amountError);
+                continue;
+            }
+            debitTotal = debitTotal.add(debit);
+            creditTotal = creditTotal.add(credit);
+            prepared.add(new Line(accountCode, line.getDescription(), debit.setScale(2), credit.setScale(2)));
+        }
+        if (errors.isEmpty() && debitTotal.compareTo(creditTotal) != 0) {
+            errors.add("借贷不平衡：借方 " + debitTotal.toPlainString() + "，贷方 " + creditTotal.toPlainString());
+        }
+        if (!errors.isEmpty()) return null;
+        return new Prepared(index, v.getVoucherDate(), trimToNull(v.getDescription()), externalId,
+                debitTotal.setScale(2), prepared);
+    }
+
+    private static String amountError(BigDecimal debit, BigDecimal credit) {
+        if (debit.signum() < 0 || credit.signum() < 0) return "借贷金额不能为负";
+        if ((debit.signum() == 0) == (credit.signum() == 0)) return "借方、贷方必须且只能有一方有金额";
+        BigDecimal amount = debit.signum() != 0 ? debit : credit;
+        if (amount.stripTrailingZeros().scale() > 2) return "金额最多两位小数";
+        if (amount.compareTo(MAX_AMOUNT) >= 0) return "金额超出范围";
+        return null;
+    }
+
+    /**
+     * 按分录行数把合法凭证切成若干块（一张凭证不会跨块）。
+     */
+    private List<List<Prepared>> chunks(List<Prepared> valid) {
+        List<List<Prepared>> chunks = new ArrayList<>();
+        List<Prepared> current = new ArrayList<>();
+        int lines = 0;
+        for (Prepared p : valid) {
+            current.add(p);
+            lines += p.lines().size();
+            if (lines >= chunkLines) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                lines = 0;
+            }
+        }
+        if (!current.isEmpty()) chunks.add(current);
+        return chunks;
+    }
+
+    /**
+     * 在当前事务内写入一块凭证，返回这些凭证的结果（事务提交后才生效）。
+     */
+    private List<LedgerVoucherBatchResponse.Result> postChunk(List<Prepared> chunk) {
+        List<LedgerVoucherBatchResponse.Result> out = new ArrayList<>(chunk.size());
+        if (chunk.isEmpty()) return out;
+
+        Map<String, Existing> existing = existing(chunk);
+        List<Prepared> fresh = new ArrayList<>(chunk.size());
+        for (Prepared p : chunk) {
+            Existing e = p.externalId() == null ? null : existing.get(p.externalId());
+            if (e != null) {
+                out.add(new LedgerVoucherBatchResponse.Result(p.index(), p.externalId(),
+                        LedgerVoucherBatchResponse.DUPLICATE, e.id(), e.voucherNo(), List.of()));
+            } else {
+                fresh.add(p);
+            }
+        }
+        if (fresh.isEmpty()) return out;
+
+        long nextId = docNumbers.reserve(VOUCHER_SEQUENCE, fresh.size());
+        String day = LocalDate.now().format(DAY);
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> voucherRows = new ArrayList<>(fresh.size());
+        List<Object[]> lineRows = new ArrayList<>();
+        for (Prepared p : fresh) {
+            long id = nextId++;
+            String voucherNo = VOUCHER_PREFIX + day + "-" + String.format("%06d", id);
+            Date voucherDate = Date.valueOf(p.voucherDate());
+            voucherRows.add(new Object[] { id, voucherNo, voucherDate, p.description(), p.externalId(),
+                    p.lines().size(), p.debitTotal(), now });
+            for (Line line : p.lines()) {
+                lineRows.add(new Object[] { id, voucherDate, line.accountCode(), line.description(), line.debit(),
+                        line.credit(), now });
+                balanceUpdater.add(line.accountCode(), p.voucherDate(),
+                        new LedgerPeriodBalanceUpdater.Delta(line.debit(), line.credit(), 1));
+            }
+            out.add(new LedgerVoucherBatchResponse.Result(p.index(), p.externalId(),
+                    LedgerVoucherBatchResponse.POSTED, id, voucherNo, List.of()));
+        }
+        jdbcTemplate.batchUpdate(INSERT_VOUCHER_SQL, voucherRows);
+        jdbcTemplate.batchUpdate(INSERT_LINE_SQL, lineRows);
+        return out;
+    }
+
+    private Map<String, Existing> existing(List<Prepared> chunk) {
+        List<String> externalIds = new ArrayList<>();
+        for (Prepared p : chunk) {
+            if (p.externalId() != null) externalIds.add(p.externalId());
+        }
+        Map<String, Existing> existing = new HashMap<>();
+        if (externalIds.isEmpty()) return existing;
+        for (Existing e : namedJdbcTemplate.query(EXISTING_SQL, new MapSqlParameterSource("externalIds", externalIds),
+                (rs, i) -> new Existing(rs.getLong(1), rs.getString(2), rs.getString(3)))) {
+            existing.put(e.externalId(), e);
+        }
+        return existing;
+    }
+
+    private static void apply(LedgerVoucherBatchResponse.Result[] results,
+            List<LedgerVoucherBatchResponse.Result> chunkResults) {
+        if (chunkResults == null) return;
+        for (LedgerVoucherBatchResponse.Result r : chunkResults) {
+            results[r.getIndex()] = r;
+        }
+    }
+
+    private static String trimToNull(String s) {
+        if (s == null) return null;
+        String t = s.trim();
+        return t.isEmpty() ? null : t;
+    }
+
+    private record Line(String accountCode, String description, BigDecimal debit, BigDecimal credit) {
+    }
+
+    private record Prepared(int index, LocalDate voucherDate, String description, String externalId,
+            BigDecimal debitTotal, List<Line> lines) {
+    }
+
+    private record Existing(long id, String voucherNo, String externalId) {
+    }
+}
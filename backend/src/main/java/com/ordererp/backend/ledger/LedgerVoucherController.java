@@ -0,0 +1,24 @@
+package com.ordererp.backend.ledger;
+
+import com.ordererp.backend.ledger.dto.LedgerVoucherBatchRequest;
+import com.ordererp.backend.ledger.dto.LedgerVoucherBatchResponse;
+import jakarta.validation.Valid;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/ledger-vouchers")
+public class LedgerVoucherController {
+    private final LedgerPostingService postingService;
+
+    public LedgerVoucherController(LedgerPostingService postingService) {
+        this.postingService = postingService;
+    }
+
+    @PostMapping("/batch")
+    public LedgerVoucherBatchResponse postBatch(@Valid @RequestBody LedgerVoucherBatchRequest request) {
+        return postingService.post(request);
+    }
+}
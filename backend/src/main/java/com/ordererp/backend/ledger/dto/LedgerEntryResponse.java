@@ -6,6 +6,7 @@ import java.time.LocalDate;
 
 public class LedgerEntryResponse {
     private Long id;
+    private Long voucherId;
     private LocalDate entryDate;
     private String accountCode;
     private String description;
@@ -13,8 +14,9 @@ public class LedgerEntryResponse {
     private BigDecimal credit;
     private Instant createdAt;
 
-    public LedgerEntryResponse(Long id, LocalDate entryDate, String accountCode, String description, BigDecimal debit, BigDecimal credit, Instant createdAt) {
+    public LedgerEntryResponse(Long id, Long voucherId, LocalDate entryDate, String accountCode, String description, BigDecimal debit, BigDecimal credit, Instant createdAt) {
         this.id = id;
+        this.voucherId = voucherId;
         this.entryDate = entryDate;
         this.accountCode = accountCode;
         this.description = description;
@@ -27,6 +29,10 @@ public class LedgerEntryResponse {
         return id;
     }
 
+    public Long getVoucherId() {
+        return voucherId;
+    }
+
     public LocalDate getEntryDate() {
         return entryDate;
     }
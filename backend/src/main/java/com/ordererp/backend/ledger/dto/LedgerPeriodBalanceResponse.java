@@ -0,0 +1,53 @@
+package com.ordererp.backend.ledger.dto;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+public class LedgerPeriodBalanceResponse {
+    private String accountCode;
+    private YearMonth period;
+    private BigDecimal openingBalance;
+    private BigDecimal debit;
+    private BigDecimal credit;
+    private BigDecimal closingBalance;
+    private int entryCount;
+
+    public LedgerPeriodBalanceResponse(String accountCode, YearMonth period, BigDecimal openingBalance,
+            BigDecimal debit, BigDecimal credit, BigDecimal closingBalance, int entryCount) {
+        this.accountCode = accountCode;
+        this.period = period;
+        this.openingBalance = openingBalance;
+        this.debit = debit;
+        this.credit = credit;
+        this.closingBalance = closingBalance;
+        this.entryCount = entryCount;
+    }
+
+    public String getAccountCode() {
+        return accountCode;
+    }
+
+    public YearMonth getPeriod() {
+        return period;
+    }
+
+    public BigDecimal getOpeningBalance() {
+        return openingBalance;
+    }
+
+    public BigDecimal getDebit() {
+        return debit;
+    }
+
+    public BigDecimal getCredit() {
+        return credit;
+    }
+
+    public BigDecimal getClosingBalance() {
+        return closingBalance;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+}
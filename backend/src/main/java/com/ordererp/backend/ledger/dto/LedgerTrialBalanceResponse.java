@@ -0,0 +1,58 @@
+package com.ordererp.backend.ledger.dto;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.List;
+
+public class LedgerTrialBalanceResponse {
+    private YearMonth period;
+    private List<LedgerPeriodBalanceResponse> accounts;
+    private BigDecimal openingTotal;
+    private BigDecimal debitTotal;
+    private BigDecimal creditTotal;
+    private BigDecimal closingTotal;
+    private boolean balanced;
+
+    public LedgerTrialBalanceResponse(YearMonth period, List<LedgerPeriodBalanceResponse> accounts,
+            BigDecimal openingTotal, BigDecimal debitTotal, BigDecimal creditTotal, BigDecimal closingTotal,
+            boolean balanced) {
+        this.period = period;
+        this.accounts = accounts;
+        this.openingTotal = openingTotal;
+        this.debitTotal = debitTotal;
+        this.creditTotal = creditTotal;
+        this.closingTotal = closingTotal;
+        this.balanced = balanced;
+    }
+
+    public YearMonth getPeriod() {
+        return period;
+    }
+
+    public List<LedgerPeriodBalanceResponse> getAccounts() {
+        return accounts;
+    }
+
+    public BigDecimal getOpeningTotal() {
+        return openingTotal;
+    }
+
+    public BigDecimal getDebitTotal() {
+        return debitTotal;
+    }
+
+    public BigDecimal getCreditTotal() {
+        return creditTotal;
+    }
+
+    public BigDecimal getClosingTotal() {
+        return closingTotal;
+    }
+
+    /**
+     * 本期借贷发生额相等，且全部科目期初、期末余额合计为 0。
+     */
+    public boolean isBalanced() {
+        return balanced;
+    }
+}
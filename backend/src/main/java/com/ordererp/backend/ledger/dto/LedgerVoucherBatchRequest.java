@@ -0,0 +1,124 @@
+package com.ordererp.backend.ledger.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 批量过账请求：多张凭证，每张凭证若干借贷分录。
+ *
+ * <p>凭证与分录的校验（借贷相等等）由 LedgerPostingService 一次遍历完成，这里不逐行做 Bean Validation。</p>
+ */
+public class LedgerVoucherBatchRequest {
+    /** true：任一凭证校验不通过则整批不过账，其余在一个事务内写入；false：逐块提交，逐张返回结果。 */
+    private boolean atomic;
+
+    @NotEmpty
+    private List<Voucher> vouchers;
+
+    public boolean isAtomic() {
+        return atomic;
+    }
+
+    public void setAtomic(boolean atomic) {
+        this.atomic = atomic;
+    }
+
+    public List<Voucher> getVouchers() {
+        return vouchers;
+    }
+
+    public void setVouchers(List<Voucher> vouchers) {
+        this.vouchers = vouchers;
+    }
+
+    public static class Voucher {
+        private LocalDate voucherDate;
+        private String description;
+        /** 调用方的幂等键：同一 externalId 只过账一次，重复提交返回已有凭证。 */
+        private String externalId;
+        private List<Line> lines;
+
+        public LocalDate getVoucherDate() {
+            return voucherDate;
+        }
+
+        public void setVoucherDate(LocalDate voucherDate) {
+            this.voucherDate = voucherDate;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public String getExternalId() {
+            return externalId;
+        }
+
+        public void setExternalId(String externalId) {
+            this.externalId = externalId;
+        }
+
+        public List<Line> getLines() {
+            return lines;
+        }
+
+        public void setLines(List<Line> lines) {
+            this.lines = lines;
+        }
+    }
+
+    public static class Line {
+        private String accountCode;
+        private String description;
+        private BigDecimal debit;
+        private BigDecimal credit;
+
+        public Line() {
+        }
+
+        public Line(String accountCode, String description, BigDecimal debit, BigDecimal credit) {
+            this.accountCode = accountCode;
+            this.description = description;
+            this.debit = debit;
+            this.credit = credit;
+        }
+
+        public String getAccountCode() {
+            return accountCode;
+        }
+
+        public void setAccountCode(String accountCode) {
+            this.accountCode = accountCode;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public BigDecimal getDebit() {
+            return debit;
+        }
+
+        public void setDebit(BigDecimal debit) {
+            this.debit = debit;
+        }
+
+        public BigDecimal getCredit() {
+            return credit;
+        }
+
+        public void setCredit(BigDecimal credit) {
+            this.credit = credit;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.ordererp.backend.ledger.dto;
+
+import java.util.List;
+
+/**
+ * 批量过账结果：汇总数与逐张凭证的结果（与请求中的顺序一致）。
+ */
+public class LedgerVoucherBatchResponse {
+    /** 已过账。 */
+    public static final String POSTED = "POSTED";
+    /** externalId 已过账过，返回已有凭证。 */
+    public static final String DUPLICATE = "DUPLICATE";
+    /** 校验不通过。 */
+    public static final String REJECTED = "REJECTED";
+    /** 整批模式下本身合法、因其他凭证不合法而未过账。 */
+    public static final String SKIPPED = "SKIPPED";
+    /** 写入失败（所在块已回滚，可重试）。 */
+    public static final String FAILED = "FAILED";
+
+    private int posted;
+    private int duplicates;
+    private int rejected;
+    private int failed;
+    private long lineCount;
+    private long elapsedMs;
+    private List<Result> results;
+
+    public LedgerVoucherBatchResponse(int posted, int duplicates, int rejected, int failed, long lineCount,
+            long elapsedMs, List<Result> results) {
+        this.posted = posted;
+        this.duplicates = duplicates;
+        this.rejected = rejected;
+        this.failed = failed;
+        this.lineCount = lineCount;
+        this.elapsedMs = elapsedMs;
+        this.results = results;
+    }
+
+    public int getPosted() {
+        return posted;
+    }
+
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    /** 本次实际写入的分录行数。 */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public static class Result {
+        private int index;
+        private String externalId;
+        private String status;
+        private Long voucherId;
+        private String voucherNo;
+        private List<String> errors;
+
+        public Result(int index, String externalId, String status, Long voucherId, String voucherNo,
+                List<String> errors) {
+            this.index = index;
+            this.externalId = externalId;
+            this.status = status;
+            this.voucherId = voucherId;
+            this.voucherNo = voucherNo;
+            this.errors = errors;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getExternalId() {
+            return externalId;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public Long getVoucherId() {
+            return voucherId;
+        }
+
+        public String getVoucherNo() {
+            return voucherNo;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+}
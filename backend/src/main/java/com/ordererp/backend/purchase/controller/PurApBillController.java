@@ -4,14 +4,20 @@ import com.ordererp.backend.common.dto.PageResponse;
 import com.ordererp.backend.purchase.dto.PurApBillCreateRequest;
 import com.ordererp.backend.purchase.dto.PurApBillDetailResponse;
 import com.ordererp.backend.purchase.dto.PurApBillResponse;
+import com.ordererp.backend.purchase.dto.PurApBillRunRequest;
+import com.ordererp.backend.purchase.dto.PurApBillRunResponse;
 import com.ordererp.backend.purchase.dto.PurApInvoiceCreateRequest;
 import com.ordererp.backend.purchase.dto.PurApInvoiceResponse;
 import com.ordererp.backend.purchase.dto.PurApPaymentCreateRequest;
 import com.ordererp.backend.purchase.dto.PurApPaymentResponse;
+import com.ordererp.backend.purchase.service.PurApBillRunService;
 import com.ordererp.backend.purchase.service.PurApBillService;
+import com.ordererp.backend.system.dto.SysJobResponse;
 import com.ordererp.backend.system.security.SysUserDetails;
+import com.ordererp.backend.system.service.SysJobService;
 import jakarta.validation.Valid;
 import java.time.LocalDate;
+import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -29,9 +35,14 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/purchase/ap-bills")
 public class PurApBillController {
     private final PurApBillService billService;
+    private final PurApBillRunService runService;
+    private final SysJobService jobService;
 
-    public PurApBillController(PurApBillService billService) {
+    public PurApBillController(PurApBillService billService, PurApBillRunService runService,
+            SysJobService jobService) {
         this.billService = billService;
+        this.runService = runService;
+        this.jobService = jobService;
     }
 
     @GetMapping
@@ -47,6 +58,28 @@ public class PurApBillController {
         return PageResponse.from(res);
     }
 
+    /**
+     * 月结：按期间为所有供应商批量生成对账单；立即返回批次，生成在后台进行，用 GET /runs/{runId} 查询进度。
+     */
+    @PostMapping("/runs")
+    @PreAuthorize("hasAuthority('pur:ap:add')")
+    public PurApBillRunResponse startRun(@Valid @RequestBody PurApBillRunRequest request, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return runService.start(request, user.getUsername());
+    }
+
+    @GetMapping("/runs")
+    @PreAuthorize("hasAuthority('pur:ap:view')")
+    public List<PurApBillRunResponse> recentRuns() {
+        return runService.recent();
+    }
+
+    @GetMapping("/runs/{runId}")
+    @PreAuthorize("hasAuthority('pur:ap:view')")
+    public PurApBillRunResponse run(@PathVariable Long runId) {
+        return runService.get(runId);
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAuthority('pur:ap:view')")
     public PurApBillDetailResponse detail(@PathVariable Long id) {
@@ -71,7 +104,22 @@ public class PurApBillController {
     @PreAuthorize("hasAuthority('pur:ap:regen')")
     public PurApBillResponse regenerate(@PathVariable Long id, Authentication authentication) {
         SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
-        return billService.regenerate(id, user.getUsername());
+        String operator = user.getUsername();
+        // 同步重算同样在后台任务线程池中执行并等待结果，受 app.job.workers 并发上限约束
+        return jobService.runAndWait("ap-bill-regenerate", "应付对账单重算 #" + id, operator,
+                job -> billService.regenerate(id, operator));
+    }
+
+    /**
+     * 后台重算：立即返回任务，结果（对账单）通过 /api/jobs/{id} 查询。
+     */
+    @PostMapping("/{id}/regenerate-job")
+    @PreAuthorize("hasAuthority('pur:ap:regen')")
+    public SysJobResponse regenerateJob(@PathVariable Long id, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        String operator = user.getUsername();
+        return jobService.submit("ap-bill-regenerate", "应付对账单重算 #" + id, operator,
+                job -> billService.regenerate(id, operator));
     }
 
     @PostMapping("/{id}/cancel")
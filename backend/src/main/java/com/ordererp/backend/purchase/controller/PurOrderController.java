@@ -1,6 +1,7 @@
 package com.ordererp.backend.purchase.controller;
 
 import com.ordererp.backend.common.dto.PageResponse;
+import com.ordererp.backend.common.excel.ExcelStreamExporter;
 import com.ordererp.backend.purchase.dto.PurOrderCreateRequest;
 import com.ordererp.backend.purchase.dto.PurOrderDetailResponse;
 import com.ordererp.backend.purchase.dto.PurInboundCreateRequest;
@@ -11,13 +12,17 @@ import com.ordererp.backend.purchase.dto.PurOrderOptionResponse;
 import com.ordererp.backend.purchase.dto.PurOrderResponse;
 import com.ordererp.backend.purchase.dto.PurPendingQcSummaryResponse;
 import com.ordererp.backend.purchase.excel.PurOrderExcelRow;
+import com.ordererp.backend.purchase.repository.PurOrderDetailRepository;
 import com.ordererp.backend.purchase.service.PurInboundService;
 import com.ordererp.backend.purchase.service.PurOrderExcelService;
 import com.ordererp.backend.purchase.service.PurOrderService;
+import com.ordererp.backend.system.dto.SysJobResponse;
 import com.ordererp.backend.system.security.SysUserDetails;
+import com.ordererp.backend.system.service.SysJobService;
 import jakarta.validation.Valid;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -44,11 +49,16 @@ public class PurOrderController {
     private final PurOrderService orderService;
     private final PurInboundService inboundService;
     private final PurOrderExcelService orderExcelService;
+    private final ExcelStreamExporter excelExporter;
+    private final SysJobService jobService;
 
-    public PurOrderController(PurOrderService orderService, PurInboundService inboundService, PurOrderExcelService orderExcelService) {
+    public PurOrderController(PurOrderService orderService, PurInboundService inboundService, PurOrderExcelService orderExcelService,
+            ExcelStreamExporter excelExporter, SysJobService jobService) {
         this.orderService = orderService;
         this.inboundService = inboundService;
         this.orderExcelService = orderExcelService;
+        this.excelExporter = excelExporter;
+        this.jobService = jobService;
     }
 
     @GetMapping
@@ -87,21 +97,14 @@ public class PurOrderController {
 
     @GetMapping("/export")
     @PreAuthorize("hasAuthority('pur:order:export') and hasAnyAuthority('pur:price:view','pur:price:edit')")
-    public void export(@RequestParam(required = false) String keyword, HttpServletResponse response) throws IOException {
-        ExcelHttpUtil.prepareXlsxResponse(response, "purchase-orders.xlsx");
-
-        int page = 0;
-        int size = 2_000;
-        try (var writer = EasyExcel.write(response.getOutputStream(), PurOrderExcelRow.class).build()) {
-            var sheet = EasyExcel.writerSheet("PurchaseOrders").build();
-            while (true) {
-                Page<PurOrderExcelRow> res = orderExcelService.exportOrders(keyword, PageRequest.of(page, size));
-                if (res.isEmpty()) break;
-                writer.write(res.getContent(), sheet);
-                if (!res.hasNext()) break;
-                page++;
-            }
-        }
+    public void export(@RequestParam(required = false) String keyword, HttpServletResponse response,
+            Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        // 在后台任务线程池中执行（直接写本次响应）；按（订单倒序、明细正序）游标分批写出，不做 offset 翻页与 count。
+        jobService.runAndWait("purchase-order-export", "采购订单导出", user.getUsername(),
+                job -> excelExporter.export(response, "purchase-orders.xlsx", "PurchaseOrders", PurOrderExcelRow.class,
+                        (afterId, limit) -> orderExcelService.exportBatch(keyword, afterId, limit),
+                        PurOrderDetailRepository.PurOrderExportRow::getDetailId, PurOrderExcelService::toExcelRow));
     }
 
     @GetMapping("/import-template")
@@ -127,10 +130,28 @@ public class PurOrderController {
 
     @PostMapping("/import")
     @PreAuthorize("hasAuthority('pur:order:import') and hasAuthority('pur:price:edit')")
-    public ImportResult importExcel(@RequestPart("file") MultipartFile file, Authentication authentication) throws IOException {
+    public ImportResult importExcel(@RequestPart("file") MultipartFile file, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        String operator = user.getUsername();
+        // 同步导入同样在后台任务线程池中执行并等待结果，受 app.job.workers 并发上限约束
+        return jobService.runAndWait("purchase-order-import", "采购订单导入：" + file.getOriginalFilename(), operator,
+                job -> {
+                    try (InputStream in = file.getInputStream()) {
+                        return orderExcelService.importOrders(in, operator, job::checkpoint);
+                    }
+                });
+    }
+
+    /**
+     * 后台导入：文件落盘后立即返回任务，进度/结果通过 /api/jobs/{id} 查询。
+     */
+    @PostMapping("/import-job")
+    @PreAuthorize("hasAuthority('pur:order:import') and hasAuthority('pur:price:edit')")
+    public SysJobResponse importJob(@RequestPart("file") MultipartFile file, Authentication authentication) {
         SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
-        List<PurOrderExcelRow> rows = EasyExcel.read(file.getInputStream()).head(PurOrderExcelRow.class).sheet().doReadSync();
-        return orderExcelService.importOrders(rows, user.getUsername());
+        String operator = user.getUsername();
+        return jobService.submitUpload("purchase-order-import", "采购订单导入：" + file.getOriginalFilename(), operator,
+                file, (in, job) -> orderExcelService.importOrders(in, operator, job::checkpoint));
     }
 
     @PostMapping
@@ -0,0 +1,10 @@
+package com.ordererp.backend.purchase.dto;
+
+import jakarta.validation.constraints.NotNull;
+import java.time.LocalDate;
+
+public record PurApBillRunRequest(
+        @NotNull LocalDate startDate,
+        @NotNull LocalDate endDate,
+        String remark) {
+}
@@ -0,0 +1,36 @@
+package com.ordererp.backend.purchase.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record PurApBillRunResponse(
+        Long id,
+        LocalDate startDate,
+        LocalDate endDate,
+        Integer status,
+        Integer totalSuppliers,
+        Integer processedSuppliers,
+        Integer createdBills,
+        Integer failedSuppliers,
+        BigDecimal totalAmount,
+        String message,
+        String createBy,
+        LocalDateTime startTime,
+        LocalDateTime finishTime,
+        Long elapsedMs,
+        List<Item> items) {
+    public record Item(
+            Long supplierId,
+            String supplierCode,
+            String supplierName,
+            Integer status,
+            Long billId,
+            String billNo,
+            Integer docCount,
+            BigDecimal totalAmount,
+            String message,
+            Long elapsedMs) {
+    }
+}
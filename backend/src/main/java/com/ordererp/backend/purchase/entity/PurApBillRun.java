@@ -0,0 +1,192 @@
+package com.ordererp.backend.purchase.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "pur_ap_bill_run")
+public class PurApBillRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "start_date", nullable = false)
+    private LocalDate startDate;
+
+    @Column(name = "end_date", nullable = false)
+    private LocalDate endDate;
+
+    @Column(name = "status", nullable = false)
+    private Integer status;
+
+    @Column(name = "running_lock")
+    private Integer runningLock;
+
+    @Column(name = "total_suppliers", nullable = false)
+    private Integer totalSuppliers;
+
+    @Column(name = "processed_suppliers", nullable = false)
+    private Integer processedSuppliers;
+
+    @Column(name = "created_bills", nullable = false)
+    private Integer createdBills;
+
+    @Column(name = "failed_suppliers", nullable = false)
+    private Integer failedSuppliers;
+
+    @Column(name = "total_amount", nullable = false)
+    private BigDecimal totalAmount;
+
+    @Column(name = "message")
+    private String message;
+
+    @Column(name = "create_by")
+    private String createBy;
+
+    @Column(name = "start_time")
+    private LocalDateTime startTime;
+
+    @Column(name = "finish_time")
+    private LocalDateTime finishTime;
+
+    @Column(name = "elapsed_ms")
+    private Long elapsedMs;
+
+    @Column(name = "heartbeat_time")
+    private LocalDateTime heartbeatTime;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public Integer getRunningLock() {
+        return runningLock;
+    }
+
+    public void setRunningLock(Integer runningLock) {
+        this.runningLock = runningLock;
+    }
+
+    public Integer getTotalSuppliers() {
+        return totalSuppliers;
+    }
+
+    public void setTotalSuppliers(Integer totalSuppliers) {
+        this.totalSuppliers = totalSuppliers;
+    }
+
+    public Integer getProcessedSuppliers() {
+        return processedSuppliers;
+    }
+
+    public void setProcessedSuppliers(Integer processedSuppliers) {
+        this.processedSuppliers = processedSuppliers;
+    }
+
+    public Integer getCreatedBills() {
+        return createdBills;
+    }
+
+    public void setCreatedBills(Integer createdBills) {
+        this.createdBills = createdBills;
+    }
+
+    public Integer getFailedSuppliers() {
+        return failedSuppliers;
+    }
+
+    public void setFailedSuppliers(Integer failedSuppliers) {
+        this.failedSuppliers = failedSuppliers;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getCreateBy() {
+        return createBy;
+    }
+
+    public void setCreateBy(String createBy) {
+        this.createBy = createBy;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(LocalDateTime startTime) {
+        this.startTime = startTime;
+    }
+
+    public LocalDateTime getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(LocalDateTime finishTime) {
+        this.finishTime = finishTime;
+    }
+
+    public Long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(Long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+
+    public LocalDateTime getHeartbeatTime() {
+        return heartbeatTime;
+    }
+
+    public void setHeartbeatTime(LocalDateTime heartbeatTime) {
+        this.heartbeatTime = heartbeatTime;
+    }
+}
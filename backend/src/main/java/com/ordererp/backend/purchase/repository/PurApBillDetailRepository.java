@@ -6,6 +6,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Collection;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -14,6 +15,48 @@ public interface PurApBillDetailRepository extends JpaRepository<PurApBillDetail
 
     long deleteByBillId(Long billId);
 
+    /**
+     * 删除对账单全部明细（一条 delete，不逐行加载实体）。
+     */
+    @Modifying
+    @Query(value = "delete from pur_ap_bill_detail where bill_id = :billId", nativeQuery = true)
+    int deleteAllByBillId(@Param("billId") Long billId);
+
+    /**
+     * 按对账单已占用的入库批次批量生成明细（每批次一行，金额 = sum(plan_qty * price)）。
+     */
+    @Modifying
+    @Query(value = """
+            insert into pur_ap_bill_detail (bill_id, doc_type, doc_id, doc_no, order_id, order_no, doc_time, amount)
+            select x.bill_id, 1, i.id, i.inbound_no, i.order_id, i.order_no, i.execute_time,
+              coalesce(sum(d.plan_qty * od.price), 0.00)
+            from pur_ap_doc_ref x
+            join pur_inbound i on i.id = x.doc_id
+            join pur_inbound_detail d on d.inbound_id = i.id
+            join pur_order_detail od on od.order_id = i.order_id and od.product_id = d.product_id
+            where x.bill_id = :billId
+              and x.doc_type = 1
+            group by x.bill_id, i.id, i.inbound_no, i.order_id, i.order_no, i.execute_time
+            order by i.execute_time asc, i.id asc
+            """, nativeQuery = true)
+    int insertInboundDetails(@Param("billId") Long billId);
+
+    /**
+     * 按对账单已占用的退货单批量生成明细（金额为负）。
+     */
+    @Modifying
+    @Query(value = """
+            insert into pur_ap_bill_detail (bill_id, doc_type, doc_id, doc_no, order_id, order_no, doc_time, amount)
+            select x.bill_id, 2, r.id, r.return_no, null, null, r.execute_time,
+              0.00 - coalesce(r.total_amount, 0.00)
+            from pur_ap_doc_ref x
+            join pur_return r on r.id = x.doc_id
+            where x.bill_id = :billId
+              and x.doc_type = 2
+            order by r.execute_time asc, r.id asc
+            """, nativeQuery = true)
+    int insertReturnDetails(@Param("billId") Long billId);
+
     @Query(value = """
             select
               d.id as id,
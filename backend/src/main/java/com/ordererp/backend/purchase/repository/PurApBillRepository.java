@@ -139,6 +139,63 @@ public interface PurApBillRepository extends JpaRepository<PurApBill, Long> {
             @Param("startTime") LocalDateTime startTime,
             @Param("endTime") LocalDateTime endTime);
 
+    /**
+     * 区间内是否存在未对账的入库/退货单据（生成对账单前的快速判断）。
+     */
+    @Query(value = """
+            select case when exists (
+              select 1
+              from pur_inbound i
+              where i.supplier_id = :supplierId
+                and i.status = 2
+                and i.qc_status = 2
+                and i.execute_time is not null
+                and i.execute_time >= :startTime
+                and i.execute_time < :endTime
+                and not exists (select 1 from pur_ap_doc_ref r where r.doc_type = 1 and r.doc_id = i.id)
+            ) or exists (
+              select 1
+              from pur_return r
+              where r.supplier_id = :supplierId
+                and r.status = 4
+                and r.execute_time is not null
+                and r.execute_time >= :startTime
+                and r.execute_time < :endTime
+                and not exists (select 1 from pur_ap_doc_ref x where x.doc_type = 2 and x.doc_id = r.id)
+            ) then 1 else 0 end
+            """, nativeQuery = true)
+    int existsUnbilledDocs(@Param("supplierId") Long supplierId,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
+
+    /**
+     * 月结批量生成用：区间内有未对账单据的供应商。
+     */
+    @Query(value = """
+            select c.supplier_id
+            from (
+              select i.supplier_id
+              from pur_inbound i
+              where i.status = 2
+                and i.qc_status = 2
+                and i.execute_time is not null
+                and i.execute_time >= :startTime
+                and i.execute_time < :endTime
+                and not exists (select 1 from pur_ap_doc_ref r where r.doc_type = 1 and r.doc_id = i.id)
+              union
+              select r.supplier_id
+              from pur_return r
+              where r.status = 4
+                and r.execute_time is not null
+                and r.execute_time >= :startTime
+                and r.execute_time < :endTime
+                and not exists (select 1 from pur_ap_doc_ref x where x.doc_type = 2 and x.doc_id = r.id)
+            ) c
+            order by c.supplier_id
+            """, nativeQuery = true)
+    List<Long> listSuppliersWithUnbilledDocs(@Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
+
     interface CandidateInboundRow {
         Long getDocId();
 
@@ -0,0 +1,51 @@
+package com.ordererp.backend.purchase.repository;
+
+import com.ordererp.backend.purchase.entity.PurApBillRunItem;
+import java.math.BigDecimal;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface PurApBillRunItemRepository extends JpaRepository<PurApBillRunItem, Long> {
+    @Query(value = """
+            select
+              i.supplier_id as supplierId,
+              p.partner_code as supplierCode,
+              p.partner_name as supplierName,
+              i.status as status,
+              i.bill_id as billId,
+              i.bill_no as billNo,
+              i.doc_count as docCount,
+              i.total_amount as totalAmount,
+              i.message as message,
+              i.elapsed_ms as elapsedMs
+            from pur_ap_bill_run_item i
+            left join base_partner p on p.id = i.supplier_id
+            where i.run_id = :runId
+            order by i.status desc, i.supplier_id asc
+            """, nativeQuery = true)
+    List<RunItemRow> listRows(@Param("runId") Long runId);
+
+    interface RunItemRow {
+        Long getSupplierId();
+
+        String getSupplierCode();
+
+        String getSupplierName();
+
+        Integer getStatus();
+
+        Long getBillId();
+
+        String getBillNo();
+
+        Integer getDocCount();
+
+        BigDecimal getTotalAmount();
+
+        String getMessage();
+
+        Long getElapsedMs();
+    }
+}
@@ -0,0 +1,61 @@
+package com.ordererp.backend.purchase.repository;
+
+import com.ordererp.backend.purchase.entity.PurApBillRun;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface PurApBillRunRepository extends JpaRepository<PurApBillRun, Long> {
+    List<PurApBillRun> findTop20ByOrderByIdDesc();
+
+    /**
+     * 续期本节点正在执行的批次的心跳。
+     */
+    @Modifying
+    @Query(value = "update pur_ap_bill_run set heartbeat_time = :now where id in (:ids) and status = 1",
+            nativeQuery = true)
+    int heartbeat(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    /**
+     * 心跳超时的运行中批次（执行节点已退出）标记为异常终止，并释放运行抢占。
+     */
+    @Modifying
+    @Query(value = """
+            update pur_ap_bill_run
+            set status = 3, running_lock = null, message = :message, finish_time = :now
+            where status = 1
+              and coalesce(heartbeat_time, start_time) < :before
+            """, nativeQuery = true)
+    int abandonStale(@Param("before") LocalDateTime before, @Param("message") String message,
+            @Param("now") LocalDateTime now);
+
+    /**
+     * 一个供应商处理完成：原子累加进度（多个工作线程并发调用）。
+     */
+    @Modifying
+    @Query(value = """
+            update pur_ap_bill_run
+            set processed_suppliers = processed_suppliers + 1,
+                created_bills = created_bills + :created,
+                failed_suppliers = failed_suppliers + :failed,
+                total_amount = total_amount + :amount
+            where id = :id
+            """, nativeQuery = true)
+    int addProgress(@Param("id") Long id, @Param("created") int created, @Param("failed") int failed,
+            @Param("amount") BigDecimal amount);
+
+    @Modifying
+    @Query(value = """
+            update pur_ap_bill_run
+            set status = :status, running_lock = null, message = :message, finish_time = :finishTime,
+                elapsed_ms = :elapsedMs
+            where id = :id
+            """, nativeQuery = true)
+    int finish(@Param("id") Long id, @Param("status") int status, @Param("message") String message,
+            @Param("finishTime") LocalDateTime finishTime, @Param("elapsedMs") long elapsedMs);
+}
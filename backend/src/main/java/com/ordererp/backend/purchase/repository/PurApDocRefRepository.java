@@ -1,12 +1,96 @@
 package com.ordererp.backend.purchase.repository;
 
 import com.ordererp.backend.purchase.entity.PurApDocRef;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface PurApDocRefRepository extends JpaRepository<PurApDocRef, Long> {
     Optional<PurApDocRef> findFirstByDocTypeAndDocId(Integer docType, Long docId);
 
     long deleteByBillId(Long billId);
-}
 
+    // ==========================================
+    // 集合式占用（set-based claim）：一条 insert ... select 占用供应商在区间内全部未对账单据。
+    // 候选口径与 PurApBillRepository.candidateInbounds/candidateReturns 一致（金额为 0 的单据不占用）。
+    // insert ignore：并发下已被其他对账单占用的单据直接跳过；调用方以 bill_id 回读实际占用结果。
+    // ==========================================
+
+    @Modifying
+    @Query(value = """
+            insert ignore into pur_ap_doc_ref (doc_type, doc_id, bill_id, create_time)
+            select 1, i.id, :billId, :now
+            from pur_inbound i
+            join pur_inbound_detail d on d.inbound_id = i.id
+            join pur_order_detail od on od.order_id = i.order_id and od.product_id = d.product_id
+            where i.supplier_id = :supplierId
+              and i.status = 2
+              and i.qc_status = 2
+              and i.execute_time is not null
+              and i.execute_time >= :startTime
+              and i.execute_time < :endTime
+              and not exists (select 1 from pur_ap_doc_ref r where r.doc_type = 1 and r.doc_id = i.id)
+            group by i.id
+            having coalesce(sum(d.plan_qty * od.price), 0.00) <> 0
+            """, nativeQuery = true)
+    int claimInbounds(@Param("billId") Long billId, @Param("supplierId") Long supplierId,
+            @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime,
+            @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = """
+            insert ignore into pur_ap_doc_ref (doc_type, doc_id, bill_id, create_time)
+            select 2, r.id, :billId, :now
+            from pur_return r
+            where r.supplier_id = :supplierId
+              and r.status = 4
+              and r.execute_time is not null
+              and r.execute_time >= :startTime
+              and r.execute_time < :endTime
+              and coalesce(r.total_amount, 0.00) <> 0
+              and not exists (select 1 from pur_ap_doc_ref x where x.doc_type = 2 and x.doc_id = r.id)
+            """, nativeQuery = true)
+    int claimReturns(@Param("billId") Long billId, @Param("supplierId") Long supplierId,
+            @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime,
+            @Param("now") LocalDateTime now);
+
+    /**
+     * 释放对账单占用的全部单据（一条 delete，不逐行加载实体）。
+     */
+    @Modifying
+    @Query(value = "delete from pur_ap_doc_ref where bill_id = :billId", nativeQuery = true)
+    int releaseByBillId(@Param("billId") Long billId);
+
+    /**
+     * 对账单已占用单据按类型汇总（金额按单据原值累加，不逐单舍入）。
+     */
+    @Query(value = """
+            select 1 as docType, count(distinct i.id) as docCount, coalesce(sum(d.plan_qty * od.price), 0.00) as amount
+            from pur_ap_doc_ref x
+            join pur_inbound i on i.id = x.doc_id
+            join pur_inbound_detail d on d.inbound_id = i.id
+            join pur_order_detail od on od.order_id = i.order_id and od.product_id = d.product_id
+            where x.bill_id = :billId
+              and x.doc_type = 1
+            union all
+            select 2 as docType, count(*) as docCount, coalesce(sum(0.00 - coalesce(r.total_amount, 0.00)), 0.00) as amount
+            from pur_ap_doc_ref x
+            join pur_return r on r.id = x.doc_id
+            where x.bill_id = :billId
+              and x.doc_type = 2
+            """, nativeQuery = true)
+    List<ClaimedTotalRow> claimedTotals(@Param("billId") Long billId);
+
+    interface ClaimedTotalRow {
+        Integer getDocType();
+
+        Long getDocCount();
+
+        BigDecimal getAmount();
+    }
+}
@@ -4,8 +4,6 @@ import com.ordererp.backend.purchase.entity.PurOrderDetail;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -13,8 +11,13 @@ import org.springframework.data.repository.query.Param;
 public interface PurOrderDetailRepository extends JpaRepository<PurOrderDetail, Long> {
     List<PurOrderDetail> findByOrderIdOrderByIdAsc(Long orderId);
 
+    /**
+     * 导出取数（keyset）：排序仍为“订单倒序、明细正序”，游标为上一批最后一行的明细 id；
+     * 通过明细 id 反查其订单 id 组成复合条件，不做 offset 扫描，也不执行 count。
+     */
     @Query(value = """
             select
+              d.id as detailId,
               o.order_no as orderNo,
               p.partner_code as supplierCode,
               p.partner_name as supplierName,
@@ -37,24 +40,19 @@ public interface PurOrderDetailRepository extends JpaRepository<PurOrderDetail,
               or lower(p.partner_name) like lower(concat('%', :kw, '%'))
               or lower(d.product_code) like lower(concat('%', :kw, '%'))
               or lower(d.product_name) like lower(concat('%', :kw, '%')))
+              and (:afterDetailId is null
+                or o.id < (select c.order_id from pur_order_detail c where c.id = :afterDetailId)
+                or (o.id = (select c.order_id from pur_order_detail c where c.id = :afterDetailId)
+                    and d.id > :afterDetailId))
             order by o.id desc, d.id asc
-            """,
-            countQuery = """
-            select count(*)
-            from pur_order o
-            join pur_order_detail d on d.order_id = o.id
-            left join base_partner p on p.id = o.supplier_id
-            where (:kw is null or :kw = ''
-              or lower(o.order_no) like lower(concat('%', :kw, '%'))
-              or lower(p.partner_code) like lower(concat('%', :kw, '%'))
-              or lower(p.partner_name) like lower(concat('%', :kw, '%'))
-              or lower(d.product_code) like lower(concat('%', :kw, '%'))
-              or lower(d.product_name) like lower(concat('%', :kw, '%')))
-            """,
-            nativeQuery = true)
-    Page<PurOrderExportRow> exportRows(@Param("kw") String keyword, Pageable pageable);
+            limit :limit
+            """, nativeQuery = true)
+    List<PurOrderExportRow> seekExportRows(@Param("kw") String keyword, @Param("afterDetailId") Long afterDetailId,
+            @Param("limit") int limit);
 
     interface PurOrderExportRow {
+        Long getDetailId();
+
         String getOrderNo();
 
         String getSupplierCode();
@@ -5,17 +5,33 @@ import jakarta.persistence.LockModeType;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 public interface PurOrderRepository extends JpaRepository<PurOrder, Long> {
     Optional<PurOrder> findFirstByOrderNo(String orderNo);
 
+    /**
+     * 采购单号 -> id（Excel 导入按批预检重复、批量插入表头后回读 id）。
+     */
+    @Query("select o.id as id, o.orderNo as orderNo from PurOrder o where o.orderNo in :orderNos")
+    List<OrderNoRow> findOrderNos(@Param("orderNos") Collection<String> orderNos);
+
+    /**
+     * Excel 导入向本次已建的采购单追加明细时累加总金额。
+     */
+    @Modifying
+    @Query(value = "update pur_order set total_amount = total_amount + :delta where id = :id", nativeQuery = true)
+    int addTotalAmount(@Param("id") Long id, @Param("delta") BigDecimal delta);
+
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select o from PurOrder o where o.id = :id")
     Optional<PurOrder> findByIdForUpdate(@Param("id") Long id);
@@ -145,4 +161,10 @@ public interface PurOrderRepository extends JpaRepository<PurOrder, Long> {
 
         Integer getStatus();
     }
+
+    interface OrderNoRow {
+        Long getId();
+
+        String getOrderNo();
+    }
 }
@@ -0,0 +1,273 @@
+package com.ordererp.backend.purchase.service;
+
+import com.ordererp.backend.purchase.dto.PurApBillCreateRequest;
+import com.ordererp.backend.purchase.dto.PurApBillRunRequest;
+import com.ordererp.backend.purchase.dto.PurApBillRunResponse;
+import com.ordererp.backend.purchase.entity.PurApBillRun;
+import com.ordererp.backend.purchase.entity.PurApBillRunItem;
+import com.ordererp.backend.purchase.repository.PurApBillRepository;
+import com.ordererp.backend.purchase.repository.PurApBillRunItemRepository;
+import com.ordererp.backend.purchase.repository.PurApBillRunRepository;
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 应付对账月结：按期间为所有有未对账单据的供应商批量生成对账单。
+ *
+ * <p>发起后立即返回批次（pur_ap_bill_run），供应商在有界线程池中并行处理，每个供应商一个独立事务
+ * （{@link PurApBillService#generate}），处理结果写入 pur_ap_bill_run_item 并累加批次进度；前端按批次 id 轮询进度。
+ * 单个供应商失败只记录原因，不影响其他供应商。并行度由 {@code app.purchase.ap-bill.run-parallelism} 控制。</p>
+ *
+ * <p>同一时刻最多一个运行中的批次：插入批次时带 running_lock = 1（唯一键），并发发起时只有一个插入成功，其余返回 409；
+ * 批次结束时释放。执行节点定时续期心跳（做法同 {@code sys_job}），心跳超时的批次视为节点已退出，
+ * 标记为异常终止并释放，不会长时间阻塞后续月结。</p>
+ */
+@Service
+public class PurApBillRunService {
+    private static final Logger log = LoggerFactory.getLogger(PurApBillRunService.class);
+
+    private static final int RUN_STATUS_RUNNING = 1;
+    private static final int RUN_STATUS_DONE = 2;
+    private static final int RUN_STATUS_ABORTED = 3;
+
+    private static final int ITEM_STATUS_CREATED = 2;
+    private static final int ITEM_STATUS_FAILED = 3;
+
+    private static final int RUNNING_LOCK = 1;
+
+    /** 运行中的批次超过该时长没有心跳，视为执行节点已退出。 */
+    private static final long HEARTBEAT_TIMEOUT_MINUTES = 5;
+
+    private final PurApBillRepository billRepository;
+    private final PurApBillRunRepository runRepository;
+    private final PurApBillRunItemRepository runItemRepository;
+    private final PurApBillService billService;
+    private final TransactionTemplate txTemplate;
+    private final ExecutorService executor;
+    private final Set<Long> localRuns = ConcurrentHashMap.newKeySet();
+
+    public PurApBillRunService(PurApBillRepository billRepository, PurApBillRunRepository runRepository,
+            PurApBillRunItemRepository runItemRepository, PurApBillService billService,
+            PlatformTransactionManager txManager,
+            @Value("${app.purchase.ap-bill.run-parallelism:4}") int parallelism) {
+        this.billRepository = billRepository;
+        this.runRepository = runRepository;
+        this.runItemRepository = runItemRepository;
+        this.billService = billService;
+        this.txTemplate = new TransactionTemplate(txManager);
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "ap-bill-run-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 发起月结批次：确定供应商范围、写入批次后立即返回，生成在后台进行。
+     */
+    public PurApBillRunResponse start(PurApBillRunRequest request, String operator) {
+        if (request == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "request body is required");
+        if (request.startDate() == null || request.endDate() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "startDate/endDate is required");
+        }
+        if (request.endDate().isBefore(request.startDate())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "endDate must be >= startDate");
+        }
+
+        List<Long> supplierIds = billRepository.listSuppliersWithUnbilledDocs(
+                request.startDate().atStartOfDay(), request.endDate().plusDays(1).atStartOfDay());
+
+        Long runId = claim(request, supplierIds.size(), operator);
+        localRuns.add(runId);
+
+        long startNanos = System.nanoTime();
+        try {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[supplierIds.size()];
+            for (int i = 0; i < supplierIds.size(); i++) {
+                PurApBillCreateRequest one = new PurApBillCreateRequest(supplierIds.get(i), request.startDate(),
+                        request.endDate(), request.remark());
+                futures[i] = CompletableFuture.runAsync(() -> runSupplier(runId, one, operator), executor);
+            }
+            CompletableFuture.allOf(futures).whenComplete((ignored, error) -> finish(runId, startNanos, error));
+        } catch (RuntimeException e) {
+            finish(runId, startNanos, e);
+            throw e;
+        }
+
+        log.info("ap bill run started id={} {}~{} suppliers={}", runId, request.startDate(), request.endDate(),
+                supplierIds.size());
+        return get(runId);
+    }
+
+    /**
+     * 抢占运行资格并写入批次：先释放心跳超时的批次，再插入 running_lock = 1 的新批次；
+     * 唯一键冲突说明已有运行中的批次（并发发起时后插入的一方在这里失败）。
+     */
+    private Long claim(PurApBillRunRequest request, int totalSuppliers, String operator) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            return txTemplate.execute(s -> {
+                int abandoned = runRepository.abandonStale(now.minusMinutes(HEARTBEAT_TIMEOUT_MINUTES),
+                        "批次中断：执行节点已退出", now);
+                if (abandoned > 0) log.warn("ap bill runs abandoned after heartbeat timeout count={}", abandoned);
+
+                PurApBillRun run = new PurApBillRun();
+                run.setStartDate(request.startDate());
+                run.setEndDate(request.endDate());
+                run.setStatus(RUN_STATUS_RUNNING);
+                run.setRunningLock(RUNNING_LOCK);
+                run.setTotalSuppliers(totalSuppliers);
+                run.setProcessedSuppliers(0);
+                run.setCreatedBills(0);
+                run.setFailedSuppliers(0);
+                run.setTotalAmount(BigDecimal.ZERO);
+                run.setCreateBy(trimToNull(operator));
+                run.setStartTime(now);
+                run.setHeartbeatTime(now);
+                return runRepository.saveAndFlush(run).getId();
+            });
+        } catch (DataIntegrityViolationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "已有月结批次正在运行，请等待其完成");
+        }
+    }
+
+    /**
+     * 续期本节点运行中批次的心跳，并把心跳超时（执行节点已退出）的批次标记为异常终止。
+     */
+    @Scheduled(fixedDelayString = "${app.purchase.ap-bill.run-heartbeat-interval-ms:30000}", initialDelay = 10000)
+    public void heartbeat() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = new ArrayList<>(localRuns);
+        txTemplate.executeWithoutResult(s -> {
+            if (!ids.isEmpty()) runRepository.heartbeat(ids, now);
+            int abandoned = runRepository.abandonStale(now.minusMinutes(HEARTBEAT_TIMEOUT_MINUTES),
+                    "批次中断：执行节点已退出", now);
+            if (abandoned > 0) log.warn("ap bill runs abandoned after heartbeat timeout count={}", abandoned);
+        });
+    }
+
+    public PurApBillRunResponse get(Long runId) {
+        PurApBillRun run = runRepository.findById(runId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "月结批次不存在"));
+        List<PurApBillRunResponse.Item> items = runItemRepository.listRows(runId).stream()
+                .map(r -> new PurApBillRunResponse.Item(
+                        r.getSupplierId(),
+                        r.getSupplierCode(),
+                        r.getSupplierName(),
+                        r.getStatus(),
+                        r.getBillId(),
+                        r.getBillNo(),
+                        r.getDocCount(),
+                        r.getTotalAmount(),
+                        r.getMessage(),
+                        r.getElapsedMs()))
+                .toList();
+        return toResponse(run, items);
+    }
+
+    public List<PurApBillRunResponse> recent() {
+        return runRepository.findTop20ByOrderByIdDesc().stream().map(r -> toResponse(r, List.of())).toList();
+    }
+
+    private void runSupplier(Long runId, PurApBillCreateRequest request, String operator) {
+        long startNanos = System.nanoTime();
+        PurApBillRunItem item = new PurApBillRunItem();
+        item.setRunId(runId);
+        item.setSupplierId(request.supplierId());
+        item.setDocCount(0);
+        try {
+            PurApBillService.Generated generated = billService.generate(request, operator);
+            item.setStatus(ITEM_STATUS_CREATED);
+            item.setBillId(generated.bill().id());
+            item.setBillNo(generated.bill().billNo());
+            item.setDocCount(generated.docCount());
+            item.setTotalAmount(generated.bill().totalAmount());
+        } catch (ResponseStatusException e) {
+            item.setStatus(ITEM_STATUS_FAILED);
+            item.setMessage(truncate(e.getReason()));
+        } catch (RuntimeException e) {
+            log.warn("ap bill run supplier failed runId={} supplierId={}", runId, request.supplierId(), e);
+            item.setStatus(ITEM_STATUS_FAILED);
+            item.setMessage(truncate(e.getMessage()));
+        }
+        item.setElapsedMs((System.nanoTime() - startNanos) / 1_000_000);
+        item.setCreateTime(LocalDateTime.now());
+
+        boolean created = item.getStatus() == ITEM_STATUS_CREATED;
+        BigDecimal amount = created && item.getTotalAmount() != null ? item.getTotalAmount() : BigDecimal.ZERO;
+        txTemplate.executeWithoutResult(status -> {
+            runItemRepository.save(item);
+            runRepository.addProgress(runId, created ? 1 : 0, created ? 0 : 1, amount);
+        });
+    }
+
+    private void finish(Long runId, long startNanos, Throwable error) {
+        localRuns.remove(runId);
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        int status = error == null ? RUN_STATUS_DONE : RUN_STATUS_ABORTED;
+        String message = error == null ? null : truncate(error.getMessage());
+        if (error != null) log.error("ap bill run aborted id={}", runId, error);
+        try {
+            txTemplate.executeWithoutResult(s -> runRepository.finish(runId, status, message, LocalDateTime.now(), elapsedMs));
+        } catch (RuntimeException e) {
+            log.error("ap bill run finish update failed id={}", runId, e);
+            return;
+        }
+        log.info("ap bill run finished id={} status={} elapsedMs={}", runId, status, elapsedMs);
+    }
+
+    private static PurApBillRunResponse toResponse(PurApBillRun r, List<PurApBillRunResponse.Item> items) {
+        return new PurApBillRunResponse(
+                r.getId(),
+                r.getStartDate(),
+                r.getEndDate(),
+                r.getStatus(),
+                r.getTotalSuppliers(),
+                r.getProcessedSuppliers(),
+                r.getCreatedBills(),
+                r.getFailedSuppliers(),
+                r.getTotalAmount(),
+                r.getMessage(),
+                r.getCreateBy(),
+                r.getStartTime(),
+                r.getFinishTime(),
+                r.getElapsedMs(),
+                items);
+    }
+
+    private static String truncate(String s) {
+        if (s == null) return null;
+        return s.length() <= 512 ? s : s.substring(0, 512);
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) return null;
+        String s = value.trim();
+        return s.isEmpty() ? null : s;
+    }
+}
@@ -2,6 +2,7 @@ package com.ordererp.backend.purchase.service;
 
 import com.ordererp.backend.base.entity.BasePartner;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
 import com.ordererp.backend.finance.service.FinPaymentService;
 import com.ordererp.backend.purchase.dto.PurApBillCreateRequest;
 import com.ordererp.backend.purchase.dto.PurApBillDetailResponse;
@@ -12,8 +13,6 @@ import com.ordererp.backend.purchase.dto.PurApInvoiceResponse;
 import com.ordererp.backend.purchase.dto.PurApPaymentCreateRequest;
 import com.ordererp.backend.purchase.dto.PurApPaymentResponse;
 import com.ordererp.backend.purchase.entity.PurApBill;
-import com.ordererp.backend.purchase.entity.PurApBillDetail;
-import com.ordererp.backend.purchase.entity.PurApDocRef;
 import com.ordererp.backend.purchase.entity.PurApInvoice;
 import com.ordererp.backend.purchase.entity.PurApPayment;
 import com.ordererp.backend.purchase.repository.PurApBillDetailRepository;
@@ -24,7 +23,6 @@ import com.ordererp.backend.purchase.repository.PurApPaymentRepository;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -35,6 +33,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -64,10 +63,12 @@ public class PurApBillService {
     private final PurApInvoiceRepository invoiceRepository;
     private final BasePartnerRepository partnerRepository;
     private final FinPaymentService finPaymentService;
+    private final DocNumberAllocator docNumbers;
 
     public PurApBillService(PurApBillRepository billRepository, PurApBillDetailRepository billDetailRepository,
             PurApDocRefRepository docRefRepository, PurApPaymentRepository paymentRepository,
-            PurApInvoiceRepository invoiceRepository, BasePartnerRepository partnerRepository, FinPaymentService finPaymentService) {
+            PurApInvoiceRepository invoiceRepository, BasePartnerRepository partnerRepository, FinPaymentService finPaymentService,
+            DocNumberAllocator docNumbers) {
         this.billRepository = billRepository;
         this.billDetailRepository = billDetailRepository;
         this.docRefRepository = docRefRepository;
@@ -75,6 +76,7 @@ public class PurApBillService {
         this.invoiceRepository = invoiceRepository;
         this.partnerRepository = partnerRepository;
         this.finPaymentService = finPaymentService;
+        this.docNumbers = docNumbers;
     }
 
     public Page<PurApBillResponse> page(String keyword, Long supplierId, LocalDate startDate, LocalDate endDate, Pageable pageable) {
@@ -174,8 +176,19 @@ public class PurApBillService {
     /**
      * 创建对账单：按供应商 + 日期范围，自动汇总已完成的入库（质检通过）与退货，并锁定这些单据避免重复对账。
      */
-    @Transactional
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public PurApBillResponse create(PurApBillCreateRequest request, String operator) {
+        return generate(request, operator).bill();
+    }
+
+    /**
+     * 生成对账单（集合式）：insert ... select 一次占用区间内全部未对账单据，再按占用结果批量生成明细。
+     *
+     * <p>并发下已被其他对账单抢先占用的单据直接跳过，不再整单 409。使用 READ COMMITTED：insert ... select 的源表读取
+     * 为一致性读、不加间隙锁，月结按供应商并行生成时互不阻塞；单据不会被重复对账由 uk_pur_ap_doc_ref 保证。</p>
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public Generated generate(PurApBillCreateRequest request, String operator) {
         if (request == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "request body is required");
         if (request.supplierId() == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "supplierId is required");
         if (request.startDate() == null || request.endDate() == null) {
@@ -196,10 +209,7 @@ public class PurApBillService {
 
         LocalDateTime startTime = request.startDate().atStartOfDay();
         LocalDateTime endTime = request.endDate().plusDays(1).atStartOfDay();
-
-        List<PurApBillRepository.CandidateInboundRow> inbounds = billRepository.candidateInbounds(request.supplierId(), startTime, endTime);
-        List<PurApBillRepository.CandidateReturnRow> returns = billRepository.candidateReturns(request.supplierId(), startTime, endTime);
-        if ((inbounds == null || inbounds.isEmpty()) && (returns == null || returns.isEmpty())) {
+        if (billRepository.existsUnbilledDocs(request.supplierId(), startTime, endTime) == 0) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "该范围内没有可对账的入库/退货单据");
         }
 
@@ -218,63 +228,14 @@ public class PurApBillService {
         bill.setCreateTime(now);
         bill = billRepository.saveAndFlush(bill);
 
-        BigDecimal total = BigDecimal.ZERO;
-        try {
-            for (PurApBillRepository.CandidateInboundRow r : inbounds) {
-                BigDecimal amt = safeMoney(r.getAmount());
-                if (amt.compareTo(BigDecimal.ZERO) == 0) continue;
-
-                PurApBillDetail d = new PurApBillDetail();
-                d.setBillId(bill.getId());
-                d.setDocType(DOC_TYPE_INBOUND);
-                d.setDocId(r.getDocId());
-                d.setDocNo(r.getDocNo());
-                d.setOrderId(r.getOrderId());
-                d.setOrderNo(r.getOrderNo());
-                d.setDocTime(r.getDocTime());
-                d.setAmount(amt);
-                billDetailRepository.save(d);
-
-                PurApDocRef ref = new PurApDocRef();
-                ref.setDocType(DOC_TYPE_INBOUND);
-                ref.setDocId(r.getDocId());
-                ref.setBillId(bill.getId());
-                ref.setCreateTime(now);
-                docRefRepository.saveAndFlush(ref);
-
-                total = total.add(amt);
-            }
-            for (PurApBillRepository.CandidateReturnRow r : returns) {
-                BigDecimal amt = safeMoney(r.getAmount());
-                if (amt.compareTo(BigDecimal.ZERO) == 0) continue;
-
-                PurApBillDetail d = new PurApBillDetail();
-                d.setBillId(bill.getId());
-                d.setDocType(DOC_TYPE_RETURN);
-                d.setDocId(r.getDocId());
-                d.setDocNo(r.getDocNo());
-                d.setOrderId(null);
-                d.setOrderNo(null);
-                d.setDocTime(r.getDocTime());
-                d.setAmount(amt);
-                billDetailRepository.save(d);
-
-                PurApDocRef ref = new PurApDocRef();
-                ref.setDocType(DOC_TYPE_RETURN);
-                ref.setDocId(r.getDocId());
-                ref.setBillId(bill.getId());
-                ref.setCreateTime(now);
-                docRefRepository.saveAndFlush(ref);
-
-                total = total.add(amt);
-            }
-        } catch (DataIntegrityViolationException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "部分单据已被其他对账单占用，请刷新后重试");
+        Claimed claimed = claimDocs(bill, startTime, endTime, now);
+        if (claimed.docCount() == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "该范围内的入库/退货单据已被其他对账单占用");
         }
 
-        bill.setTotalAmount(total);
+        bill.setTotalAmount(claimed.total());
         billRepository.save(bill);
-        return toResponse(billRepository.getRow(bill.getId()));
+        return new Generated(toResponse(billRepository.getRow(bill.getId())), claimed.docCount());
     }
 
     @Transactional
@@ -306,7 +267,7 @@ public class PurApBillService {
      *   <li>重新生成仅对草稿生效；且要求未发生付款/开票。</li>
      * </ul>
      */
-    @Transactional
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public PurApBillResponse regenerate(Long id, String operator) {
         PurApBill bill = billRepository.findByIdForUpdate(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "对账单不存在"));
@@ -324,74 +285,18 @@ public class PurApBillService {
         LocalDateTime endTime = bill.getEndDate().plusDays(1).atStartOfDay();
 
         // 先释放当前对账单占用的单据，再重新汇总。
-        billDetailRepository.deleteByBillId(bill.getId());
-        docRefRepository.deleteByBillId(bill.getId());
+        billDetailRepository.deleteAllByBillId(bill.getId());
+        docRefRepository.releaseByBillId(bill.getId());
 
-        List<PurApBillRepository.CandidateInboundRow> inbounds = billRepository.candidateInbounds(bill.getSupplierId(), startTime, endTime);
-        List<PurApBillRepository.CandidateReturnRow> returns = billRepository.candidateReturns(bill.getSupplierId(), startTime, endTime);
-        if ((inbounds == null || inbounds.isEmpty()) && (returns == null || returns.isEmpty())) {
+        Claimed claimed = claimDocs(bill, startTime, endTime, LocalDateTime.now());
+        if (claimed.docCount() == 0) {
             bill.setTotalAmount(BigDecimal.ZERO);
             bill.setRemark(mergeRemark(bill.getRemark(), "重新生成：无可对账单据"));
             billRepository.save(bill);
             return toResponse(billRepository.getRow(bill.getId()));
         }
 
-        LocalDateTime now = LocalDateTime.now();
-        BigDecimal total = BigDecimal.ZERO;
-        try {
-            for (PurApBillRepository.CandidateInboundRow r : inbounds) {
-                BigDecimal amt = safeMoney(r.getAmount());
-                if (amt.compareTo(BigDecimal.ZERO) == 0) continue;
-
-                PurApBillDetail d = new PurApBillDetail();
-                d.setBillId(bill.getId());
-                d.setDocType(DOC_TYPE_INBOUND);
-                d.setDocId(r.getDocId());
-                d.setDocNo(r.getDocNo());
-                d.setOrderId(r.getOrderId());
-                d.setOrderNo(r.getOrderNo());
-                d.setDocTime(r.getDocTime());
-                d.setAmount(amt);
-                billDetailRepository.save(d);
-
-                PurApDocRef ref = new PurApDocRef();
-                ref.setDocType(DOC_TYPE_INBOUND);
-                ref.setDocId(r.getDocId());
-                ref.setBillId(bill.getId());
-                ref.setCreateTime(now);
-                docRefRepository.saveAndFlush(ref);
-
-                total = total.add(amt);
-            }
-            for (PurApBillRepository.CandidateReturnRow r : returns) {
-                BigDecimal amt = safeMoney(r.getAmount());
-                if (amt.compareTo(BigDecimal.ZERO) == 0) continue;
-
-                PurApBillDetail d = new PurApBillDetail();
-                d.setBillId(bill.getId());
-                d.setDocType(DOC_TYPE_RETURN);
-                d.setDocId(r.getDocId());
-                d.setDocNo(r.getDocNo());
-                d.setOrderId(null);
-                d.setOrderNo(null);
-                d.setDocTime(r.getDocTime());
-                d.setAmount(amt);
-                billDetailRepository.save(d);
-
-                PurApDocRef ref = new PurApDocRef();
-                ref.setDocType(DOC_TYPE_RETURN);
-                ref.setDocId(r.getDocId());
-                ref.setBillId(bill.getId());
-                ref.setCreateTime(now);
-                docRefRepository.saveAndFlush(ref);
-
-                total = total.add(amt);
-            }
-        } catch (DataIntegrityViolationException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "部分单据已被其他对账单占用，请刷新后重试");
-        }
-
-        bill.setTotalAmount(total);
+        bill.setTotalAmount(claimed.total());
         bill.setRemark(mergeRemark(bill.getRemark(), "重新生成：" + trimToNull(operator)));
         billRepository.save(bill);
         return toResponse(billRepository.getRow(bill.getId()));
@@ -418,7 +323,7 @@ public class PurApBillService {
         bill.setRemark(mergeRemark(bill.getRemark(), "作废：" + trimToNull(operator)));
         billRepository.save(bill);
 
-        docRefRepository.deleteByBillId(bill.getId());
+        docRefRepository.releaseByBillId(bill.getId());
         return toResponse(billRepository.getRow(bill.getId()));
     }
 
@@ -618,6 +523,34 @@ public class PurApBillService {
         return toInvoiceResponse(i);
     }
 
+    /**
+     * 占用区间内全部未对账单据并批量生成明细；返回本单实际占用到的单据数与金额。
+     */
+    private Claimed claimDocs(PurApBill bill, LocalDateTime startTime, LocalDateTime endTime, LocalDateTime now) {
+        docRefRepository.claimInbounds(bill.getId(), bill.getSupplierId(), startTime, endTime, now);
+        docRefRepository.claimReturns(bill.getId(), bill.getSupplierId(), startTime, endTime, now);
+        billDetailRepository.insertInboundDetails(bill.getId());
+        billDetailRepository.insertReturnDetails(bill.getId());
+
+        int docCount = 0;
+        BigDecimal total = BigDecimal.ZERO;
+        for (var r : docRefRepository.claimedTotals(bill.getId())) {
+            if (r == null) continue;
+            docCount += r.getDocCount() == null ? 0 : r.getDocCount().intValue();
+            total = total.add(safeMoney(r.getAmount()));
+        }
+        return new Claimed(docCount, total);
+    }
+
+    private record Claimed(int docCount, BigDecimal total) {
+    }
+
+    /**
+     * 生成结果：对账单与纳入的单据数。
+     */
+    public record Generated(PurApBillResponse bill, int docCount) {
+    }
+
     private void refreshPaidInvoiceAndStatus(PurApBill bill) {
         // Keep derived fields consistent (even if user cancels payments/invoices).
         BigDecimal paid = safeMoney(paymentRepository.sumCompletedAmount(bill.getId()));
@@ -788,15 +721,11 @@ public class PurApBillService {
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateBillNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "AP" + ts + "-" + rand;
+    private String generateBillNo() {
+        return docNumbers.next("AP");
     }
 
-    private static String generatePayNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "PAY" + ts + "-" + rand;
+    private String generatePayNo() {
+        return docNumbers.next("PAY");
     }
 }
@@ -1,11 +1,9 @@
 package com.ordererp.backend.purchase.service;
 
-import com.ordererp.backend.base.entity.BaseProduct;
-import com.ordererp.backend.base.entity.BasePartner;
-import com.ordererp.backend.base.entity.BaseWarehouse;
-import com.ordererp.backend.base.repository.BasePartnerRepository;
-import com.ordererp.backend.base.repository.BaseProductRepository;
-import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.base.service.BaseMasterDataCache;
+import com.ordererp.backend.common.metrics.DocTransitionMetrics;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import com.ordererp.backend.ledger.LedgerOutbox;
 import com.ordererp.backend.purchase.dto.PurInboundCreateLineRequest;
 import com.ordererp.backend.purchase.dto.PurInboundCreateRequest;
 import com.ordererp.backend.purchase.dto.PurInboundDetailResponse;
@@ -27,28 +25,26 @@ import com.ordererp.backend.purchase.repository.PurOrderRepository;
 import com.ordererp.backend.wms.entity.WmsIoBill;
 import com.ordererp.backend.wms.entity.WmsIoBillDetail;
 import com.ordererp.backend.wms.entity.WmsStock;
-import com.ordererp.backend.wms.entity.WmsStockQc;
 import com.ordererp.backend.wms.entity.WmsStockLog;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockQcRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
 import com.ordererp.backend.wms.repository.WmsStockRepository;
+import com.ordererp.backend.wms.service.WmsStockLedger;
+import com.ordererp.backend.wms.service.WmsStockLogAppender;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
@@ -81,34 +77,39 @@ public class PurInboundService {
     private final PurOrderRepository orderRepository;
     private final PurOrderDetailRepository orderDetailRepository;
     private final PurApDocRefRepository docRefRepository;
-    private final BasePartnerRepository partnerRepository;
-    private final BaseWarehouseRepository warehouseRepository;
-    private final BaseProductRepository productRepository;
+    private final BaseMasterDataCache masterDataCache;
     private final WmsIoBillRepository ioBillRepository;
     private final WmsIoBillDetailRepository ioBillDetailRepository;
     private final WmsStockRepository stockRepository;
-    private final WmsStockQcRepository stockQcRepository;
-    private final WmsStockLogRepository stockLogRepository;
+    private final WmsStockLogAppender stockLogAppender;
+    private final WmsStockLedger stockLedger;
+    private final DocNumberAllocator docNumbers;
+    private final DocTransitionMetrics transitionMetrics;
+    private final LedgerOutbox ledgerOutbox;
 
     public PurInboundService(PurInboundRepository inboundRepository, PurInboundDetailRepository inboundDetailRepository,
             PurOrderRepository orderRepository, PurOrderDetailRepository orderDetailRepository,
             PurApDocRefRepository docRefRepository,
-            BasePartnerRepository partnerRepository, BaseWarehouseRepository warehouseRepository, BaseProductRepository productRepository,
+            BaseMasterDataCache masterDataCache,
             WmsIoBillRepository ioBillRepository, WmsIoBillDetailRepository ioBillDetailRepository,
-            WmsStockRepository stockRepository, WmsStockQcRepository stockQcRepository, WmsStockLogRepository stockLogRepository) {
+            WmsStockRepository stockRepository, WmsStockLogAppender stockLogAppender, WmsStockLedger stockLedger,
+            DocNumberAllocator docNumbers,
+            DocTransitionMetrics transitionMetrics,
+            LedgerOutbox ledgerOutbox) {
         this.inboundRepository = inboundRepository;
         this.inboundDetailRepository = inboundDetailRepository;
         this.orderRepository = orderRepository;
         this.orderDetailRepository = orderDetailRepository;
         this.docRefRepository = docRefRepository;
-        this.partnerRepository = partnerRepository;
-        this.warehouseRepository = warehouseRepository;
-        this.productRepository = productRepository;
+        this.masterDataCache = masterDataCache;
         this.ioBillRepository = ioBillRepository;
         this.ioBillDetailRepository = ioBillDetailRepository;
         this.stockRepository = stockRepository;
-        this.stockQcRepository = stockQcRepository;
-        this.stockLogRepository = stockLogRepository;
+        this.stockLogAppender = stockLogAppender;
+        this.stockLedger = stockLedger;
+        this.docNumbers = docNumbers;
+        this.transitionMetrics = transitionMetrics;
+        this.ledgerOutbox = ledgerOutbox;
     }
 
     public Page<PurInboundResponse> page(String keyword, Long orderId, Pageable pageable) {
@@ -193,25 +194,25 @@ public class PurInboundService {
                     existing.getWmsBillNo());
         }
 
-        BasePartner supplier = partnerRepository.findByIdAndDeleted(request.supplierId(), 0)
+        BaseMasterDataCache.PartnerInfo supplier = masterDataCache.getPartner(request.supplierId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "供应商不存在"));
-        if (supplier.getType() != null && supplier.getType() != 1) {
+        if (supplier.type() != null && supplier.type() != 1) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "往来单位不是供应商");
         }
-        if (supplier.getStatus() != null && supplier.getStatus() != 1) {
+        if (!supplier.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "供应商已禁用");
         }
 
-        BaseWarehouse wh = warehouseRepository.findByIdAndDeleted(request.warehouseId(), 0)
+        BaseMasterDataCache.WarehouseInfo wh = masterDataCache.getWarehouse(request.warehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库不存在"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库已禁用");
         }
 
         LocalDateTime now = LocalDateTime.now();
         PurOrder order = new PurOrder();
         order.setOrderNo(generateOrderNo());
-        order.setSupplierId(supplier.getId());
+        order.setSupplierId(supplier.id());
         order.setOrderDate(request.orderDate() == null ? LocalDate.now() : request.orderDate());
         order.setTotalAmount(BigDecimal.ZERO);
         order.setPayAmount(BigDecimal.ZERO);
@@ -224,11 +225,13 @@ public class PurInboundService {
         order = orderRepository.saveAndFlush(order);
 
         BigDecimal totalAmount = BigDecimal.ZERO;
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                request.lines().stream().filter(Objects::nonNull).map(PurInboundNewOrderLineRequest::productId).toList());
         for (PurInboundNewOrderLineRequest line : request.lines()) {
-            BaseProduct product = productRepository.findByIdAndDeleted(line.productId(), 0)
+            BaseMasterDataCache.ProductInfo product = Optional.ofNullable(products.get(line.productId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品不存在: " + line.productId()));
-            if (product.getStatus() != null && product.getStatus() != 1) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品已禁用: " + product.getProductCode());
+            if (!product.enabled()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品已禁用: " + product.productCode());
             }
 
             BigDecimal qty = safeQty(line.qty());
@@ -237,10 +240,10 @@ public class PurInboundService {
 
             PurOrderDetail d = new PurOrderDetail();
             d.setOrderId(order.getId());
-            d.setProductId(product.getId());
-            d.setProductCode(product.getProductCode());
-            d.setProductName(product.getProductName());
-            d.setUnit(product.getUnit());
+            d.setProductId(product.id());
+            d.setProductCode(product.productCode());
+            d.setProductName(product.productName());
+            d.setUnit(product.unit());
             d.setPrice(price);
             d.setQty(qty);
             d.setAmount(amount);
@@ -317,9 +320,9 @@ public class PurInboundService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "采购单未审核，不能入库");
         }
 
-        BaseWarehouse wh = warehouseRepository.findByIdAndDeleted(request.warehouseId(), 0)
+        BaseMasterDataCache.WarehouseInfo wh = masterDataCache.getWarehouse(request.warehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库不存在"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库已禁用");
         }
 
@@ -358,7 +361,7 @@ public class PurInboundService {
         inbound.setOrderId(order.getId());
         inbound.setOrderNo(order.getOrderNo());
         inbound.setSupplierId(order.getSupplierId());
-        inbound.setWarehouseId(wh.getId());
+        inbound.setWarehouseId(wh.id());
         inbound.setStatus(INBOUND_STATUS_PENDING_QC);
         inbound.setQcStatus(QC_STATUS_PENDING);
         inbound.setRemark(trimToNull(request.remark()));
@@ -384,15 +387,17 @@ public class PurInboundService {
         }
 
         // 保存明细（快照字段优先取采购单明细，保证历史一致）
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                request.lines().stream().filter(Objects::nonNull).map(PurInboundCreateLineRequest::productId).toList());
         for (PurInboundCreateLineRequest line : request.lines()) {
             PurOrderDetail od = orderDetailByProductId.get(line.productId());
             BigDecimal qty = safeQty(line.qty());
 
             // 商品有效性校验（避免采购单审核后商品被禁用导致入库异常）
-            BaseProduct product = productRepository.findByIdAndDeleted(line.productId(), 0)
+            BaseMasterDataCache.ProductInfo product = Optional.ofNullable(products.get(line.productId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品不存在: " + line.productId()));
-            if (product.getStatus() != null && product.getStatus() != 1) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品已禁用: " + product.getProductCode());
+            if (!product.enabled()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品已禁用: " + product.productCode());
             }
 
             PurInboundDetail d = new PurInboundDetail();
@@ -414,7 +419,7 @@ public class PurInboundService {
         for (Map.Entry<Long, BigDecimal> e : qcDeltaByProductId.entrySet()) {
             BigDecimal qty = safeQty(e.getValue());
             if (qty.compareTo(BigDecimal.ZERO) <= 0) continue;
-            increaseQcWithRetry(wh.getId(), e.getKey(), qty);
+            stockLedger.increaseQc(wh.id(), e.getKey(), qty);
         }
 
         return new PurInboundExecuteResponse(
@@ -429,6 +434,11 @@ public class PurInboundService {
 
     @Transactional
     public PurInboundExecuteResponse iqcPassAndExecute(Long inboundId, String qcRemark, String operator) {
+        return transitionMetrics.record("pur_inbound", "iqc_pass_execute",
+                () -> doIqcPassAndExecute(inboundId, qcRemark, operator));
+    }
+
+    private PurInboundExecuteResponse doIqcPassAndExecute(Long inboundId, String qcRemark, String operator) {
         PurInbound inbound = inboundRepository.findByIdForUpdate(inboundId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "入库单不存在"));
         if (Objects.equals(inbound.getStatus(), INBOUND_STATUS_CANCELED)) {
@@ -479,7 +489,7 @@ public class PurInboundService {
         for (Map.Entry<Long, BigDecimal> e : qcDeltaByProductId.entrySet()) {
             BigDecimal qty = safeQty(e.getValue());
             if (qty.compareTo(BigDecimal.ZERO) <= 0) continue;
-            decreaseQcWithRetry(inbound.getWarehouseId(), e.getKey(), qty);
+            stockLedger.decreaseQc(inbound.getWarehouseId(), e.getKey(), qty);
         }
 
         inbound.setQcStatus(QC_STATUS_REJECTED);
@@ -495,9 +505,9 @@ public class PurInboundService {
         if (inbound.getWarehouseId() == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouseId missing");
         }
-        BaseWarehouse wh = warehouseRepository.findByIdAndDeleted(inbound.getWarehouseId(), 0)
+        BaseMasterDataCache.WarehouseInfo wh = masterDataCache.getWarehouse(inbound.getWarehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库不存在"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库已禁用");
         }
 
@@ -524,14 +534,15 @@ public class PurInboundService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "入库单没有明细");
         }
 
-        // 执行入库：写 WMS 单据 + 加库存 + 写流水 + 回写采购单进度
+        // 执行入库：写 WMS 单据 + 加库存 + 写流水 + 回写采购单进度 + 记账发件箱（按采购单价计金额）
         LocalDateTime now = LocalDateTime.now();
+        BigDecimal inboundAmount = BigDecimal.ZERO;
         WmsIoBill bill = new WmsIoBill();
         bill.setBillNo(generateBillNo("PI"));
         bill.setType(WMS_BILL_TYPE_PURCHASE_IN);
         bill.setBizId(null);
         bill.setBizNo(inbound.getInboundNo());
-        bill.setWarehouseId(wh.getId());
+        bill.setWarehouseId(wh.id());
         bill.setStatus(WMS_BILL_STATUS_COMPLETED);
         bill.setRemark("采购入库: " + order.getOrderNo() + " / " + inbound.getInboundNo());
         bill.setCreateBy(trimToNull(operator));
@@ -543,7 +554,7 @@ public class PurInboundService {
             if (qty.compareTo(BigDecimal.ZERO) <= 0) continue;
 
             // 待检库存 -> 可用库存（质检通过后才增加物理库存）
-            decreaseQcWithRetry(wh.getId(), d.getProductId(), qty);
+            stockLedger.decreaseQc(wh.id(), d.getProductId(), qty);
 
             WmsIoBillDetail bd = new WmsIoBillDetail();
             bd.setBillId(bill.getId());
@@ -552,17 +563,17 @@ public class PurInboundService {
             bd.setRealQty(qty);
             ioBillDetailRepository.save(bd);
 
-            WmsStock stock = increaseStockWithRetry(wh.getId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.increase(wh.id(), d.getProductId(), qty);
 
             WmsStockLog log = new WmsStockLog();
-            log.setWarehouseId(wh.getId());
+            log.setWarehouseId(wh.id());
             log.setProductId(d.getProductId());
             log.setBizType("PURCHASE_IN");
             log.setBizNo(bill.getBillNo());
             log.setChangeQty(qty);
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(now);
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
 
             d.setRealQty(qty);
             inboundDetailRepository.save(d);
@@ -578,7 +589,11 @@ public class PurInboundService {
             }
             od.setInQty(nextInQty);
             orderDetailRepository.save(od);
+            if (od.getPrice() != null) inboundAmount = inboundAmount.add(qty.multiply(od.getPrice()));
         }
+        stockLogAppender.flush();
+        ledgerOutbox.publish(LedgerOutbox.PURCHASE_IN, inbound.getId(), inbound.getInboundNo(), now.toLocalDate(),
+                inboundAmount, order.getOrderNo());
 
         boolean allCompleted = true;
         for (PurOrderDetail od : orderDetails) {
@@ -677,9 +692,9 @@ public class PurInboundService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "关联 WMS 单未完成，无法冲销");
         }
 
-        BaseWarehouse wh = warehouseRepository.findByIdAndDeleted(inbound.getWarehouseId(), 0)
+        BaseMasterDataCache.WarehouseInfo wh = masterDataCache.getWarehouse(inbound.getWarehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库不存在"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库已禁用");
         }
 
@@ -704,7 +719,7 @@ public class PurInboundService {
         for (PurInboundDetail d : inboundDetails) {
             BigDecimal qty = safeQty(d.getRealQty());
             if (qty.compareTo(BigDecimal.ZERO) <= 0) continue;
-            WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(wh.getId(), d.getProductId())
+            WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(wh.id(), d.getProductId())
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "stock not found"));
             BigDecimal stockQty = safeQty(stock.getStockQty());
             BigDecimal lockedQty = safeQty(stock.getLockedQty());
@@ -722,7 +737,7 @@ public class PurInboundService {
         reversal.setType(WMS_BILL_TYPE_STOCK_OUT);
         reversal.setBizId(origBill.getId());
         reversal.setBizNo(origBill.getBillNo());
-        reversal.setWarehouseId(wh.getId());
+        reversal.setWarehouseId(wh.id());
         reversal.setStatus(WMS_BILL_STATUS_COMPLETED);
         reversal.setRemark("冲销采购入库: " + inbound.getInboundNo());
         reversal.setCreateBy(trimToNull(operator));
@@ -757,17 +772,17 @@ public class PurInboundService {
             rd.setRealQty(qty);
             ioBillDetailRepository.save(rd);
 
-            WmsStock stock = deductStockWithRetry(wh.getId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.deduct(wh.id(), d.getProductId(), qty);
 
             WmsStockLog log = new WmsStockLog();
-            log.setWarehouseId(wh.getId());
+            log.setWarehouseId(wh.id());
             log.setProductId(d.getProductId());
             log.setBizType("PURCHASE_IN_REVERSE");
             log.setBizNo(reversal.getBillNo());
             log.setChangeQty(qty.negate());
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(now);
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
 
             PurOrderDetail od = orderDetailByProductId.get(d.getProductId());
             if (od == null) {
@@ -780,6 +795,9 @@ public class PurInboundService {
             od.setInQty(nextInQty);
             orderDetailRepository.save(od);
         }
+        stockLogAppender.flush();
+        ledgerOutbox.reverse(LedgerOutbox.PURCHASE_IN, inbound.getId(), reversal.getBillNo(), now.toLocalDate(),
+                reversal.getRemark());
 
         boolean anyIn = false;
         boolean allCompleted = true;
@@ -822,175 +840,6 @@ public class PurInboundService {
         inboundRepository.save(inbound);
     }
 
-    private void ensureStockRowExists(Long warehouseId, Long productId) {
-        LocalDateTime now = LocalDateTime.now();
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (stock != null) return;
-
-        WmsStock created = new WmsStock();
-        created.setWarehouseId(warehouseId);
-        created.setProductId(productId);
-        created.setStockQty(BigDecimal.ZERO);
-        created.setLockedQty(BigDecimal.ZERO);
-        created.setVersion(0);
-        created.setUpdateTime(now);
-        validateStockInvariant(created.getStockQty(), created.getLockedQty());
-        try {
-            stockRepository.saveAndFlush(created);
-        } catch (DataIntegrityViolationException e) {
-            // Another txn created it; ignore.
-        }
-    }
-
-    private WmsStockQc increaseQcWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return increaseQcOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStockQc increaseQcOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        ensureStockRowExists(warehouseId, productId);
-
-        LocalDateTime now = LocalDateTime.now();
-        WmsStockQc qc = stockQcRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (qc == null) {
-            WmsStockQc created = new WmsStockQc();
-            created.setWarehouseId(warehouseId);
-            created.setProductId(productId);
-            created.setQcQty(qty);
-            created.setVersion(0);
-            created.setUpdateTime(now);
-            validateQcInvariant(created.getQcQty());
-            try {
-                return stockQcRepository.saveAndFlush(created);
-            } catch (DataIntegrityViolationException e) {
-                qc = stockQcRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                        .orElseThrow(() -> e);
-            }
-        }
-
-        BigDecimal qcQty = safeQty(qc.getQcQty());
-        validateQcInvariant(qcQty);
-        qc.setQcQty(qcQty.add(qty));
-        qc.setUpdateTime(now);
-        validateQcInvariant(qc.getQcQty());
-        return stockQcRepository.saveAndFlush(qc);
-    }
-
-    private WmsStockQc decreaseQcWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return decreaseQcOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStockQc decreaseQcOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        LocalDateTime now = LocalDateTime.now();
-        WmsStockQc qc = stockQcRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (qc == null) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT,
-                    "QC stock bucket missing (warehouseId=" + warehouseId + ", productId=" + productId + ")");
-        }
-
-        BigDecimal qcQty = safeQty(qc.getQcQty());
-        validateQcInvariant(qcQty);
-        if (qcQty.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT,
-                    "QC qty insufficient (warehouseId=" + warehouseId + ", productId=" + productId + ", qcQty=" + qcQty + ", required=" + qty + ")");
-        }
-
-        qc.setQcQty(qcQty.subtract(qty));
-        qc.setUpdateTime(now);
-        validateQcInvariant(qc.getQcQty());
-        return stockQcRepository.saveAndFlush(qc);
-    }
-
-    private WmsStock increaseStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return increaseStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock deductStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return deductStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock deductStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "stock not found"));
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        BigDecimal available = stockQty.subtract(lockedQty);
-        if (available.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "insufficient stock (available=" + available + ", required=" + qty + ")");
-        }
-        stock.setStockQty(stockQty.subtract(qty));
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(LocalDateTime.now());
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
-    private WmsStock increaseStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        LocalDateTime now = LocalDateTime.now();
-
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (stock == null) {
-            WmsStock created = new WmsStock();
-            created.setWarehouseId(warehouseId);
-            created.setProductId(productId);
-            created.setStockQty(qty);
-            created.setLockedQty(BigDecimal.ZERO);
-            created.setVersion(0);
-            created.setUpdateTime(now);
-            validateStockInvariant(created.getStockQty(), created.getLockedQty());
-            try {
-                return stockRepository.saveAndFlush(created);
-            } catch (DataIntegrityViolationException e) {
-                stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                        .orElseThrow(() -> e);
-            }
-        }
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-
-        stock.setStockQty(stockQty.add(qty));
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(now);
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
     private static void validateLines(List<PurInboundCreateLineRequest> lines) {
         if (lines == null || lines.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "lines is required");
@@ -1102,32 +951,21 @@ public class PurInboundService {
         }
     }
 
-    private static void validateQcInvariant(BigDecimal qcQty) {
-        BigDecimal q = safeQty(qcQty);
-        if (q.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid QC stock state: qc_qty < 0");
-        }
-    }
-
     private static String trimToNull(String value) {
         if (value == null) return null;
         String s = value.trim();
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateInboundNo() {
+    private String generateInboundNo() {
         return generateBillNo("PIN");
     }
 
-    private static String generateOrderNo() {
-        String date = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "PO" + date + "-" + rand;
+    private String generateOrderNo() {
+        return docNumbers.next("PO");
     }
 
-    private static String generateBillNo(String prefix) {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return prefix + ts + "-" + rand;
+    private String generateBillNo(String prefix) {
+        return docNumbers.next(prefix);
     }
 }
@@ -5,238 +5,329 @@ import com.ordererp.backend.base.entity.BaseProduct;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
 import com.ordererp.backend.base.repository.BaseProductRepository;
 import com.ordererp.backend.common.dto.ImportResult;
-import com.ordererp.backend.common.dto.ImportResult.RowError;
-import com.ordererp.backend.purchase.entity.PurOrder;
-import com.ordererp.backend.purchase.entity.PurOrderDetail;
+import com.ordererp.backend.common.excel.ExcelChunkImporter;
+import com.ordererp.backend.common.excel.ExcelChunkImporter.ChunkContext;
+import com.ordererp.backend.common.excel.ExcelChunkImporter.ImportRow;
+import com.ordererp.backend.common.excel.ExcelChunkImporter.ProgressListener;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
 import com.ordererp.backend.purchase.excel.PurOrderExcelRow;
 import com.ordererp.backend.purchase.repository.PurOrderDetailRepository;
 import com.ordererp.backend.purchase.repository.PurOrderRepository;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import java.util.Set;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 public class PurOrderExcelService {
     private static final int ORDER_STATUS_AUDITED = 2;
 
+    private static final String INSERT_ORDER_SQL = """
+            insert into pur_order (order_no, supplier_id, order_date, total_amount, pay_amount, status, remark,
+              create_by, create_time, audit_by, audit_time)
+            values (?, ?, ?, ?, 0.00, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_DETAIL_SQL = """
+            insert into pur_order_detail (order_id, product_id, product_code, product_name, unit, price, qty, amount,
+              in_qty)
+            values (?, ?, ?, ?, ?, ?, ?, ?, 0.000)
+            """;
+
     private static final int PARTNER_TYPE_SUPPLIER = 1;
 
     private final PurOrderRepository orderRepository;
     private final PurOrderDetailRepository detailRepository;
     private final BasePartnerRepository partnerRepository;
     private final BaseProductRepository productRepository;
-    private final TransactionTemplate txTemplate;
+    private final DocNumberAllocator docNumbers;
+    private final ExcelChunkImporter excelImporter;
+    private final JdbcTemplate jdbcTemplate;
 
     public PurOrderExcelService(PurOrderRepository orderRepository, PurOrderDetailRepository detailRepository,
-            BasePartnerRepository partnerRepository, BaseProductRepository productRepository, PlatformTransactionManager txManager) {
+            BasePartnerRepository partnerRepository, BaseProductRepository productRepository,
+            DocNumberAllocator docNumbers, ExcelChunkImporter excelImporter, JdbcTemplate jdbcTemplate) {
         this.orderRepository = orderRepository;
         this.detailRepository = detailRepository;
         this.partnerRepository = partnerRepository;
         this.productRepository = productRepository;
-        this.txTemplate = new TransactionTemplate(txManager);
+        this.docNumbers = docNumbers;
+        this.excelImporter = excelImporter;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
-    public Page<PurOrderExcelRow> exportOrders(String keyword, Pageable pageable) {
-        return detailRepository.exportRows(trimToNull(keyword), pageable).map(r -> {
-            PurOrderExcelRow row = new PurOrderExcelRow();
-            row.setOrderNo(r.getOrderNo());
-            row.setSupplierCode(r.getSupplierCode());
-            row.setSupplierName(r.getSupplierName());
-            row.setOrderDate(r.getOrderDate());
-            row.setStatus(r.getStatus());
-            row.setProductCode(r.getProductCode());
-            row.setProductName(r.getProductName());
-            row.setUnit(r.getUnit());
-            row.setPrice(r.getPrice());
-            row.setQty(r.getQty());
-            row.setAmount(r.getAmount());
-            row.setInQty(r.getInQty());
-            row.setRemark(r.getRemark());
-            return row;
-        });
+    /**
+     * 导出取数：按“订单倒序、明细正序”取游标（明细 id）之后的一批，供 Excel 流式导出逐批调用。
+     */
+    public List<PurOrderDetailRepository.PurOrderExportRow> exportBatch(String keyword, Long afterDetailId, int limit) {
+        return detailRepository.seekExportRows(trimToNull(keyword), afterDetailId, limit);
+    }
+
+    public static PurOrderExcelRow toExcelRow(PurOrderDetailRepository.PurOrderExportRow r) {
+        PurOrderExcelRow row = new PurOrderExcelRow();
+        row.setOrderNo(r.getOrderNo());
+        row.setSupplierCode(r.getSupplierCode());
+        row.setSupplierName(r.getSupplierName());
+        row.setOrderDate(r.getOrderDate());
+        row.setStatus(r.getStatus());
+        row.setProductCode(r.getProductCode());
+        row.setProductName(r.getProductName());
+        row.setUnit(r.getUnit());
+        row.setPrice(r.getPrice());
+        row.setQty(r.getQty());
+        row.setAmount(r.getAmount());
+        row.setInQty(r.getInQty());
+        row.setRemark(r.getRemark());
+        return row;
     }
 
     /**
      * 导入采购订单：每一行作为一张采购单的一个明细行；若同一 Excel 中多行的“采购单号”相同，则会被合并为一张采购单。
      *
      * <p>导入时默认将采购单直接置为“已审核”（便于后续收货/对账验证）。</p>
+     *
+     * <p>按批处理（同一采购单号的连续行不拆批）：每批一次 in 查询预加载供应商、商品和已存在的单号，
+     * 表头和明细各一条批量 insert。某张采购单校验失败只跳过这张单，错误记在它的第一行；
+     * 同一单号的行被其他单号隔开时，后出现的行追加到本次导入已建好的采购单上。</p>
      */
-    public ImportResult importOrders(List<PurOrderExcelRow> rows, String operator) {
-        List<RowError> errors = new ArrayList<>();
-        int inserted = 0;
-        int updated = 0;
+    public ImportResult importOrders(InputStream in, String operator) {
+        return importOrders(in, operator, ProgressListener.NONE);
+    }
 
-        if (rows == null || rows.isEmpty()) {
-            return ImportResult.ok(0, 0, 0, List.of());
-        }
+    public ImportResult importOrders(InputStream in, String operator, ProgressListener progress) {
+        ImportState state = new ImportState();
+        return excelImporter.importSheet(in, PurOrderExcelRow.class, "purchase-orders",
+                r -> {
+                    String orderNo = normalizeCode(r.getOrderNo());
+                    return orderNo == null ? null : orderNo.toLowerCase(Locale.ROOT);
+                },
+                (rows, ctx) -> importChunk(rows, ctx, state, trimToNull(operator)), progress);
+    }
 
-        Map<String, List<RowWithNum>> grouped = new HashMap<>();
-        int rowNum = 1;
-        for (PurOrderExcelRow r : rows) {
-            rowNum++;
-            String supplierCode = normalizeCode(r.getSupplierCode());
-            String productCode = normalizeCode(r.getProductCode());
-            if (supplierCode == null) {
-                errors.add(new RowError(rowNum, "supplierCode is required"));
+    private void importChunk(List<ImportRow<PurOrderExcelRow>> rows, ChunkContext ctx, ImportState state,
+            String operator) {
+        Map<String, List<ImportRow<PurOrderExcelRow>>> grouped = new LinkedHashMap<>();
+        for (ImportRow<PurOrderExcelRow> row : rows) {
+            PurOrderExcelRow r = row.data();
+            if (normalizeCode(r.getSupplierCode()) == null) {
+                ctx.reject(row.rowNum(), "supplierCode is required");
                 continue;
             }
-            if (productCode == null) {
-                errors.add(new RowError(rowNum, "productCode is required"));
+            if (normalizeCode(r.getProductCode()) == null) {
+                ctx.reject(row.rowNum(), "productCode is required");
                 continue;
             }
-            BigDecimal qty = safeQty(r.getQty());
-            if (qty.compareTo(BigDecimal.ZERO) <= 0) {
-                errors.add(new RowError(rowNum, "qty must be > 0"));
+            if (safeQty(r.getQty()).compareTo(BigDecimal.ZERO) <= 0) {
+                ctx.reject(row.rowNum(), "qty must be > 0");
                 continue;
             }
-            BigDecimal price = safeMoney(r.getPrice());
-            if (price.compareTo(BigDecimal.ZERO) < 0) {
-                errors.add(new RowError(rowNum, "price must be >= 0"));
+            if (safeMoney(r.getPrice()).compareTo(BigDecimal.ZERO) < 0) {
+                ctx.reject(row.rowNum(), "price must be >= 0");
                 continue;
             }
-
             String orderNo = normalizeCode(r.getOrderNo());
-            String key = orderNo == null ? ("AUTO_ROW_" + rowNum) : orderNo.toLowerCase(Locale.ROOT);
-            grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(new RowWithNum(rowNum, r));
+            String key = orderNo == null ? ("AUTO_ROW_" + row.rowNum()) : orderNo.toLowerCase(Locale.ROOT);
+            grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
         }
-
-        for (Map.Entry<String, List<RowWithNum>> e : grouped.entrySet()) {
-            List<RowWithNum> group = e.getValue();
-            if (group == null || group.isEmpty()) continue;
-
-            try {
-                boolean ok = txTemplate.execute(status -> {
-                    try {
-                        createOneOrder(group, operator);
-                        return true;
-                    } catch (RuntimeException ex) {
-                        status.setRollbackOnly();
-                        throw ex;
-                    }
-                });
-                if (ok) inserted++;
-            } catch (RuntimeException ex) {
-                // Report error on the first data row of this group.
-                int rn = group.get(0).rowNum;
-                errors.add(new RowError(rn, ex.getMessage() == null ? "import failed" : ex.getMessage()));
+        if (grouped.isEmpty()) return;
+
+        // 整批一次性预加载：供应商、商品、已存在的单号
+        Set<String> supplierCodes = new HashSet<>();
+        Set<String> productCodes = new HashSet<>();
+        Set<String> orderNos = new HashSet<>();
+        for (List<ImportRow<PurOrderExcelRow>> group : grouped.values()) {
+            for (ImportRow<PurOrderExcelRow> row : group) {
+                supplierCodes.add(normalizeCode(row.data().getSupplierCode()));
+                productCodes.add(normalizeCode(row.data().getProductCode()));
+                String orderNo = normalizeCode(row.data().getOrderNo());
+                if (orderNo != null) orderNos.add(orderNo);
+            }
+        }
+        Map<String, BasePartner> suppliers = new HashMap<>();
+        for (BasePartner p : partnerRepository.findByPartnerCodeIn(supplierCodes)) {
+            suppliers.put(p.getPartnerCode().toLowerCase(Locale.ROOT), p);
+        }
+        Map<String, BaseProduct> products = new HashMap<>();
+        for (BaseProduct p : productRepository.findByProductCodeIn(productCodes)) {
+            products.put(p.getProductCode().toLowerCase(Locale.ROOT), p);
+        }
+        Set<String> existingOrderNos = new HashSet<>();
+        if (!orderNos.isEmpty()) {
+            for (PurOrderRepository.OrderNoRow o : orderRepository.findOrderNos(orderNos)) {
+                existingOrderNos.add(o.getOrderNo().toLowerCase(Locale.ROOT));
             }
         }
 
-        return ImportResult.ok(rows.size(), inserted, updated, errors);
-    }
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, NewOrder> newOrders = new LinkedHashMap<>();
+        Map<String, CreatedOrder> appended = new HashMap<>();
+        List<NewDetail> details = new ArrayList<>();
+        Map<Long, BigDecimal> appendedTotals = new HashMap<>();
+        for (Map.Entry<String, List<ImportRow<PurOrderExcelRow>>> e : grouped.entrySet()) {
+            String key = e.getKey();
+            List<ImportRow<PurOrderExcelRow>> group = e.getValue();
+            int firstRow = group.get(0).rowNum();
+
+            String rejected = state.rejected.get(key);
+            if (rejected != null) {
+                ctx.reject(firstRow, rejected);
+                continue;
+            }
+            CreatedOrder created = state.created.get(key);
+            String error = validateGroup(group, created, suppliers, products,
+                    created == null && existingOrderNos.contains(key));
+            if (error != null) {
+                if (!key.startsWith("AUTO_ROW_")) state.rejected.put(key, error);
+                ctx.reject(firstRow, error);
+                continue;
+            }
 
-    private void createOneOrder(List<RowWithNum> group, String operator) {
-        // Validate consistent supplierCode across group.
-        String supplierCode = normalizeCode(group.get(0).row.getSupplierCode());
-        for (RowWithNum rw : group) {
-            String sc = normalizeCode(rw.row.getSupplierCode());
-            if (!Objects.equals(supplierCode, sc)) {
-                throw new IllegalArgumentException("supplierCode must be consistent within the same orderNo group");
+            List<NewDetail> groupDetails = new ArrayList<>(group.size());
+            BigDecimal total = BigDecimal.ZERO;
+            for (ImportRow<PurOrderExcelRow> row : group) {
+                PurOrderExcelRow r = row.data();
+                BaseProduct product = products.get(normalizeCode(r.getProductCode()).toLowerCase(Locale.ROOT));
+                BigDecimal qty = safeQty(r.getQty());
+                BigDecimal price = safeMoney(r.getPrice());
+                BigDecimal amount = price.multiply(qty);
+                groupDetails.add(new NewDetail(key, product, price, qty, amount));
+                total = total.add(amount);
             }
-        }
+            details.addAll(groupDetails);
 
-        BasePartner supplier = partnerRepository.findFirstByPartnerCode(supplierCode)
-                .orElseThrow(() -> new IllegalArgumentException("unknown supplierCode: " + supplierCode));
-        if (!Objects.equals(supplier.getType(), PARTNER_TYPE_SUPPLIER)) {
-            throw new IllegalArgumentException("partner is not supplier: " + supplierCode);
-        }
-        if (supplier.getStatus() != null && supplier.getStatus() != 1) {
-            throw new IllegalArgumentException("supplier disabled: " + supplierCode);
-        }
+            Set<String> skus = new HashSet<>();
+            for (NewDetail d : groupDetails) skus.add(d.product().getProductCode().toLowerCase(Locale.ROOT));
+            if (created != null) {
+                appendedTotals.merge(created.id(), total, BigDecimal::add);
+                appended.put(key, new CreatedOrder(created.id(), created.supplierId(), skus));
+                continue;
+            }
 
-        String orderNo = normalizeCode(group.get(0).row.getOrderNo());
-        if (orderNo == null) {
-            orderNo = generateOrderNo();
+            PurOrderExcelRow head = group.get(0).data();
+            String orderNo = normalizeCode(head.getOrderNo());
+            if (orderNo == null) orderNo = generateOrderNo();
+            BasePartner supplier = suppliers.get(normalizeCode(head.getSupplierCode()).toLowerCase(Locale.ROOT));
+            LocalDate orderDate = head.getOrderDate() == null ? LocalDate.now() : head.getOrderDate();
+            newOrders.put(key, new NewOrder(orderNo, supplier.getId(), orderDate, total, trimToNull(head.getRemark()),
+                    skus));
         }
 
-        // Prevent duplicate by orderNo.
-        if (orderRepository.findFirstByOrderNo(orderNo).orElse(null) != null) {
-            throw new IllegalArgumentException("orderNo already exists: " + orderNo);
+        Map<String, Long> orderIds = new HashMap<>();
+        if (!newOrders.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_ORDER_SQL, newOrders.values().stream()
+                    .map(o -> new Object[] {
+                            o.orderNo(),
+                            o.supplierId(),
+                            o.orderDate(),
+                            o.total(),
+                            ORDER_STATUS_AUDITED,
+                            o.remark(),
+                            operator,
+                            now,
+                            operator,
+                            now
+                    })
+                    .toList());
+            Map<String, Long> idByOrderNo = new HashMap<>();
+            for (PurOrderRepository.OrderNoRow o : orderRepository.findOrderNos(
+                    newOrders.values().stream().map(NewOrder::orderNo).toList())) {
+                idByOrderNo.put(o.getOrderNo().toLowerCase(Locale.ROOT), o.getId());
+            }
+            newOrders.forEach((key, o) -> orderIds.put(key, idByOrderNo.get(o.orderNo().toLowerCase(Locale.ROOT))));
         }
+        appended.forEach((key, o) -> orderIds.put(key, o.id()));
+
+        if (details.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_DETAIL_SQL, details.stream()
+                .map(d -> new Object[] {
+                        orderIds.get(d.key()),
+                        d.product().getId(),
+                        d.product().getProductCode(),
+                        d.product().getProductName(),
+                        d.product().getUnit(),
+                        d.price(),
+                        d.qty(),
+                        d.amount()
+                })
+                .toList());
+        appendedTotals.forEach(orderRepository::addTotalAmount);
+
+        ctx.addInserted(newOrders.size());
+        ctx.onCommit(() -> {
+            newOrders.forEach((key, o) -> {
+                if (!key.startsWith("AUTO_ROW_")) {
+                    state.created.put(key, new CreatedOrder(orderIds.get(key), o.supplierId(), o.skus()));
+                }
+            });
+            appended.forEach((key, o) -> state.created.get(key).skus().addAll(o.skus()));
+        });
+    }
 
-        LocalDate orderDate = group.get(0).row.getOrderDate();
-        if (orderDate == null) orderDate = LocalDate.now();
+    /**
+     * 校验一张采购单（或向本次已建采购单追加的行），返回错误信息；通过返回 null。
+     */
+    private static String validateGroup(List<ImportRow<PurOrderExcelRow>> group, CreatedOrder created,
+            Map<String, BasePartner> suppliers, Map<String, BaseProduct> products, boolean orderNoExists) {
+        String supplierCode = normalizeCode(group.get(0).data().getSupplierCode());
+        for (ImportRow<PurOrderExcelRow> row : group) {
+            if (!supplierCode.equals(normalizeCode(row.data().getSupplierCode()))) {
+                return "supplierCode must be consistent within the same orderNo group";
+            }
+        }
+        BasePartner supplier = suppliers.get(supplierCode.toLowerCase(Locale.ROOT));
+        if (supplier == null) return "unknown supplierCode: " + supplierCode;
+        if (!Objects.equals(supplier.getType(), PARTNER_TYPE_SUPPLIER)) return "partner is not supplier: " + supplierCode;
+        if (supplier.getStatus() != null && supplier.getStatus() != 1) return "supplier disabled: " + supplierCode;
+        if (created != null && !Objects.equals(created.supplierId(), supplier.getId())) {
+            return "supplierCode must be consistent within the same orderNo group";
+        }
 
-        String remark = trimToNull(group.get(0).row.getRemark());
+        if (orderNoExists) return "orderNo already exists: " + normalizeCode(group.get(0).data().getOrderNo());
 
-        // Ensure unique products in group.
-        Map<String, Boolean> seenSku = new HashMap<>();
-        for (RowWithNum rw : group) {
-            String sku = normalizeCode(rw.row.getProductCode());
-            if (sku == null) continue;
+        Set<String> seenSku = new HashSet<>();
+        for (ImportRow<PurOrderExcelRow> row : group) {
+            String sku = normalizeCode(row.data().getProductCode());
             String k = sku.toLowerCase(Locale.ROOT);
-            if (seenSku.putIfAbsent(k, true) != null) {
-                throw new IllegalArgumentException("duplicate productCode in same order: " + sku);
+            if (!seenSku.add(k) || (created != null && created.skus().contains(k))) {
+                return "duplicate productCode in same order: " + sku;
             }
         }
-
-        LocalDateTime now = LocalDateTime.now();
-        PurOrder order = new PurOrder();
-        order.setOrderNo(orderNo);
-        order.setSupplierId(supplier.getId());
-        order.setOrderDate(orderDate);
-        order.setTotalAmount(BigDecimal.ZERO);
-        order.setPayAmount(BigDecimal.ZERO);
-        order.setStatus(ORDER_STATUS_AUDITED);
-        order.setRemark(remark);
-        order.setCreateBy(trimToNull(operator));
-        order.setCreateTime(now);
-        order.setAuditBy(trimToNull(operator));
-        order.setAuditTime(now);
-        try {
-            order = orderRepository.saveAndFlush(order);
-        } catch (DataIntegrityViolationException ex) {
-            throw new IllegalArgumentException("orderNo already exists: " + orderNo);
+        for (ImportRow<PurOrderExcelRow> row : group) {
+            String productCode = normalizeCode(row.data().getProductCode());
+            BaseProduct product = products.get(productCode.toLowerCase(Locale.ROOT));
+            if (product == null) return "unknown productCode: " + productCode;
+            if (product.getStatus() != null && product.getStatus() != 1) return "product disabled: " + productCode;
         }
+        return null;
+    }
 
-        BigDecimal total = BigDecimal.ZERO;
-        for (RowWithNum rw : group) {
-            PurOrderExcelRow r = rw.row;
-            String productCode = normalizeCode(r.getProductCode());
-            BaseProduct product = productRepository.findFirstByProductCode(productCode)
-                    .orElseThrow(() -> new IllegalArgumentException("unknown productCode: " + productCode));
-            if (product.getStatus() != null && product.getStatus() != 1) {
-                throw new IllegalArgumentException("product disabled: " + productCode);
-            }
+    /**
+     * 跨批状态：本次导入已建好的采购单（按小写单号），以及校验失败的单号（后续同号行直接跳过）。
+     */
+    private static final class ImportState {
+        private final Map<String, CreatedOrder> created = new HashMap<>();
+        private final Map<String, String> rejected = new HashMap<>();
+    }
 
-            BigDecimal qty = safeQty(r.getQty());
-            BigDecimal price = safeMoney(r.getPrice());
-            BigDecimal amount = price.multiply(qty);
-
-            PurOrderDetail d = new PurOrderDetail();
-            d.setOrderId(order.getId());
-            d.setProductId(product.getId());
-            d.setProductCode(product.getProductCode());
-            d.setProductName(product.getProductName());
-            d.setUnit(product.getUnit());
-            d.setPrice(price);
-            d.setQty(qty);
-            d.setAmount(amount);
-            d.setInQty(BigDecimal.ZERO);
-            detailRepository.save(d);
-
-            total = total.add(amount);
-        }
+    private record CreatedOrder(Long id, Long supplierId, Set<String> skus) {
+    }
 
-        order.setTotalAmount(total);
-        orderRepository.save(order);
+    private record NewOrder(String orderNo, Long supplierId, LocalDate orderDate, BigDecimal total, String remark,
+            Set<String> skus) {
     }
 
-    private record RowWithNum(int rowNum, PurOrderExcelRow row) {
+    private record NewDetail(String key, BaseProduct product, BigDecimal price, BigDecimal qty, BigDecimal amount) {
     }
 
     private static BigDecimal safeQty(BigDecimal v) {
@@ -259,9 +350,7 @@ public class PurOrderExcelService {
         return s.trim();
     }
 
-    private static String generateOrderNo() {
-        String date = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "PO" + date + "-" + rand;
+    private String generateOrderNo() {
+        return docNumbers.next("PO");
     }
 }
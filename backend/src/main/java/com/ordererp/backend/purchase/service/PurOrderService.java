@@ -6,6 +6,8 @@ import com.ordererp.backend.base.entity.BaseWarehouse;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
 import com.ordererp.backend.base.repository.BaseProductRepository;
 import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import com.ordererp.backend.ledger.LedgerOutbox;
 import com.ordererp.backend.purchase.dto.PurOrderCreateRequest;
 import com.ordererp.backend.purchase.dto.PurOrderDetailResponse;
 import com.ordererp.backend.purchase.dto.PurOrderInboundRequest;
@@ -20,16 +22,14 @@ import com.ordererp.backend.purchase.repository.PurOrderDetailRepository;
 import com.ordererp.backend.purchase.repository.PurOrderRepository;
 import com.ordererp.backend.wms.entity.WmsIoBill;
 import com.ordererp.backend.wms.entity.WmsIoBillDetail;
-import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.entity.WmsStockLog;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
-import com.ordererp.backend.wms.repository.WmsStockRepository;
+import com.ordererp.backend.wms.service.WmsStockLedger;
+import com.ordererp.backend.wms.service.WmsStockLogAppender;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -38,7 +38,6 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
@@ -62,14 +61,17 @@ public class PurOrderService {
     private final BaseProductRepository productRepository;
     private final WmsIoBillRepository ioBillRepository;
     private final WmsIoBillDetailRepository ioBillDetailRepository;
-    private final WmsStockRepository stockRepository;
-    private final WmsStockLogRepository stockLogRepository;
+    private final WmsStockLedger stockLedger;
+    private final WmsStockLogAppender stockLogAppender;
+    private final DocNumberAllocator docNumbers;
+    private final LedgerOutbox ledgerOutbox;
 
     public PurOrderService(PurOrderRepository orderRepository, PurOrderDetailRepository detailRepository,
             BasePartnerRepository partnerRepository, BaseWarehouseRepository warehouseRepository,
             BaseProductRepository productRepository, WmsIoBillRepository ioBillRepository,
-            WmsIoBillDetailRepository ioBillDetailRepository, WmsStockRepository stockRepository,
-            WmsStockLogRepository stockLogRepository) {
+            WmsIoBillDetailRepository ioBillDetailRepository, WmsStockLedger stockLedger,
+            WmsStockLogAppender stockLogAppender,
+            DocNumberAllocator docNumbers, LedgerOutbox ledgerOutbox) {
         this.orderRepository = orderRepository;
         this.detailRepository = detailRepository;
         this.partnerRepository = partnerRepository;
@@ -77,8 +79,10 @@ public class PurOrderService {
         this.productRepository = productRepository;
         this.ioBillRepository = ioBillRepository;
         this.ioBillDetailRepository = ioBillDetailRepository;
-        this.stockRepository = stockRepository;
-        this.stockLogRepository = stockLogRepository;
+        this.stockLedger = stockLedger;
+        this.stockLogAppender = stockLogAppender;
+        this.docNumbers = docNumbers;
+        this.ledgerOutbox = ledgerOutbox;
     }
 
     public Page<PurOrderResponse> page(String keyword, Pageable pageable) {
@@ -276,12 +280,14 @@ public class PurOrderService {
                     existingBill.getId(), existingBill.getBillNo());
         }
 
+        BigDecimal inboundAmount = BigDecimal.ZERO;
         for (PurOrderDetail d : details) {
             BigDecimal qty = safeQty(d.getQty());
             if (qty.compareTo(BigDecimal.ZERO) <= 0) continue;
+            if (d.getPrice() != null) inboundAmount = inboundAmount.add(qty.multiply(d.getPrice()));
 
             // 入库：增加库存
-            WmsStock stock = increaseStockWithRetry(wh.getId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.increase(wh.getId(), d.getProductId(), qty);
 
             // 记账：已入库数量 = 采购数量（本阶段为一次性全入库）
             d.setInQty(qty);
@@ -300,10 +306,15 @@ public class PurOrderService {
             log.setBizType("PURCHASE_IN");
             log.setBizNo(bill.getBillNo());
             log.setChangeQty(qty);
-            log.setAfterStockQty(stock.getStockQty());
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(LocalDateTime.now());
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
         }
+        stockLogAppender.flush();
+        // 一次性入库没有入库单（pur_inbound），也没有冲销入口：biz_id 留空，
+        // 避免与 PurInboundService 以 pur_inbound.id 记的 PURCHASE_IN 事件混在一起被 reverse 汇总
+        ledgerOutbox.publish(LedgerOutbox.PURCHASE_IN, null, bill.getBillNo(), LocalDate.now(), inboundAmount,
+                order.getOrderNo());
 
         order.setStatus(STATUS_COMPLETED);
         orderRepository.save(order);
@@ -328,49 +339,6 @@ public class PurOrderService {
         return toResponse(orderRepository.getRow(order.getId()));
     }
 
-    private WmsStock increaseStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return increaseStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock increaseStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        LocalDateTime now = LocalDateTime.now();
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (stock == null) {
-            WmsStock created = new WmsStock();
-            created.setWarehouseId(warehouseId);
-            created.setProductId(productId);
-            created.setStockQty(qty);
-            created.setLockedQty(BigDecimal.ZERO);
-            created.setVersion(0);
-            created.setUpdateTime(now);
-            validateStockInvariant(created.getStockQty(), created.getLockedQty());
-            try {
-                return stockRepository.saveAndFlush(created);
-            } catch (DataIntegrityViolationException e) {
-                stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                        .orElseThrow(() -> e);
-            }
-        }
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-
-        stock.setStockQty(stockQty.add(qty));
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(now);
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
     private static PurOrderResponse toResponse(PurOrderRepository.PurOrderRow row) {
         if (row == null) return null;
         return new PurOrderResponse(
@@ -431,20 +399,6 @@ public class PurOrderService {
         return v == null ? BigDecimal.ZERO : v;
     }
 
-    private static void validateStockInvariant(BigDecimal stockQty, BigDecimal lockedQty) {
-        BigDecimal s = safeQty(stockQty);
-        BigDecimal l = safeQty(lockedQty);
-        if (s.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: stock_qty < 0");
-        }
-        if (l.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < 0");
-        }
-        if (l.compareTo(s) > 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty > stock_qty");
-        }
-    }
-
     private static String trimToNull(String value) {
         if (value == null) return null;
         String s = value.trim();
@@ -459,15 +413,11 @@ public class PurOrderService {
         return r + "；" + e;
     }
 
-    private static String generateOrderNo() {
-        String date = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "PO" + date + "-" + rand;
+    private String generateOrderNo() {
+        return docNumbers.next("PO");
     }
 
-    private static String generateBillNo(String prefix) {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return prefix + ts + "-" + rand;
+    private String generateBillNo(String prefix) {
+        return docNumbers.next(prefix);
     }
 }
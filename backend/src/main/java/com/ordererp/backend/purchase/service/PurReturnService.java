@@ -6,6 +6,8 @@ import com.ordererp.backend.base.entity.BaseWarehouse;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
 import com.ordererp.backend.base.repository.BaseProductRepository;
 import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import com.ordererp.backend.ledger.LedgerOutbox;
 import com.ordererp.backend.purchase.dto.PurReturnCreateRequest;
 import com.ordererp.backend.purchase.dto.PurReturnDetailResponse;
 import com.ordererp.backend.purchase.dto.PurReturnExecuteResponse;
@@ -22,12 +24,12 @@ import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.entity.WmsStockLog;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
 import com.ordererp.backend.wms.repository.WmsStockRepository;
+import com.ordererp.backend.wms.service.WmsStockLedger;
+import com.ordererp.backend.wms.service.WmsStockLogAppender;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -36,7 +38,6 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
@@ -61,13 +62,17 @@ public class PurReturnService {
     private final WmsIoBillRepository ioBillRepository;
     private final WmsIoBillDetailRepository ioBillDetailRepository;
     private final WmsStockRepository stockRepository;
-    private final WmsStockLogRepository stockLogRepository;
+    private final WmsStockLogAppender stockLogAppender;
+    private final WmsStockLedger stockLedger;
+    private final DocNumberAllocator docNumbers;
+    private final LedgerOutbox ledgerOutbox;
 
     public PurReturnService(PurReturnRepository returnRepository, PurReturnDetailRepository detailRepository,
             BasePartnerRepository partnerRepository, BaseWarehouseRepository warehouseRepository,
             BaseProductRepository productRepository, WmsIoBillRepository ioBillRepository,
             WmsIoBillDetailRepository ioBillDetailRepository, WmsStockRepository stockRepository,
-            WmsStockLogRepository stockLogRepository) {
+            WmsStockLogAppender stockLogAppender, WmsStockLedger stockLedger,
+            DocNumberAllocator docNumbers, LedgerOutbox ledgerOutbox) {
         this.returnRepository = returnRepository;
         this.detailRepository = detailRepository;
         this.partnerRepository = partnerRepository;
@@ -76,7 +81,10 @@ public class PurReturnService {
         this.ioBillRepository = ioBillRepository;
         this.ioBillDetailRepository = ioBillDetailRepository;
         this.stockRepository = stockRepository;
-        this.stockLogRepository = stockLogRepository;
+        this.stockLogAppender = stockLogAppender;
+        this.stockLedger = stockLedger;
+        this.docNumbers = docNumbers;
+        this.ledgerOutbox = ledgerOutbox;
     }
 
     public Page<PurReturnResponse> page(String keyword, Pageable pageable) {
@@ -271,8 +279,10 @@ public class PurReturnService {
             throw e;
         }
 
+        BigDecimal returnAmount = BigDecimal.ZERO;
         for (PurReturnDetail d : details) {
             BigDecimal qty = safeQty(d.getQty());
+            returnAmount = returnAmount.add(safeMoney(d.getAmount()));
 
             WmsIoBillDetail bd = new WmsIoBillDetail();
             bd.setBillId(bill.getId());
@@ -281,17 +291,18 @@ public class PurReturnService {
             bd.setRealQty(qty);
             ioBillDetailRepository.save(bd);
 
-            WmsStock stock = deductStockWithRetry(wh.getId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.deduct(wh.getId(), d.getProductId(), qty);
             WmsStockLog log = new WmsStockLog();
             log.setWarehouseId(wh.getId());
             log.setProductId(d.getProductId());
             log.setBizType("PURCHASE_RETURN");
             log.setBizNo(bill.getBillNo());
             log.setChangeQty(qty.negate());
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(now);
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
         }
+        stockLogAppender.flush();
 
         r.setStatus(STATUS_COMPLETED);
         r.setWmsBillId(bill.getId());
@@ -299,6 +310,9 @@ public class PurReturnService {
         r.setExecuteBy(trimToNull(operator));
         r.setExecuteTime(now);
         returnRepository.save(r);
+        // 退货金额按退货单单价计，冲减应付与库存商品
+        ledgerOutbox.publish(LedgerOutbox.PURCHASE_RETURN, r.getId(), r.getReturnNo(), now.toLocalDate(), returnAmount,
+                bill.getBillNo());
 
         return new PurReturnExecuteResponse(r.getId(), r.getReturnNo(), r.getStatus(), bill.getId(), bill.getBillNo());
     }
@@ -320,37 +334,6 @@ public class PurReturnService {
         return toResponse(returnRepository.getRow(r.getId()));
     }
 
-    private WmsStock deductStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return deductStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock deductStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "stock not found"));
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        BigDecimal available = stockQty.subtract(lockedQty);
-        if (available.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "insufficient stock (available=" + available + ", required=" + qty + ")");
-        }
-        stock.setStockQty(stockQty.subtract(qty));
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(LocalDateTime.now());
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
     private static PurReturnResponse toResponse(PurReturnRepository.PurReturnRow row) {
         if (row == null) return null;
         return new PurReturnResponse(
@@ -447,16 +430,12 @@ public class PurReturnService {
         return r + "；" + e;
     }
 
-    private static String generateReturnNo() {
-        String date = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "PRN" + date + "-" + rand;
+    private String generateReturnNo() {
+        return docNumbers.next("PRN");
     }
 
-    private static String generateBillNo(String prefix) {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return prefix + ts + "-" + rand;
+    private String generateBillNo(String prefix) {
+        return docNumbers.next(prefix);
     }
 }
 
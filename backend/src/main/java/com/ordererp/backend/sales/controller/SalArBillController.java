@@ -1,15 +1,21 @@
 package com.ordererp.backend.sales.controller;
 
+import com.ordererp.backend.common.dto.CursorPageResponse;
 import com.ordererp.backend.common.dto.PageResponse;
+import com.ordererp.backend.sales.dto.SalArBillBatchRequest;
 import com.ordererp.backend.sales.dto.SalArBillCreateRequest;
 import com.ordererp.backend.sales.dto.SalArBillDetailResponse;
+import com.ordererp.backend.sales.dto.SalArBillGenerateResponse;
 import com.ordererp.backend.sales.dto.SalArBillResponse;
 import com.ordererp.backend.sales.dto.SalArInvoiceCreateRequest;
 import com.ordererp.backend.sales.dto.SalArInvoiceResponse;
 import com.ordererp.backend.sales.dto.SalArReceiptCreateRequest;
 import com.ordererp.backend.sales.dto.SalArReceiptResponse;
+import com.ordererp.backend.sales.service.SalArBillBatchService;
 import com.ordererp.backend.sales.service.SalArBillService;
+import com.ordererp.backend.system.dto.SysJobResponse;
 import com.ordererp.backend.system.security.SysUserDetails;
+import com.ordererp.backend.system.service.SysJobService;
 import jakarta.validation.Valid;
 import java.time.LocalDate;
 import org.springframework.data.domain.Page;
@@ -29,9 +35,14 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/sales/ar-bills")
 public class SalArBillController {
     private final SalArBillService billService;
+    private final SalArBillBatchService batchService;
+    private final SysJobService jobService;
 
-    public SalArBillController(SalArBillService billService) {
+    public SalArBillController(SalArBillService billService, SalArBillBatchService batchService,
+            SysJobService jobService) {
         this.billService = billService;
+        this.batchService = batchService;
+        this.jobService = jobService;
     }
 
     @GetMapping
@@ -47,6 +58,21 @@ public class SalArBillController {
         return PageResponse.from(res);
     }
 
+    /**
+     * 游标分页：首页不传 afterId，之后传上一页的 nextCursor；默认不统计总数。
+     */
+    @GetMapping("/cursor")
+    @PreAuthorize("hasAuthority('sal:ar:view')")
+    public CursorPageResponse<SalArBillResponse> cursor(@RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate) {
+        return billService.seek(keyword, customerId, startDate, endDate, afterId, limit, includeTotal);
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAuthority('sal:ar:view')")
     public SalArBillDetailResponse detail(@PathVariable Long id) {
@@ -60,6 +86,29 @@ public class SalArBillController {
         return billService.create(request, user.getUsername());
     }
 
+    /**
+     * 生成对账单并返回明细统计；区间内已被其他对账单占用的单据在 claimedElsewhere 中列出。
+     */
+    @PostMapping("/generate")
+    @PreAuthorize("hasAuthority('sal:ar:add')")
+    public SalArBillGenerateResponse generate(@Valid @RequestBody SalArBillCreateRequest request,
+            Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return billService.generate(request, user.getUsername());
+    }
+
+    /**
+     * 按期间为所有有未对账单据的客户批量生成对账单（客户间并行，单个客户失败不影响其他客户）。
+     * 立即返回后台任务，通过 /api/jobs/{id} 查询进度，完成后任务结果为 {@code SalArBillBatchResponse}。
+     */
+    @PostMapping("/generate-batch")
+    @PreAuthorize("hasAuthority('sal:ar:add')")
+    public SysJobResponse generateBatch(@Valid @RequestBody SalArBillBatchRequest request,
+            Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return batchService.start(request, user.getUsername());
+    }
+
     @PostMapping("/{id}/audit")
     @PreAuthorize("hasAuthority('sal:ar:audit')")
     public SalArBillResponse audit(@PathVariable Long id, Authentication authentication) {
@@ -71,7 +120,22 @@ public class SalArBillController {
     @PreAuthorize("hasAuthority('sal:ar:regen')")
     public SalArBillResponse regenerate(@PathVariable Long id, Authentication authentication) {
         SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
-        return billService.regenerate(id, user.getUsername());
+        String operator = user.getUsername();
+        // 同步重算同样在后台任务线程池中执行并等待结果，受 app.job.workers 并发上限约束
+        return jobService.runAndWait("ar-bill-regenerate", "销售对账单重算 #" + id, operator,
+                job -> billService.regenerate(id, operator));
+    }
+
+    /**
+     * 后台重算：立即返回任务，结果（对账单）通过 /api/jobs/{id} 查询。
+     */
+    @PostMapping("/{id}/regenerate-job")
+    @PreAuthorize("hasAuthority('sal:ar:regen')")
+    public SysJobResponse regenerateJob(@PathVariable Long id, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        String operator = user.getUsername();
+        return jobService.submit("ar-bill-regenerate", "销售对账单重算 #" + id, operator,
+                job -> billService.regenerate(id, operator));
     }
 
     @PostMapping("/{id}/cancel")
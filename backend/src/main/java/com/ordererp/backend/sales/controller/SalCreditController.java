@@ -1,11 +1,14 @@
 package com.ordererp.backend.sales.controller;
 
+import com.ordererp.backend.sales.dto.SalCreditReconcileResponse;
 import com.ordererp.backend.sales.dto.SalCreditUsageResponse;
+import com.ordererp.backend.sales.service.SalCreditExposureReconciler;
 import com.ordererp.backend.sales.service.SalCreditService;
 import java.util.List;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -14,9 +17,11 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/sales/credit")
 public class SalCreditController {
     private final SalCreditService creditService;
+    private final SalCreditExposureReconciler exposureReconciler;
 
-    public SalCreditController(SalCreditService creditService) {
+    public SalCreditController(SalCreditService creditService, SalCreditExposureReconciler exposureReconciler) {
         this.creditService = creditService;
+        this.exposureReconciler = exposureReconciler;
     }
 
     @GetMapping("/customers/{customerId}")
@@ -30,5 +35,13 @@ public class SalCreditController {
     public List<SalCreditUsageResponse> customerUsageBatch(@RequestParam List<Long> customerIds) {
         return creditService.listUsage(customerIds);
     }
-}
 
+    /**
+     * 信用占用对账：从单据重算并报告差异；repair=true 时修复。
+     */
+    @PostMapping("/exposure/reconcile")
+    @PreAuthorize("hasAuthority('sal:ar:audit')")
+    public SalCreditReconcileResponse reconcileExposure(@RequestParam(defaultValue = "false") boolean repair) {
+        return exposureReconciler.reconcile(repair);
+    }
+}
@@ -1,5 +1,6 @@
 package com.ordererp.backend.sales.controller;
 
+import com.ordererp.backend.common.dto.CursorPageResponse;
 import com.ordererp.backend.common.dto.PageResponse;
 import com.ordererp.backend.sales.dto.SalOrderCreateRequest;
 import com.ordererp.backend.sales.dto.SalOrderDetailResponse;
@@ -54,6 +55,24 @@ public class SalOrderController {
         return PageResponse.from(res);
     }
 
+    /**
+     * 游标分页：首页不传 afterId，之后传上一页的 nextCursor；默认不统计总数。
+     */
+    @GetMapping("/cursor")
+    @PreAuthorize("hasAuthority('sal:order:view')")
+    public CursorPageResponse<SalOrderResponse> cursor(@RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate,
+            Authentication authentication) {
+        CursorPageResponse<SalOrderResponse> res = orderService.seek(keyword, customerId, startDate, endDate, afterId,
+                limit, includeTotal);
+        return canViewPrice(authentication) ? res : res.map(SalOrderController::maskPrice);
+    }
+
     @GetMapping("/options")
     @PreAuthorize("hasAuthority('sal:order:view')")
     public List<SalOrderOptionResponse> options(@RequestParam(required = false) String keyword,
@@ -0,0 +1,10 @@
+package com.ordererp.backend.sales.dto;
+
+import jakarta.validation.constraints.NotNull;
+import java.time.LocalDate;
+
+public record SalArBillBatchRequest(
+        @NotNull LocalDate startDate,
+        @NotNull LocalDate endDate,
+        String remark) {
+}
@@ -0,0 +1,27 @@
+package com.ordererp.backend.sales.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public record SalArBillBatchResponse(
+        int customers,
+        int created,
+        int failed,
+        long elapsedMs,
+        List<Created> bills,
+        List<Failure> failures) {
+    public record Created(
+            Long customerId,
+            Long billId,
+            String billNo,
+            BigDecimal totalAmount,
+            int docCount,
+            int claimedElsewhereCount) {
+    }
+
+    public record Failure(
+            Long customerId,
+            int status,
+            String message) {
+    }
+}
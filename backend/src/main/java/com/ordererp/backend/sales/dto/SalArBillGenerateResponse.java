@@ -0,0 +1,22 @@
+package com.ordererp.backend.sales.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 对账单生成结果：claimedElsewhere 为区间内已被其他对账单占用、本单未纳入的单据（最多返回部分）。
+ */
+public record SalArBillGenerateResponse(
+        SalArBillResponse bill,
+        int shipCount,
+        int returnCount,
+        List<ClaimedDoc> claimedElsewhere) {
+    public record ClaimedDoc(
+            Integer docType,
+            Long docId,
+            String docNo,
+            LocalDateTime docTime,
+            Long billId,
+            String billNo) {
+    }
+}
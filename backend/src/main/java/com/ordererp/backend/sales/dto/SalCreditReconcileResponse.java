@@ -0,0 +1,23 @@
+package com.ordererp.backend.sales.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public record SalCreditReconcileResponse(
+        int checkedCustomers,
+        int driftCustomers,
+        boolean repaired,
+        List<Drift> drifts) {
+    public record Drift(
+            Long customerId,
+            Amounts recorded,
+            Amounts expected) {
+    }
+
+    public record Amounts(
+            BigDecimal outstandingAr,
+            BigDecimal unbilledShip,
+            BigDecimal unbilledReturn,
+            BigDecimal openOrders) {
+    }
+}
@@ -0,0 +1,82 @@
+package com.ordererp.backend.sales.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 客户信用占用（按客户一行）；金额由 SalCreditExposureUpdater 以差额方式维护，这里只读。
+ */
+@Entity
+@Table(name = "sal_credit_exposure")
+public class SalCreditExposure {
+    @Id
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    @Column(name = "outstanding_ar", nullable = false)
+    private BigDecimal outstandingAr;
+
+    @Column(name = "unbilled_ship", nullable = false)
+    private BigDecimal unbilledShip;
+
+    @Column(name = "unbilled_return", nullable = false)
+    private BigDecimal unbilledReturn;
+
+    @Column(name = "open_orders", nullable = false)
+    private BigDecimal openOrders;
+
+    @Column(name = "update_time")
+    private LocalDateTime updateTime;
+
+    public Long getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(Long customerId) {
+        this.customerId = customerId;
+    }
+
+    public BigDecimal getOutstandingAr() {
+        return outstandingAr;
+    }
+
+    public void setOutstandingAr(BigDecimal outstandingAr) {
+        this.outstandingAr = outstandingAr;
+    }
+
+    public BigDecimal getUnbilledShip() {
+        return unbilledShip;
+    }
+
+    public void setUnbilledShip(BigDecimal unbilledShip) {
+        this.unbilledShip = unbilledShip;
+    }
+
+    public BigDecimal getUnbilledReturn() {
+        return unbilledReturn;
+    }
+
+    public void setUnbilledReturn(BigDecimal unbilledReturn) {
+        this.unbilledReturn = unbilledReturn;
+    }
+
+    public BigDecimal getOpenOrders() {
+        return openOrders;
+    }
+
+    public void setOpenOrders(BigDecimal openOrders) {
+        this.openOrders = openOrders;
+    }
+
+    public LocalDateTime getUpdateTime() {
+        return updateTime;
+    }
+
+    public void setUpdateTime(LocalDateTime updateTime) {
+        this.updateTime = updateTime;
+    }
+}
@@ -6,12 +6,55 @@ import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 public interface SalArBillDetailRepository extends JpaRepository<SalArBillDetail, Long> {
     long deleteByBillId(Long billId);
 
+    /**
+     * 删除对账单全部明细（一条 delete，不逐行加载实体）。
+     */
+    @Modifying
+    @Query(value = "delete from sal_ar_bill_detail where bill_id = :billId", nativeQuery = true)
+    int deleteAllByBillId(@Param("billId") Long billId);
+
+    /**
+     * 按对账单已占用的发货批次批量生成明细（每批次一行，金额 = sum(qty * price)）。
+     */
+    @Modifying
+    @Query(value = """
+            insert into sal_ar_bill_detail (bill_id, doc_type, doc_id, doc_no, order_id, order_no, doc_time, amount)
+            select x.bill_id, 1, s.id, s.ship_no, s.order_id, s.order_no, s.ship_time,
+              coalesce(sum(d.qty * coalesce(od.price, 0.00)), 0.00)
+            from sal_ar_doc_ref x
+            join sal_ship s on s.id = x.doc_id
+            join sal_ship_detail d on d.ship_id = s.id
+            join sal_order_detail od on od.id = d.order_detail_id
+            where x.bill_id = :billId
+              and x.doc_type = 1
+            group by x.bill_id, s.id, s.ship_no, s.order_id, s.order_no, s.ship_time
+            order by s.ship_time asc, s.id asc
+            """, nativeQuery = true)
+    int insertShipDetails(@Param("billId") Long billId);
+
+    /**
+     * 按对账单已占用的退货单批量生成明细（金额为负）。
+     */
+    @Modifying
+    @Query(value = """
+            insert into sal_ar_bill_detail (bill_id, doc_type, doc_id, doc_no, order_id, order_no, doc_time, amount)
+            select x.bill_id, 2, r.id, r.return_no, null, null, r.execute_time,
+              0.00 - coalesce(r.total_amount, 0.00)
+            from sal_ar_doc_ref x
+            join sal_return r on r.id = x.doc_id
+            where x.bill_id = :billId
+              and x.doc_type = 2
+            order by r.execute_time asc, r.id asc
+            """, nativeQuery = true)
+    int insertReturnDetails(@Param("billId") Long billId);
+
     @Query(value = """
             select
               d.id as id,
@@ -67,6 +67,63 @@ public interface SalArBillRepository extends JpaRepository<SalArBill, Long> {
             @Param("endDate") LocalDate endDate,
             Pageable pageable);
 
+    /**
+     * 游标分页（keyset）：按 id 倒序取 afterId 之后的 limit 行；不做 offset 扫描，也不执行 count。
+     */
+    @Query(value = """
+            select
+              b.id as id,
+              b.bill_no as billNo,
+              b.customer_id as customerId,
+              p.partner_code as customerCode,
+              p.partner_name as customerName,
+              b.start_date as startDate,
+              b.end_date as endDate,
+              b.total_amount as totalAmount,
+              b.received_amount as receivedAmount,
+              b.invoice_amount as invoiceAmount,
+              b.status as status,
+              b.remark as remark,
+              b.create_by as createBy,
+              b.create_time as createTime,
+              b.audit_by as auditBy,
+              b.audit_time as auditTime
+            from sal_ar_bill b
+            left join base_partner p on p.id = b.customer_id
+            where (:kw is null or :kw = ''
+              or lower(b.bill_no) like lower(concat('%', :kw, '%'))
+              or lower(p.partner_code) like lower(concat('%', :kw, '%'))
+              or lower(p.partner_name) like lower(concat('%', :kw, '%')))
+              and (:customerId is null or b.customer_id = :customerId)
+              and (:startDate is null or b.start_date >= :startDate)
+              and (:endDate is null or b.end_date <= :endDate)
+              and (:afterId is null or b.id < :afterId)
+            order by b.id desc
+            limit :limit
+            """, nativeQuery = true)
+    List<SalArBillRow> seekRows(@Param("kw") String keyword,
+            @Param("customerId") Long customerId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Query(value = """
+            select count(*)
+            from sal_ar_bill b
+            left join base_partner p on p.id = b.customer_id
+            where (:kw is null or :kw = ''
+              or lower(b.bill_no) like lower(concat('%', :kw, '%'))
+              or lower(p.partner_code) like lower(concat('%', :kw, '%'))
+              or lower(p.partner_name) like lower(concat('%', :kw, '%')))
+              and (:customerId is null or b.customer_id = :customerId)
+              and (:startDate is null or b.start_date >= :startDate)
+              and (:endDate is null or b.end_date <= :endDate)
+            """, nativeQuery = true)
+    long countRows(@Param("kw") String keyword,
+            @Param("customerId") Long customerId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate);
+
     @Query(value = """
             select
               b.id as id,
@@ -217,6 +274,65 @@ public interface SalArBillRepository extends JpaRepository<SalArBill, Long> {
             @Param("startTime") LocalDateTime startTime,
             @Param("endTime") LocalDateTime endTime);
 
+    /**
+     * 区间内是否存在未对账的发货/退货单据（生成对账单前的快速判断）。
+     */
+    @Query(value = """
+            select case when exists (
+              select 1
+              from sal_ship s
+              where s.customer_id = :customerId
+                and (s.reverse_status is null or s.reverse_status = 0)
+                and s.ship_time is not null
+                and s.ship_time >= :startTime
+                and s.ship_time < :endTime
+                and not exists (select 1 from sal_ar_doc_ref r where r.doc_type = 1 and r.doc_id = s.id)
+            ) or exists (
+              select 1
+              from sal_return r
+              where r.customer_id = :customerId
+                and r.status = 4
+                and r.execute_time is not null
+                and r.execute_time >= :startTime
+                and r.execute_time < :endTime
+                and not exists (select 1 from sal_ar_doc_ref x where x.doc_type = 2 and x.doc_id = r.id)
+            ) then 1 else 0 end
+            """, nativeQuery = true)
+    int existsUnbilledDocs(@Param("customerId") Long customerId,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
+
+    /**
+     * 批量生成用：区间内有未对账单据的客户，按 id 升序游标读取。
+     */
+    @Query(value = """
+            select c.customer_id
+            from (
+              select s.customer_id
+              from sal_ship s
+              where (s.reverse_status is null or s.reverse_status = 0)
+                and s.ship_time is not null
+                and s.ship_time >= :startTime
+                and s.ship_time < :endTime
+                and not exists (select 1 from sal_ar_doc_ref r where r.doc_type = 1 and r.doc_id = s.id)
+              union
+              select r.customer_id
+              from sal_return r
+              where r.status = 4
+                and r.execute_time is not null
+                and r.execute_time >= :startTime
+                and r.execute_time < :endTime
+                and not exists (select 1 from sal_ar_doc_ref x where x.doc_type = 2 and x.doc_id = r.id)
+            ) c
+            where (:afterId is null or c.customer_id > :afterId)
+            order by c.customer_id
+            limit :limit
+            """, nativeQuery = true)
+    List<Long> seekCustomersWithUnbilledDocs(@Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime,
+            @Param("afterId") Long afterId,
+            @Param("limit") int limit);
+
     interface CandidateShipRow {
         Long getDocId();
 
@@ -1,12 +1,149 @@
 package com.ordererp.backend.sales.repository;
 
 import com.ordererp.backend.sales.entity.SalArDocRef;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface SalArDocRefRepository extends JpaRepository<SalArDocRef, Long> {
     Optional<SalArDocRef> findFirstByDocTypeAndDocId(Integer docType, Long docId);
 
     long deleteByBillId(Long billId);
-}
 
+    // ==========================================
+    // 集合式占用（set-based claim）：一条 insert ... select 占用客户在区间内全部未对账单据。
+    // 候选口径与 SalArBillRepository.candidateShips/candidateReturns 一致（金额为 0 的单据不占用）。
+    // insert ignore：并发下已被其他对账单抢先占用的单据（撞 uk_sal_ar_doc_ref）直接跳过，不再整单失败；
+    // 调用方以 bill_id 回读实际占用到的单据。返回值为本次占用的单据数。
+    // ==========================================
+
+    @Modifying
+    @Query(value = """
+            insert ignore into sal_ar_doc_ref (doc_type, doc_id, bill_id, create_time)
+            select 1, s.id, :billId, :now
+            from sal_ship s
+            join sal_ship_detail d on d.ship_id = s.id
+            join sal_order_detail od on od.id = d.order_detail_id
+            where s.customer_id = :customerId
+              and (s.reverse_status is null or s.reverse_status = 0)
+              and s.ship_time is not null
+              and s.ship_time >= :startTime
+              and s.ship_time < :endTime
+              and not exists (select 1 from sal_ar_doc_ref r where r.doc_type = 1 and r.doc_id = s.id)
+            group by s.id
+            having coalesce(sum(d.qty * coalesce(od.price, 0.00)), 0.00) <> 0
+            """, nativeQuery = true)
+    int claimShips(@Param("billId") Long billId, @Param("customerId") Long customerId,
+            @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime,
+            @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = """
+            insert ignore into sal_ar_doc_ref (doc_type, doc_id, bill_id, create_time)
+            select 2, r.id, :billId, :now
+            from sal_return r
+            where r.customer_id = :customerId
+              and r.status = 4
+              and r.execute_time is not null
+              and r.execute_time >= :startTime
+              and r.execute_time < :endTime
+              and coalesce(r.total_amount, 0.00) <> 0
+              and not exists (select 1 from sal_ar_doc_ref x where x.doc_type = 2 and x.doc_id = r.id)
+            """, nativeQuery = true)
+    int claimReturns(@Param("billId") Long billId, @Param("customerId") Long customerId,
+            @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime,
+            @Param("now") LocalDateTime now);
+
+    /**
+     * 释放对账单占用的全部单据（一条 delete，不逐行加载实体）。
+     */
+    @Modifying
+    @Query(value = "delete from sal_ar_doc_ref where bill_id = :billId", nativeQuery = true)
+    int releaseByBillId(@Param("billId") Long billId);
+
+    /**
+     * 对账单已占用单据按类型汇总（金额未舍入，与信用占用口径一致）。
+     */
+    @Query(value = """
+            select 1 as docType, count(distinct s.id) as docCount,
+              coalesce(sum(d.qty * coalesce(od.price, 0.00)), 0.00) as amount
+            from sal_ar_doc_ref x
+            join sal_ship s on s.id = x.doc_id
+            join sal_ship_detail d on d.ship_id = s.id
+            join sal_order_detail od on od.id = d.order_detail_id
+            where x.bill_id = :billId
+              and x.doc_type = 1
+            union all
+            select 2 as docType, count(*) as docCount,
+              coalesce(sum(0.00 - coalesce(r.total_amount, 0.00)), 0.00) as amount
+            from sal_ar_doc_ref x
+            join sal_return r on r.id = x.doc_id
+            where x.bill_id = :billId
+              and x.doc_type = 2
+            """, nativeQuery = true)
+    List<ClaimedTotalRow> claimedTotals(@Param("billId") Long billId);
+
+    /**
+     * 区间内已被其他对账单占用的单据（用于生成结果提示），按单据时间排序，最多 limit 条。
+     */
+    @Query(value = """
+            select t.docType, t.docId, t.docNo, t.docTime, t.billId, t.billNo
+            from (
+              select 1 as docType, s.id as docId, s.ship_no as docNo, s.ship_time as docTime,
+                x.bill_id as billId, b.bill_no as billNo
+              from sal_ship s
+              join sal_ar_doc_ref x on x.doc_type = 1 and x.doc_id = s.id
+              left join sal_ar_bill b on b.id = x.bill_id
+              where s.customer_id = :customerId
+                and (s.reverse_status is null or s.reverse_status = 0)
+                and s.ship_time is not null
+                and s.ship_time >= :startTime
+                and s.ship_time < :endTime
+                and x.bill_id <> :billId
+              union all
+              select 2 as docType, r.id as docId, r.return_no as docNo, r.execute_time as docTime,
+                x.bill_id as billId, b.bill_no as billNo
+              from sal_return r
+              join sal_ar_doc_ref x on x.doc_type = 2 and x.doc_id = r.id
+              left join sal_ar_bill b on b.id = x.bill_id
+              where r.customer_id = :customerId
+                and r.status = 4
+                and r.execute_time is not null
+                and r.execute_time >= :startTime
+                and r.execute_time < :endTime
+                and x.bill_id <> :billId
+            ) t
+            order by t.docTime asc, t.docType asc, t.docId asc
+            limit :limit
+            """, nativeQuery = true)
+    List<ClaimedDocRow> claimedElsewhere(@Param("customerId") Long customerId,
+            @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime,
+            @Param("billId") Long billId, @Param("limit") int limit);
+
+    interface ClaimedTotalRow {
+        Integer getDocType();
+
+        Long getDocCount();
+
+        BigDecimal getAmount();
+    }
+
+    interface ClaimedDocRow {
+        Integer getDocType();
+
+        Long getDocId();
+
+        String getDocNo();
+
+        LocalDateTime getDocTime();
+
+        Long getBillId();
+
+        String getBillNo();
+    }
+}
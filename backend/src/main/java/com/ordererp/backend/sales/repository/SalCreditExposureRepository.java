@@ -0,0 +1,150 @@
+package com.ordererp.backend.sales.repository;
+
+import com.ordererp.backend.sales.entity.SalCreditExposure;
+import java.math.BigDecimal;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * 客户信用占用。
+ *
+ * <p>除读取占用行外，这里提供“单张单据对占用的贡献”查询：业务在修改单据前后各取一次，差额即为占用变化。
+ * 每个查询的口径与 {@link SalArBillRepository} / {@link SalOrderRepository} 中按客户汇总的查询逐项一致，
+ * 只是把范围从“客户全部历史”缩小到一张单据。</p>
+ */
+public interface SalCreditExposureRepository extends JpaRepository<SalCreditExposure, Long> {
+    /**
+     * 读取占用行（投影，不进入持久化上下文：同一事务内由 JDBC 写入的差额也能读到最新值）。
+     */
+    @Query(value = """
+            select
+              e.customer_id as customerId,
+              e.outstanding_ar as outstandingAr,
+              e.unbilled_ship as unbilledShip,
+              e.unbilled_return as unbilledReturn,
+              e.open_orders as openOrders
+            from sal_credit_exposure e
+            where e.customer_id in (:customerIds)
+            """, nativeQuery = true)
+    List<ExposureRow> listRows(@Param("customerIds") List<Long> customerIds);
+
+    /**
+     * 订单未发完金额：status in (2, 3) 时为 sum(price * max(qty - shipped_qty, 0))，否则为 0。
+     */
+    @Query(value = """
+            select coalesce(
+              sum(coalesce(d.price, 0.00) * greatest(coalesce(d.qty, 0.00) - coalesce(d.shipped_qty, 0.00), 0.00)),
+              0.00
+            )
+            from sal_order o
+            join sal_order_detail d on d.order_id = o.id
+            where o.id = :orderId
+              and o.status in (2, 3)
+            """, nativeQuery = true)
+    BigDecimal openOrderAmount(@Param("orderId") Long orderId);
+
+    /**
+     * 发货批次未对账金额：未冲销、已发货且未被对账单引用时为 sum(qty * price)，否则为 0。
+     */
+    @Query(value = """
+            select coalesce(sum(d.qty * coalesce(od.price, 0.00)), 0.00)
+            from sal_ship s
+            join sal_ship_detail d on d.ship_id = s.id
+            join sal_order_detail od on od.id = d.order_detail_id
+            left join sal_ar_doc_ref r on r.doc_type = 1 and r.doc_id = s.id
+            where s.id = :shipId
+              and (s.reverse_status is null or s.reverse_status = 0)
+              and s.ship_time is not null
+              and r.id is null
+            """, nativeQuery = true)
+    BigDecimal unbilledShipAmount(@Param("shipId") Long shipId);
+
+    /**
+     * 退货单未对账金额（负数）：已执行且未被对账单引用时为 -total_amount，否则为 0。
+     */
+    @Query(value = """
+            select coalesce(sum(0.00 - coalesce(r.total_amount, 0.00)), 0.00)
+            from sal_return r
+            left join sal_ar_doc_ref x on x.doc_type = 2 and x.doc_id = r.id
+            where r.id = :returnId
+              and r.status = 4
+              and r.execute_time is not null
+              and x.id is null
+            """, nativeQuery = true)
+    BigDecimal unbilledReturnAmount(@Param("returnId") Long returnId);
+
+    /**
+     * 对账单未收金额：status in (1, 2, 3, 4) 时为 max(total_amount - received_amount, 0)，否则为 0。
+     */
+    @Query(value = """
+            select coalesce(
+              sum(greatest(coalesce(b.total_amount, 0.00) - coalesce(b.received_amount, 0.00), 0.00)),
+              0.00
+            )
+            from sal_ar_bill b
+            where b.id = :billId
+              and b.status in (1, 2, 3, 4)
+            """, nativeQuery = true)
+    BigDecimal outstandingAmount(@Param("billId") Long billId);
+
+    /**
+     * 对账单明细中的发货批次，当前未被任何对账单引用部分的未对账金额（对账单释放 doc_ref 之后调用）。
+     */
+    @Query(value = """
+            select coalesce(sum(d.qty * coalesce(od.price, 0.00)), 0.00)
+            from sal_ar_bill_detail bd
+            join sal_ship s on s.id = bd.doc_id
+            join sal_ship_detail d on d.ship_id = s.id
+            join sal_order_detail od on od.id = d.order_detail_id
+            left join sal_ar_doc_ref r on r.doc_type = 1 and r.doc_id = s.id
+            where bd.bill_id = :billId
+              and bd.doc_type = 1
+              and (s.reverse_status is null or s.reverse_status = 0)
+              and s.ship_time is not null
+              and r.id is null
+            """, nativeQuery = true)
+    BigDecimal releasedShipAmount(@Param("billId") Long billId);
+
+    /**
+     * 对账单明细中的退货单，当前未被任何对账单引用部分的未对账金额（负数）。
+     */
+    @Query(value = """
+            select coalesce(sum(0.00 - coalesce(r.total_amount, 0.00)), 0.00)
+            from sal_ar_bill_detail bd
+            join sal_return r on r.id = bd.doc_id
+            left join sal_ar_doc_ref x on x.doc_type = 2 and x.doc_id = r.id
+            where bd.bill_id = :billId
+              and bd.doc_type = 2
+              and r.status = 4
+              and r.execute_time is not null
+              and x.id is null
+            """, nativeQuery = true)
+    BigDecimal releasedReturnAmount(@Param("billId") Long billId);
+
+    /**
+     * 对账用：按 id 升序游标读取客户 id（含已删除/停用客户，其历史单据仍计入占用）。
+     */
+    @Query(value = """
+            select p.id
+            from base_partner p
+            where p.type = 2
+              and (:afterId is null or p.id > :afterId)
+            order by p.id
+            limit :limit
+            """, nativeQuery = true)
+    List<Long> seekCustomerIds(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    interface ExposureRow {
+        Long getCustomerId();
+
+        BigDecimal getOutstandingAr();
+
+        BigDecimal getUnbilledShip();
+
+        BigDecimal getUnbilledReturn();
+
+        BigDecimal getOpenOrders();
+    }
+}
@@ -69,6 +69,65 @@ public interface SalOrderRepository extends JpaRepository<SalOrder, Long> {
             @Param("endDate") LocalDate endDate,
             Pageable pageable);
 
+    /**
+     * 游标分页（keyset）：按 id 倒序取 afterId 之后的 limit 行；不做 offset 扫描，也不执行 count。
+     */
+    @Query(value = """
+            select
+              o.id as id,
+              o.order_no as orderNo,
+              o.customer_id as customerId,
+              o.customer_code as customerCode,
+              o.customer_name as customerName,
+              o.warehouse_id as warehouseId,
+              w.warehouse_name as warehouseName,
+              o.order_date as orderDate,
+              o.total_amount as totalAmount,
+              o.status as status,
+              o.remark as remark,
+              o.wms_bill_id as wmsBillId,
+              o.wms_bill_no as wmsBillNo,
+              o.create_by as createBy,
+              o.create_time as createTime,
+              o.audit_by as auditBy,
+              o.audit_time as auditTime,
+              o.ship_by as shipBy,
+              o.ship_time as shipTime
+            from sal_order o
+            left join base_warehouse w on w.id = o.warehouse_id
+            where (:kw is null or :kw = ''
+                   or lower(o.order_no) like lower(concat('%', :kw, '%'))
+                   or lower(o.customer_name) like lower(concat('%', :kw, '%'))
+                   or lower(o.customer_code) like lower(concat('%', :kw, '%')))
+              and (:customerId is null or o.customer_id = :customerId)
+              and (:startDate is null or o.order_date >= :startDate)
+              and (:endDate is null or o.order_date <= :endDate)
+              and (:afterId is null or o.id < :afterId)
+            order by o.id desc
+            limit :limit
+            """, nativeQuery = true)
+    List<SalOrderRow> seekRows(@Param("kw") String keyword,
+            @Param("customerId") Long customerId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Query(value = """
+            select count(*)
+            from sal_order o
+            where (:kw is null or :kw = ''
+                   or lower(o.order_no) like lower(concat('%', :kw, '%'))
+                   or lower(o.customer_name) like lower(concat('%', :kw, '%'))
+                   or lower(o.customer_code) like lower(concat('%', :kw, '%')))
+              and (:customerId is null or o.customer_id = :customerId)
+              and (:startDate is null or o.order_date >= :startDate)
+              and (:endDate is null or o.order_date <= :endDate)
+            """, nativeQuery = true)
+    long countRows(@Param("kw") String keyword,
+            @Param("customerId") Long customerId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate);
+
     @Query(value = """
             select
               o.id as id,
@@ -0,0 +1,165 @@
+package com.ordererp.backend.sales.service;
+
+import com.ordererp.backend.sales.dto.SalArBillBatchRequest;
+import com.ordererp.backend.sales.dto.SalArBillBatchResponse;
+import com.ordererp.backend.sales.dto.SalArBillCreateRequest;
+import com.ordererp.backend.sales.dto.SalArBillGenerateResponse;
+import com.ordererp.backend.sales.repository.SalArBillRepository;
+import com.ordererp.backend.system.dto.SysJobResponse;
+import com.ordererp.backend.system.service.SysJobService;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 按期间为全部客户批量生成销售对账单。
+ *
+ * <p>先找出区间内有未对账单据的客户，再按客户并行调用 {@link SalArBillService#generate}：每个客户一个独立事务，
+ * 互不影响；某个客户失败（如客户已禁用）只记入结果，不中断其他客户。并行度由
+ * {@code app.sales.ar-bill.batch-parallelism} 控制。</p>
+ *
+ * <p>客户多时整批要跑很久，因此不在 Web 请求线程里等待：{@link #start} 校验参数后登记后台任务（sys_job）并立即返回任务，
+ * 前端按任务 id 轮询进度（已处理客户数 / 客户总数），完成后任务结果即 {@link SalArBillBatchResponse}。
+ * 取消任务时尚未开始的客户不再处理，已生成的对账单保留。</p>
+ */
+@Service
+public class SalArBillBatchService {
+    private static final Logger log = LoggerFactory.getLogger(SalArBillBatchService.class);
+
+    private static final int CUSTOMER_PAGE_SIZE = 500;
+
+    private final SalArBillRepository billRepository;
+    private final SalArBillService billService;
+    private final SysJobService jobService;
+    private final ExecutorService executor;
+
+    public SalArBillBatchService(SalArBillRepository billRepository, SalArBillService billService,
+            SysJobService jobService, @Value("${app.sales.ar-bill.batch-parallelism:4}") int parallelism) {
+        this.billRepository = billRepository;
+        this.billService = billService;
+        this.jobService = jobService;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "ar-bill-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 登记批量生成任务并立即返回；参数错误直接返回 400，不会登记任务。
+     */
+    public SysJobResponse start(SalArBillBatchRequest request, String operator) {
+        validate(request);
+        return jobService.submit("ar-bill-batch",
+                "销售对账单批量生成 " + request.startDate() + "~" + request.endDate(), operator,
+                job -> generateForPeriod(request, operator, job::total, job::checkpoint));
+    }
+
+    /**
+     * 同步执行批量生成（在后台任务线程中调用）。
+     *
+     * @param onTotal    确定客户范围后回调客户总数
+     * @param onProgress 每处理完一个客户回调累计数量；抛出异常（如任务已取消）时尚未开始的客户不再处理
+     */
+    public SalArBillBatchResponse generateForPeriod(SalArBillBatchRequest request, String operator,
+            IntConsumer onTotal, LongConsumer onProgress) {
+        validate(request);
+
+        long startNanos = System.nanoTime();
+        LocalDateTime startTime = request.startDate().atStartOfDay();
+        LocalDateTime endTime = request.endDate().plusDays(1).atStartOfDay();
+
+        List<Long> customerIds = new ArrayList<>();
+        Long afterId = null;
+        while (true) {
+            List<Long> ids = billRepository.seekCustomersWithUnbilledDocs(startTime, endTime, afterId, CUSTOMER_PAGE_SIZE);
+            customerIds.addAll(ids);
+            if (ids.size() < CUSTOMER_PAGE_SIZE) break;
+            afterId = ids.get(ids.size() - 1);
+        }
+        onTotal.accept(customerIds.size());
+
+        List<CompletableFuture<Outcome>> futures = new ArrayList<>(customerIds.size());
+        for (Long customerId : customerIds) {
+            SalArBillCreateRequest one = new SalArBillCreateRequest(customerId, request.startDate(), request.endDate(),
+                    request.remark());
+            futures.add(CompletableFuture.supplyAsync(() -> generateOne(one, operator), executor));
+        }
+
+        List<SalArBillBatchResponse.Created> created = new ArrayList<>();
+        List<SalArBillBatchResponse.Failure> failures = new ArrayList<>();
+        try {
+            for (CompletableFuture<Outcome> f : futures) {
+                Outcome o = f.join();
+                if (o.created() != null) created.add(o.created());
+                if (o.failure() != null) failures.add(o.failure());
+                onProgress.accept(created.size() + failures.size());
+            }
+        } catch (RuntimeException e) {
+            // 尚未开始的客户不再执行（已在运行的客户会完成各自的事务）
+            futures.forEach(f -> f.cancel(false));
+            throw e;
+        }
+        created.sort(Comparator.comparing(SalArBillBatchResponse.Created::customerId));
+        failures.sort(Comparator.comparing(SalArBillBatchResponse.Failure::customerId));
+
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        log.info("ar bill batch {}~{} customers={} created={} failed={} elapsedMs={}",
+                request.startDate(), request.endDate(), customerIds.size(), created.size(), failures.size(), elapsedMs);
+        return new SalArBillBatchResponse(customerIds.size(), created.size(), failures.size(), elapsedMs, created,
+                failures);
+    }
+
+    private static void validate(SalArBillBatchRequest request) {
+        if (request == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "request body is required");
+        if (request.startDate() == null || request.endDate() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "startDate/endDate is required");
+        }
+        if (request.endDate().isBefore(request.startDate())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "endDate must be >= startDate");
+        }
+    }
+
+    private Outcome generateOne(SalArBillCreateRequest request, String operator) {
+        try {
+            SalArBillGenerateResponse res = billService.generate(request, operator);
+            return new Outcome(new SalArBillBatchResponse.Created(
+                    request.customerId(),
+                    res.bill().id(),
+                    res.bill().billNo(),
+                    res.bill().totalAmount(),
+                    res.shipCount() + res.returnCount(),
+                    res.claimedElsewhere().size()), null);
+        } catch (ResponseStatusException e) {
+            return new Outcome(null, new SalArBillBatchResponse.Failure(request.customerId(),
+                    e.getStatusCode().value(), e.getReason()));
+        } catch (RuntimeException e) {
+            log.warn("ar bill batch failed customerId={}", request.customerId(), e);
+            return new Outcome(null, new SalArBillBatchResponse.Failure(request.customerId(),
+                    HttpStatus.INTERNAL_SERVER_ERROR.value(), e.getMessage()));
+        }
+    }
+
+    private record Outcome(SalArBillBatchResponse.Created created, SalArBillBatchResponse.Failure failure) {
+    }
+}
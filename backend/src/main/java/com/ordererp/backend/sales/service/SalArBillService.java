@@ -2,18 +2,19 @@ package com.ordererp.backend.sales.service;
 
 import com.ordererp.backend.base.entity.BasePartner;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.common.dto.CursorPageResponse;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
 import com.ordererp.backend.finance.service.FinPaymentService;
 import com.ordererp.backend.sales.dto.SalArBillCreateRequest;
 import com.ordererp.backend.sales.dto.SalArBillDetailResponse;
 import com.ordererp.backend.sales.dto.SalArBillDocResponse;
+import com.ordererp.backend.sales.dto.SalArBillGenerateResponse;
 import com.ordererp.backend.sales.dto.SalArBillResponse;
 import com.ordererp.backend.sales.dto.SalArInvoiceCreateRequest;
 import com.ordererp.backend.sales.dto.SalArInvoiceResponse;
 import com.ordererp.backend.sales.dto.SalArReceiptCreateRequest;
 import com.ordererp.backend.sales.dto.SalArReceiptResponse;
 import com.ordererp.backend.sales.entity.SalArBill;
-import com.ordererp.backend.sales.entity.SalArBillDetail;
-import com.ordererp.backend.sales.entity.SalArDocRef;
 import com.ordererp.backend.sales.entity.SalArInvoice;
 import com.ordererp.backend.sales.entity.SalArReceipt;
 import com.ordererp.backend.sales.repository.SalArBillDetailRepository;
@@ -24,7 +25,6 @@ import com.ordererp.backend.sales.repository.SalArReceiptRepository;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -35,6 +35,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -57,6 +58,8 @@ public class SalArBillService {
     private static final int INVOICE_STATUS_VALID = 2;
     private static final int INVOICE_STATUS_CANCELED = 9;
 
+    private static final int MAX_REPORTED_CLAIMED = 200;
+
     private final SalArBillRepository billRepository;
     private final SalArBillDetailRepository billDetailRepository;
     private final SalArDocRefRepository docRefRepository;
@@ -64,10 +67,14 @@ public class SalArBillService {
     private final SalArInvoiceRepository invoiceRepository;
     private final BasePartnerRepository partnerRepository;
     private final FinPaymentService finPaymentService;
+    private final SalCreditExposureUpdater creditExposure;
+    private final DocNumberAllocator docNumbers;
 
     public SalArBillService(SalArBillRepository billRepository, SalArBillDetailRepository billDetailRepository,
             SalArDocRefRepository docRefRepository, SalArReceiptRepository receiptRepository,
-            SalArInvoiceRepository invoiceRepository, BasePartnerRepository partnerRepository, FinPaymentService finPaymentService) {
+            SalArInvoiceRepository invoiceRepository, BasePartnerRepository partnerRepository, FinPaymentService finPaymentService,
+            SalCreditExposureUpdater creditExposure,
+            DocNumberAllocator docNumbers) {
         this.billRepository = billRepository;
         this.billDetailRepository = billDetailRepository;
         this.docRefRepository = docRefRepository;
@@ -75,12 +82,26 @@ public class SalArBillService {
         this.invoiceRepository = invoiceRepository;
         this.partnerRepository = partnerRepository;
         this.finPaymentService = finPaymentService;
+        this.creditExposure = creditExposure;
+        this.docNumbers = docNumbers;
     }
 
     public Page<SalArBillResponse> page(String keyword, Long customerId, LocalDate startDate, LocalDate endDate, Pageable pageable) {
         return billRepository.pageRows(trimToNull(keyword), customerId, startDate, endDate, pageable).map(SalArBillService::toResponse);
     }
 
+    /**
+     * 游标分页：afterId 为上一页返回的 nextCursor（首页传 null）；includeTotal=false 时不执行 count。
+     */
+    public CursorPageResponse<SalArBillResponse> seek(String keyword, Long customerId, LocalDate startDate,
+            LocalDate endDate, Long afterId, Integer limit, boolean includeTotal) {
+        String kw = trimToNull(keyword);
+        int size = CursorPageResponse.clampLimit(limit);
+        var rows = billRepository.seekRows(kw, customerId, startDate, endDate, afterId, size + 1);
+        Long total = includeTotal ? billRepository.countRows(kw, customerId, startDate, endDate) : null;
+        return CursorPageResponse.of(rows, size, SalArBillRepository.SalArBillRow::getId, SalArBillService::toResponse, total);
+    }
+
     public SalArBillDetailResponse detail(Long id) {
         SalArBillRepository.SalArBillRow row = billRepository.getRow(id);
         if (row == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "销售对账单不存在");
@@ -170,8 +191,20 @@ public class SalArBillService {
         return new SalArBillDetailResponse(toResponse(row), docs, receipts, invoices);
     }
 
-    @Transactional
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public SalArBillResponse create(SalArBillCreateRequest request, String operator) {
+        return generate(request, operator).bill();
+    }
+
+    /**
+     * 生成对账单（集合式）：insert ... select 一次占用区间内全部未对账单据，再按占用结果批量生成明细。
+     *
+     * <p>并发下已被其他对账单抢先占用的单据直接跳过，并在结果中列出（claimedElsewhere），不再整单 409。
+     * 使用 READ COMMITTED：insert ... select 的源表读取为一致性读、不加间隙锁，批量并行生成时各客户互不阻塞；
+     * 单据不会被重复对账由 uk_sal_ar_doc_ref 保证。</p>
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public SalArBillGenerateResponse generate(SalArBillCreateRequest request, String operator) {
         if (request == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "request body is required");
         if (request.customerId() == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "customerId is required");
         if (request.startDate() == null || request.endDate() == null) {
@@ -187,11 +220,9 @@ public class SalArBillService {
 
         LocalDateTime startTime = request.startDate().atStartOfDay();
         LocalDateTime endTime = request.endDate().plusDays(1).atStartOfDay();
-
-        List<SalArBillRepository.CandidateShipRow> ships = billRepository.candidateShips(request.customerId(), startTime, endTime);
-        List<SalArBillRepository.CandidateReturnRow> returns = billRepository.candidateReturns(request.customerId(), startTime, endTime);
-        if ((ships == null || ships.isEmpty()) && (returns == null || returns.isEmpty())) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "该范围内没有可对账的发货/退货单据");
+        if (billRepository.existsUnbilledDocs(request.customerId(), startTime, endTime) == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "该范围内没有可对账的发货/退货单据"
+                    + describeClaimed(claimedElsewhere(request.customerId(), startTime, endTime, 0L)));
         }
 
         LocalDateTime now = LocalDateTime.now();
@@ -209,63 +240,22 @@ public class SalArBillService {
         bill.setCreateTime(now);
         bill = billRepository.saveAndFlush(bill);
 
-        BigDecimal total = BigDecimal.ZERO;
-        try {
-            for (var r : ships) {
-                BigDecimal amt = safeMoney(r.getAmount());
-                if (amt.compareTo(BigDecimal.ZERO) == 0) continue;
-
-                SalArBillDetail d = new SalArBillDetail();
-                d.setBillId(bill.getId());
-                d.setDocType(DOC_TYPE_SHIP);
-                d.setDocId(r.getDocId());
-                d.setDocNo(r.getDocNo());
-                d.setOrderId(r.getOrderId());
-                d.setOrderNo(r.getOrderNo());
-                d.setDocTime(r.getDocTime());
-                d.setAmount(amt);
-                billDetailRepository.save(d);
-
-                SalArDocRef ref = new SalArDocRef();
-                ref.setDocType(DOC_TYPE_SHIP);
-                ref.setDocId(r.getDocId());
-                ref.setBillId(bill.getId());
-                ref.setCreateTime(now);
-                docRefRepository.saveAndFlush(ref);
-
-                total = total.add(amt);
-            }
-            for (var r : returns) {
-                BigDecimal amt = safeMoney(r.getAmount());
-                if (amt.compareTo(BigDecimal.ZERO) == 0) continue;
-
-                SalArBillDetail d = new SalArBillDetail();
-                d.setBillId(bill.getId());
-                d.setDocType(DOC_TYPE_RETURN);
-                d.setDocId(r.getDocId());
-                d.setDocNo(r.getDocNo());
-                d.setOrderId(null);
-                d.setOrderNo(null);
-                d.setDocTime(r.getDocTime());
-                d.setAmount(amt);
-                billDetailRepository.save(d);
-
-                SalArDocRef ref = new SalArDocRef();
-                ref.setDocType(DOC_TYPE_RETURN);
-                ref.setDocId(r.getDocId());
-                ref.setBillId(bill.getId());
-                ref.setCreateTime(now);
-                docRefRepository.saveAndFlush(ref);
-
-                total = total.add(amt);
-            }
-        } catch (DataIntegrityViolationException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "部分单据已被其他对账单占用，请刷新后重试");
+        ClaimResult claim = claimDocs(bill, startTime, endTime, now);
+        List<SalArBillGenerateResponse.ClaimedDoc> claimedElsewhere =
+                claimedElsewhere(bill.getCustomerId(), startTime, endTime, bill.getId());
+        if (claim.docCount() == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "该范围内没有可对账的发货/退货单据" + describeClaimed(claimedElsewhere));
         }
 
-        bill.setTotalAmount(total);
+        bill.setTotalAmount(claim.shipTotal().add(claim.returnTotal()));
         billRepository.save(bill);
-        return toResponse(billRepository.getRow(bill.getId()));
+
+        // 占用额度：被引用的发货/退货转入对账单未收
+        creditExposure.billDocsReferenced(bill.getCustomerId(), claim.shipTotal(), claim.returnTotal());
+        creditExposure.billChanged(bill.getCustomerId(), bill.getId(), BigDecimal.ZERO);
+        return new SalArBillGenerateResponse(toResponse(billRepository.getRow(bill.getId())),
+                claim.shipCount(), claim.returnCount(), claimedElsewhere);
     }
 
     @Transactional
@@ -288,7 +278,7 @@ public class SalArBillService {
         return toResponse(billRepository.getRow(bill.getId()));
     }
 
-    @Transactional
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public SalArBillResponse regenerate(Long id, String operator) {
         SalArBill bill = billRepository.findByIdForUpdate(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "销售对账单不存在"));
@@ -308,75 +298,25 @@ public class SalArBillService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "对账单已存在发票记录，不允许重新生成");
         }
 
-        billDetailRepository.deleteByBillId(bill.getId());
-        docRefRepository.deleteByBillId(bill.getId());
+        BigDecimal outstandingBefore = creditExposure.outstandingAmount(bill.getId());
+        docRefRepository.releaseByBillId(bill.getId());
+        creditExposure.billDocsReleased(bill.getCustomerId(), bill.getId());
+        billDetailRepository.deleteAllByBillId(bill.getId());
 
         LocalDateTime startTime = bill.getStartDate().atStartOfDay();
         LocalDateTime endTime = bill.getEndDate().plusDays(1).atStartOfDay();
-        List<SalArBillRepository.CandidateShipRow> ships = billRepository.candidateShips(bill.getCustomerId(), startTime, endTime);
-        List<SalArBillRepository.CandidateReturnRow> returns = billRepository.candidateReturns(bill.getCustomerId(), startTime, endTime);
-        if ((ships == null || ships.isEmpty()) && (returns == null || returns.isEmpty())) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "该范围内没有可对账的发货/退货单据");
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        BigDecimal total = BigDecimal.ZERO;
-        try {
-            for (var r : ships) {
-                BigDecimal amt = safeMoney(r.getAmount());
-                if (amt.compareTo(BigDecimal.ZERO) == 0) continue;
-
-                SalArBillDetail d = new SalArBillDetail();
-                d.setBillId(bill.getId());
-                d.setDocType(DOC_TYPE_SHIP);
-                d.setDocId(r.getDocId());
-                d.setDocNo(r.getDocNo());
-                d.setOrderId(r.getOrderId());
-                d.setOrderNo(r.getOrderNo());
-                d.setDocTime(r.getDocTime());
-                d.setAmount(amt);
-                billDetailRepository.save(d);
-
-                SalArDocRef ref = new SalArDocRef();
-                ref.setDocType(DOC_TYPE_SHIP);
-                ref.setDocId(r.getDocId());
-                ref.setBillId(bill.getId());
-                ref.setCreateTime(now);
-                docRefRepository.saveAndFlush(ref);
-
-                total = total.add(amt);
-            }
-            for (var r : returns) {
-                BigDecimal amt = safeMoney(r.getAmount());
-                if (amt.compareTo(BigDecimal.ZERO) == 0) continue;
-
-                SalArBillDetail d = new SalArBillDetail();
-                d.setBillId(bill.getId());
-                d.setDocType(DOC_TYPE_RETURN);
-                d.setDocId(r.getDocId());
-                d.setDocNo(r.getDocNo());
-                d.setOrderId(null);
-                d.setOrderNo(null);
-                d.setDocTime(r.getDocTime());
-                d.setAmount(amt);
-                billDetailRepository.save(d);
-
-                SalArDocRef ref = new SalArDocRef();
-                ref.setDocType(DOC_TYPE_RETURN);
-                ref.setDocId(r.getDocId());
-                ref.setBillId(bill.getId());
-                ref.setCreateTime(now);
-                docRefRepository.saveAndFlush(ref);
-
-                total = total.add(amt);
-            }
-        } catch (DataIntegrityViolationException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "部分单据已被其他对账单占用，请刷新后重试");
+        ClaimResult claim = claimDocs(bill, startTime, endTime, LocalDateTime.now());
+        if (claim.docCount() == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "该范围内没有可对账的发货/退货单据"
+                    + describeClaimed(claimedElsewhere(bill.getCustomerId(), startTime, endTime, bill.getId())));
         }
 
-        bill.setTotalAmount(total);
+        bill.setTotalAmount(claim.shipTotal().add(claim.returnTotal()));
         bill.setRemark(mergeRemark(bill.getRemark(), "重新生成：" + trimToNull(operator)));
         billRepository.save(bill);
+
+        creditExposure.billDocsReferenced(bill.getCustomerId(), claim.shipTotal(), claim.returnTotal());
+        creditExposure.billChanged(bill.getCustomerId(), bill.getId(), outstandingBefore);
         return toResponse(billRepository.getRow(bill.getId()));
     }
 
@@ -397,11 +337,15 @@ public class SalArBillService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "对账单已存在发票记录，不能作废");
         }
 
+        BigDecimal outstandingBefore = creditExposure.outstandingAmount(bill.getId());
         bill.setStatus(STATUS_CANCELED);
         bill.setRemark(mergeRemark(bill.getRemark(), "作废：" + trimToNull(operator)));
         billRepository.save(bill);
 
-        docRefRepository.deleteByBillId(bill.getId());
+        docRefRepository.releaseByBillId(bill.getId());
+        // 占用额度：对账单不再计入未收，其单据重新计入未对账发货/退货
+        creditExposure.billChanged(bill.getCustomerId(), bill.getId(), outstandingBefore);
+        creditExposure.billDocsReleased(bill.getCustomerId(), bill.getId());
         return toResponse(billRepository.getRow(bill.getId()));
     }
 
@@ -438,6 +382,7 @@ public class SalArBillService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "收款金额不能超过未收金额：" + outstanding);
         }
 
+        BigDecimal outstandingBefore = creditExposure.outstandingAmount(bill.getId());
         LocalDateTime now = LocalDateTime.now();
         SalArReceipt r = new SalArReceipt();
         r.setReceiptNo(generateReceiptNo());
@@ -469,6 +414,7 @@ public class SalArBillService {
         bill.setReceivedAmount(received.add(amt));
         billRepository.save(bill);
         refreshReceivedInvoiceAndStatus(bill);
+        creditExposure.billChanged(bill.getCustomerId(), bill.getId(), outstandingBefore);
 
         return toReceiptResponse(r);
     }
@@ -500,6 +446,7 @@ public class SalArBillService {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "已收金额异常，无法作废该收款记录");
         }
 
+        BigDecimal outstandingBefore = creditExposure.outstandingAmount(bill.getId());
         r.setStatus(RECEIPT_STATUS_CANCELED);
         r.setCancelBy(trimToNull(operator));
         r.setCancelTime(LocalDateTime.now());
@@ -508,6 +455,7 @@ public class SalArBillService {
         bill.setReceivedAmount(received.subtract(amt));
         billRepository.save(bill);
         refreshReceivedInvoiceAndStatus(bill);
+        creditExposure.billChanged(bill.getCustomerId(), bill.getId(), outstandingBefore);
 
         finPaymentService.cancelByBiz(FinPaymentService.BIZ_TYPE_SALES_AR_RECEIPT, r.getId(), operator);
         return toReceiptResponse(r);
@@ -670,6 +618,58 @@ public class SalArBillService {
         return "-0".equals(s) ? "0" : s;
     }
 
+    /**
+     * 占用区间内全部未对账单据并批量生成明细；返回本单实际占用到的单据数与金额（金额未舍入，与信用占用口径一致）。
+     */
+    private ClaimResult claimDocs(SalArBill bill, LocalDateTime startTime, LocalDateTime endTime, LocalDateTime now) {
+        docRefRepository.claimShips(bill.getId(), bill.getCustomerId(), startTime, endTime, now);
+        docRefRepository.claimReturns(bill.getId(), bill.getCustomerId(), startTime, endTime, now);
+        billDetailRepository.insertShipDetails(bill.getId());
+        billDetailRepository.insertReturnDetails(bill.getId());
+
+        int shipCount = 0;
+        int returnCount = 0;
+        BigDecimal shipTotal = BigDecimal.ZERO;
+        BigDecimal returnTotal = BigDecimal.ZERO;
+        for (var r : docRefRepository.claimedTotals(bill.getId())) {
+            if (r == null || r.getDocType() == null) continue;
+            int count = r.getDocCount() == null ? 0 : r.getDocCount().intValue();
+            if (Objects.equals(r.getDocType(), DOC_TYPE_SHIP)) {
+                shipCount = count;
+                shipTotal = safeMoney(r.getAmount());
+            } else if (Objects.equals(r.getDocType(), DOC_TYPE_RETURN)) {
+                returnCount = count;
+                returnTotal = safeMoney(r.getAmount());
+            }
+        }
+        return new ClaimResult(shipCount, returnCount, shipTotal, returnTotal);
+    }
+
+    /**
+     * 区间内被 excludeBillId 以外的对账单占用的单据。
+     */
+    private List<SalArBillGenerateResponse.ClaimedDoc> claimedElsewhere(Long customerId, LocalDateTime startTime,
+            LocalDateTime endTime, Long excludeBillId) {
+        return docRefRepository.claimedElsewhere(customerId, startTime, endTime, excludeBillId, MAX_REPORTED_CLAIMED)
+                .stream()
+                .map(r -> new SalArBillGenerateResponse.ClaimedDoc(
+                        r.getDocType(), r.getDocId(), r.getDocNo(), r.getDocTime(), r.getBillId(), r.getBillNo()))
+                .toList();
+    }
+
+    private static String describeClaimed(List<SalArBillGenerateResponse.ClaimedDoc> docs) {
+        if (docs == null || docs.isEmpty()) return "";
+        SalArBillGenerateResponse.ClaimedDoc first = docs.get(0);
+        String more = docs.size() >= MAX_REPORTED_CLAIMED ? "至少 " + docs.size() : String.valueOf(docs.size());
+        return "（" + more + " 张单据已被其他对账单占用，如 " + first.docNo() + " -> " + first.billNo() + "）";
+    }
+
+    private record ClaimResult(int shipCount, int returnCount, BigDecimal shipTotal, BigDecimal returnTotal) {
+        int docCount() {
+            return shipCount + returnCount;
+        }
+    }
+
     private static void validateCustomer(BasePartner customer) {
         if (customer == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "客户不存在");
         if (!Objects.equals(customer.getType(), PARTNER_TYPE_CUSTOMER)) {
@@ -782,15 +782,11 @@ public class SalArBillService {
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateBillNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "AR" + ts + "-" + rand;
+    private String generateBillNo() {
+        return docNumbers.next("AR");
     }
 
-    private static String generateReceiptNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "REC" + ts + "-" + rand;
+    private String generateReceiptNo() {
+        return docNumbers.next("REC");
     }
 }
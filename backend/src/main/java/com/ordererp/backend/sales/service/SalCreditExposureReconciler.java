@@ -0,0 +1,155 @@
+package com.ordererp.backend.sales.service;
+
+import com.ordererp.backend.sales.dto.SalCreditReconcileResponse;
+import com.ordererp.backend.sales.repository.CustomerAmountRow;
+import com.ordererp.backend.sales.repository.SalArBillRepository;
+import com.ordererp.backend.sales.repository.SalCreditExposureRepository;
+import com.ordererp.backend.sales.repository.SalOrderRepository;
+import com.ordererp.backend.sales.service.SalCreditExposureUpdater.Exposure;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 信用占用对账：按原聚合口径从单据表重算每个客户的占用，与 sal_credit_exposure 比对并报告差异。
+ *
+ * <p>先按客户分批（每批一组 in 查询）粗筛；疑似差异的客户再在独立事务中锁住占用行后单独重算确认，
+ * 排除“单据已改、差额尚未提交”造成的误报。{@code repair=true} 时用重算值覆盖占用行。</p>
+ *
+ * <p>差异记录到日志与计数器 {@code erp.sales.credit.exposure.drift}；定时任务由
+ * {@code app.sales.credit-exposure.reconcile-cron} 控制（默认每天 03:30，仅报告不修复）。</p>
+ */
+@Service
+public class SalCreditExposureReconciler {
+    private static final Logger log = LoggerFactory.getLogger(SalCreditExposureReconciler.class);
+
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_REPORTED_DRIFTS = 200;
+
+    private final SalCreditExposureRepository exposureRepository;
+    private final SalArBillRepository arBillRepository;
+    private final SalOrderRepository orderRepository;
+    private final SalCreditExposureUpdater exposureUpdater;
+    private final TransactionTemplate txTemplate;
+    private final Counter driftCounter;
+    private final boolean autoRepair;
+
+    public SalCreditExposureReconciler(SalCreditExposureRepository exposureRepository,
+            SalArBillRepository arBillRepository, SalOrderRepository orderRepository,
+            SalCreditExposureUpdater exposureUpdater, PlatformTransactionManager txManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.sales.credit-exposure.auto-repair:false}") boolean autoRepair) {
+        this.exposureRepository = exposureRepository;
+        this.arBillRepository = arBillRepository;
+        this.orderRepository = orderRepository;
+        this.exposureUpdater = exposureUpdater;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.driftCounter = Counter.builder("erp.sales.credit.exposure.drift")
+                .description("Customers whose credit exposure row differed from source documents")
+                .register(meterRegistry);
+        this.autoRepair = autoRepair;
+    }
+
+    @Scheduled(cron = "${app.sales.credit-exposure.reconcile-cron:0 30 3 * * *}")
+    public void scheduledReconcile() {
+        reconcile(autoRepair);
+    }
+
+    public SalCreditReconcileResponse reconcile(boolean repair) {
+        long startNanos = System.nanoTime();
+        int checked = 0;
+        int driftCount = 0;
+        List<SalCreditReconcileResponse.Drift> drifts = new ArrayList<>();
+
+        Long afterId = null;
+        while (true) {
+            List<Long> ids = exposureRepository.seekCustomerIds(afterId, BATCH_SIZE);
+            if (ids.isEmpty()) break;
+
+            Map<Long, Exposure> expected = computeExpected(ids);
+            Map<Long, Exposure> recorded = new HashMap<>();
+            for (SalCreditExposureRepository.ExposureRow e : exposureRepository.listRows(ids)) {
+                recorded.put(e.getCustomerId(), new Exposure(
+                        e.getOutstandingAr(), e.getUnbilledShip(), e.getUnbilledReturn(), e.getOpenOrders()));
+            }
+
+            for (Long id : ids) {
+                checked++;
+                Exposure zero = new Exposure(null, null, null, null);
+                if (expected.getOrDefault(id, zero).sameAs(recorded.getOrDefault(id, zero))) continue;
+
+                SalCreditReconcileResponse.Drift drift = verify(id, repair);
+                if (drift == null) continue;
+                driftCount++;
+                driftCounter.increment();
+                if (drifts.size() < MAX_REPORTED_DRIFTS) drifts.add(drift);
+            }
+
+            if (ids.size() < BATCH_SIZE) break;
+            afterId = ids.get(ids.size() - 1);
+        }
+
+        log.info("credit exposure reconcile customers={} drifts={} repair={} elapsedMs={}",
+                checked, driftCount, repair, (System.nanoTime() - startNanos) / 1_000_000);
+        return new SalCreditReconcileResponse(checked, driftCount, repair && driftCount > 0, drifts);
+    }
+
+    /**
+     * 锁住占用行后按单个客户重算确认；仍不一致时返回差异（repair 时同时覆盖）。
+     */
+    private SalCreditReconcileResponse.Drift verify(Long customerId, boolean repair) {
+        return txTemplate.execute(status -> {
+            Exposure recorded = exposureUpdater.lockForCheck(customerId);
+            Exposure expected = new Exposure(
+                    arBillRepository.sumOutstandingByCustomerId(customerId),
+                    arBillRepository.sumUnbilledShipAmountByCustomerId(customerId),
+                    arBillRepository.sumUnbilledReturnAmountByCustomerId(customerId),
+                    orderRepository.sumOpenRemainingAmountByCustomerId(customerId, null));
+            if (expected.sameAs(recorded)) return null;
+
+            log.warn("credit exposure drift customerId={} recorded={} expected={} repair={}",
+                    customerId, recorded, expected, repair);
+            if (repair) exposureUpdater.overwrite(customerId, expected);
+            return new SalCreditReconcileResponse.Drift(customerId, toAmounts(recorded), toAmounts(expected));
+        });
+    }
+
+    private Map<Long, Exposure> computeExpected(List<Long> ids) {
+        Map<Long, BigDecimal> ar = toAmountMap(arBillRepository.sumOutstandingByCustomerIds(ids));
+        Map<Long, BigDecimal> ship = toAmountMap(arBillRepository.sumUnbilledShipAmountByCustomerIds(ids));
+        Map<Long, BigDecimal> ret = toAmountMap(arBillRepository.sumUnbilledReturnAmountByCustomerIds(ids));
+        Map<Long, BigDecimal> open = toAmountMap(orderRepository.sumOpenRemainingAmountByCustomerIds(ids));
+
+        Map<Long, Exposure> out = new HashMap<>();
+        for (Long id : ids) {
+            out.put(id, new Exposure(ar.get(id), ship.get(id), ret.get(id), open.get(id)));
+        }
+        return out;
+    }
+
+    private static Map<Long, BigDecimal> toAmountMap(List<? extends CustomerAmountRow> rows) {
+        Map<Long, BigDecimal> m = new HashMap<>();
+        if (rows == null) return m;
+        for (CustomerAmountRow r : rows) {
+            if (r == null || r.getCustomerId() == null) continue;
+            m.put(r.getCustomerId(), r.getAmount());
+        }
+        return m;
+    }
+
+    private static SalCreditReconcileResponse.Amounts toAmounts(Exposure e) {
+        return new SalCreditReconcileResponse.Amounts(e.outstandingAr(), e.unbilledShip(), e.unbilledReturn(),
+                e.openOrders());
+    }
+}
@@ -0,0 +1,277 @@
+package com.ordererp.backend.sales.service;
+
+import com.ordererp.backend.sales.repository.SalCreditExposureRepository;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 客户信用占用维护：把单据变化引起的占用差额累加到 sal_credit_exposure。
+ *
+ * <p>业务在修改单据前取一次该单据的贡献（{@code xxxAmount}），修改后调用对应的 {@code xxxChanged} 传入修改前的值，
+ * 这里再取一次修改后的贡献并记录差额。代价只与单据行数有关，与客户历史无关；口径见 {@link SalCreditExposureRepository}。</p>
+ *
+ * <p>差额先在事务内按客户合并，提交前按 customer_id 升序一次写入：</p>
+ * <ul>
+ *   <li>占用行是同一客户所有单据共享的热点行，推迟到提交前写入，持锁时间最短；</li>
+ *   <li>同步回调排在库存汇总（WmsStockSummaryUpdater）之前，加锁顺序固定为：单据行 → 库存行 → 占用行 → 库存汇总行。</li>
+ * </ul>
+ *
+ * <p>额度校验通过 {@link #lockForCheck} 读取占用：先写入本事务已累计的差额，再对占用行加 {@code for update} 锁，
+ * 并发审核同一客户时会串行化，不会两个都按旧占用通过校验。没有活动事务时差额直接写入。</p>
+ */
+@Component
+public class SalCreditExposureUpdater {
+    private static final String UPSERT_SQL = """
+            insert into sal_credit_exposure (customer_id, outstanding_ar, unbilled_ship, unbilled_return, open_orders, update_time)
+            values (?, ?, ?, ?, ?, ?)
+            on duplicate key update
+              outstanding_ar = outstanding_ar + values(outstanding_ar),
+              unbilled_ship = unbilled_ship + values(unbilled_ship),
+              unbilled_return = unbilled_return + values(unbilled_return),
+              open_orders = open_orders + values(open_orders),
+              update_time = values(update_time)
+            """;
+
+    private static final String ENSURE_ROW_SQL = "insert ignore into sal_credit_exposure (customer_id) values (?)";
+
+    private static final String LOCK_SQL = """
+            select outstanding_ar, unbilled_ship, unbilled_return, open_orders
+            from sal_credit_exposure
+            where customer_id = ?
+            for update
+            """;
+
+    private static final String OVERWRITE_SQL = """
+            update sal_credit_exposure
+            set outstanding_ar = ?, unbilled_ship = ?, unbilled_return = ?, open_orders = ?, update_time = ?
+            where customer_id = ?
+            """;
+
+    /** 排在默认顺序（库存汇总等）之前执行 beforeCommit。 */
+    private static final int SYNCHRONIZATION_ORDER = 0;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SalCreditExposureRepository exposureRepository;
+
+    public SalCreditExposureUpdater(JdbcTemplate jdbcTemplate, SalCreditExposureRepository exposureRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exposureRepository = exposureRepository;
+    }
+
+    public BigDecimal openOrderAmount(Long orderId) {
+        return orderId == null ? BigDecimal.ZERO : safeMoney(exposureRepository.openOrderAmount(orderId));
+    }
+
+    /**
+     * 订单数量/状态变化后调用（审核、发货、作废、发货冲销）。
+     */
+    public void orderChanged(Long customerId, Long orderId, BigDecimal before) {
+        BigDecimal delta = openOrderAmount(orderId).subtract(safeMoney(before));
+        add(customerId, new Exposure(BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, delta));
+    }
+
+    public BigDecimal unbilledShipAmount(Long shipId) {
+        return shipId == null ? BigDecimal.ZERO : safeMoney(exposureRepository.unbilledShipAmount(shipId));
+    }
+
+    /**
+     * 发货批次生成或冲销后调用；新生成的批次 before 传 0。
+     */
+    public void shipChanged(Long customerId, Long shipId, BigDecimal before) {
+        BigDecimal delta = unbilledShipAmount(shipId).subtract(safeMoney(before));
+        add(customerId, new Exposure(BigDecimal.ZERO, delta, BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+
+    public BigDecimal unbilledReturnAmount(Long returnId) {
+        return returnId == null ? BigDecimal.ZERO : safeMoney(exposureRepository.unbilledReturnAmount(returnId));
+    }
+
+    /**
+     * 退货单执行入库后调用。
+     */
+    public void returnChanged(Long customerId, Long returnId, BigDecimal before) {
+        BigDecimal delta = unbilledReturnAmount(returnId).subtract(safeMoney(before));
+        add(customerId, new Exposure(BigDecimal.ZERO, BigDecimal.ZERO, delta, BigDecimal.ZERO));
+    }
+
+    public BigDecimal outstandingAmount(Long billId) {
+        return billId == null ? BigDecimal.ZERO : safeMoney(exposureRepository.outstandingAmount(billId));
+    }
+
+    /**
+     * 对账单金额/已收/状态变化后调用（生成、重新生成、作废、收款、作废收款）；新生成的对账单 before 传 0。
+     */
+    public void billChanged(Long customerId, Long billId, BigDecimal before) {
+        BigDecimal delta = outstandingAmount(billId).subtract(safeMoney(before));
+        add(customerId, new Exposure(delta, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+
+    /**
+     * 对账单引用了发货/退货单据：这些单据不再计入未对账金额。
+     *
+     * @param shipAmount   被引用发货批次的金额合计（即引用前的未对账金额）
+     * @param returnAmount 被引用退货单的金额合计（负数）
+     */
+    public void billDocsReferenced(Long customerId, BigDecimal shipAmount, BigDecimal returnAmount) {
+        add(customerId, new Exposure(BigDecimal.ZERO, safeMoney(shipAmount).negate(), safeMoney(returnAmount).negate(),
+                BigDecimal.ZERO));
+    }
+
+    /**
+     * 对账单删除 doc_ref 之后、删除明细之前调用：明细中的单据重新计入未对账金额。
+     */
+    public void billDocsReleased(Long customerId, Long billId) {
+        if (billId == null) return;
+        add(customerId, new Exposure(
+                BigDecimal.ZERO,
+                safeMoney(exposureRepository.releasedShipAmount(billId)),
+                safeMoney(exposureRepository.releasedReturnAmount(billId)),
+                BigDecimal.ZERO));
+    }
+
+    /**
+     * 记录一次占用变化。
+     */
+    public void add(Long customerId, Exposure delta) {
+        if (customerId == null || delta == null || delta.isZero()) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(new TreeMap<>(Map.of(customerId, delta)));
+            return;
+        }
+        Pending pending = pending();
+        pending.byCustomer.merge(customerId, delta, Exposure::plus);
+    }
+
+    /**
+     * 把当前事务累计的差额写入占用表。
+     */
+    public void flush() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null || pending.byCustomer.isEmpty()) return;
+        write(pending.drain());
+    }
+
+    /**
+     * 额度校验用：写入本事务已累计的差额后，对客户占用行加锁并读取（行不存在时先补一行 0）。须在事务内调用。
+     */
+    public Exposure lockForCheck(Long customerId) {
+        flush();
+        jdbcTemplate.update(ENSURE_ROW_SQL, customerId);
+        return jdbcTemplate.queryForObject(LOCK_SQL, (rs, i) -> new Exposure(
+                rs.getBigDecimal(1), rs.getBigDecimal(2), rs.getBigDecimal(3), rs.getBigDecimal(4)), customerId);
+    }
+
+    /**
+     * 对账修复用：用重算值覆盖占用行（调用方须已通过 {@link #lockForCheck} 持有行锁）。
+     */
+    void overwrite(Long customerId, Exposure value) {
+        jdbcTemplate.update(OVERWRITE_SQL, value.outstandingAr(), value.unbilledShip(), value.unbilledReturn(),
+                value.openOrders(), Timestamp.valueOf(LocalDateTime.now()), customerId);
+    }
+
+    private Pending pending() {
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public int getOrder() {
+                    return SYNCHRONIZATION_ORDER;
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    flush();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(SalCreditExposureUpdater.this);
+                }
+            });
+        }
+        return pending;
+    }
+
+    private void write(Map<Long, Exposure> byCustomer) {
+        if (byCustomer.isEmpty()) return;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        // TreeMap：按 customer_id 升序写入，不同事务对占用行的加锁顺序一致
+        List<Map.Entry<Long, Exposure>> rows = new ArrayList<>(byCustomer.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows, rows.size(), (ps, e) -> {
+            ps.setLong(1, e.getKey());
+            ps.setBigDecimal(2, e.getValue().outstandingAr());
+            ps.setBigDecimal(3, e.getValue().unbilledShip());
+            ps.setBigDecimal(4, e.getValue().unbilledReturn());
+            ps.setBigDecimal(5, e.getValue().openOrders());
+            ps.setTimestamp(6, now);
+        });
+    }
+
+    private static BigDecimal safeMoney(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+
+    /**
+     * 占用金额（或差额）：AR 未收、未对账发货、未对账退货（负数）、未发完订单。
+     */
+    public record Exposure(BigDecimal outstandingAr, BigDecimal unbilledShip, BigDecimal unbilledReturn,
+            BigDecimal openOrders) {
+        public Exposure {
+            outstandingAr = safeMoney(outstandingAr);
+            unbilledShip = safeMoney(unbilledShip);
+            unbilledReturn = safeMoney(unbilledReturn);
+            openOrders = safeMoney(openOrders);
+        }
+
+        Exposure plus(Exposure o) {
+            return new Exposure(outstandingAr.add(o.outstandingAr), unbilledShip.add(o.unbilledShip),
+                    unbilledReturn.add(o.unbilledReturn), openOrders.add(o.openOrders));
+        }
+
+        boolean isZero() {
+            return outstandingAr.signum() == 0 && unbilledShip.signum() == 0 && unbilledReturn.signum() == 0
+                    && openOrders.signum() == 0;
+        }
+
+        /**
+         * 已占用额度（合计为负时按 0 计）。
+         */
+        public BigDecimal used() {
+            BigDecimal used = outstandingAr.add(unbilledShip).add(unbilledReturn).add(openOrders);
+            return used.signum() < 0 ? BigDecimal.ZERO : used;
+        }
+
+        /**
+         * 逐项比较金额（忽略小数位数差异）。
+         */
+        public boolean sameAs(Exposure o) {
+            return o != null
+                    && outstandingAr.compareTo(o.outstandingAr) == 0
+                    && unbilledShip.compareTo(o.unbilledShip) == 0
+                    && unbilledReturn.compareTo(o.unbilledReturn) == 0
+                    && openOrders.compareTo(o.openOrders) == 0;
+        }
+    }
+
+    private static final class Pending {
+        private Map<Long, Exposure> byCustomer = new TreeMap<>();
+
+        Map<Long, Exposure> drain() {
+            Map<Long, Exposure> copy = byCustomer;
+            byCustomer = new TreeMap<>();
+            return copy;
+        }
+    }
+}
@@ -3,9 +3,8 @@ package com.ordererp.backend.sales.service;
 import com.ordererp.backend.base.entity.BasePartner;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
 import com.ordererp.backend.sales.dto.SalCreditUsageResponse;
-import com.ordererp.backend.sales.repository.CustomerAmountRow;
-import com.ordererp.backend.sales.repository.SalArBillRepository;
-import com.ordererp.backend.sales.repository.SalOrderRepository;
+import com.ordererp.backend.sales.repository.SalCreditExposureRepository;
+import com.ordererp.backend.sales.service.SalCreditExposureUpdater.Exposure;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
@@ -22,13 +21,14 @@ public class SalCreditService {
     private static final int PARTNER_TYPE_CUSTOMER = 2;
 
     private final BasePartnerRepository partnerRepository;
-    private final SalArBillRepository arBillRepository;
-    private final SalOrderRepository orderRepository;
+    private final SalCreditExposureRepository exposureRepository;
+    private final SalCreditExposureUpdater exposureUpdater;
 
-    public SalCreditService(BasePartnerRepository partnerRepository, SalArBillRepository arBillRepository, SalOrderRepository orderRepository) {
+    public SalCreditService(BasePartnerRepository partnerRepository, SalCreditExposureRepository exposureRepository,
+            SalCreditExposureUpdater exposureUpdater) {
         this.partnerRepository = partnerRepository;
-        this.arBillRepository = arBillRepository;
-        this.orderRepository = orderRepository;
+        this.exposureRepository = exposureRepository;
+        this.exposureUpdater = exposureUpdater;
     }
 
     /**
@@ -42,6 +42,9 @@ public class SalCreditService {
      * </ul>
      *
      * <p>说明：当客户 credit_limit <= 0 时，视为不启用额度控制（无限额）。</p>
+     *
+     * <p>占用读取 sal_credit_exposure 中该客户的一行并加 {@code for update} 锁（见 {@link SalCreditExposureUpdater}），
+     * 锁持有到调用方事务结束：同一客户的并发审核依次校验，后者能看到前者提交的占用。须在事务内调用。</p>
      */
     public void checkIncrease(Long customerId, BigDecimal deltaAmount, String actionName) {
         BasePartner customer = partnerRepository.findById(customerId)
@@ -54,14 +57,13 @@ public class SalCreditService {
         BigDecimal delta = safeMoney(deltaAmount);
         if (delta.compareTo(BigDecimal.ZERO) <= 0) return;
 
-        UsageAmounts usage = computeUsageAmounts(customerId);
-        BigDecimal outstandingAr = usage.outstandingAr;
-        BigDecimal unbilledShip = usage.unbilledShip;
-        BigDecimal unbilledReturn = usage.unbilledReturn;
-        BigDecimal openOrders = usage.openOrders;
+        Exposure usage = exposureUpdater.lockForCheck(customerId);
+        BigDecimal outstandingAr = usage.outstandingAr();
+        BigDecimal unbilledShip = usage.unbilledShip();
+        BigDecimal unbilledReturn = usage.unbilledReturn();
+        BigDecimal openOrders = usage.openOrders();
 
-        BigDecimal used = outstandingAr.add(unbilledShip).add(unbilledReturn).add(openOrders);
-        if (used.compareTo(BigDecimal.ZERO) < 0) used = BigDecimal.ZERO;
+        BigDecimal used = usage.used();
 
         BigDecimal projected = used.add(delta);
         if (projected.compareTo(limit) <= 0) return;
@@ -84,7 +86,9 @@ public class SalCreditService {
         validateCustomer(customer);
         BigDecimal limit = safeMoney(customer.getCreditLimit());
 
-        UsageAmounts usage = computeUsageAmounts(customerId);
+        Exposure usage = exposureRepository.listRows(List.of(customerId)).stream().findFirst()
+                .map(SalCreditService::toExposure)
+                .orElseGet(() -> new Exposure(null, null, null, null));
         BigDecimal used = usage.used();
         BigDecimal available = limit.compareTo(BigDecimal.ZERO) > 0 ? limit.subtract(used) : null;
         boolean enabled = limit.compareTo(BigDecimal.ZERO) > 0;
@@ -92,11 +96,11 @@ public class SalCreditService {
         return new SalCreditUsageResponse(
                 customerId,
                 enabled ? limit : null,
-                used,
-                available,
-                usage.outstandingAr,
-                usage.unbilledShip.add(usage.unbilledReturn),
-                usage.openOrders,
+                roundMoney(used),
+                available == null ? null : roundMoney(available),
+                roundMoney(usage.outstandingAr()),
+                roundMoney(usage.unbilledShip().add(usage.unbilledReturn())),
+                roundMoney(usage.openOrders()),
                 enabled);
     }
 
@@ -111,11 +115,11 @@ public class SalCreditService {
             partnerById.put(p.getId(), p);
         }
 
-        // Bulk sums for performance (partners list UI).
-        Map<Long, BigDecimal> arByCustomer = toAmountMap(arBillRepository.sumOutstandingByCustomerIds(ids));
-        Map<Long, BigDecimal> shipByCustomer = toAmountMap(arBillRepository.sumUnbilledShipAmountByCustomerIds(ids));
-        Map<Long, BigDecimal> retByCustomer = toAmountMap(arBillRepository.sumUnbilledReturnAmountByCustomerIds(ids));
-        Map<Long, BigDecimal> openByCustomer = toAmountMap(orderRepository.sumOpenRemainingAmountByCustomerIds(ids));
+        // Exposure rows are maintained incrementally; one primary-key lookup per page (partners list UI).
+        Map<Long, Exposure> exposureByCustomer = new HashMap<>();
+        for (SalCreditExposureRepository.ExposureRow e : exposureRepository.listRows(ids)) {
+            exposureByCustomer.put(e.getCustomerId(), toExposure(e));
+        }
 
         List<SalCreditUsageResponse> out = new ArrayList<>();
         for (Long id : ids) {
@@ -125,11 +129,7 @@ public class SalCreditService {
             if (customer.getStatus() != null && customer.getStatus() != 1) continue;
 
             BigDecimal limit = safeMoney(customer.getCreditLimit());
-            UsageAmounts usage = new UsageAmounts(
-                    safeMoney(arByCustomer.get(id)),
-                    safeMoney(shipByCustomer.get(id)),
-                    safeMoney(retByCustomer.get(id)),
-                    safeMoney(openByCustomer.get(id)));
+            Exposure usage = exposureByCustomer.getOrDefault(id, new Exposure(null, null, null, null));
 
             BigDecimal used = usage.used();
             boolean enabled = limit.compareTo(BigDecimal.ZERO) > 0;
@@ -138,11 +138,11 @@ public class SalCreditService {
             out.add(new SalCreditUsageResponse(
                     id,
                     enabled ? limit : null,
-                    used,
-                    available,
-                    usage.outstandingAr,
-                    usage.unbilledShip.add(usage.unbilledReturn),
-                    usage.openOrders,
+                    roundMoney(used),
+                    available == null ? null : roundMoney(available),
+                    roundMoney(usage.outstandingAr()),
+                    roundMoney(usage.unbilledShip().add(usage.unbilledReturn())),
+                    roundMoney(usage.openOrders()),
                     enabled));
         }
         return out;
@@ -161,33 +161,16 @@ public class SalCreditService {
         return v == null ? BigDecimal.ZERO : v;
     }
 
-    private UsageAmounts computeUsageAmounts(Long customerId) {
-        BigDecimal outstandingAr = safeMoney(arBillRepository.sumOutstandingByCustomerId(customerId));
-        BigDecimal unbilledShip = safeMoney(arBillRepository.sumUnbilledShipAmountByCustomerId(customerId));
-        BigDecimal unbilledReturn = safeMoney(arBillRepository.sumUnbilledReturnAmountByCustomerId(customerId));
-        BigDecimal openOrders = safeMoney(orderRepository.sumOpenRemainingAmountByCustomerId(customerId, null));
-        return new UsageAmounts(outstandingAr, unbilledShip, unbilledReturn, openOrders);
+    private static Exposure toExposure(SalCreditExposureRepository.ExposureRow e) {
+        return new Exposure(e.getOutstandingAr(), e.getUnbilledShip(), e.getUnbilledReturn(), e.getOpenOrders());
     }
 
-    private static Map<Long, BigDecimal> toAmountMap(List<? extends CustomerAmountRow> rows) {
-        Map<Long, BigDecimal> m = new HashMap<>();
-        if (rows == null) return m;
-        for (CustomerAmountRow r : rows) {
-            if (r == null || r.getCustomerId() == null) continue;
-            m.put(r.getCustomerId(), safeMoney(r.getAmount()));
-        }
-        return m;
+    private static BigDecimal roundMoney(BigDecimal v) {
+        return safeMoney(v).setScale(2, RoundingMode.HALF_UP);
     }
 
     private static String fmtMoney(BigDecimal v) {
         BigDecimal m = safeMoney(v).setScale(2, RoundingMode.HALF_UP);
         return m.toPlainString();
     }
-
-    private record UsageAmounts(BigDecimal outstandingAr, BigDecimal unbilledShip, BigDecimal unbilledReturn, BigDecimal openOrders) {
-        BigDecimal used() {
-            BigDecimal used = safeMoney(outstandingAr).add(safeMoney(unbilledShip)).add(safeMoney(unbilledReturn)).add(safeMoney(openOrders));
-            return used.compareTo(BigDecimal.ZERO) < 0 ? BigDecimal.ZERO : used;
-        }
-    }
 }
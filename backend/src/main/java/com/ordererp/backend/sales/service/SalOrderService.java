@@ -1,11 +1,10 @@
 package com.ordererp.backend.sales.service;
 
-import com.ordererp.backend.base.entity.BasePartner;
-import com.ordererp.backend.base.entity.BaseProduct;
-import com.ordererp.backend.base.entity.BaseWarehouse;
-import com.ordererp.backend.base.repository.BasePartnerRepository;
-import com.ordererp.backend.base.repository.BaseProductRepository;
-import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.base.service.BaseMasterDataCache;
+import com.ordererp.backend.common.dto.CursorPageResponse;
+import com.ordererp.backend.common.metrics.DocTransitionMetrics;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import com.ordererp.backend.ledger.LedgerOutbox;
 import com.ordererp.backend.sales.dto.SalOrderCreateRequest;
 import com.ordererp.backend.sales.dto.SalOrderDetailResponse;
 import com.ordererp.backend.sales.dto.SalOrderItemResponse;
@@ -24,26 +23,24 @@ import com.ordererp.backend.sales.repository.SalShipDetailRepository;
 import com.ordererp.backend.sales.repository.SalShipRepository;
 import com.ordererp.backend.wms.entity.WmsIoBill;
 import com.ordererp.backend.wms.entity.WmsIoBillDetail;
-import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.entity.WmsStockLog;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
-import com.ordererp.backend.wms.repository.WmsStockRepository;
+import com.ordererp.backend.wms.service.WmsStockLedger;
+import com.ordererp.backend.wms.service.WmsStockLogAppender;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -67,34 +64,42 @@ public class SalOrderService {
     private final SalOrderDetailRepository detailRepository;
     private final SalShipRepository shipRepository;
     private final SalShipDetailRepository shipDetailRepository;
-    private final BasePartnerRepository partnerRepository;
-    private final BaseWarehouseRepository warehouseRepository;
-    private final BaseProductRepository productRepository;
-    private final WmsStockRepository stockRepository;
+    private final BaseMasterDataCache masterDataCache;
+    private final WmsStockLedger stockLedger;
     private final WmsIoBillRepository ioBillRepository;
     private final WmsIoBillDetailRepository ioBillDetailRepository;
-    private final WmsStockLogRepository stockLogRepository;
+    private final WmsStockLogAppender stockLogAppender;
     private final SalCreditService creditService;
+    private final SalCreditExposureUpdater creditExposure;
+    private final DocNumberAllocator docNumbers;
+    private final DocTransitionMetrics transitionMetrics;
+    private final LedgerOutbox ledgerOutbox;
 
     public SalOrderService(SalOrderRepository orderRepository, SalOrderDetailRepository detailRepository,
             SalShipRepository shipRepository, SalShipDetailRepository shipDetailRepository,
-            BasePartnerRepository partnerRepository, BaseWarehouseRepository warehouseRepository, BaseProductRepository productRepository,
-            WmsStockRepository stockRepository,
+            BaseMasterDataCache masterDataCache,
+            WmsStockLedger stockLedger,
             WmsIoBillRepository ioBillRepository, WmsIoBillDetailRepository ioBillDetailRepository,
-            WmsStockLogRepository stockLogRepository,
-            SalCreditService creditService) {
+            WmsStockLogAppender stockLogAppender,
+            SalCreditService creditService,
+            SalCreditExposureUpdater creditExposure,
+            DocNumberAllocator docNumbers,
+            DocTransitionMetrics transitionMetrics,
+            LedgerOutbox ledgerOutbox) {
         this.orderRepository = orderRepository;
         this.detailRepository = detailRepository;
         this.shipRepository = shipRepository;
         this.shipDetailRepository = shipDetailRepository;
-        this.partnerRepository = partnerRepository;
-        this.warehouseRepository = warehouseRepository;
-        this.productRepository = productRepository;
-        this.stockRepository = stockRepository;
+        this.masterDataCache = masterDataCache;
+        this.stockLedger = stockLedger;
         this.ioBillRepository = ioBillRepository;
         this.ioBillDetailRepository = ioBillDetailRepository;
-        this.stockLogRepository = stockLogRepository;
+        this.stockLogAppender = stockLogAppender;
         this.creditService = creditService;
+        this.creditExposure = creditExposure;
+        this.docNumbers = docNumbers;
+        this.transitionMetrics = transitionMetrics;
+        this.ledgerOutbox = ledgerOutbox;
     }
 
     public Page<SalOrderResponse> page(String keyword, Long customerId, LocalDate startDate, LocalDate endDate, Pageable pageable) {
@@ -102,6 +107,18 @@ public class SalOrderService {
                 .map(SalOrderService::toResponse);
     }
 
+    /**
+     * 游标分页：afterId 为上一页返回的 nextCursor（首页传 null）；includeTotal=false 时不执行 count。
+     */
+    public CursorPageResponse<SalOrderResponse> seek(String keyword, Long customerId, LocalDate startDate,
+            LocalDate endDate, Long afterId, Integer limit, boolean includeTotal) {
+        String kw = trimToNull(keyword);
+        int size = CursorPageResponse.clampLimit(limit);
+        var rows = orderRepository.seekRows(kw, customerId, startDate, endDate, afterId, size + 1);
+        Long total = includeTotal ? orderRepository.countRows(kw, customerId, startDate, endDate) : null;
+        return CursorPageResponse.of(rows, size, SalOrderRepository.SalOrderRow::getId, SalOrderService::toResponse, total);
+    }
+
     public List<SalOrderOptionResponse> options(String keyword, Integer limit) {
         int size = limit == null ? 200 : Math.max(1, Math.min(500, limit));
         return orderRepository.optionRows(trimToNull(keyword), size).stream()
@@ -197,24 +214,26 @@ public class SalOrderService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "lines is required");
         }
 
-        BasePartner customer = partnerRepository.findByIdAndDeleted(request.customerId(), 0)
+        BaseMasterDataCache.PartnerInfo customer = masterDataCache.getPartner(request.customerId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "客户不存在"));
-        if (!Objects.equals(customer.getType(), PARTNER_TYPE_CUSTOMER)) {
+        if (!Objects.equals(customer.type(), PARTNER_TYPE_CUSTOMER)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "往来单位不是客户(type=2)");
         }
-        if (customer.getStatus() != null && customer.getStatus() != 1) {
+        if (!customer.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "客户已禁用");
         }
 
-        BaseWarehouse wh = warehouseRepository.findByIdAndDeleted(request.warehouseId(), 0)
+        BaseMasterDataCache.WarehouseInfo wh = masterDataCache.getWarehouse(request.warehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库不存在"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "仓库已禁用");
         }
 
         Set<Long> seenProducts = new HashSet<>();
         List<SalOrderDetail> details = new ArrayList<>();
         BigDecimal totalAmount = BigDecimal.ZERO;
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                request.lines().stream().filter(Objects::nonNull).map(SalOrderCreateRequest.SalOrderLineRequest::productId).toList());
         for (var line : request.lines()) {
             if (line == null) continue;
             if (line.productId() == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "productId is required");
@@ -222,9 +241,9 @@ public class SalOrderService {
             BigDecimal qty = safeQty(line.qty());
             if (qty.compareTo(BigDecimal.ZERO) <= 0) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "qty must be > 0");
 
-            BaseProduct p = productRepository.findByIdAndDeleted(line.productId(), 0)
+            BaseMasterDataCache.ProductInfo p = Optional.ofNullable(products.get(line.productId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品不存在"));
-            if (p.getStatus() != null && p.getStatus() != 1) {
+            if (!p.enabled()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品已禁用");
             }
 
@@ -237,10 +256,10 @@ public class SalOrderService {
             }
 
             SalOrderDetail d = new SalOrderDetail();
-            d.setProductId(p.getId());
-            d.setProductCode(p.getProductCode());
-            d.setProductName(p.getProductName());
-            d.setUnit(p.getUnit());
+            d.setProductId(p.id());
+            d.setProductCode(p.productCode());
+            d.setProductName(p.productName());
+            d.setUnit(p.unit());
             d.setQty(qty);
             d.setShippedQty(BigDecimal.ZERO);
             d.setPrice(price);
@@ -251,10 +270,10 @@ public class SalOrderService {
         LocalDateTime now = LocalDateTime.now();
         SalOrder o = new SalOrder();
         o.setOrderNo(generateOrderNo());
-        o.setCustomerId(customer.getId());
-        o.setCustomerCode(customer.getPartnerCode());
-        o.setCustomerName(customer.getPartnerName());
-        o.setWarehouseId(wh.getId());
+        o.setCustomerId(customer.id());
+        o.setCustomerCode(customer.partnerCode());
+        o.setCustomerName(customer.partnerName());
+        o.setWarehouseId(wh.id());
         o.setOrderDate(request.orderDate() == null ? LocalDate.now() : request.orderDate());
         o.setTotalAmount(totalAmount);
         o.setStatus(STATUS_DRAFT);
@@ -300,6 +319,10 @@ public class SalOrderService {
      */
     @Transactional
     public SalOrderResponse audit(Long id, String operator) {
+        return transitionMetrics.record("sal_order", "audit", () -> doAudit(id, operator));
+    }
+
+    private SalOrderResponse doAudit(Long id, String operator) {
         SalOrder o = orderRepository.findByIdForUpdate(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "销售订单不存在"));
         if (Objects.equals(o.getStatus(), STATUS_AUDITED) || Objects.equals(o.getStatus(), STATUS_PARTIAL_SHIPPED) || Objects.equals(o.getStatus(), STATUS_SHIPPED)) {
@@ -315,17 +338,23 @@ public class SalOrderService {
         List<SalOrderDetail> items = detailRepository.findByOrderIdOrderByIdAsc(o.getId());
         if (items == null || items.isEmpty()) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "订单无明细");
 
-        creditService.checkIncrease(o.getCustomerId(), o.getTotalAmount(), "审核销售订单");
-
+        // 整单批量锁库：按 SKU 排序加锁、全部成功或全部失败，不足时返回所有缺货 SKU
+        List<WmsStockLedger.StockLine> lines = new ArrayList<>(items.size());
         for (SalOrderDetail it : items) {
             if (it == null) continue;
-            lockStockWithRetry(o.getWarehouseId(), it.getProductId(), safeQty(it.getQty()));
+            lines.add(new WmsStockLedger.StockLine(o.getWarehouseId(), it.getProductId(), safeQty(it.getQty())));
         }
+        stockLedger.lockAll(lines);
+
+        // 额度校验会锁客户占用行：放在库存行之后，与发货等业务的加锁顺序一致（库存行 -> 占用行）
+        creditService.checkIncrease(o.getCustomerId(), o.getTotalAmount(), "审核销售订单");
 
         o.setStatus(STATUS_AUDITED);
         o.setAuditBy(trimToNull(operator));
         o.setAuditTime(LocalDateTime.now());
         orderRepository.saveAndFlush(o);
+        // 草稿不占用额度，审核后计入未发完订单
+        creditExposure.orderChanged(o.getCustomerId(), o.getId(), BigDecimal.ZERO);
         return toResponse(orderRepository.getDetailRow(o.getId()));
     }
 
@@ -360,6 +389,10 @@ public class SalOrderService {
      */
     @Transactional
     public SalOrderResponse ship(Long id, String operator) {
+        return transitionMetrics.record("sal_order", "ship", () -> doShip(id, operator));
+    }
+
+    private SalOrderResponse doShip(Long id, String operator) {
         SalOrder o = orderRepository.findByIdForUpdate(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "销售订单不存在"));
         if (Objects.equals(o.getStatus(), STATUS_SHIPPED)) {
@@ -413,7 +446,7 @@ public class SalOrderService {
                 if (it == null) continue;
                 BigDecimal remainLocked = safeQty(it.getQty()).subtract(safeQty(it.getShippedQty()));
                 if (remainLocked.compareTo(BigDecimal.ZERO) > 0) {
-                    unlockStockWithRetry(o.getWarehouseId(), it.getProductId(), remainLocked);
+                    stockLedger.unlock(o.getWarehouseId(), it.getProductId(), remainLocked);
                 }
             }
         } else if (Objects.equals(o.getStatus(), STATUS_PARTIAL_SHIPPED)) {
@@ -423,106 +456,25 @@ public class SalOrderService {
                 if (it == null) continue;
                 BigDecimal remainLocked = safeQty(it.getQty()).subtract(safeQty(it.getShippedQty()));
                 if (remainLocked.compareTo(BigDecimal.ZERO) > 0) {
-                    unlockStockWithRetry(o.getWarehouseId(), it.getProductId(), remainLocked);
+                    stockLedger.unlock(o.getWarehouseId(), it.getProductId(), remainLocked);
                 }
             }
         } else if (!Objects.equals(o.getStatus(), STATUS_DRAFT)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "订单状态不允许作废");
         }
 
+        BigDecimal openBefore = creditExposure.openOrderAmount(o.getId());
         o.setStatus(STATUS_CANCELED);
         o.setCancelBy(trimToNull(operator));
         o.setCancelTime(LocalDateTime.now());
         orderRepository.saveAndFlush(o);
+        creditExposure.orderChanged(o.getCustomerId(), o.getId(), openBefore);
         return toResponse(orderRepository.getDetailRow(o.getId()));
     }
 
-    private void lockStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                lockStockOnce(warehouseId, productId, qty);
-                return;
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private void lockStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        if (qty.compareTo(BigDecimal.ZERO) <= 0) return;
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "该仓库无此商品库存记录"));
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        BigDecimal available = stockQty.subtract(lockedQty);
-        if (available.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "库存不足，当前可用: " + available);
-        }
-        stock.setLockedQty(lockedQty.add(qty));
-        stockRepository.saveAndFlush(stock);
-    }
-
-    private void unlockStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                unlockStockOnce(warehouseId, productId, qty);
-                return;
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private void unlockStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
+    private void deductAndUnlock(Long warehouseId, Long productId, BigDecimal qty, String bizNo, LocalDateTime now) {
         if (qty.compareTo(BigDecimal.ZERO) <= 0) return;
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "该仓库无此商品库存记录"));
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        BigDecimal nextLocked = lockedQty.subtract(qty);
-        if (nextLocked.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < 0");
-        }
-        stock.setLockedQty(nextLocked);
-        stockRepository.saveAndFlush(stock);
-    }
-
-    private void deductAndUnlockWithRetry(Long warehouseId, Long productId, BigDecimal qty, String bizNo, LocalDateTime now) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                deductAndUnlockOnce(warehouseId, productId, qty, bizNo, now);
-                return;
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private void deductAndUnlockOnce(Long warehouseId, Long productId, BigDecimal qty, String bizNo, LocalDateTime now) {
-        if (qty.compareTo(BigDecimal.ZERO) <= 0) return;
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "该仓库无此商品库存记录"));
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        if (lockedQty.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < required");
-        }
-        if (stockQty.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "库存不足，当前物理: " + stockQty);
-        }
-
-        stock.setStockQty(stockQty.subtract(qty));
-        stock.setLockedQty(lockedQty.subtract(qty));
-        stockRepository.saveAndFlush(stock);
+        WmsStockLedger.StockQty stock = stockLedger.deductLocked(warehouseId, productId, qty);
 
         WmsStockLog log = new WmsStockLog();
         log.setWarehouseId(warehouseId);
@@ -530,13 +482,17 @@ public class SalOrderService {
         log.setBizType("SALES_OUT");
         log.setBizNo(trimToNull(bizNo));
         log.setChangeQty(qty.negate());
-        log.setAfterStockQty(stock.getStockQty());
+        log.setAfterStockQty(stock.stockQty());
         log.setCreateTime(now);
-        stockLogRepository.save(log);
+        stockLogAppender.append(log);
     }
 
     @Transactional
     public void shipBatch(Long orderId, String requestNo, List<ShipLine> lines, String operator) {
+        transitionMetrics.run("sal_order", "ship_batch", () -> doShipBatch(orderId, requestNo, lines, operator));
+    }
+
+    private void doShipBatch(Long orderId, String requestNo, List<ShipLine> lines, String operator) {
         if (lines == null || lines.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "lines is required");
         }
@@ -566,8 +522,10 @@ public class SalOrderService {
 
     private void shipBatchInternal(String requestNo, SalOrder o, List<SalOrderDetail> items, List<ShipLine> lines, String operator) {
         // Validate lines and compute remain
+        BigDecimal openBefore = creditExposure.openOrderAmount(o.getId());
         Set<Long> seen = new HashSet<>();
         BigDecimal totalQty = BigDecimal.ZERO;
+        BigDecimal shipAmount = BigDecimal.ZERO;
         List<SalShipDetail> shipDetails = new ArrayList<>();
         LocalDateTime now = LocalDateTime.now();
 
@@ -624,7 +582,7 @@ public class SalOrderService {
             }
 
             // stock: deduct physical and release locked
-            deductAndUnlockWithRetry(o.getWarehouseId(), it.getProductId(), shipQty, shipNo, now);
+            deductAndUnlock(o.getWarehouseId(), it.getProductId(), shipQty, shipNo, now);
 
             it.setShippedQty(safeQty(it.getShippedQty()).add(shipQty));
             detailRepository.save(it);
@@ -640,7 +598,9 @@ public class SalOrderService {
             sd.setQty(shipQty);
             shipDetails.add(sd);
             totalQty = totalQty.add(shipQty);
+            if (it.getPrice() != null) shipAmount = shipAmount.add(shipQty.multiply(it.getPrice()));
         }
+        stockLogAppender.flush();
 
         if (totalQty.compareTo(BigDecimal.ZERO) <= 0) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "total ship qty must be > 0");
@@ -695,17 +655,22 @@ public class SalOrderService {
             o.setShipTime(now);
         }
         orderRepository.saveAndFlush(o);
-    }
 
-    private static void validateStockInvariant(BigDecimal stockQty, BigDecimal lockedQty) {
-        BigDecimal s = safeQty(stockQty);
-        BigDecimal l = safeQty(lockedQty);
-        if (l.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < 0");
-        }
-        if (l.compareTo(s) > 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty > stock_qty");
-        }
+        // 占用额度：未发完订单减少，未对账发货增加
+        creditExposure.orderChanged(o.getCustomerId(), o.getId(), openBefore);
+        creditExposure.shipChanged(o.getCustomerId(), ship.getId(), BigDecimal.ZERO);
+        // 发货金额按订单单价计，与发货同一事务写入记账发件箱；销售成本按商品采购价估算（结转 1405 库存商品）
+        ledgerOutbox.publish(LedgerOutbox.SALES_SHIP, ship.getId(), shipNo, now.toLocalDate(), shipAmount,
+                o.getOrderNo());
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                shipDetails.stream().map(SalShipDetail::getProductId).toList());
+        BigDecimal costAmount = BigDecimal.ZERO;
+        for (SalShipDetail sd : shipDetails) {
+            BaseMasterDataCache.ProductInfo p = products.get(sd.getProductId());
+            if (p != null && p.purchasePrice() != null) costAmount = costAmount.add(safeQty(sd.getQty()).multiply(p.purchasePrice()));
+        }
+        ledgerOutbox.publish(LedgerOutbox.SALES_COST, ship.getId(), shipNo, now.toLocalDate(), costAmount,
+                o.getOrderNo());
     }
 
     private static SalOrderResponse toResponse(SalOrderRepository.SalOrderRow r) {
@@ -767,22 +732,16 @@ public class SalOrderService {
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateOrderNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "SO" + ts + "-" + rand;
+    private String generateOrderNo() {
+        return docNumbers.next("SO");
     }
 
-    private static String generateShipNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "SHIP" + ts + "-" + rand;
+    private String generateShipNo() {
+        return docNumbers.next("SHIP");
     }
 
-    private static String generateWmsBillNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "SAO" + ts + "-" + rand;
+    private String generateWmsBillNo() {
+        return docNumbers.next("SAO");
     }
 
     public record ShipLine(Long orderDetailId, Long productId, BigDecimal qty) {
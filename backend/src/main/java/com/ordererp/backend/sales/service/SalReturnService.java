@@ -4,6 +4,9 @@ import com.ordererp.backend.base.entity.BasePartner;
 import com.ordererp.backend.base.entity.BaseWarehouse;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
 import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.base.service.BaseMasterDataCache;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import com.ordererp.backend.ledger.LedgerOutbox;
 import com.ordererp.backend.sales.dto.SalReturnCreateRequest;
 import com.ordererp.backend.sales.dto.SalReturnDetailResponse;
 import com.ordererp.backend.sales.dto.SalReturnExecuteResponse;
@@ -19,30 +22,26 @@ import com.ordererp.backend.sales.repository.SalReturnDetailRepository;
 import com.ordererp.backend.sales.repository.SalReturnRepository;
 import com.ordererp.backend.sales.repository.SalShipDetailRepository;
 import com.ordererp.backend.sales.repository.SalShipRepository;
-import com.ordererp.backend.wms.entity.WmsStockQc;
 import com.ordererp.backend.wms.entity.WmsIoBill;
 import com.ordererp.backend.wms.entity.WmsIoBillDetail;
-import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.entity.WmsStockLog;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
-import com.ordererp.backend.wms.repository.WmsStockQcRepository;
-import com.ordererp.backend.wms.repository.WmsStockRepository;
+import com.ordererp.backend.wms.service.WmsStockLedger;
+import com.ordererp.backend.wms.service.WmsStockLogAppender;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
@@ -70,17 +69,21 @@ public class SalReturnService {
     private final BaseWarehouseRepository warehouseRepository;
     private final WmsIoBillRepository ioBillRepository;
     private final WmsIoBillDetailRepository ioBillDetailRepository;
-    private final WmsStockRepository stockRepository;
-    private final WmsStockQcRepository stockQcRepository;
-    private final WmsStockLogRepository stockLogRepository;
+    private final WmsStockLogAppender stockLogAppender;
+    private final WmsStockLedger stockLedger;
+    private final SalCreditExposureUpdater creditExposure;
+    private final DocNumberAllocator docNumbers;
+    private final BaseMasterDataCache masterDataCache;
+    private final LedgerOutbox ledgerOutbox;
 
     public SalReturnService(SalReturnRepository returnRepository, SalReturnDetailRepository detailRepository,
             SalShipRepository shipRepository, SalShipDetailRepository shipDetailRepository, SalOrderDetailRepository orderDetailRepository,
             BasePartnerRepository partnerRepository, BaseWarehouseRepository warehouseRepository,
             WmsIoBillRepository ioBillRepository,
-            WmsIoBillDetailRepository ioBillDetailRepository, WmsStockRepository stockRepository,
-            WmsStockQcRepository stockQcRepository,
-            WmsStockLogRepository stockLogRepository) {
+            WmsIoBillDetailRepository ioBillDetailRepository,
+            WmsStockLogAppender stockLogAppender, WmsStockLedger stockLedger,
+            SalCreditExposureUpdater creditExposure,
+            DocNumberAllocator docNumbers, BaseMasterDataCache masterDataCache, LedgerOutbox ledgerOutbox) {
         this.returnRepository = returnRepository;
         this.detailRepository = detailRepository;
         this.shipRepository = shipRepository;
@@ -90,9 +93,12 @@ public class SalReturnService {
         this.warehouseRepository = warehouseRepository;
         this.ioBillRepository = ioBillRepository;
         this.ioBillDetailRepository = ioBillDetailRepository;
-        this.stockRepository = stockRepository;
-        this.stockQcRepository = stockQcRepository;
-        this.stockLogRepository = stockLogRepository;
+        this.stockLogAppender = stockLogAppender;
+        this.stockLedger = stockLedger;
+        this.creditExposure = creditExposure;
+        this.docNumbers = docNumbers;
+        this.masterDataCache = masterDataCache;
+        this.ledgerOutbox = ledgerOutbox;
     }
 
     public Page<SalReturnResponse> page(String keyword, Pageable pageable) {
@@ -318,7 +324,7 @@ public class SalReturnService {
         for (var e : qcDeltaByProductId.entrySet()) {
             BigDecimal qty = safeQty(e.getValue());
             if (qty.compareTo(BigDecimal.ZERO) <= 0) continue;
-            increaseQcWithRetry(r.getWarehouseId(), e.getKey(), qty);
+            stockLedger.increaseQc(r.getWarehouseId(), e.getKey(), qty);
         }
 
         LocalDateTime now = LocalDateTime.now();
@@ -347,6 +353,7 @@ public class SalReturnService {
         if (Objects.equals(r.getStatus(), STATUS_QC_REJECTED)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "退货单已质检不合格，不能入库");
         }
+        BigDecimal unbilledBefore = creditExposure.unbilledReturnAmount(r.getId());
 
         WmsIoBill existing = ioBillRepository.findFirstByBizIdAndType(r.getId(), WMS_BILL_TYPE_SALES_RETURN_IN).orElse(null);
         if (existing != null) {
@@ -357,6 +364,7 @@ public class SalReturnService {
                 r.setExecuteBy(trimToNull(operator));
                 r.setExecuteTime(LocalDateTime.now());
                 returnRepository.save(r);
+                creditExposure.returnChanged(r.getCustomerId(), r.getId(), unbilledBefore);
             }
             return new SalReturnExecuteResponse(r.getId(), r.getReturnNo(), r.getStatus(), existing.getId(), existing.getBillNo());
         }
@@ -399,14 +407,21 @@ public class SalReturnService {
             throw e;
         }
 
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                details.stream().map(SalReturnDetail::getProductId).toList());
+        BigDecimal returnAmount = BigDecimal.ZERO;
+        BigDecimal costAmount = BigDecimal.ZERO;
         for (SalReturnDetail d : details) {
             BigDecimal qty = safeQty(d.getQty());
             if (qty.compareTo(BigDecimal.ZERO) <= 0) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid qty on detail: " + d.getId());
             }
+            returnAmount = returnAmount.add(safeMoney(d.getAmount()));
+            BaseMasterDataCache.ProductInfo p = products.get(d.getProductId());
+            if (p != null && p.purchasePrice() != null) costAmount = costAmount.add(qty.multiply(p.purchasePrice()));
 
             // 待检库存 -> 可用库存（质检通过后才进入可用库存）
-            decreaseQcWithRetry(wh.getId(), d.getProductId(), qty);
+            stockLedger.decreaseQc(wh.getId(), d.getProductId(), qty);
 
             WmsIoBillDetail bd = new WmsIoBillDetail();
             bd.setBillId(bill.getId());
@@ -415,17 +430,18 @@ public class SalReturnService {
             bd.setRealQty(qty);
             ioBillDetailRepository.save(bd);
 
-            WmsStock stock = increaseStockWithRetry(wh.getId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.increase(wh.getId(), d.getProductId(), qty);
             WmsStockLog log = new WmsStockLog();
             log.setWarehouseId(wh.getId());
             log.setProductId(d.getProductId());
             log.setBizType("SALES_RETURN");
             log.setBizNo(bill.getBillNo());
             log.setChangeQty(qty);
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(now);
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
         }
+        stockLogAppender.flush();
 
         r.setStatus(STATUS_COMPLETED);
         r.setWmsBillId(bill.getId());
@@ -435,6 +451,13 @@ public class SalReturnService {
         r.setExecuteBy(trimToNull(operator));
         r.setExecuteTime(now);
         returnRepository.save(r);
+        // 已执行退货计入未对账退货（负数，冲减占用）
+        creditExposure.returnChanged(r.getCustomerId(), r.getId(), unbilledBefore);
+        // 记账发件箱：退货金额冲减收入与应收；成本按商品采购价估算转回库存商品
+        ledgerOutbox.publish(LedgerOutbox.SALES_RETURN, r.getId(), r.getReturnNo(), now.toLocalDate(), returnAmount,
+                r.getShipNo());
+        ledgerOutbox.publish(LedgerOutbox.SALES_RETURN_COST, r.getId(), r.getReturnNo(), now.toLocalDate(), costAmount,
+                r.getShipNo());
         return new SalReturnExecuteResponse(r.getId(), r.getReturnNo(), r.getStatus(), bill.getId(), bill.getBillNo());
     }
 
@@ -469,7 +492,7 @@ public class SalReturnService {
         for (var e : qcDeltaByProductId.entrySet()) {
             BigDecimal qty = safeQty(e.getValue());
             if (qty.compareTo(BigDecimal.ZERO) <= 0) continue;
-            decreaseQcWithRetry(r.getWarehouseId(), e.getKey(), qty);
+            stockLedger.decreaseQc(r.getWarehouseId(), e.getKey(), qty);
         }
 
         LocalDateTime now = LocalDateTime.now();
@@ -504,7 +527,7 @@ public class SalReturnService {
             for (var e : qcDeltaByProductId.entrySet()) {
                 BigDecimal qty = safeQty(e.getValue());
                 if (qty.compareTo(BigDecimal.ZERO) <= 0) continue;
-                decreaseQcWithRetry(r.getWarehouseId(), e.getKey(), qty);
+                stockLedger.decreaseQc(r.getWarehouseId(), e.getKey(), qty);
             }
         }
 
@@ -514,133 +537,6 @@ public class SalReturnService {
         return toResponse(returnRepository.getRow(r.getId()));
     }
 
-    private WmsStock increaseStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return increaseStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock increaseStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        if (qty.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "qty must be positive");
-        }
-        LocalDateTime now = LocalDateTime.now();
-
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (stock == null) {
-            WmsStock created = new WmsStock();
-            created.setWarehouseId(warehouseId);
-            created.setProductId(productId);
-            created.setStockQty(qty);
-            created.setLockedQty(BigDecimal.ZERO);
-            created.setVersion(0);
-            created.setUpdateTime(now);
-            validateStockInvariant(created.getStockQty(), created.getLockedQty());
-            try {
-                return stockRepository.saveAndFlush(created);
-            } catch (DataIntegrityViolationException e) {
-                stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                        .orElseThrow(() -> e);
-            }
-        }
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        stock.setStockQty(stockQty.add(qty));
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(now);
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
-    private static void validateStockInvariant(BigDecimal stockQty, BigDecimal lockedQty) {
-        BigDecimal s = safeQty(stockQty);
-        BigDecimal l = safeQty(lockedQty);
-        if (l.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < 0");
-        }
-        if (l.compareTo(s) > 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty > stock_qty");
-        }
-    }
-
-    private WmsStockQc increaseQcWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return increaseQcOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStockQc increaseQcOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        if (qty.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "qty must be positive");
-        }
-        LocalDateTime now = LocalDateTime.now();
-        WmsStockQc qc = stockQcRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (qc == null) {
-            WmsStockQc created = new WmsStockQc();
-            created.setWarehouseId(warehouseId);
-            created.setProductId(productId);
-            created.setQcQty(qty);
-            created.setVersion(0);
-            created.setUpdateTime(now);
-            try {
-                return stockQcRepository.saveAndFlush(created);
-            } catch (DataIntegrityViolationException e) {
-                qc = stockQcRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElseThrow(() -> e);
-            }
-        }
-        BigDecimal qcQty = safeQty(qc.getQcQty());
-        qc.setQcQty(qcQty.add(qty));
-        qc.setUpdateTime(now);
-        return stockQcRepository.saveAndFlush(qc);
-    }
-
-    private WmsStockQc decreaseQcWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return decreaseQcOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStockQc decreaseQcOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        if (qty.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "qty must be positive");
-        }
-        LocalDateTime now = LocalDateTime.now();
-        WmsStockQc qc = stockQcRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (qc == null) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT,
-                    "QC stock bucket missing (warehouseId=" + warehouseId + ", productId=" + productId + ")");
-        }
-        BigDecimal qcQty = safeQty(qc.getQcQty());
-        BigDecimal next = qcQty.subtract(qty);
-        if (next.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT,
-                    "QC qty insufficient (warehouseId=" + warehouseId + ", productId=" + productId + ", qcQty=" + qcQty + ", required=" + qty + ")");
-        }
-        qc.setQcQty(next);
-        qc.setUpdateTime(now);
-        return stockQcRepository.saveAndFlush(qc);
-    }
-
     private static void validateLines(List<SalReturnLineRequest> lines) {
         if (lines == null || lines.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "lines is required");
@@ -770,15 +666,11 @@ public class SalReturnService {
         return r + "；" + e;
     }
 
-    private static String generateReturnNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "SR" + ts + "-" + rand;
+    private String generateReturnNo() {
+        return docNumbers.next("SR");
     }
 
-    private static String generateWmsBillNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "SRI" + ts + "-" + rand;
+    private String generateWmsBillNo() {
+        return docNumbers.next("SRI");
     }
 }
@@ -1,5 +1,7 @@
 package com.ordererp.backend.sales.service;
 
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import com.ordererp.backend.ledger.LedgerOutbox;
 import com.ordererp.backend.sales.dto.SalShipReverseResponse;
 import com.ordererp.backend.sales.dto.SalShipDetailResponse;
 import com.ordererp.backend.sales.dto.SalShipItemResponse;
@@ -15,16 +17,14 @@ import com.ordererp.backend.sales.repository.SalShipDetailRepository;
 import com.ordererp.backend.sales.repository.SalShipRepository;
 import com.ordererp.backend.wms.entity.WmsIoBill;
 import com.ordererp.backend.wms.entity.WmsIoBillDetail;
-import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.entity.WmsStockLog;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
-import com.ordererp.backend.wms.repository.WmsStockRepository;
+import com.ordererp.backend.wms.service.WmsStockLedger;
+import com.ordererp.backend.wms.service.WmsStockLogAppender;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -35,7 +35,6 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.server.ResponseStatusException;
 
 @Service
@@ -59,14 +58,20 @@ public class SalShipService {
     private final SalReturnDetailRepository returnDetailRepository;
     private final WmsIoBillRepository ioBillRepository;
     private final WmsIoBillDetailRepository ioBillDetailRepository;
-    private final WmsStockRepository stockRepository;
-    private final WmsStockLogRepository stockLogRepository;
+    private final WmsStockLogAppender stockLogAppender;
+    private final WmsStockLedger stockLedger;
+    private final SalCreditExposureUpdater creditExposure;
+    private final DocNumberAllocator docNumbers;
+    private final LedgerOutbox ledgerOutbox;
 
     public SalShipService(SalShipRepository shipRepository, SalShipDetailRepository shipDetailRepository,
             SalOrderRepository orderRepository, SalOrderDetailRepository orderDetailRepository,
             SalReturnDetailRepository returnDetailRepository,
             WmsIoBillRepository ioBillRepository, WmsIoBillDetailRepository ioBillDetailRepository,
-            WmsStockRepository stockRepository, WmsStockLogRepository stockLogRepository) {
+            WmsStockLogAppender stockLogAppender, WmsStockLedger stockLedger,
+            SalCreditExposureUpdater creditExposure,
+            DocNumberAllocator docNumbers,
+            LedgerOutbox ledgerOutbox) {
         this.shipRepository = shipRepository;
         this.shipDetailRepository = shipDetailRepository;
         this.orderRepository = orderRepository;
@@ -74,8 +79,11 @@ public class SalShipService {
         this.returnDetailRepository = returnDetailRepository;
         this.ioBillRepository = ioBillRepository;
         this.ioBillDetailRepository = ioBillDetailRepository;
-        this.stockRepository = stockRepository;
-        this.stockLogRepository = stockLogRepository;
+        this.stockLogAppender = stockLogAppender;
+        this.stockLedger = stockLedger;
+        this.creditExposure = creditExposure;
+        this.docNumbers = docNumbers;
+        this.ledgerOutbox = ledgerOutbox;
     }
 
     public Page<SalShipResponse> page(String keyword, Long customerId, Long warehouseId, LocalDate startDate, LocalDate endDate, Pageable pageable) {
@@ -143,11 +151,12 @@ public class SalShipService {
         if (ship.getReverseWmsBillId() != null && (ship.getReverseStatus() != null && ship.getReverseStatus() == REVERSE_STATUS_REVERSED)) {
             return new SalShipReverseResponse(ship.getId(), ship.getShipNo(), ship.getReverseStatus(), ship.getReverseWmsBillId(), ship.getReverseWmsBillNo());
         }
+        BigDecimal unbilledBefore = creditExposure.unbilledShipAmount(ship.getId());
 
         // Idempotency: reversal WMS bill is keyed by original wmsBillId + type(STOCK_IN)
         WmsIoBill existing = ioBillRepository.findFirstByBizIdAndType(ship.getWmsBillId(), WMS_BILL_TYPE_STOCK_IN).orElse(null);
         if (existing != null) {
-            applyReverseRecord(ship, existing, operator);
+            applyReverseRecord(ship, existing, operator, unbilledBefore);
             return new SalShipReverseResponse(ship.getId(), ship.getShipNo(), ship.getReverseStatus(), existing.getId(), existing.getBillNo());
         }
 
@@ -170,6 +179,7 @@ public class SalShipService {
                 && !Integer.valueOf(ORDER_STATUS_SHIPPED).equals(order.getStatus())) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "订单状态不允许冲销发货");
         }
+        BigDecimal openBefore = creditExposure.openOrderAmount(order.getId());
 
         List<SalShipDetail> shipDetails = shipDetailRepository.findByShipIdOrderByIdAsc(ship.getId());
         if (shipDetails == null || shipDetails.isEmpty()) {
@@ -201,7 +211,7 @@ public class SalShipService {
         } catch (DataIntegrityViolationException e) {
             existing = ioBillRepository.findFirstByBizIdAndType(origBill.getId(), WMS_BILL_TYPE_STOCK_IN).orElse(null);
             if (existing != null) {
-                applyReverseRecord(ship, existing, operator);
+                applyReverseRecord(ship, existing, operator, unbilledBefore);
                 return new SalShipReverseResponse(ship.getId(), ship.getShipNo(), ship.getReverseStatus(), existing.getId(), existing.getBillNo());
             }
             throw e;
@@ -222,16 +232,16 @@ public class SalShipService {
             }
 
             // Inventory: stock_qty += qty, locked_qty += qty (restore reservation)
-            WmsStock stock = increaseAndLockWithRetry(order.getWarehouseId(), sd.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.increaseAndLock(order.getWarehouseId(), sd.getProductId(), qty);
             WmsStockLog log = new WmsStockLog();
             log.setWarehouseId(order.getWarehouseId());
             log.setProductId(sd.getProductId());
             log.setBizType("SALES_OUT_REVERSE");
             log.setBizNo(reversal.getBillNo());
             log.setChangeQty(qty);
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(now);
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
 
             BigDecimal nextShipped = safeQty(od.getShippedQty()).subtract(qty);
             if (nextShipped.compareTo(BigDecimal.ZERO) < 0) {
@@ -247,9 +257,14 @@ public class SalShipService {
             rd.setRealQty(qty);
             reversalDetails.add(rd);
         }
+        stockLogAppender.flush();
         if (!reversalDetails.isEmpty()) {
             ioBillDetailRepository.saveAll(reversalDetails);
         }
+        ledgerOutbox.reverse(LedgerOutbox.SALES_SHIP, ship.getId(), reversal.getBillNo(), now.toLocalDate(),
+                reversal.getRemark());
+        ledgerOutbox.reverse(LedgerOutbox.SALES_COST, ship.getId(), reversal.getBillNo(), now.toLocalDate(),
+                reversal.getRemark());
 
         // Recompute order status after reversal
         boolean anyShipped = false;
@@ -273,8 +288,9 @@ public class SalShipService {
             order.setShipTime(null);
         }
         orderRepository.saveAndFlush(order);
+        creditExposure.orderChanged(order.getCustomerId(), order.getId(), openBefore);
 
-        applyReverseRecord(ship, reversal, operator);
+        applyReverseRecord(ship, reversal, operator, unbilledBefore);
         return new SalShipReverseResponse(ship.getId(), ship.getShipNo(), ship.getReverseStatus(), reversal.getId(), reversal.getBillNo());
     }
 
@@ -303,7 +319,7 @@ public class SalShipService {
                 r.getCreateTime());
     }
 
-    private void applyReverseRecord(SalShip ship, WmsIoBill reversal, String operator) {
+    private void applyReverseRecord(SalShip ship, WmsIoBill reversal, String operator, BigDecimal unbilledBefore) {
         LocalDateTime now = LocalDateTime.now();
         ship.setReverseStatus(REVERSE_STATUS_REVERSED);
         ship.setReverseBy(trimToNull(operator));
@@ -311,43 +327,8 @@ public class SalShipService {
         ship.setReverseWmsBillId(reversal.getId());
         ship.setReverseWmsBillNo(reversal.getBillNo());
         shipRepository.save(ship);
-    }
-
-    private WmsStock increaseAndLockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return increaseAndLockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock increaseAndLockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        if (qty.compareTo(BigDecimal.ZERO) <= 0) return stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "该仓库无此商品库存记录"));
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "该仓库无此商品库存记录"));
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        stock.setStockQty(stockQty.add(qty));
-        stock.setLockedQty(lockedQty.add(qty));
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
-    private static void validateStockInvariant(BigDecimal stockQty, BigDecimal lockedQty) {
-        BigDecimal s = safeQty(stockQty);
-        BigDecimal l = safeQty(lockedQty);
-        if (l.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < 0");
-        }
-        if (l.compareTo(s) > 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty > stock_qty");
-        }
+        // 冲销后的批次不再计入未对账发货
+        creditExposure.shipChanged(ship.getCustomerId(), ship.getId(), unbilledBefore);
     }
 
     private static BigDecimal safeQty(BigDecimal v) {
@@ -360,9 +341,7 @@ public class SalShipService {
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateReverseWmsBillNo() {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return "RSI" + ts + "-" + rand;
+    private String generateReverseWmsBillNo() {
+        return docNumbers.next("RSI");
     }
 }
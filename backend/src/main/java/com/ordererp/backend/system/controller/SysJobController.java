@@ -0,0 +1,57 @@
+package com.ordererp.backend.system.controller;
+
+import com.ordererp.backend.common.util.ExcelHttpUtil;
+import com.ordererp.backend.system.dto.SysJobResponse;
+import com.ordererp.backend.system.security.SysUserDetails;
+import com.ordererp.backend.system.service.SysJobService;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 后台任务查询/取消/下载：只能访问自己提交的任务。任务由各业务模块的 *-job 接口提交。
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class SysJobController {
+    private final SysJobService jobService;
+
+    public SysJobController(SysJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @GetMapping
+    public List<SysJobResponse> recent(Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return jobService.recent(user.getUsername());
+    }
+
+    @GetMapping("/{id}")
+    public SysJobResponse get(@PathVariable Long id, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return jobService.get(id, user.getUsername());
+    }
+
+    @PostMapping("/{id}/cancel")
+    public SysJobResponse cancel(@PathVariable Long id, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return jobService.cancel(id, user.getUsername());
+    }
+
+    @GetMapping("/{id}/file")
+    public void file(@PathVariable Long id, Authentication authentication, HttpServletResponse response)
+            throws IOException {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        SysJobService.JobFile file = jobService.file(id, user.getUsername());
+        ExcelHttpUtil.prepareXlsxResponse(response, file.fileName());
+        response.setContentLengthLong(Files.size(file.path()));
+        Files.copy(file.path(), response.getOutputStream());
+    }
+}
@@ -4,10 +4,13 @@ import com.ordererp.backend.system.dto.MenuRouterDto;
 import com.ordererp.backend.system.security.SysUserDetails;
 import com.ordererp.backend.system.service.SysMenuService;
 import java.util.List;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("/api/system/menu")
@@ -18,9 +21,19 @@ public class SystemMenuController {
         this.menuService = menuService;
     }
 
+    /**
+     * 路由树带 ETag：客户端携带 If-None-Match 重新验证，未变化时返回 304（无响应体）。
+     */
     @GetMapping("/routers")
-    public List<MenuRouterDto> routers(Authentication authentication) {
+    public ResponseEntity<List<MenuRouterDto>> routers(Authentication authentication, WebRequest request) {
         SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
-        return menuService.getRoutersByUserId(user.getId());
+        SysMenuService.RouterTree tree = menuService.getRouterTree(user.getId());
+        if (request.checkNotModified(tree.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(tree.etag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(tree.routers());
     }
 }
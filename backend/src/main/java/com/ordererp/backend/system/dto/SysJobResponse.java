@@ -0,0 +1,24 @@
+package com.ordererp.backend.system.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.time.LocalDateTime;
+
+public record SysJobResponse(
+        Long id,
+        String jobType,
+        String title,
+        Integer status,
+        Integer progress,
+        Integer total,
+        boolean cancelRequested,
+        String message,
+        JsonNode result,
+        String fileName,
+        Long fileSize,
+        boolean fileAvailable,
+        String createBy,
+        LocalDateTime createTime,
+        LocalDateTime startTime,
+        LocalDateTime finishTime,
+        Long elapsedMs) {
+}
@@ -0,0 +1,102 @@
+package com.ordererp.backend.system.repository;
+
+import com.ordererp.backend.system.entity.SysJob;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface SysJobRepository extends JpaRepository<SysJob, Long> {
+    List<SysJob> findTop20ByCreateByOrderByIdDesc(String createBy);
+
+    // ==========================================
+    // 状态流转都是带前置状态的条件 update：排队中的任务被取消后，工作线程的“开始执行”会更新 0 行而直接放弃；
+    // 已结束的任务不会再被改回运行中。
+    // ==========================================
+
+    @Modifying
+    @Query(value = """
+            update sys_job
+            set status = 2, start_time = :now, heartbeat_time = :now
+            where id = :id
+              and status = 1
+            """, nativeQuery = true)
+    int markRunning(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "update sys_job set progress = :progress, total = :total where id = :id", nativeQuery = true)
+    int updateProgress(@Param("id") Long id, @Param("progress") int progress, @Param("total") Integer total);
+
+    @Query(value = "select cancel_requested from sys_job where id = :id", nativeQuery = true)
+    Integer cancelRequested(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = """
+            update sys_job
+            set status = :status,
+              progress = :progress,
+              total = :total,
+              message = :message,
+              result_json = :resultJson,
+              file_name = :fileName,
+              file_path = :filePath,
+              file_size = :fileSize,
+              finish_time = :now,
+              elapsed_ms = :elapsedMs
+            where id = :id
+              and status in (1, 2)
+            """, nativeQuery = true)
+    int finish(@Param("id") Long id, @Param("status") int status, @Param("progress") int progress,
+            @Param("total") Integer total, @Param("message") String message, @Param("resultJson") String resultJson,
+            @Param("fileName") String fileName, @Param("filePath") String filePath, @Param("fileSize") Long fileSize,
+            @Param("now") LocalDateTime now, @Param("elapsedMs") Long elapsedMs);
+
+    @Modifying
+    @Query(value = "update sys_job set cancel_requested = 1 where id = :id and status in (1, 2)", nativeQuery = true)
+    int requestCancel(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = """
+            update sys_job
+            set status = 5, message = :message, finish_time = :now
+            where id = :id
+              and status = 1
+            """, nativeQuery = true)
+    int cancelQueued(@Param("id") Long id, @Param("message") String message, @Param("now") LocalDateTime now);
+
+    /**
+     * 本节点排队/运行中的任务续期心跳。
+     */
+    @Modifying
+    @Query(value = "update sys_job set heartbeat_time = :now where id in (:ids) and status in (1, 2)", nativeQuery = true)
+    int heartbeat(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    /**
+     * 心跳超时的排队/运行中任务（执行节点已退出）标记为失败。
+     */
+    @Modifying
+    @Query(value = """
+            update sys_job
+            set status = 4, message = :message, finish_time = :now
+            where status in (1, 2)
+              and coalesce(heartbeat_time, create_time) < :before
+            """, nativeQuery = true)
+    int abandonStale(@Param("before") LocalDateTime before, @Param("message") String message,
+            @Param("now") LocalDateTime now);
+
+    @Query(value = """
+            select * from sys_job
+            where file_path is not null
+              and finish_time < :before
+            order by id asc
+            limit :limit
+            """, nativeQuery = true)
+    List<SysJob> findExpiredFiles(@Param("before") LocalDateTime before, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "update sys_job set file_path = null where id = :id", nativeQuery = true)
+    int clearFile(@Param("id") Long id);
+}
@@ -1,6 +1,7 @@
 package com.ordererp.backend.system.repository;
 
 import com.ordererp.backend.system.entity.SysMenu;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -16,6 +17,14 @@ public interface SysMenuRepository extends JpaRepository<SysMenu, Long> {
             """)
     List<SysMenu> findMenusByUserId(@Param("userId") Long userId);
 
+    @Query("""
+            select distinct m from SysMenu m
+            join SysRoleMenu rm on m.id = rm.menuId
+            where rm.roleId in :roleIds and m.visible = 1
+            order by m.sort asc, m.id asc
+            """)
+    List<SysMenu> findMenusByRoleIds(@Param("roleIds") Collection<Long> roleIds);
+
     @Query("""
             select distinct m.perms from SysMenu m
             join SysRoleMenu rm on m.id = rm.menuId
@@ -4,10 +4,15 @@ import com.ordererp.backend.system.entity.SysUserRole;
 import com.ordererp.backend.system.entity.SysUserRoleId;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface SysUserRoleRepository extends JpaRepository<SysUserRole, SysUserRoleId> {
     List<SysUserRole> findByUserId(Long userId);
 
+    @Query("select ur.roleId from SysUserRole ur where ur.userId = :userId order by ur.roleId")
+    List<Long> findRoleIdsByUserId(@Param("userId") Long userId);
+
     void deleteByUserId(Long userId);
 }
 
@@ -15,10 +15,13 @@ import org.springframework.web.filter.OncePerRequestFilter;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final SysUserDetailsService userDetailsService;
+    private final SysPrincipalCache principalCache;
 
-    public JwtAuthenticationFilter(JwtService jwtService, SysUserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtService jwtService, SysUserDetailsService userDetailsService,
+            SysPrincipalCache principalCache) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -31,17 +34,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         String token = authHeader.substring(7);
-        String username;
+        JwtService.TokenClaims claims;
         try {
-            username = jwtService.extractUsername(token);
+            claims = jwtService.parse(token);
         } catch (Exception ex) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            SysUserDetails userDetails = (SysUserDetails) userDetailsService.loadUserByUsername(username);
-            if (jwtService.isTokenValid(token, userDetails)) {
+        if (claims.username() != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            SysUserDetails userDetails = loadPrincipal(claims);
+            if (jwtService.isTokenValid(claims, userDetails)) {
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -51,4 +54,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * 同一 token（uid + 签发时间）只在首次请求或权限变更后查用户和权限，之后走 {@link SysPrincipalCache}。
+     */
+    private SysUserDetails loadPrincipal(JwtService.TokenClaims claims) {
+        if (claims.userId() == null || claims.issuedAt() == null) {
+            return (SysUserDetails) userDetailsService.loadUserByUsername(claims.username());
+        }
+        return principalCache.get(claims.userId(), claims.issuedAt(),
+                () -> (SysUserDetails) userDetailsService.loadUserByUsername(claims.username()));
+    }
 }
@@ -35,11 +35,30 @@ public class JwtService {
         return parseClaims(token).getSubject();
     }
 
+    /**
+     * 一次验签并读出常用字段（过期/签名错误会抛出异常）。
+     */
+    public TokenClaims parse(String token) {
+        Claims claims = parseClaims(token);
+        Number uid = claims.get("uid", Number.class);
+        return new TokenClaims(
+                claims.getSubject(),
+                uid == null ? null : uid.longValue(),
+                claims.getIssuedAt() == null ? null : claims.getIssuedAt().toInstant(),
+                claims.getExpiration() == null ? null : claims.getExpiration().toInstant());
+    }
+
     public boolean isTokenValid(String token, SysUserDetails user) {
         String username = extractUsername(token);
         return username.equals(user.getUsername()) && !isExpired(token);
     }
 
+    public boolean isTokenValid(TokenClaims claims, SysUserDetails user) {
+        return claims.username() != null && claims.username().equals(user.getUsername())
+                && (claims.userId() == null || claims.userId().equals(user.getId()))
+                && claims.expiresAt() != null && claims.expiresAt().isAfter(Instant.now());
+    }
+
     private boolean isExpired(String token) {
         return parseClaims(token).getExpiration().before(new Date());
     }
@@ -47,4 +66,7 @@ public class JwtService {
     private Claims parseClaims(String token) {
         return Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload();
     }
+
+    public record TokenClaims(String username, Long userId, Instant issuedAt, Instant expiresAt) {
+    }
 }
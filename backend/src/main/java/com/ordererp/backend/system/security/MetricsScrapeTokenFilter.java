@@ -0,0 +1,48 @@
+package com.ordererp.backend.system.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Prometheus 抓取凭据：{@code Authorization: Bearer <app.metrics.scrape-token>} 访问 /actuator/** 时，
+ * 授予 {@link #AUTHORITY}（不是系统用户，不带任何业务权限）。
+ *
+ * <p>未配置 token 时不放行任何抓取请求。不注册为 @Component，避免被 Servlet 容器当作全局过滤器再挂一次。</p>
+ */
+public class MetricsScrapeTokenFilter extends OncePerRequestFilter {
+    public static final String AUTHORITY = "actuator:scrape";
+
+    private final byte[] token;
+
+    public MetricsScrapeTokenFilter(String token) {
+        this.token = token == null || token.isBlank() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return token == null || !request.getRequestURI().startsWith(request.getContextPath() + "/actuator/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null
+                && MessageDigest.isEqual(token, authHeader.substring(7).getBytes(StandardCharsets.UTF_8))) {
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                    "metrics-scraper", null, List.of(new SimpleGrantedAuthority(AUTHORITY))));
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,96 @@
+package com.ordererp.backend.system.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 已认证用户（含权限集合）缓存，供 {@link JwtAuthenticationFilter} 使用。
+ *
+ * <p>以前每个带 token 的请求都要查一次用户 + 一次“用户-角色-菜单”权限 join，是全系统最频繁的查询。
+ * 这里以 (userId, token 签发时间, 权限版本) 为键缓存 {@link SysUserDetails}：</p>
+ * <ul>
+ *   <li>同一 token 的后续请求只按主键读一次 sys_principal_version（该用户一行 + 全局一行），不再查用户和权限 join；
+ *       重新登录拿到新 token 时自然重新加载；</li>
+ *   <li>用户资料/状态/角色、密码变更时在业务事务内把该用户的版本加 1，角色权限变更时把全局版本加 1：
+ *       任何节点的下一次请求读到新版本，键不同即重新加载，多实例部署不再等 TTL；</li>
+ *   <li>版本在加载用户之前读取：加载期间提交的变更会让下一次请求再加载一次，不会把旧权限挂在新版本下；</li>
+ *   <li>本节点同时清掉旧版本的条目（事务提交后再清一次）；TTL 只负责回收不再使用的条目。</li>
+ * </ul>
+ */
+@Component
+public class SysPrincipalCache {
+    private static final long GLOBAL_USER_ID = 0L;
+
+    private static final String VERSION_SQL = """
+            select coalesce(sum(version), 0) from sys_principal_version where user_id in (?, ?)
+            """;
+
+    private static final String BUMP_SQL = """
+            insert into sys_principal_version (user_id, version) values (?, 1)
+            on duplicate key update version = version + 1
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<PrincipalKey, SysUserDetails> cache;
+
+    public SysPrincipalCache(JdbcTemplate jdbcTemplate,
+            @Value("${app.security.principal-cache.max-size:10000}") long maxSize,
+            @Value("${app.security.principal-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 按当前权限版本命中直接返回；未命中调用 loader 加载并缓存（loader 抛出的异常原样传出，不缓存）。
+     */
+    public SysUserDetails get(Long userId, Instant issuedAt, Supplier<SysUserDetails> loader) {
+        Long version = jdbcTemplate.queryForObject(VERSION_SQL, Long.class, GLOBAL_USER_ID, userId);
+        return cache.get(new PrincipalKey(userId, issuedAt.getEpochSecond(), version == null ? 0L : version),
+                k -> loader.get());
+    }
+
+    /**
+     * 失效某个用户的全部 token 对应的缓存（资料、状态、角色、密码变更）；在业务事务内调用，随事务提交对所有节点生效。
+     */
+    public void invalidateUser(Long userId) {
+        if (userId == null) return;
+        jdbcTemplate.update(BUMP_SQL, userId);
+        Runnable action = () -> cache.asMap().keySet().removeIf(k -> k.userId().equals(userId));
+        action.run();
+        afterCommit(action);
+    }
+
+    /**
+     * 全部失效（角色权限变化会影响多个用户）。
+     */
+    public void invalidateAll() {
+        jdbcTemplate.update(BUMP_SQL, GLOBAL_USER_ID);
+        cache.invalidateAll();
+        afterCommit(cache::invalidateAll);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private record PrincipalKey(Long userId, long issuedAtEpochSecond, long version) {
+    }
+}
@@ -11,6 +11,7 @@ import com.ordererp.backend.system.entity.SysRoleMenu;
 import com.ordererp.backend.system.repository.SysMenuRepository;
 import com.ordererp.backend.system.repository.SysRoleMenuRepository;
 import com.ordererp.backend.system.repository.SysRoleRepository;
+import com.ordererp.backend.system.security.SysPrincipalCache;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -29,12 +30,16 @@ public class SysAdminRoleService {
     private final SysRoleRepository roleRepository;
     private final SysRoleMenuRepository roleMenuRepository;
     private final SysMenuRepository menuRepository;
+    private final SysPrincipalCache principalCache;
+    private final SysMenuService menuService;
 
     public SysAdminRoleService(SysRoleRepository roleRepository, SysRoleMenuRepository roleMenuRepository,
-            SysMenuRepository menuRepository) {
+            SysMenuRepository menuRepository, SysPrincipalCache principalCache, SysMenuService menuService) {
         this.roleRepository = roleRepository;
         this.roleMenuRepository = roleMenuRepository;
         this.menuRepository = menuRepository;
+        this.principalCache = principalCache;
+        this.menuService = menuService;
     }
 
     public Page<RoleAdminResponse> page(String keyword, Pageable pageable) {
@@ -93,6 +98,9 @@ public class SysAdminRoleService {
         }
 
         SysRole saved = roleRepository.save(role);
+        // 角色状态可能变化：影响该角色下所有用户的权限
+        principalCache.invalidateAll();
+        menuService.invalidateRouters();
         return toResponse(saved);
     }
 
@@ -103,6 +111,8 @@ public class SysAdminRoleService {
         role.setDeleted(1);
         roleRepository.save(role);
         roleMenuRepository.deleteByRoleId(id);
+        principalCache.invalidateAll();
+        menuService.invalidateRouters();
     }
 
     public List<Long> getRoleMenuIds(Long roleId) {
@@ -126,6 +136,8 @@ public class SysAdminRoleService {
 
         List<Long> menuIds = normalizeIds(request.menuIds());
         roleMenuRepository.deleteByRoleId(roleId);
+        principalCache.invalidateAll();
+        menuService.invalidateRouters();
         if (menuIds.isEmpty()) {
             return;
         }
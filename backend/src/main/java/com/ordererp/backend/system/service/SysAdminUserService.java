@@ -9,6 +9,7 @@ import com.ordererp.backend.system.entity.SysUserRole;
 import com.ordererp.backend.system.repository.SysRoleRepository;
 import com.ordererp.backend.system.repository.SysUserRepository;
 import com.ordererp.backend.system.repository.SysUserRoleRepository;
+import com.ordererp.backend.system.security.SysPrincipalCache;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -30,13 +31,16 @@ public class SysAdminUserService {
     private final SysRoleRepository roleRepository;
     private final SysUserRoleRepository userRoleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final SysPrincipalCache principalCache;
 
     public SysAdminUserService(SysUserRepository userRepository, SysRoleRepository roleRepository,
-            SysUserRoleRepository userRoleRepository, PasswordEncoder passwordEncoder) {
+            SysUserRoleRepository userRoleRepository, PasswordEncoder passwordEncoder,
+            SysPrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.userRoleRepository = userRoleRepository;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
     }
 
     public Page<UserAdminResponse> page(String keyword, Pageable pageable) {
@@ -114,6 +118,8 @@ public class SysAdminUserService {
         if (request.roleIds() != null) {
             updateUserRoles(id, roleIds);
         }
+        // 状态/角色可能变化：已登录 token 的权限缓存失效
+        principalCache.invalidateUser(id);
 
         Map<Long, String> roleIdToKey = loadRoleKeys(roleIds);
         return toResponse(saved, roleIds, roleIdToKey);
@@ -127,6 +133,7 @@ public class SysAdminUserService {
         user.setUpdateTime(LocalDateTime.now());
         userRepository.save(user);
         userRoleRepository.deleteByUserId(id);
+        principalCache.invalidateUser(id);
     }
 
     private void updateUserRoles(Long userId, List<Long> roleIds) {
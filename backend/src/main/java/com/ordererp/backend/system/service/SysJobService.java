@@ -0,0 +1,544 @@
+package com.ordererp.backend.system.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ordererp.backend.system.dto.SysJobResponse;
+import com.ordererp.backend.system.entity.SysJob;
+import com.ordererp.backend.system.repository.SysJobRepository;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 后台任务：耗时的导入、导出和重算在有界工作线程池中执行，Web 请求只登记任务（sys_job）并立即返回。
+ *
+ * <ul>
+ *   <li>并发：同时执行的任务数为 {@code app.job.workers}，其余排队；队列满（{@code app.job.queue-capacity}）时
+ *   直接拒绝（429），不会因为一批大导入占满数据库连接池。原有的同步导入/导出/重算接口也经 {@link #runAndWait}
+ *   在同一个工作线程池中执行（请求线程等待结果），同样受这个上限约束；</li>
+ *   <li>进度：任务通过 {@link JobContext} 上报，最多每秒落库一次；</li>
+ *   <li>取消：排队中的任务直接取消；运行中的任务只置取消标记，由任务在批次之间检查后停止（已提交的批次保留）；</li>
+ *   <li>文件：上传的 Excel 先落到任务目录再排队（请求结束后临时文件会被容器删除），导出结果写到任务目录，
+ *   通过 {@code /api/jobs/{id}/file} 鉴权下载；上传目录 {@code /uploads/**} 是匿名可读的，因此任务文件不放在那里。
+ *   结果文件保留 {@code app.job.file-retention-hours} 小时；</li>
+ *   <li>节点退出：排队/运行中的任务由本节点定时续期心跳，心跳超时的任务会被标记为失败。</li>
+ * </ul>
+ */
+@Service
+public class SysJobService {
+    private static final Logger log = LoggerFactory.getLogger(SysJobService.class);
+
+    public static final int STATUS_QUEUED = 1;
+    public static final int STATUS_RUNNING = 2;
+    public static final int STATUS_SUCCEEDED = 3;
+    public static final int STATUS_FAILED = 4;
+    public static final int STATUS_CANCELLED = 5;
+
+    private static final long PROGRESS_FLUSH_MILLIS = 1000;
+    private static final long HEARTBEAT_TIMEOUT_MINUTES = 5;
+    private static final int FILE_CLEANUP_BATCH = 200;
+
+    private final SysJobRepository jobRepository;
+    private final TransactionTemplate txTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path fileDir;
+    private final long fileRetentionHours;
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, LocalJob> localJobs = new ConcurrentHashMap<>();
+
+    public SysJobService(SysJobRepository jobRepository, PlatformTransactionManager txManager, ObjectMapper objectMapper,
+            @Value("${app.job.workers:2}") int workers,
+            @Value("${app.job.queue-capacity:100}") int queueCapacity,
+            @Value("${app.job.file-dir:job-files}") String fileDir,
+            @Value("${app.job.file-retention-hours:72}") long fileRetentionHours) {
+        this.jobRepository = jobRepository;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.objectMapper = objectMapper;
+        this.fileDir = Paths.get(fileDir).toAbsolutePath().normalize();
+        this.fileRetentionHours = fileRetentionHours;
+        int size = Math.max(1, workers);
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "sys-job-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 登记并排队一个任务，立即返回任务状态。
+     *
+     * @param jobType 任务类型（如 stock-log-export），用于展示和监控
+     * @param title   任务说明
+     */
+    public SysJobResponse submit(String jobType, String title, String operator, JobTask task) {
+        return submit(jobType, title, operator, null, task);
+    }
+
+    /**
+     * 登记一个处理上传文件的任务：文件先复制到任务目录，任务结束后删除。
+     */
+    public SysJobResponse submitUpload(String jobType, String title, String operator, MultipartFile file,
+            UploadTask task) {
+        if (file == null || file.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "file is required");
+        }
+        Path input = fileDir.resolve("upload-" + UUID.randomUUID().toString().replace("-", "") + ".xlsx");
+        try {
+            Files.createDirectories(fileDir);
+            file.transferTo(input);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "upload failed");
+        }
+        return submit(jobType, title, operator, input, ctx -> {
+            try (InputStream in = Files.newInputStream(input)) {
+                return task.run(in, ctx);
+            }
+        });
+    }
+
+    /**
+     * 同步接口使用：登记任务并在工作线程池中执行，当前请求线程等待完成后返回任务体的返回值。
+     * 排队/取消/进度与后台任务相同（同样出现在 /api/jobs 中）；任务体抛出的异常原样抛给调用方，同步接口的错误响应不变。
+     */
+    public <T> T runAndWait(String jobType, String title, String operator, ResultTask<T> task) {
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicReference<T> result = new AtomicReference<>();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        LocalJob local = enqueue(jobType, title, operator, null, ctx -> {
+            started.set(true);
+            try {
+                T r = task.run(ctx);
+                result.set(r);
+                return r;
+            } catch (Exception e) {
+                error.set(e);
+                throw e;
+            }
+        });
+        try {
+            local.future.get();
+        } catch (InterruptedException e) {
+            local.ctx.cancelled = true;
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "请求已中断");
+        } catch (CancellationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "任务已取消");
+        } catch (ExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "任务执行失败", e.getCause());
+        }
+        Exception e = error.get();
+        if (!started.get() || (e != null && isCancellation(e))) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "任务已取消");
+        }
+        if (e instanceof RuntimeException re) throw re;
+        if (e != null) throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "任务执行失败", e);
+        return result.get();
+    }
+
+    private SysJobResponse submit(String jobType, String title, String operator, Path input, JobTask task) {
+        LocalJob local = enqueue(jobType, title, operator, input, task);
+        return get(local.ctx.jobId, operator);
+    }
+
+    private LocalJob enqueue(String jobType, String title, String operator, Path input, JobTask task) {
+        LocalDateTime now = LocalDateTime.now();
+        SysJob job = new SysJob();
+        job.setJobType(jobType);
+        job.setTitle(truncate(title, 128));
+        job.setStatus(STATUS_QUEUED);
+        job.setProgress(0);
+        job.setCancelRequested(0);
+        job.setCreateBy(trimToNull(operator));
+        job.setCreateTime(now);
+        job.setHeartbeatTime(now);
+        Long jobId = jobRepository.save(job).getId();
+
+        JobContext ctx = new JobContext(jobId);
+        if (input != null) ctx.tempFiles.add(input);
+        LocalJob local = new LocalJob(ctx);
+        localJobs.put(jobId, local);
+        try {
+            local.future = executor.submit(() -> run(jobId, ctx, task));
+        } catch (RejectedExecutionException e) {
+            localJobs.remove(jobId);
+            ctx.deleteTempFiles();
+            txTemplate.executeWithoutResult(s -> jobRepository.finish(jobId, STATUS_FAILED, 0, null,
+                    "任务队列已满", null, null, null, null, LocalDateTime.now(), null));
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "后台任务较多，请稍后再试");
+        }
+        log.info("job queued id={} type={} by={} queued={}", jobId, jobType, operator, executor.getQueue().size());
+        return local;
+    }
+
+    public SysJobResponse get(Long id, String operator) {
+        return toResponse(loadOwned(id, operator));
+    }
+
+    public List<SysJobResponse> recent(String operator) {
+        return jobRepository.findTop20ByCreateByOrderByIdDesc(trimToNull(operator)).stream()
+                .map(this::toResponse)
+                .toList();
+    }
+
+    /**
+     * 取消任务：排队中的直接取消；运行中的置取消标记，任务在下一个检查点停止。
+     */
+    public SysJobResponse cancel(Long id, String operator) {
+        SysJob job = loadOwned(id, operator);
+        if (job.getStatus() != STATUS_QUEUED && job.getStatus() != STATUS_RUNNING) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "任务已结束，不能取消");
+        }
+        int cancelled = txTemplate.execute(s -> {
+            jobRepository.requestCancel(id);
+            return jobRepository.cancelQueued(id, "已取消", LocalDateTime.now());
+        });
+        LocalJob local = localJobs.get(id);
+        if (local != null) {
+            local.ctx.cancelled = true;
+            if (cancelled > 0 && local.future != null) {
+                local.future.cancel(false);
+                localJobs.remove(id);
+                local.ctx.deleteTempFiles();
+            }
+        }
+        log.info("job cancel requested id={} by={} queued={}", id, operator, cancelled > 0);
+        return get(id, operator);
+    }
+
+    /**
+     * 结果文件（只能下载自己的任务）。
+     */
+    public JobFile file(Long id, String operator) {
+        SysJob job = loadOwned(id, operator);
+        if (job.getStatus() != STATUS_SUCCEEDED || job.getFilePath() == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "任务没有可下载的文件");
+        }
+        Path path = fileDir.resolve(job.getFilePath()).normalize();
+        if (!path.startsWith(fileDir) || !Files.isRegularFile(path)) {
+            throw new ResponseStatusException(HttpStatus.GONE, "文件已过期");
+        }
+        return new JobFile(path, job.getFileName());
+    }
+
+    /**
+     * 续期本节点任务的心跳，并把心跳超时（执行节点已退出）的排队/运行中任务标记为失败。
+     */
+    @Scheduled(fixedDelayString = "${app.job.heartbeat-interval-ms:30000}", initialDelay = 10000)
+    public void heartbeat() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = new ArrayList<>(localJobs.keySet());
+        txTemplate.executeWithoutResult(s -> {
+            if (!ids.isEmpty()) jobRepository.heartbeat(ids, now);
+            int abandoned = jobRepository.abandonStale(now.minusMinutes(HEARTBEAT_TIMEOUT_MINUTES),
+                    "任务中断：执行节点已退出", now);
+            if (abandoned > 0) log.warn("jobs abandoned after heartbeat timeout count={}", abandoned);
+        });
+    }
+
+    /**
+     * 删除过期的结果文件。
+     */
+    @Scheduled(cron = "${app.job.file-cleanup-cron:0 17 * * * *}")
+    public void cleanupFiles() {
+        LocalDateTime before = LocalDateTime.now().minusHours(fileRetentionHours);
+        List<SysJob> expired = jobRepository.findExpiredFiles(before, FILE_CLEANUP_BATCH);
+        for (SysJob job : expired) {
+            try {
+                Files.deleteIfExists(fileDir.resolve(job.getFilePath()).normalize());
+            } catch (IOException e) {
+                log.warn("job file delete failed id={} path={}", job.getId(), job.getFilePath(), e);
+                continue;
+            }
+            txTemplate.executeWithoutResult(s -> jobRepository.clearFile(job.getId()));
+        }
+        if (!expired.isEmpty()) log.info("job files cleaned count={}", expired.size());
+    }
+
+    private void run(Long jobId, JobContext ctx, JobTask task) {
+        try {
+            Integer started = txTemplate.execute(s -> jobRepository.markRunning(jobId, LocalDateTime.now()));
+            if (started == null || started == 0) return; // 排队期间已被取消
+
+            long startNanos = System.nanoTime();
+            int status;
+            String message = null;
+            String resultJson = null;
+            try {
+                Object result = task.run(ctx);
+                resultJson = result == null ? null : objectMapper.writeValueAsString(result);
+                status = STATUS_SUCCEEDED;
+            } catch (Exception e) {
+                if (isCancellation(e)) {
+                    status = STATUS_CANCELLED;
+                    message = "已取消";
+                } else {
+                    status = STATUS_FAILED;
+                    message = e instanceof ResponseStatusException rse ? rse.getReason() : e.getMessage();
+                    if (message == null) message = e.getClass().getSimpleName();
+                    log.warn("job failed id={}", jobId, e);
+                }
+            }
+            if (status != STATUS_SUCCEEDED) ctx.deleteResultFile();
+
+            long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+            int finalStatus = status;
+            String finalMessage = truncate(message, 512);
+            String finalJson = resultJson;
+            String filePath = ctx.resultFile == null ? null : ctx.resultFile.getFileName().toString();
+            Long fileSize = ctx.resultFile == null ? null : sizeOf(ctx.resultFile);
+            txTemplate.executeWithoutResult(s -> jobRepository.finish(jobId, finalStatus, ctx.progress, ctx.total,
+                    finalMessage, finalJson, ctx.resultName, filePath, fileSize, LocalDateTime.now(), elapsedMs));
+            log.info("job finished id={} status={} progress={} elapsedMs={}", jobId, finalStatus, ctx.progress,
+                    elapsedMs);
+        } catch (RuntimeException e) {
+            log.error("job bookkeeping failed id={}", jobId, e);
+        } finally {
+            ctx.deleteTempFiles();
+            localJobs.remove(jobId);
+        }
+    }
+
+    private SysJob loadOwned(Long id, String operator) {
+        SysJob job = jobRepository.findById(id).orElse(null);
+        if (job == null || !Objects.equals(job.getCreateBy(), trimToNull(operator))) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "任务不存在");
+        }
+        return job;
+    }
+
+    private SysJobResponse toResponse(SysJob j) {
+        return new SysJobResponse(
+                j.getId(),
+                j.getJobType(),
+                j.getTitle(),
+                j.getStatus(),
+                j.getProgress(),
+                j.getTotal(),
+                j.getCancelRequested() != null && j.getCancelRequested() == 1,
+                j.getMessage(),
+                readJson(j.getResultJson()),
+                j.getFileName(),
+                j.getFileSize(),
+                j.getFilePath() != null,
+                j.getCreateBy(),
+                j.getCreateTime(),
+                j.getStartTime(),
+                j.getFinishTime(),
+                j.getElapsedMs());
+    }
+
+    private JsonNode readJson(String json) {
+        if (json == null) return null;
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static boolean isCancellation(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof JobCancelledException) return true;
+        }
+        return false;
+    }
+
+    private static Long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String truncate(String s, int max) {
+        if (s == null) return null;
+        return s.length() <= max ? s : s.substring(0, max);
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) return null;
+        String s = value.trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    /**
+     * 任务体，返回值序列化为 JSON 保存为任务结果（可为 null）。
+     */
+    @FunctionalInterface
+    public interface JobTask {
+        Object run(JobContext ctx) throws Exception;
+    }
+
+    /**
+     * 同步执行的任务体（{@link #runAndWait}），返回值直接交给调用方。
+     */
+    @FunctionalInterface
+    public interface ResultTask<T> {
+        T run(JobContext ctx) throws Exception;
+    }
+
+    /**
+     * 处理上传文件的任务体。
+     */
+    @FunctionalInterface
+    public interface UploadTask {
+        Object run(InputStream in, JobContext ctx) throws Exception;
+    }
+
+    public record JobFile(Path path, String fileName) {
+    }
+
+    /**
+     * 运行中的任务被取消时由 {@link JobContext#checkCancelled()} 抛出。
+     */
+    public static class JobCancelledException extends RuntimeException {
+        public JobCancelledException() {
+            super("job cancelled");
+        }
+    }
+
+    private static final class LocalJob {
+        private final JobContext ctx;
+        private volatile Future<?> future;
+
+        LocalJob(JobContext ctx) {
+            this.ctx = ctx;
+        }
+    }
+
+    /**
+     * 任务执行上下文：上报进度、检查取消、创建结果文件。只在任务所在的工作线程中使用。
+     */
+    public final class JobContext {
+        private final Long jobId;
+        private final List<Path> tempFiles = new ArrayList<>();
+        private volatile boolean cancelled;
+        private int progress;
+        private Integer total;
+        private long lastFlushNanos = System.nanoTime();
+        private Path resultFile;
+        private String resultName;
+
+        private JobContext(Long jobId) {
+            this.jobId = jobId;
+        }
+
+        public Long jobId() {
+            return jobId;
+        }
+
+        public void total(int total) {
+            this.total = total;
+            flushProgress();
+        }
+
+        /**
+         * 上报已处理数量（累计值）；最多每秒落库一次，同时读取其他节点发出的取消请求。
+         */
+        public void progress(int done) {
+            this.progress = done;
+            flushProgress();
+        }
+
+        /**
+         * 批次之间的检查点：上报进度并检查取消，可直接用作导入/导出的批次回调（{@code ctx::checkpoint}）。
+         */
+        public void checkpoint(long done) {
+            progress((int) Math.min(Integer.MAX_VALUE, done));
+            checkCancelled();
+        }
+
+        /**
+         * 已请求取消时抛出 {@link JobCancelledException}；任务应在两个批次之间调用。
+         */
+        public void checkCancelled() {
+            if (cancelled) throw new JobCancelledException();
+        }
+
+        /**
+         * 创建结果文件（一个任务只有一个），下载时使用 downloadName 作为文件名。
+         */
+        public OutputStream createResultFile(String downloadName) throws IOException {
+            Files.createDirectories(fileDir);
+            String ext = "";
+            int dot = downloadName.lastIndexOf('.');
+            if (dot >= 0) ext = downloadName.substring(dot).replaceAll("[^A-Za-z0-9.]", "");
+            resultFile = fileDir.resolve("job-" + jobId + "-" + UUID.randomUUID().toString().replace("-", "") + ext);
+            resultName = truncate(downloadName, 128);
+            return Files.newOutputStream(resultFile);
+        }
+
+        private void flushProgress() {
+            long now = System.nanoTime();
+            if (now - lastFlushNanos < PROGRESS_FLUSH_MILLIS * 1_000_000) return;
+            lastFlushNanos = now;
+            Integer requested = txTemplate.execute(s -> {
+                jobRepository.updateProgress(jobId, progress, total);
+                return jobRepository.cancelRequested(jobId);
+            });
+            if (requested != null && requested == 1) cancelled = true;
+        }
+
+        private void deleteResultFile() {
+            if (resultFile == null) return;
+            try {
+                Files.deleteIfExists(resultFile);
+            } catch (IOException e) {
+                log.warn("job result file delete failed id={} path={}", jobId, resultFile, e);
+            }
+            resultFile = null;
+            resultName = null;
+        }
+
+        private void deleteTempFiles() {
+            for (Path p : tempFiles) {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    log.warn("job temp file delete failed id={} path={}", jobId, p, e);
+                }
+            }
+            tempFiles.clear();
+        }
+    }
+}
@@ -1,33 +1,102 @@
 package com.ordererp.backend.system.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.ordererp.backend.system.dto.MenuMetaDto;
 import com.ordererp.backend.system.dto.MenuRouterDto;
 import com.ordererp.backend.system.entity.SysMenu;
 import com.ordererp.backend.system.repository.SysMenuRepository;
+import com.ordererp.backend.system.repository.SysUserRoleRepository;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+/**
+ * 前端路由菜单树。
+ *
+ * <p>前端每次加载页面都会请求路由树，而拥有相同角色集合的用户得到的树完全一样。这里按“角色集合指纹”
+ * （排序后的 roleId 列表）缓存构建好的树及其 ETag：</p>
+ * <ul>
+ *   <li>每次请求只剩一条按 userId 查 roleId 的主键查询；</li>
+ *   <li>ETag 为树 JSON 的摘要，与节点/重启无关，客户端可用 If-None-Match 重新验证拿到 304；</li>
+ *   <li>角色或角色-菜单绑定变化时 {@link #invalidateRouters()}（事务提交后会再失效一次）。</li>
+ * </ul>
+ *
+ * <p>缓存的树在多个请求间共享，调用方不得修改。</p>
+ */
 @Service
 public class SysMenuService {
     private final SysMenuRepository menuRepository;
+    private final SysUserRoleRepository userRoleRepository;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, RouterTree> routerCache;
 
-    public SysMenuService(SysMenuRepository menuRepository) {
+    public SysMenuService(SysMenuRepository menuRepository, SysUserRoleRepository userRoleRepository,
+            ObjectMapper objectMapper,
+            @Value("${app.cache.menu-router.max-size:1000}") long maxSize,
+            @Value("${app.cache.menu-router.ttl-seconds:3600}") long ttlSeconds) {
         this.menuRepository = menuRepository;
+        this.userRoleRepository = userRoleRepository;
+        this.objectMapper = objectMapper;
+        this.routerCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
     }
 
     public List<MenuRouterDto> getRoutersByUserId(Long userId) {
-        List<SysMenu> menus = menuRepository.findMenusByUserId(userId);
+        return getRouterTree(userId).routers();
+    }
+
+    /**
+     * 用户的路由树（含 ETag），按角色集合共享缓存。
+     */
+    public RouterTree getRouterTree(Long userId) {
+        List<Long> roleIds = userRoleRepository.findRoleIdsByUserId(userId).stream().distinct().toList();
+        if (roleIds.isEmpty()) {
+            return toRouterTree(List.of());
+        }
+        String fingerprint = roleIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        return routerCache.get(fingerprint, k -> toRouterTree(buildRouters(menuRepository.findMenusByRoleIds(roleIds))));
+    }
+
+    /**
+     * 角色/菜单绑定变化后调用：立即失效，并在事务提交后再失效一次。
+     */
+    public void invalidateRouters() {
+        routerCache.invalidateAll();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                routerCache.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * 菜单列表 -> 路由树（按钮类型 F 不输出；同级按 sort、id 排序）。纯函数，便于基准测试。
+     */
+    public static List<MenuRouterDto> buildRouters(List<SysMenu> menus) {
         Map<Long, List<SysMenu>> grouped = menus.stream()
                 .collect(Collectors.groupingBy(menu -> menu.getParentId() == null ? 0L : menu.getParentId()));
         return buildTree(0L, grouped);
     }
 
-    private List<MenuRouterDto> buildTree(Long parentId, Map<Long, List<SysMenu>> grouped) {
+    private static List<MenuRouterDto> buildTree(Long parentId, Map<Long, List<SysMenu>> grouped) {
         List<SysMenu> children = grouped.getOrDefault(parentId, List.of()).stream()
                 .filter(menu -> !"F".equalsIgnoreCase(menu.getMenuType()))
                 .sorted(Comparator.comparing(SysMenu::getSort, Comparator.nullsLast(Integer::compareTo))
@@ -50,7 +119,7 @@ public class SysMenuService {
         return results;
     }
 
-    private String resolveComponent(SysMenu menu) {
+    private static String resolveComponent(SysMenu menu) {
         if ("M".equalsIgnoreCase(menu.getMenuType())) {
             if (menu.getComponent() == null || menu.getComponent().isBlank()) {
                 return "RouteView";
@@ -58,4 +127,20 @@ public class SysMenuService {
         }
         return Objects.requireNonNullElse(menu.getComponent(), "views/Placeholder.vue");
     }
+
+    private RouterTree toRouterTree(List<MenuRouterDto> routers) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(routers);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return new RouterTree(List.copyOf(routers), "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"");
+        } catch (JsonProcessingException | NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("failed to compute menu router etag", ex);
+        }
+    }
+
+    /**
+     * 构建好的路由树及其 ETag（带引号的强校验值）。
+     */
+    public record RouterTree(List<MenuRouterDto> routers, String etag) {
+    }
 }
@@ -5,6 +5,7 @@ import com.ordererp.backend.system.dto.UserProfileResponse;
 import com.ordererp.backend.system.dto.UserProfileUpdateRequest;
 import com.ordererp.backend.system.entity.SysUser;
 import com.ordererp.backend.system.repository.SysUserRepository;
+import com.ordererp.backend.system.security.SysPrincipalCache;
 import java.util.Objects;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -16,10 +17,13 @@ import org.springframework.web.server.ResponseStatusException;
 public class SysUserService {
     private final SysUserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final SysPrincipalCache principalCache;
 
-    public SysUserService(SysUserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public SysUserService(SysUserRepository userRepository, PasswordEncoder passwordEncoder,
+            SysPrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
     }
 
     public UserProfileResponse getProfile(Long userId) {
@@ -47,7 +51,10 @@ public class SysUserService {
             user.setAvatar(trimToNull(request.avatar()));
         }
 
-        return toProfile(userRepository.save(user));
+        SysUser saved = userRepository.save(user);
+        // 缓存的登录用户包含昵称：资料变更后失效
+        principalCache.invalidateUser(userId);
+        return toProfile(saved);
     }
 
     @Transactional
@@ -69,6 +76,7 @@ public class SysUserService {
 
         user.setPassword(passwordEncoder.encode(request.newPassword()));
         userRepository.save(user);
+        principalCache.invalidateUser(userId);
     }
 
     private static UserProfileResponse toProfile(SysUser user) {
@@ -1,14 +1,13 @@
 package com.ordererp.backend.wms.controller;
 
-import com.alibaba.excel.EasyExcel;
+import com.ordererp.backend.common.dto.CursorPageResponse;
 import com.ordererp.backend.common.dto.PageResponse;
-import com.ordererp.backend.common.util.ExcelHttpUtil;
+import com.ordererp.backend.common.excel.ExcelStreamExporter;
 import com.ordererp.backend.wms.dto.WmsStockResponse;
 import com.ordererp.backend.wms.excel.WmsStockExcelRow;
 import com.ordererp.backend.wms.service.WmsStockService;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -22,9 +21,11 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/wms/stocks")
 public class WmsStockController {
     private final WmsStockService stockService;
+    private final ExcelStreamExporter excelExporter;
 
-    public WmsStockController(WmsStockService stockService) {
+    public WmsStockController(WmsStockService stockService, ExcelStreamExporter excelExporter) {
         this.stockService = stockService;
+        this.excelExporter = excelExporter;
     }
 
     @GetMapping
@@ -38,28 +39,27 @@ public class WmsStockController {
         return PageResponse.from(res);
     }
 
+    /**
+     * 游标分页：首页不传 afterId，之后传上一页的 nextCursor；默认不统计总数。
+     */
+    @GetMapping("/cursor")
+    @PreAuthorize("hasAuthority('wms:stock:view')")
+    public CursorPageResponse<WmsStockResponse> cursor(@RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long warehouseId) {
+        return stockService.seek(keyword, warehouseId, afterId, limit, includeTotal);
+    }
+
     @GetMapping("/export")
     @PreAuthorize("hasAuthority('wms:stock:export')")
     public void export(@RequestParam(required = false) String keyword,
             @RequestParam(required = false) Long warehouseId,
             HttpServletResponse response) throws IOException {
-        // 第三阶段工程化点：采用分页写出（流式）导出，避免一次性把大量数据加载到内存导致 OOM。
-        ExcelHttpUtil.prepareXlsxResponse(response, "wms-stocks.xlsx");
-
-        int page = 0;
-        int size = 2_000;
-
-        try (var writer = EasyExcel.write(response.getOutputStream(), WmsStockExcelRow.class).build()) {
-            var sheet = EasyExcel.writerSheet("Stocks").build();
-            while (true) {
-                Page<WmsStockResponse> res = stockService.page(keyword, warehouseId, PageRequest.of(page, size));
-                if (res.isEmpty()) break;
-
-                List<WmsStockExcelRow> rows = res.getContent().stream().map(stockService::toExcelRow).toList();
-                writer.write(rows, sheet);
-                if (!res.hasNext()) break;
-                page++;
-            }
-        }
+        // 按 id 游标分批写出：不做 offset 翻页与 count，内存只保留一批。
+        excelExporter.export(response, "wms-stocks.xlsx", "Stocks", WmsStockExcelRow.class,
+                (afterId, limit) -> stockService.exportBatch(keyword, warehouseId, afterId, limit),
+                WmsStockResponse::id, stockService::toExcelRow);
     }
 }
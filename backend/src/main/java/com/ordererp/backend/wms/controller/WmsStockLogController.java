@@ -1,21 +1,26 @@
 package com.ordererp.backend.wms.controller;
 
-import com.alibaba.excel.EasyExcel;
+import com.ordererp.backend.common.dto.CursorPageResponse;
 import com.ordererp.backend.common.dto.PageResponse;
-import com.ordererp.backend.common.util.ExcelHttpUtil;
+import com.ordererp.backend.common.excel.ExcelStreamExporter;
+import com.ordererp.backend.system.dto.SysJobResponse;
+import com.ordererp.backend.system.security.SysUserDetails;
+import com.ordererp.backend.system.service.SysJobService;
 import com.ordererp.backend.wms.dto.WmsStockLogResponse;
 import com.ordererp.backend.wms.excel.WmsStockLogExcelRow;
 import com.ordererp.backend.wms.service.WmsStockLogService;
 import jakarta.servlet.http.HttpServletResponse;
-import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.Map;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -24,9 +29,14 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/wms/stock-logs")
 public class WmsStockLogController {
     private final WmsStockLogService stockLogService;
+    private final ExcelStreamExporter excelExporter;
+    private final SysJobService jobService;
 
-    public WmsStockLogController(WmsStockLogService stockLogService) {
+    public WmsStockLogController(WmsStockLogService stockLogService, ExcelStreamExporter excelExporter,
+            SysJobService jobService) {
         this.stockLogService = stockLogService;
+        this.excelExporter = excelExporter;
+        this.jobService = jobService;
     }
 
     @GetMapping
@@ -43,6 +53,22 @@ public class WmsStockLogController {
         return PageResponse.from(res);
     }
 
+    /**
+     * 游标分页（无限滚动/接口拉取）：首页不传 afterId，之后传上一页的 nextCursor；默认不统计总数。
+     */
+    @GetMapping("/cursor")
+    @PreAuthorize("hasAuthority('wms:stocklog:view')")
+    public CursorPageResponse<WmsStockLogResponse> cursor(@RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long warehouseId,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
+        return stockLogService.seek(keyword, warehouseId, productId, startTime, endTime, afterId, limit, includeTotal);
+    }
+
     @GetMapping("/export")
     @PreAuthorize("hasAuthority('wms:stocklog:export')")
     public void export(@RequestParam(required = false) String keyword,
@@ -50,25 +76,37 @@ public class WmsStockLogController {
             @RequestParam(required = false) Long productId,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
-            HttpServletResponse response) throws IOException {
-        // 第三阶段工程化点：采用分页写出（流式）导出，避免一次性加载大数据量导致内存压力。
-        ExcelHttpUtil.prepareXlsxResponse(response, "wms-stock-logs.xlsx");
-
-        int page = 0;
-        int size = 2_000;
-
-        try (var writer = EasyExcel.write(response.getOutputStream(), WmsStockLogExcelRow.class).build()) {
-            var sheet = EasyExcel.writerSheet("StockLogs").build();
-            while (true) {
-                Page<WmsStockLogResponse> res = stockLogService.page(keyword, warehouseId, productId, startTime, endTime,
-                        PageRequest.of(page, size));
-                if (res.isEmpty()) break;
+            HttpServletResponse response, Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        // 同步导出同样在后台任务线程池中执行（直接写本次响应），受 app.job.workers 并发上限约束。
+        // 按 id 游标分批写出：流水表很大，offset 翻页越往后越慢，且每页都会多一次 count。
+        jobService.runAndWait("stock-log-export", "库存流水导出", user.getUsername(),
+                job -> excelExporter.export(response, "wms-stock-logs.xlsx", "StockLogs", WmsStockLogExcelRow.class,
+                        (afterId, limit) -> stockLogService.exportBatch(keyword, warehouseId, productId, startTime,
+                                endTime, afterId, limit),
+                        WmsStockLogResponse::id, WmsStockLogService::toExcelRow));
+    }
 
-                List<WmsStockLogExcelRow> rows = res.getContent().stream().map(WmsStockLogService::toExcelRow).toList();
-                writer.write(rows, sheet);
-                if (!res.hasNext()) break;
-                page++;
+    /**
+     * 后台导出：立即返回任务，完成后通过 /api/jobs/{id}/file 下载。
+     */
+    @PostMapping("/export-job")
+    @PreAuthorize("hasAuthority('wms:stocklog:export')")
+    public SysJobResponse exportJob(@RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long warehouseId,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            Authentication authentication) {
+        SysUserDetails user = (SysUserDetails) authentication.getPrincipal();
+        return jobService.submit("stock-log-export", "库存流水导出", user.getUsername(), job -> {
+            try (OutputStream out = job.createResultFile("wms-stock-logs.xlsx")) {
+                long rows = excelExporter.export(out, "StockLogs", WmsStockLogExcelRow.class,
+                        (afterId, limit) -> stockLogService.exportBatch(keyword, warehouseId, productId, startTime,
+                                endTime, afterId, limit),
+                        WmsStockLogResponse::id, WmsStockLogService::toExcelRow, job::checkpoint);
+                return Map.of("rows", rows);
             }
-        }
+        });
     }
 }
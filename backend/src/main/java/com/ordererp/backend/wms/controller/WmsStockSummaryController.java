@@ -0,0 +1,38 @@
+package com.ordererp.backend.wms.controller;
+
+import com.ordererp.backend.common.dto.CursorPageResponse;
+import com.ordererp.backend.wms.dto.WmsLowStockResponse;
+import com.ordererp.backend.wms.dto.WmsStockDashboardResponse;
+import com.ordererp.backend.wms.service.WmsStockSummaryService;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/wms/stock-summary")
+public class WmsStockSummaryController {
+    private final WmsStockSummaryService summaryService;
+
+    public WmsStockSummaryController(WmsStockSummaryService summaryService) {
+        this.summaryService = summaryService;
+    }
+
+    /**
+     * 低库存预警列表：首页不传 afterId，之后传上一页的 nextCursor。
+     */
+    @GetMapping("/low-stock")
+    @PreAuthorize("hasAuthority('wms:stock:view')")
+    public CursorPageResponse<WmsLowStockResponse> lowStock(@RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return summaryService.lowStock(afterId, limit, includeTotal);
+    }
+
+    @GetMapping("/dashboard")
+    @PreAuthorize("hasAuthority('wms:stock:view')")
+    public WmsStockDashboardResponse dashboard() {
+        return summaryService.dashboard();
+    }
+}
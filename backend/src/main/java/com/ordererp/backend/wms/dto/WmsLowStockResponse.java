@@ -0,0 +1,16 @@
+package com.ordererp.backend.wms.dto;
+
+import java.math.BigDecimal;
+
+public record WmsLowStockResponse(
+        Long productId,
+        String productCode,
+        String productName,
+        String unit,
+        Integer lowStock,
+        BigDecimal stockQty,
+        BigDecimal lockedQty,
+        BigDecimal qcQty,
+        BigDecimal availableQty,
+        BigDecimal shortageQty) {
+}
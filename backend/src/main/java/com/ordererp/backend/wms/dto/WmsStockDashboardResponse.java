@@ -0,0 +1,21 @@
+package com.ordererp.backend.wms.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public record WmsStockDashboardResponse(
+        BigDecimal stockQty,
+        BigDecimal lockedQty,
+        BigDecimal qcQty,
+        BigDecimal availableQty,
+        long lowStockCount,
+        List<WarehouseTotal> warehouses) {
+    public record WarehouseTotal(
+            Long warehouseId,
+            String warehouseName,
+            BigDecimal stockQty,
+            BigDecimal lockedQty,
+            BigDecimal qcQty,
+            BigDecimal availableQty) {
+    }
+}
@@ -0,0 +1,10 @@
+package com.ordererp.backend.wms.dto;
+
+import java.math.BigDecimal;
+
+public record WmsStockShortageLine(
+        Long warehouseId,
+        Long productId,
+        BigDecimal requiredQty,
+        BigDecimal availableQty) {
+}
@@ -6,13 +6,17 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
 import java.math.BigDecimal;
 
 @Entity
 @Table(name = "wms_io_bill_detail")
 public class WmsIoBillDetail {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // 明细行量大：用 pooled table generator 预分配 id，使 insert 可以走 JDBC batch（见 V41）
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "wms_io_bill_detail")
+    @TableGenerator(name = "wms_io_bill_detail", table = "sys_id_generator", pkColumnName = "gen_name",
+            valueColumnName = "next_val", pkColumnValue = "wms_io_bill_detail", allocationSize = 50)
     private Long id;
 
     @Column(name = "bill_id", nullable = false)
@@ -0,0 +1,97 @@
+package com.ordererp.backend.wms.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 按商品汇总的库存（跨仓库）；数量由 WmsStockSummaryUpdater 定时合并槽位差额维护
+ * （尚未合并的差额在 wms_stock_product_summary_slot），这里只读。
+ */
+@Entity
+@Table(name = "wms_stock_product_summary")
+public class WmsStockProductSummary {
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "stock_qty", nullable = false)
+    private BigDecimal stockQty;
+
+    @Column(name = "locked_qty", nullable = false)
+    private BigDecimal lockedQty;
+
+    @Column(name = "qc_qty", nullable = false)
+    private BigDecimal qcQty;
+
+    @Column(name = "available_qty", insertable = false, updatable = false)
+    private BigDecimal availableQty;
+
+    @Column(name = "low_stock")
+    private Integer lowStock;
+
+    @Column(name = "below_low", insertable = false, updatable = false)
+    private Integer belowLow;
+
+    @Column(name = "update_time")
+    private LocalDateTime updateTime;
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public BigDecimal getStockQty() {
+        return stockQty;
+    }
+
+    public void setStockQty(BigDecimal stockQty) {
+        this.stockQty = stockQty;
+    }
+
+    public BigDecimal getLockedQty() {
+        return lockedQty;
+    }
+
+    public void setLockedQty(BigDecimal lockedQty) {
+        this.lockedQty = lockedQty;
+    }
+
+    public BigDecimal getQcQty() {
+        return qcQty;
+    }
+
+    public void setQcQty(BigDecimal qcQty) {
+        this.qcQty = qcQty;
+    }
+
+    public BigDecimal getAvailableQty() {
+        return availableQty;
+    }
+
+    public Integer getLowStock() {
+        return lowStock;
+    }
+
+    public void setLowStock(Integer lowStock) {
+        this.lowStock = lowStock;
+    }
+
+    public Integer getBelowLow() {
+        return belowLow;
+    }
+
+    public LocalDateTime getUpdateTime() {
+        return updateTime;
+    }
+
+    public void setUpdateTime(LocalDateTime updateTime) {
+        this.updateTime = updateTime;
+    }
+}
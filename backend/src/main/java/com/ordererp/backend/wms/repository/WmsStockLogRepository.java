@@ -58,6 +58,58 @@ public interface WmsStockLogRepository extends JpaRepository<WmsStockLog, Long>
             @Param("endTime") LocalDateTime endTime,
             Pageable pageable);
 
+    /**
+     * 游标分页（keyset）：按 id 倒序取 afterId 之后的 limit 行；不做 offset 扫描，也不执行 count。
+     */
+    @Query(value = """
+            select
+              l.id as id,
+              l.warehouse_id as warehouseId,
+              w.warehouse_name as warehouseName,
+              l.product_id as productId,
+              p.product_code as productCode,
+              p.product_name as productName,
+              l.biz_type as bizType,
+              l.biz_no as bizNo,
+              l.change_qty as changeQty,
+              l.after_stock_qty as afterStockQty,
+              l.create_time as createTime
+            from wms_stock_log l
+            left join base_warehouse w on w.id = l.warehouse_id
+            left join base_product p on p.id = l.product_id
+            where (:warehouseId is null or l.warehouse_id = :warehouseId)
+              and (:productId is null or l.product_id = :productId)
+              and (:startTime is null or l.create_time >= :startTime)
+              and (:endTime is null or l.create_time <= :endTime)
+              and (:kw is null or :kw = ''
+                   or lower(l.biz_no) like lower(concat('%', :kw, '%'))
+                   or lower(l.biz_type) like lower(concat('%', :kw, '%')))
+              and (:afterId is null or l.id < :afterId)
+            order by l.id desc
+            limit :limit
+            """, nativeQuery = true)
+    List<StockLogRow> seekRows(@Param("kw") String keyword, @Param("warehouseId") Long warehouseId,
+            @Param("productId") Long productId,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime,
+            @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Query(value = """
+            select count(*)
+            from wms_stock_log l
+            where (:warehouseId is null or l.warehouse_id = :warehouseId)
+              and (:productId is null or l.product_id = :productId)
+              and (:startTime is null or l.create_time >= :startTime)
+              and (:endTime is null or l.create_time <= :endTime)
+              and (:kw is null or :kw = ''
+                   or lower(l.biz_no) like lower(concat('%', :kw, '%'))
+                   or lower(l.biz_type) like lower(concat('%', :kw, '%')))
+            """, nativeQuery = true)
+    long countRows(@Param("kw") String keyword, @Param("warehouseId") Long warehouseId,
+            @Param("productId") Long productId,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
+
     interface StockLogRow {
         Long getId();
 
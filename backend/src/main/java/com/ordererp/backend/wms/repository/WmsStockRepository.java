@@ -3,6 +3,8 @@ package com.ordererp.backend.wms.repository;
 import com.ordererp.backend.wms.entity.WmsStock;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -13,6 +15,21 @@ import org.springframework.data.repository.query.Param;
 public interface WmsStockRepository extends JpaRepository<WmsStock, Long> {
     Optional<WmsStock> findFirstByWarehouseIdAndProductId(Long warehouseId, Long productId);
 
+    /**
+     * 批量读取同一仓库下多个商品的库存行（单据预检查用，避免逐行查询）。
+     */
+    List<WmsStock> findByWarehouseIdAndProductIdIn(Long warehouseId, Collection<Long> productIds);
+
+    /**
+     * 读取库存行的当前数量快照（native 投影，不经过持久化上下文，始终读到本事务内最新值）。
+     */
+    @Query(value = """
+            select s.id as id, s.stock_qty as stockQty, s.locked_qty as lockedQty
+            from wms_stock s
+            where s.warehouse_id = :warehouseId and s.product_id = :productId
+            """, nativeQuery = true)
+    StockQtyRow getQtyRow(@Param("warehouseId") Long warehouseId, @Param("productId") Long productId);
+
     @Query(value = """
             select
               s.id as id,
@@ -54,6 +71,54 @@ public interface WmsStockRepository extends JpaRepository<WmsStock, Long> {
             nativeQuery = true)
     Page<StockRow> pageRows(@Param("kw") String keyword, @Param("warehouseId") Long warehouseId, Pageable pageable);
 
+    /**
+     * 游标分页（keyset）：按 id 倒序取 afterId 之后的 limit 行；不做 offset 扫描，也不执行 count。
+     */
+    @Query(value = """
+            select
+              s.id as id,
+              s.warehouse_id as warehouseId,
+              w.warehouse_name as warehouseName,
+              s.product_id as productId,
+              p.product_code as productCode,
+              p.product_name as productName,
+              p.unit as unit,
+              s.stock_qty as stockQty,
+              s.locked_qty as lockedQty,
+              q.qc_qty as qcQty,
+              s.update_time as updateTime
+            from wms_stock s
+            left join wms_stock_qc q on q.warehouse_id = s.warehouse_id and q.product_id = s.product_id
+            left join base_warehouse w on w.id = s.warehouse_id
+            left join base_product p on p.id = s.product_id
+            where (:warehouseId is null or s.warehouse_id = :warehouseId)
+              and (:kw is null or :kw = ''
+                   or lower(p.product_code) like lower(concat('%', :kw, '%'))
+                   or lower(p.product_name) like lower(concat('%', :kw, '%'))
+                   or lower(w.warehouse_code) like lower(concat('%', :kw, '%'))
+                   or lower(w.warehouse_name) like lower(concat('%', :kw, '%')))
+              and (:afterId is null or s.id < :afterId)
+            order by s.id desc
+            limit :limit
+            """, nativeQuery = true)
+    List<StockRow> seekRows(@Param("kw") String keyword, @Param("warehouseId") Long warehouseId,
+            @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Query(value = """
+            select count(*)
+            from wms_stock s
+            left join wms_stock_qc q on q.warehouse_id = s.warehouse_id and q.product_id = s.product_id
+            left join base_warehouse w on w.id = s.warehouse_id
+            left join base_product p on p.id = s.product_id
+            where (:warehouseId is null or s.warehouse_id = :warehouseId)
+              and (:kw is null or :kw = ''
+                   or lower(p.product_code) like lower(concat('%', :kw, '%'))
+                   or lower(p.product_name) like lower(concat('%', :kw, '%'))
+                   or lower(w.warehouse_code) like lower(concat('%', :kw, '%'))
+                   or lower(w.warehouse_name) like lower(concat('%', :kw, '%')))
+            """, nativeQuery = true)
+    long countRows(@Param("kw") String keyword, @Param("warehouseId") Long warehouseId);
+
     interface StockRow {
         Long getId();
 
@@ -77,4 +142,12 @@ public interface WmsStockRepository extends JpaRepository<WmsStock, Long> {
 
         LocalDateTime getUpdateTime();
     }
+
+    interface StockQtyRow {
+        Long getId();
+
+        BigDecimal getStockQty();
+
+        BigDecimal getLockedQty();
+    }
 }
@@ -0,0 +1,116 @@
+package com.ordererp.backend.wms.repository;
+
+import com.ordererp.backend.wms.entity.WmsStockProductSummary;
+import java.math.BigDecimal;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface WmsStockSummaryRepository extends JpaRepository<WmsStockProductSummary, Long> {
+    /**
+     * 低库存商品（可用量低于阈值），按 product_id 倒序游标读取。
+     *
+     * <p>候选商品 = below_low 索引命中的商品 ∪ 槽位表中有待合并差额的商品（只有最近变动过的商品），
+     * 数量按商品汇总行 + 待合并差额计算，不扫描整张汇总表。</p>
+     */
+    @Query(value = """
+            select
+              s.product_id as productId,
+              p.product_code as productCode,
+              p.product_name as productName,
+              p.unit as unit,
+              s.low_stock as lowStock,
+              s.stock_qty + coalesce(d.stock_qty, 0) as stockQty,
+              s.locked_qty + coalesce(d.locked_qty, 0) as lockedQty,
+              s.qc_qty + coalesce(d.qc_qty, 0) as qcQty,
+              s.available_qty + coalesce(d.stock_qty - d.locked_qty, 0) as availableQty
+            from (
+              select product_id from wms_stock_product_summary
+              where below_low = 1 and (:afterId is null or product_id < :afterId)
+              union
+              select product_id from wms_stock_product_summary_slot
+              where (:afterId is null or product_id < :afterId)
+            ) c
+            join wms_stock_product_summary s on s.product_id = c.product_id
+            join base_product p on p.id = s.product_id
+            left join (
+              select product_id, sum(stock_qty) as stock_qty, sum(locked_qty) as locked_qty, sum(qc_qty) as qc_qty
+              from wms_stock_product_summary_slot
+              group by product_id
+            ) d on d.product_id = s.product_id
+            where s.low_stock > 0
+              and s.available_qty + coalesce(d.stock_qty - d.locked_qty, 0) < s.low_stock
+              and (p.deleted is null or p.deleted = 0)
+            order by s.product_id desc
+            limit :limit
+            """, nativeQuery = true)
+    List<LowStockRow> seekLowStock(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Query(value = """
+            select count(*)
+            from (
+              select product_id from wms_stock_product_summary where below_low = 1
+              union
+              select product_id from wms_stock_product_summary_slot
+            ) c
+            join wms_stock_product_summary s on s.product_id = c.product_id
+            left join (
+              select product_id, sum(stock_qty - locked_qty) as available_qty
+              from wms_stock_product_summary_slot
+              group by product_id
+            ) d on d.product_id = s.product_id
+            where s.low_stock > 0
+              and s.available_qty + coalesce(d.available_qty, 0) < s.low_stock
+            """, nativeQuery = true)
+    long countLowStock();
+
+    @Query(value = """
+            select
+              ws.warehouse_id as warehouseId,
+              w.warehouse_name as warehouseName,
+              sum(ws.stock_qty) as stockQty,
+              sum(ws.locked_qty) as lockedQty,
+              sum(ws.qc_qty) as qcQty,
+              sum(ws.available_qty) as availableQty
+            from wms_stock_warehouse_summary ws
+            left join base_warehouse w on w.id = ws.warehouse_id
+            group by ws.warehouse_id, w.warehouse_name
+            order by ws.warehouse_id
+            """, nativeQuery = true)
+    List<WarehouseTotalRow> listWarehouseTotals();
+
+    interface LowStockRow {
+        Long getProductId();
+
+        String getProductCode();
+
+        String getProductName();
+
+        String getUnit();
+
+        Integer getLowStock();
+
+        BigDecimal getStockQty();
+
+        BigDecimal getLockedQty();
+
+        BigDecimal getQcQty();
+
+        BigDecimal getAvailableQty();
+    }
+
+    interface WarehouseTotalRow {
+        Long getWarehouseId();
+
+        String getWarehouseName();
+
+        BigDecimal getStockQty();
+
+        BigDecimal getLockedQty();
+
+        BigDecimal getQcQty();
+
+        BigDecimal getAvailableQty();
+    }
+}
@@ -1,7 +1,7 @@
 package com.ordererp.backend.wms.service;
 
-import com.ordererp.backend.base.repository.BaseProductRepository;
-import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.base.service.BaseMasterDataCache;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
 import com.ordererp.backend.wms.dto.WmsCheckBillCreateRequest;
 import com.ordererp.backend.wms.dto.WmsCheckBillDetailResponse;
 import com.ordererp.backend.wms.dto.WmsCheckBillItemResponse;
@@ -18,21 +18,19 @@ import com.ordererp.backend.wms.repository.WmsCheckBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsCheckBillRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
 import com.ordererp.backend.wms.repository.WmsStockRepository;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
@@ -49,26 +47,29 @@ public class WmsCheckBillService {
     private final WmsIoBillRepository ioBillRepository;
     private final WmsIoBillDetailRepository ioBillDetailRepository;
     private final WmsStockRepository stockRepository;
-    private final WmsStockLogRepository stockLogRepository;
-    private final BaseWarehouseRepository warehouseRepository;
-    private final BaseProductRepository productRepository;
+    private final WmsStockLogAppender stockLogAppender;
+    private final BaseMasterDataCache masterDataCache;
+    private final WmsStockLedger stockLedger;
+    private final DocNumberAllocator docNumbers;
 
     public WmsCheckBillService(WmsCheckBillRepository checkBillRepository,
             WmsCheckBillDetailRepository checkBillDetailRepository,
             WmsIoBillRepository ioBillRepository,
             WmsIoBillDetailRepository ioBillDetailRepository,
             WmsStockRepository stockRepository,
-            WmsStockLogRepository stockLogRepository,
-            BaseWarehouseRepository warehouseRepository,
-            BaseProductRepository productRepository) {
+            WmsStockLogAppender stockLogAppender,
+            BaseMasterDataCache masterDataCache,
+            WmsStockLedger stockLedger,
+            DocNumberAllocator docNumbers) {
         this.checkBillRepository = checkBillRepository;
         this.checkBillDetailRepository = checkBillDetailRepository;
         this.ioBillRepository = ioBillRepository;
         this.ioBillDetailRepository = ioBillDetailRepository;
         this.stockRepository = stockRepository;
-        this.stockLogRepository = stockLogRepository;
-        this.warehouseRepository = warehouseRepository;
-        this.productRepository = productRepository;
+        this.stockLogAppender = stockLogAppender;
+        this.masterDataCache = masterDataCache;
+        this.stockLedger = stockLedger;
+        this.docNumbers = docNumbers;
     }
 
     public Page<WmsCheckBillResponse> page(String keyword, Pageable pageable) {
@@ -131,17 +132,19 @@ public class WmsCheckBillService {
         }
         validateLines(request.lines());
 
-        var wh = warehouseRepository.findByIdAndDeleted(request.warehouseId(), 0)
+        var wh = masterDataCache.getWarehouse(request.warehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse not found"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse disabled");
         }
 
         // 先校验商品存在且启用，再落库（避免产生“部分有效、部分无效”的盘点单）。
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                request.lines().stream().filter(Objects::nonNull).map(WmsCheckBillLineRequest::productId).toList());
         for (WmsCheckBillLineRequest line : request.lines()) {
-            var p = productRepository.findByIdAndDeleted(line.productId(), 0)
+            var p = Optional.ofNullable(products.get(line.productId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "product not found: " + line.productId()));
-            if (p.getStatus() != null && p.getStatus() != 1) {
+            if (!p.enabled()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product disabled: " + line.productId());
             }
         }
@@ -208,9 +211,9 @@ public class WmsCheckBillService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid check bill status");
         }
 
-        var wh = warehouseRepository.findByIdAndDeleted(bill.getWarehouseId(), 0)
+        var wh = masterDataCache.getWarehouse(bill.getWarehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse not found"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse disabled");
         }
 
@@ -221,13 +224,15 @@ public class WmsCheckBillService {
 
         // 在做任何库存变更前，先校验商品存在且启用。
         Set<Long> seen = new HashSet<>();
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                details.stream().map(WmsCheckBillDetail::getProductId).toList());
         for (WmsCheckBillDetail d : details) {
             if (!seen.add(d.getProductId())) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "duplicate productId on bill: " + d.getProductId());
             }
-            var p = productRepository.findByIdAndDeleted(d.getProductId(), 0)
+            var p = Optional.ofNullable(products.get(d.getProductId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "product not found: " + d.getProductId()));
-            if (p.getStatus() != null && p.getStatus() != 1) {
+            if (!p.enabled()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product disabled: " + d.getProductId());
             }
             if (d.getCountedQty() == null || d.getCountedQty().compareTo(BigDecimal.ZERO) < 0) {
@@ -310,16 +315,16 @@ public class WmsCheckBillService {
                 d.setRealQty(qty);
                 ioBillDetailRepository.save(d);
 
-                WmsStock stock = upsertIncreaseStockWithRetry(bill.getWarehouseId(), x.detail.getProductId(), qty);
+                WmsStockLedger.StockQty stock = stockLedger.increase(bill.getWarehouseId(), x.detail.getProductId(), qty);
                 WmsStockLog log = new WmsStockLog();
                 log.setWarehouseId(bill.getWarehouseId());
                 log.setProductId(x.detail.getProductId());
                 log.setBizType("CHECK_ADJUST_IN");
                 log.setBizNo(inBill.getBillNo());
                 log.setChangeQty(qty);
-                log.setAfterStockQty(safeQty(stock.getStockQty()));
+                log.setAfterStockQty(stock.stockQty());
                 log.setCreateTime(LocalDateTime.now());
-                stockLogRepository.save(log);
+                stockLogAppender.append(log);
             } else {
                 BigDecimal qty = x.diff.abs();
 
@@ -330,18 +335,19 @@ public class WmsCheckBillService {
                 d.setRealQty(qty);
                 ioBillDetailRepository.save(d);
 
-                WmsStock stock = deductStockWithRetry(bill.getWarehouseId(), x.detail.getProductId(), qty);
+                WmsStockLedger.StockQty stock = stockLedger.deduct(bill.getWarehouseId(), x.detail.getProductId(), qty);
                 WmsStockLog log = new WmsStockLog();
                 log.setWarehouseId(bill.getWarehouseId());
                 log.setProductId(x.detail.getProductId());
                 log.setBizType("CHECK_ADJUST_OUT");
                 log.setBizNo(outBill.getBillNo());
                 log.setChangeQty(qty.negate());
-                log.setAfterStockQty(safeQty(stock.getStockQty()));
+                log.setAfterStockQty(stock.stockQty());
                 log.setCreateTime(LocalDateTime.now());
-                stockLogRepository.save(log);
+                stockLogAppender.append(log);
             }
         }
+        stockLogAppender.flush();
 
         bill.setStatus(STATUS_COMPLETED);
         bill.setExecuteTime(LocalDateTime.now());
@@ -356,80 +362,6 @@ public class WmsCheckBillService {
                 outBill != null ? outBill.getBillNo() : null);
     }
 
-    private WmsStock upsertIncreaseStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return upsertIncreaseStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock upsertIncreaseStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        LocalDateTime now = LocalDateTime.now();
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (stock == null) {
-            WmsStock created = new WmsStock();
-            created.setWarehouseId(warehouseId);
-            created.setProductId(productId);
-            created.setStockQty(qty);
-            created.setLockedQty(BigDecimal.ZERO);
-            created.setVersion(0);
-            created.setUpdateTime(now);
-            validateStockInvariant(created.getStockQty(), created.getLockedQty());
-            try {
-                return stockRepository.saveAndFlush(created);
-            } catch (DataIntegrityViolationException e) {
-                stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                        .orElseThrow(() -> e);
-            }
-        }
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        stock.setStockQty(stockQty.add(qty));
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(now);
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
-    private WmsStock deductStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return deductStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock deductStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                        "stock not found (warehouseId=" + warehouseId + ", productId=" + productId + ")"));
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        BigDecimal available = stockQty.subtract(lockedQty);
-        if (available.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "insufficient stock (available=" + available + ", required=" + qty + ")");
-        }
-        stock.setStockQty(stockQty.subtract(qty));
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(LocalDateTime.now());
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
     private static void validateLines(List<WmsCheckBillLineRequest> lines) {
         Set<Long> seen = new HashSet<>();
         for (WmsCheckBillLineRequest line : lines) {
@@ -469,10 +401,8 @@ public class WmsCheckBillService {
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateBillNo(String prefix) {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return prefix + ts + "-" + rand;
+    private String generateBillNo(String prefix) {
+        return docNumbers.next(prefix);
     }
 
     private record DiffLine(WmsCheckBillDetail detail, BigDecimal bookQty, BigDecimal diff) {
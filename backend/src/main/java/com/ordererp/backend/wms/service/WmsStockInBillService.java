@@ -1,7 +1,7 @@
 package com.ordererp.backend.wms.service;
 
-import com.ordererp.backend.base.repository.BaseProductRepository;
-import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.base.service.BaseMasterDataCache;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
 import com.ordererp.backend.wms.dto.StockInBillCreateRequest;
 import com.ordererp.backend.wms.dto.StockInBillDetailResponse;
 import com.ordererp.backend.wms.dto.StockInBillItemResponse;
@@ -16,17 +16,17 @@ import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.entity.WmsStockLog;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
 import com.ordererp.backend.wms.repository.WmsStockRepository;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -45,19 +45,23 @@ public class WmsStockInBillService {
     private final WmsIoBillRepository billRepository;
     private final WmsIoBillDetailRepository billDetailRepository;
     private final WmsStockRepository stockRepository;
-    private final WmsStockLogRepository stockLogRepository;
-    private final BaseWarehouseRepository warehouseRepository;
-    private final BaseProductRepository productRepository;
+    private final WmsStockLogAppender stockLogAppender;
+    private final BaseMasterDataCache masterDataCache;
+    private final WmsStockLedger stockLedger;
+    private final DocNumberAllocator docNumbers;
 
     public WmsStockInBillService(WmsIoBillRepository billRepository, WmsIoBillDetailRepository billDetailRepository,
-            WmsStockRepository stockRepository, WmsStockLogRepository stockLogRepository,
-            BaseWarehouseRepository warehouseRepository, BaseProductRepository productRepository) {
+            WmsStockRepository stockRepository, WmsStockLogAppender stockLogAppender,
+            BaseMasterDataCache masterDataCache,
+            WmsStockLedger stockLedger,
+            DocNumberAllocator docNumbers) {
         this.billRepository = billRepository;
         this.billDetailRepository = billDetailRepository;
         this.stockRepository = stockRepository;
-        this.stockLogRepository = stockLogRepository;
-        this.warehouseRepository = warehouseRepository;
-        this.productRepository = productRepository;
+        this.stockLogAppender = stockLogAppender;
+        this.masterDataCache = masterDataCache;
+        this.stockLedger = stockLedger;
+        this.docNumbers = docNumbers;
     }
 
     public Page<StockInBillResponse> page(String keyword, Pageable pageable) {
@@ -112,9 +116,9 @@ public class WmsStockInBillService {
             return new WmsBillPrecheckResponse(true, "already completed", List.of());
         }
 
-        var wh = warehouseRepository.findByIdAndDeleted(bill.getWarehouseId(), 0)
+        var wh = masterDataCache.getWarehouse(bill.getWarehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse not found"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             return new WmsBillPrecheckResponse(false, "warehouse disabled", List.of());
         }
 
@@ -127,7 +131,13 @@ public class WmsStockInBillService {
         boolean ok = true;
         String message = "ok";
         Set<Long> seen = new HashSet<>();
-        var itemRows = billDetailRepository.listBillItemRows(bill.getId());
+        // 明细展示行按 id 建索引，避免每条明细都线性扫描一遍（O(n²)）。
+        Map<Long, WmsIoBillDetailRepository.BillItemRow> itemById = new HashMap<>();
+        for (var r : billDetailRepository.listBillItemRows(bill.getId())) {
+            itemById.put(r.getId(), r);
+        }
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                details.stream().map(WmsIoBillDetail::getProductId).toList());
         for (WmsIoBillDetail d : details) {
             boolean lineOk = true;
             String lineMsg = "ok";
@@ -145,24 +155,24 @@ public class WmsStockInBillService {
                 lineMsg = "qty must be positive";
             }
 
-            var item = itemRows.stream().filter(r -> Objects.equals(r.getId(), d.getId())).findFirst().orElse(null);
+            var item = itemById.get(d.getId());
 
             String productCode = item != null ? item.getProductCode() : null;
             String productName = item != null ? item.getProductName() : null;
             String unit = item != null ? item.getUnit() : null;
 
             if (d.getProductId() != null) {
-                var p = productRepository.findByIdAndDeleted(d.getProductId(), 0).orElse(null);
+                var p = products.get(d.getProductId());
                 if (p == null) {
                     lineOk = false;
                     lineMsg = "product not found";
-                } else if (p.getStatus() != null && p.getStatus() != 1) {
+                } else if (!p.enabled()) {
                     lineOk = false;
                     lineMsg = "product disabled";
                 } else {
-                    if (productCode == null) productCode = p.getProductCode();
-                    if (productName == null) productName = p.getProductName();
-                    if (unit == null) unit = p.getUnit();
+                    if (productCode == null) productCode = p.productCode();
+                    if (productName == null) productName = p.productName();
+                    if (unit == null) unit = p.unit();
                 }
             }
 
@@ -260,26 +270,27 @@ public class WmsStockInBillService {
             rd.setRealQty(qty);
             billDetailRepository.save(rd);
 
-            WmsStock stock = deductStockWithRetry(bill.getWarehouseId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.deduct(bill.getWarehouseId(), d.getProductId(), qty);
             WmsStockLog log = new WmsStockLog();
             log.setWarehouseId(bill.getWarehouseId());
             log.setProductId(d.getProductId());
             log.setBizType("REVERSAL_IN");
             log.setBizNo(reversal.getBillNo());
             log.setChangeQty(qty.negate());
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(LocalDateTime.now());
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
         }
+        stockLogAppender.flush();
 
         return new WmsReverseResponse(reversal.getId(), reversal.getBillNo());
     }
 
     @Transactional
     public StockInBillResponse create(StockInBillCreateRequest request, String createdBy) {
-        var wh = warehouseRepository.findByIdAndDeleted(request.warehouseId(), 0)
+        var wh = masterDataCache.getWarehouse(request.warehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse not found"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse disabled");
         }
 
@@ -295,11 +306,13 @@ public class WmsStockInBillService {
         bill.setCreateTime(LocalDateTime.now());
         bill = billRepository.save(bill);
 
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                request.lines().stream().filter(Objects::nonNull).map(StockInBillLineRequest::productId).toList());
         for (StockInBillLineRequest line : request.lines()) {
-            var p = productRepository.findByIdAndDeleted(line.productId(), 0)
+            var p = Optional.ofNullable(products.get(line.productId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
                             "product not found: " + line.productId()));
-            if (p.getStatus() != null && p.getStatus() != 1) {
+            if (!p.enabled()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product disabled: " + line.productId());
             }
             WmsIoBillDetail d = new WmsIoBillDetail();
@@ -354,9 +367,9 @@ public class WmsStockInBillService {
                     row.getCreateTime());
         }
 
-        var wh = warehouseRepository.findByIdAndDeleted(bill.getWarehouseId(), 0)
+        var wh = masterDataCache.getWarehouse(bill.getWarehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse not found"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse disabled");
         }
 
@@ -367,6 +380,8 @@ public class WmsStockInBillService {
 
         // 先校验所有明细，再做任何库存变更（避免“部分成功、部分失败”）。
         Set<Long> seen = new HashSet<>();
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                details.stream().map(WmsIoBillDetail::getProductId).toList());
         for (WmsIoBillDetail d : details) {
             if (!seen.add(d.getProductId())) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "duplicate productId on bill: " + d.getProductId());
@@ -378,17 +393,17 @@ public class WmsStockInBillService {
             if (qty.compareTo(BigDecimal.ZERO) <= 0) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid qty on bill detail: " + d.getId());
             }
-            var p = productRepository.findByIdAndDeleted(d.getProductId(), 0)
+            var p = Optional.ofNullable(products.get(d.getProductId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
                             "product not found: " + d.getProductId()));
-            if (p.getStatus() != null && p.getStatus() != 1) {
+            if (!p.enabled()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product disabled: " + d.getProductId());
             }
         }
 
         for (WmsIoBillDetail d : details) {
             BigDecimal qty = safeQty(d.getQty());
-            WmsStock stock = upsertIncreaseStockWithRetry(bill.getWarehouseId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.increase(bill.getWarehouseId(), d.getProductId(), qty);
 
             d.setRealQty(qty);
             billDetailRepository.save(d);
@@ -399,10 +414,11 @@ public class WmsStockInBillService {
             log.setBizType("STOCK_IN");
             log.setBizNo(bill.getBillNo());
             log.setChangeQty(qty);
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(LocalDateTime.now());
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
         }
+        stockLogAppender.flush();
 
         bill.setStatus(STATUS_COMPLETED);
         billRepository.save(bill);
@@ -420,83 +436,6 @@ public class WmsStockInBillService {
                 row.getCreateTime());
     }
 
-    private WmsStock upsertIncreaseStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return upsertIncreaseStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock upsertIncreaseStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        LocalDateTime now = LocalDateTime.now();
-
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (stock == null) {
-            WmsStock created = new WmsStock();
-            created.setWarehouseId(warehouseId);
-            created.setProductId(productId);
-            created.setStockQty(qty);
-            created.setLockedQty(BigDecimal.ZERO);
-            created.setVersion(0);
-            created.setUpdateTime(now);
-            validateStockInvariant(created.getStockQty(), created.getLockedQty());
-            try {
-                return stockRepository.saveAndFlush(created);
-            } catch (DataIntegrityViolationException e) {
-                stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                        .orElseThrow(() -> e);
-            }
-        }
-
-        BigDecimal curStockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(curStockQty, lockedQty);
-
-        BigDecimal nextStockQty = curStockQty.add(qty);
-        stock.setStockQty(nextStockQty);
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(now);
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
-    private WmsStock deductStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return deductStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock deductStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "stock not found"));
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        BigDecimal available = stockQty.subtract(lockedQty);
-        if (available.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "insufficient stock (available=" + available + ", required=" + qty + ")");
-        }
-        BigDecimal nextStockQty = stockQty.subtract(qty);
-        stock.setStockQty(nextStockQty);
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(LocalDateTime.now());
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
     private static void validateLines(List<StockInBillLineRequest> lines) {
         Set<Long> seen = new HashSet<>();
         for (StockInBillLineRequest line : lines) {
@@ -516,33 +455,17 @@ public class WmsStockInBillService {
         return v == null ? BigDecimal.ZERO : v;
     }
 
-    private static void validateStockInvariant(BigDecimal stockQty, BigDecimal lockedQty) {
-        BigDecimal s = safeQty(stockQty);
-        BigDecimal l = safeQty(lockedQty);
-        if (s.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: stock_qty < 0");
-        }
-        if (l.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < 0");
-        }
-        if (l.compareTo(s) > 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty > stock_qty");
-        }
-    }
-
     private static String trimToNull(String value) {
         if (value == null) return null;
         String s = value.trim();
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateBillNo() {
+    private String generateBillNo() {
         return generateBillNo("SI");
     }
 
-    private static String generateBillNo(String prefix) {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return prefix + ts + "-" + rand;
+    private String generateBillNo(String prefix) {
+        return docNumbers.next(prefix);
     }
 }
@@ -0,0 +1,489 @@
+package com.ordererp.backend.wms.service;
+
+import com.ordererp.backend.wms.dto.WmsStockShortageLine;
+import com.ordererp.backend.wms.entity.WmsStock;
+import com.ordererp.backend.wms.entity.WmsStockQc;
+import com.ordererp.backend.wms.repository.WmsStockRepository;
+import jakarta.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 库存账本：所有模块对 wms_stock / wms_stock_qc 的数量变更统一走这里。
+ *
+ * <p>实现要点：</p>
+ * <ul>
+ *   <li><b>条件更新</b>：库存校验写在 update 的 where 子句里（例如 {@code stock_qty - locked_qty >= ?}），
+ *       由 InnoDB 行锁保证“校验 + 变更”原子完成；不再 select + 内存计算 + @Version 乐观锁重试。</li>
+ *   <li><b>热点 SKU</b>：并发请求在行锁上排队而不是互相冲突，不会因重试耗尽返回 409。</li>
+ *   <li><b>先更新后读取</b>：条件更新单独执行，按影响行数判断成败；成功后按唯一键读回该行（本事务已持有行锁，
+ *       读到的就是本次变更后的值，作为 {@code WmsStockLog.afterStockQty}）；影响行数为 0 时才用
+ *       {@code select ... for update} 读取最新已提交的值，给出“库存不存在/库存不足”的原因。</li>
+ *   <li><b>汇总</b>：每次变更把数量差额交给 {@link WmsStockSummaryUpdater}，同一事务内维护商品/仓库汇总。</li>
+ * </ul>
+ *
+ * <p>注意：各方法必须在调用方事务内执行（行锁持有到事务提交），数量参数需为正数；传 0 视为无操作。</p>
+ */
+@Service
+public class WmsStockLedger {
+    private static final String NOT_FOUND_MESSAGE = "该仓库无此商品库存记录";
+
+    private static final String STOCK_ROW_SQL = """
+            select id, stock_qty, locked_qty from wms_stock where warehouse_id = ? and product_id = ?""";
+
+    private static final String STOCK_ROW_FOR_UPDATE_SQL = STOCK_ROW_SQL + " for update";
+
+    private static final String QC_ROW_SQL = """
+            select id, qc_qty from wms_stock_qc where warehouse_id = ? and product_id = ?""";
+
+    private static final String QC_ROW_FOR_UPDATE_SQL = QC_ROW_SQL + " for update";
+
+    private static final String INCREASE_SQL = """
+            update wms_stock
+            set stock_qty = stock_qty + ?, version = version + 1, update_time = ?
+            where warehouse_id = ? and product_id = ?""";
+
+    /**
+     * 库存行不存在时插入；并发下撞唯一键 uk_wms_stock_wh_prod 则转为累加。
+     */
+    private static final String UPSERT_INCREASE_SQL = """
+            insert into wms_stock (warehouse_id, product_id, stock_qty, locked_qty, version, update_time)
+            values (?, ?, ?, 0.000, 0, ?)
+            on duplicate key update
+              stock_qty = stock_qty + values(stock_qty),
+              version = version + 1,
+              update_time = values(update_time)""";
+
+    private static final String DEDUCT_SQL = """
+            update wms_stock
+            set stock_qty = stock_qty - ?, version = version + 1, update_time = ?
+            where warehouse_id = ? and product_id = ?
+              and stock_qty - locked_qty >= ?""";
+
+    private static final String LOCK_SQL = """
+            update wms_stock
+            set locked_qty = locked_qty + ?, version = version + 1, update_time = ?
+            where warehouse_id = ? and product_id = ?
+              and stock_qty - locked_qty >= ?""";
+
+    private static final String UNLOCK_SQL = """
+            update wms_stock
+            set locked_qty = locked_qty - ?, version = version + 1, update_time = ?
+            where warehouse_id = ? and product_id = ?
+              and locked_qty >= ?""";
+
+    private static final String DEDUCT_LOCKED_SQL = """
+            update wms_stock
+            set stock_qty = stock_qty - ?, locked_qty = locked_qty - ?, version = version + 1, update_time = ?
+            where warehouse_id = ? and product_id = ?
+              and locked_qty >= ? and stock_qty >= ?""";
+
+    private static final String INCREASE_AND_LOCK_SQL = """
+            update wms_stock
+            set stock_qty = stock_qty + ?, locked_qty = locked_qty + ?, version = version + 1, update_time = ?
+            where warehouse_id = ? and product_id = ?""";
+
+    /**
+     * 待检桶累加：行不存在时插入，撞唯一键 uk_wms_stock_qc_wh_prod 则转为累加。
+     */
+    private static final String UPSERT_INCREASE_QC_SQL = """
+            insert into wms_stock_qc (warehouse_id, product_id, qc_qty, version, update_time)
+            values (?, ?, ?, 0, ?)
+            on duplicate key update
+              qc_qty = qc_qty + values(qc_qty),
+              version = version + 1,
+              update_time = values(update_time)""";
+
+    private static final String DECREASE_QC_SQL = """
+            update wms_stock_qc
+            set qc_qty = qc_qty - ?, version = version + 1, update_time = ?
+            where warehouse_id = ? and product_id = ?
+              and qc_qty >= ?""";
+
+    private final WmsStockRepository stockRepository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final WmsStockSummaryUpdater summaryUpdater;
+
+    public WmsStockLedger(WmsStockRepository stockRepository, EntityManager entityManager, JdbcTemplate jdbcTemplate,
+            WmsStockSummaryUpdater summaryUpdater) {
+        this.stockRepository = stockRepository;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.summaryUpdater = summaryUpdater;
+    }
+
+    /**
+     * 入库：stock_qty += qty；库存行不存在时自动创建。
+     */
+    @Transactional
+    public StockQty increase(Long warehouseId, Long productId, BigDecimal qty) {
+        if (isNoop(qty)) return snapshotOrZero(warehouseId, productId);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        // 行不存在时直接 upsert：不对缺失的键做加锁读，避免间隙锁让并发首次入库互相死锁
+        if (jdbcTemplate.update(INCREASE_SQL, qty, now, warehouseId, productId) == 0) {
+            jdbcTemplate.update(UPSERT_INCREASE_SQL, warehouseId, productId, qty, now);
+        }
+        StockMutation m = readStock(STOCK_ROW_SQL, 1, warehouseId, productId);
+        summaryUpdater.add(warehouseId, productId, qty, null, null);
+        return after(m, warehouseId, productId);
+    }
+
+    /**
+     * 出库（扣减可用）：stock_qty -= qty，要求 stock_qty - locked_qty >= qty。
+     */
+    @Transactional
+    public StockQty deduct(Long warehouseId, Long productId, BigDecimal qty) {
+        if (isNoop(qty)) return snapshotOrZero(warehouseId, productId);
+        StockMutation m = mutateStock(DEDUCT_SQL, warehouseId, productId,
+                qty, Timestamp.valueOf(LocalDateTime.now()), warehouseId, productId, qty);
+        if (m.updated() == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "库存不足，当前可用: " + requireRow(m).available());
+        }
+        summaryUpdater.add(warehouseId, productId, qty.negate(), null, null);
+        return after(m, warehouseId, productId);
+    }
+
+    /**
+     * 锁库（销售审核）：locked_qty += qty，要求 stock_qty - locked_qty >= qty。
+     */
+    @Transactional
+    public StockQty lock(Long warehouseId, Long productId, BigDecimal qty) {
+        if (isNoop(qty)) return snapshotOrZero(warehouseId, productId);
+        StockMutation m = mutateStock(LOCK_SQL, warehouseId, productId,
+                qty, Timestamp.valueOf(LocalDateTime.now()), warehouseId, productId, qty);
+        if (m.updated() == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "库存不足，当前可用: " + requireRow(m).available());
+        }
+        summaryUpdater.add(warehouseId, productId, null, qty, null);
+        return after(m, warehouseId, productId);
+    }
+
+    /**
+     * 批量锁库（整单审核）：一次性锁定多行库存，全部成功或全部失败。
+     *
+     * <p>步骤：</p>
+     * <ol>
+     *   <li>同一 (warehouseId, productId) 的多行合并数量，并按 (warehouseId, productId) 排序；</li>
+     *   <li>一条 {@code select ... for update} 按键顺序锁住所有库存行（不同订单加锁顺序一致，避免死锁）；</li>
+     *   <li>在内存中逐行校验可用量，任一不足则抛出 {@link WmsStockShortageException}，列出所有不足的 SKU；</li>
+     *   <li>一条 {@code update ... case id when ...} 写入全部锁定数量。</li>
+     * </ol>
+     *
+     * <p>无论订单有多少行，数据库往返固定为两次。</p>
+     */
+    @Transactional
+    public void lockAll(List<StockLine> lines) {
+        if (lines == null || lines.isEmpty()) return;
+
+        Map<StockKey, BigDecimal> required = mergeLines(lines);
+        if (required.isEmpty()) return;
+
+        StringBuilder select = new StringBuilder("""
+                select id, warehouse_id, product_id, stock_qty, locked_qty
+                from wms_stock
+                where (warehouse_id, product_id) in (""");
+        List<Object> selectArgs = new ArrayList<>(required.size() * 2);
+        for (StockKey key : required.keySet()) {
+            if (!selectArgs.isEmpty()) select.append(", ");
+            select.append("(?, ?)");
+            selectArgs.add(key.warehouseId());
+            selectArgs.add(key.productId());
+        }
+        select.append(") order by warehouse_id, product_id for update");
+
+        Map<StockKey, LockedRow> rows = new HashMap<>();
+        jdbcTemplate.query(select.toString(), rs -> {
+            StockKey key = new StockKey(rs.getLong("warehouse_id"), rs.getLong("product_id"));
+            rows.put(key, new LockedRow(rs.getLong("id"),
+                    safeQty(rs.getBigDecimal("stock_qty")), safeQty(rs.getBigDecimal("locked_qty"))));
+        }, selectArgs.toArray());
+
+        List<WmsStockShortageLine> shortages = shortages(required, key -> {
+            LockedRow row = rows.get(key);
+            return row == null ? BigDecimal.ZERO : row.stockQty().subtract(row.lockedQty());
+        });
+        if (!shortages.isEmpty()) {
+            throw new WmsStockShortageException(shortages);
+        }
+
+        StringBuilder update = new StringBuilder("update wms_stock set locked_qty = locked_qty + case id");
+        List<Object> updateArgs = new ArrayList<>(required.size() * 3 + 1);
+        StringBuilder ids = new StringBuilder();
+        List<Object> idArgs = new ArrayList<>(required.size());
+        for (Map.Entry<StockKey, BigDecimal> e : required.entrySet()) {
+            Long id = rows.get(e.getKey()).id();
+            update.append(" when ? then ?");
+            updateArgs.add(id);
+            updateArgs.add(e.getValue());
+            if (!idArgs.isEmpty()) ids.append(", ");
+            ids.append('?');
+            idArgs.add(id);
+        }
+        update.append(" end, version = version + 1, update_time = ? where id in (").append(ids).append(')');
+        updateArgs.add(Timestamp.valueOf(LocalDateTime.now()));
+        updateArgs.addAll(idArgs);
+
+        int updated = jdbcTemplate.update(update.toString(), updateArgs.toArray());
+        if (updated != required.size()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "invalid stock state: expected " + required.size() + " rows locked, got " + updated);
+        }
+        for (LockedRow row : rows.values()) {
+            evict(WmsStock.class, row.id());
+        }
+        required.forEach((key, qty) -> summaryUpdater.add(key.warehouseId(), key.productId(), null, qty, null));
+    }
+
+    /**
+     * 释放锁库（销售作废）：locked_qty -= qty，要求 locked_qty >= qty。
+     */
+    @Transactional
+    public StockQty unlock(Long warehouseId, Long productId, BigDecimal qty) {
+        if (isNoop(qty)) return snapshotOrZero(warehouseId, productId);
+        StockMutation m = mutateStock(UNLOCK_SQL, warehouseId, productId,
+                qty, Timestamp.valueOf(LocalDateTime.now()), warehouseId, productId, qty);
+        if (m.updated() == 0) {
+            requireRow(m);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < 0");
+        }
+        summaryUpdater.add(warehouseId, productId, null, qty.negate(), null);
+        return after(m, warehouseId, productId);
+    }
+
+    /**
+     * 发货（扣减已锁库存）：stock_qty -= qty 且 locked_qty -= qty。
+     */
+    @Transactional
+    public StockQty deductLocked(Long warehouseId, Long productId, BigDecimal qty) {
+        if (isNoop(qty)) return snapshotOrZero(warehouseId, productId);
+        StockMutation m = mutateStock(DEDUCT_LOCKED_SQL, warehouseId, productId,
+                qty, qty, Timestamp.valueOf(LocalDateTime.now()), warehouseId, productId, qty, qty);
+        if (m.updated() == 0) {
+            StockQty cur = requireRow(m);
+            if (cur.lockedQty().compareTo(qty) < 0) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < required");
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "库存不足，当前物理: " + cur.stockQty());
+        }
+        summaryUpdater.add(warehouseId, productId, qty.negate(), qty.negate(), null);
+        return after(m, warehouseId, productId);
+    }
+
+    /**
+     * 发货冲销：stock_qty += qty 且 locked_qty += qty（库存行必须存在）。
+     */
+    @Transactional
+    public StockQty increaseAndLock(Long warehouseId, Long productId, BigDecimal qty) {
+        if (isNoop(qty)) {
+            StockQty cur = snapshotOrNull(warehouseId, productId);
+            if (cur == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, NOT_FOUND_MESSAGE);
+            return cur;
+        }
+        StockMutation m = mutateStock(INCREASE_AND_LOCK_SQL, warehouseId, productId,
+                qty, qty, Timestamp.valueOf(LocalDateTime.now()), warehouseId, productId);
+        requireRow(m);
+        summaryUpdater.add(warehouseId, productId, qty, qty, null);
+        return after(m, warehouseId, productId);
+    }
+
+    /**
+     * 确保库存行存在（用于待检数量先于实物库存出现的场景，库存查询需要能看到该行）。
+     */
+    @Transactional
+    public void ensureStockRow(Long warehouseId, Long productId) {
+        if (stockRepository.getQtyRow(warehouseId, productId) != null) return;
+        jdbcTemplate.update(UPSERT_INCREASE_SQL, warehouseId, productId, BigDecimal.ZERO,
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * 待检入账：qc_qty += qty；待检行不存在时自动创建，并保证库存行存在。返回变更后的待检数量。
+     */
+    @Transactional
+    public BigDecimal increaseQc(Long warehouseId, Long productId, BigDecimal qty) {
+        ensureStockRow(warehouseId, productId);
+        if (isNoop(qty)) return qcSnapshot(warehouseId, productId);
+        QcMutation m = mutateQc(UPSERT_INCREASE_QC_SQL, warehouseId, productId,
+                warehouseId, productId, qty, Timestamp.valueOf(LocalDateTime.now()));
+        summaryUpdater.add(warehouseId, productId, null, null, qty);
+        return afterQc(m);
+    }
+
+    /**
+     * 待检出账（质检通过/冲销）：qc_qty -= qty，要求 qc_qty >= qty。返回变更后的待检数量。
+     */
+    @Transactional
+    public BigDecimal decreaseQc(Long warehouseId, Long productId, BigDecimal qty) {
+        if (isNoop(qty)) return qcSnapshot(warehouseId, productId);
+        QcMutation m = mutateQc(DECREASE_QC_SQL, warehouseId, productId,
+                qty, Timestamp.valueOf(LocalDateTime.now()), warehouseId, productId, qty);
+        if (m.updated() == 0) {
+            if (m.id() == null) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "QC stock bucket missing (warehouseId=" + warehouseId + ", productId=" + productId + ")");
+            }
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "QC qty insufficient (warehouseId=" + warehouseId + ", productId=" + productId
+                            + ", qcQty=" + m.qcQty() + ", required=" + qty + ")");
+        }
+        summaryUpdater.add(warehouseId, productId, null, null, qty.negate());
+        return afterQc(m);
+    }
+
+    /**
+     * 条件更新，随后读取该行数量：成功时普通读（行锁已在本事务手里，读到本次变更后的值）；
+     * 影响行数为 0 时用加锁读取最新已提交的值，作为失败原因（行不存在/数量不足）。
+     */
+    private StockMutation mutateStock(String updateSql, Long warehouseId, Long productId, Object... updateArgs) {
+        int updated = jdbcTemplate.update(updateSql, updateArgs);
+        return readStock(updated > 0 ? STOCK_ROW_SQL : STOCK_ROW_FOR_UPDATE_SQL, updated, warehouseId, productId);
+    }
+
+    private StockMutation readStock(String sql, int updated, Long warehouseId, Long productId) {
+        return jdbcTemplate.query(sql, rs -> rs.next()
+                ? new StockMutation(updated, rs.getLong(1),
+                        new StockQty(safeQty(rs.getBigDecimal(2)), safeQty(rs.getBigDecimal(3))))
+                : new StockMutation(updated, null, null), warehouseId, productId);
+    }
+
+    private QcMutation mutateQc(String updateSql, Long warehouseId, Long productId, Object... updateArgs) {
+        int updated = jdbcTemplate.update(updateSql, updateArgs);
+        return jdbcTemplate.query(updated > 0 ? QC_ROW_SQL : QC_ROW_FOR_UPDATE_SQL, rs -> rs.next()
+                ? new QcMutation(updated, rs.getLong(1), safeQty(rs.getBigDecimal(2)))
+                : new QcMutation(updated, null, BigDecimal.ZERO), warehouseId, productId);
+    }
+
+    private StockQty after(StockMutation m, Long warehouseId, Long productId) {
+        if (m.id() == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "stock row missing after update (warehouseId=" + warehouseId + ", productId=" + productId + ")");
+        }
+        evict(WmsStock.class, m.id());
+        return m.qty();
+    }
+
+    private BigDecimal afterQc(QcMutation m) {
+        evict(WmsStockQc.class, m.id());
+        return m.qcQty();
+    }
+
+    private static StockQty requireRow(StockMutation m) {
+        if (m.id() == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, NOT_FOUND_MESSAGE);
+        return m.qty();
+    }
+
+    private StockQty snapshotOrZero(Long warehouseId, Long productId) {
+        StockQty cur = snapshotOrNull(warehouseId, productId);
+        return cur == null ? new StockQty(BigDecimal.ZERO, BigDecimal.ZERO) : cur;
+    }
+
+    private StockQty snapshotOrNull(Long warehouseId, Long productId) {
+        WmsStockRepository.StockQtyRow row = stockRepository.getQtyRow(warehouseId, productId);
+        if (row == null) return null;
+        return new StockQty(safeQty(row.getStockQty()), safeQty(row.getLockedQty()));
+    }
+
+    private BigDecimal qcSnapshot(Long warehouseId, Long productId) {
+        return jdbcTemplate.query(QC_ROW_SQL, rs -> rs.next() ? safeQty(rs.getBigDecimal(2)) : BigDecimal.ZERO,
+                warehouseId, productId);
+    }
+
+    /**
+     * 条件更新绕过了持久化上下文：若本事务之前加载过同一行实体，把它移出上下文，
+     * 后续 findFirstByWarehouseIdAndProductId 会重新读取最新值（而不是返回旧实体）。
+     */
+    private void evict(Class<?> entityType, Long id) {
+        if (id == null) return;
+        entityManager.detach(entityManager.getReference(entityType, id));
+    }
+
+    /**
+     * lockAll 第 1 步：同一 (warehouseId, productId) 的多行合并数量，按键排序（即加锁顺序）；数量为空或 0 的行忽略。
+     */
+    public static SortedMap<StockKey, BigDecimal> mergeLines(List<StockLine> lines) {
+        SortedMap<StockKey, BigDecimal> required = new TreeMap<>(StockKey.ORDER);
+        for (StockLine line : lines) {
+            if (line == null || isNoop(line.qty())) continue;
+            if (line.warehouseId() == null || line.productId() == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouseId/productId required");
+            }
+            required.merge(new StockKey(line.warehouseId(), line.productId()), line.qty(), BigDecimal::add);
+        }
+        return required;
+    }
+
+    /**
+     * lockAll 第 3 步：逐个 SKU 比较需求与可用量（行已锁定），返回全部不足的 SKU。
+     */
+    public static List<WmsStockShortageLine> shortages(Map<StockKey, BigDecimal> required,
+            Function<StockKey, BigDecimal> available) {
+        List<WmsStockShortageLine> shortages = new ArrayList<>();
+        for (Map.Entry<StockKey, BigDecimal> e : required.entrySet()) {
+            BigDecimal avail = available.apply(e.getKey());
+            if (avail.compareTo(e.getValue()) < 0) {
+                shortages.add(new WmsStockShortageLine(e.getKey().warehouseId(), e.getKey().productId(),
+                        e.getValue(), avail));
+            }
+        }
+        return shortages;
+    }
+
+    private static boolean isNoop(BigDecimal qty) {
+        if (qty == null) return true;
+        if (qty.compareTo(BigDecimal.ZERO) < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "qty must be positive");
+        }
+        return qty.compareTo(BigDecimal.ZERO) == 0;
+    }
+
+    private static BigDecimal safeQty(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+
+    /**
+     * 批量锁库的一行需求（同一 SKU 可出现多次，会被合并）。
+     */
+    public record StockLine(Long warehouseId, Long productId, BigDecimal qty) {
+    }
+
+    /**
+     * 库存行键 (warehouseId, productId)，{@link #ORDER} 即批量加锁顺序。
+     */
+    public record StockKey(Long warehouseId, Long productId) {
+        static final Comparator<StockKey> ORDER = Comparator.comparing(StockKey::warehouseId)
+                .thenComparing(StockKey::productId);
+    }
+
+    private record LockedRow(Long id, BigDecimal stockQty, BigDecimal lockedQty) {
+    }
+
+    private record StockMutation(int updated, Long id, StockQty qty) {
+    }
+
+    private record QcMutation(int updated, Long id, BigDecimal qcQty) {
+    }
+
+    /**
+     * 库存数量快照（变更后的值）。
+     */
+    public record StockQty(BigDecimal stockQty, BigDecimal lockedQty) {
+        public BigDecimal available() {
+            return stockQty.subtract(lockedQty);
+        }
+    }
+}
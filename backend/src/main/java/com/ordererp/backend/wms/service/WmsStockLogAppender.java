@@ -0,0 +1,95 @@
+package com.ordererp.backend.wms.service;
+
+import com.ordererp.backend.wms.entity.WmsStockLog;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 库存流水写入器（write-behind）：同一事务内的 wms_stock_log 先缓存，再一次性批量插入。
+ *
+ * <p>为什么不用 {@code stockLogRepository.save(log)}：实体主键是 IDENTITY，Hibernate 每条 insert 都要立即执行
+ * 以拿回自增 id，无法走 JDBC batch。流水表只追加、不回读 id，这里直接用 {@link JdbcTemplate#batchUpdate}，
+ * 配合连接串 {@code rewriteBatchedStatements=true}，MySQL 驱动会把一批改写为一条多值 insert。</p>
+ *
+ * <p>用法：业务循环里 {@link #append}，单据处理结束时 {@link #flush}；遗漏的 flush 会在事务提交前自动补上。
+ * 没有活动事务时 append 直接写入。</p>
+ */
+@Component
+public class WmsStockLogAppender {
+    private static final int BATCH_SIZE = 500;
+
+    private static final String INSERT_SQL = """
+            insert into wms_stock_log (warehouse_id, product_id, biz_type, biz_no, change_qty, after_stock_qty, create_time)
+            values (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public WmsStockLogAppender(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void append(WmsStockLog log) {
+        if (log == null) return;
+        if (log.getCreateTime() == null) log.setCreateTime(LocalDateTime.now());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(List.of(log));
+            return;
+        }
+        buffer().add(log);
+    }
+
+    /**
+     * 把当前事务已缓存的流水写入数据库（同一事务内随后的查询即可看到）。
+     */
+    public void flush() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        Buffer buffer = (Buffer) TransactionSynchronizationManager.getResource(this);
+        if (buffer == null || buffer.logs.isEmpty()) return;
+        List<WmsStockLog> pending = new ArrayList<>(buffer.logs);
+        buffer.logs.clear();
+        write(pending);
+    }
+
+    private List<WmsStockLog> buffer() {
+        Buffer buffer = (Buffer) TransactionSynchronizationManager.getResource(this);
+        if (buffer == null) {
+            buffer = new Buffer();
+            TransactionSynchronizationManager.bindResource(this, buffer);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    flush();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(WmsStockLogAppender.this);
+                }
+            });
+        }
+        return buffer.logs;
+    }
+
+    private void write(List<WmsStockLog> logs) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, logs, BATCH_SIZE, (ps, log) -> {
+            ps.setLong(1, log.getWarehouseId());
+            ps.setLong(2, log.getProductId());
+            ps.setString(3, log.getBizType());
+            ps.setString(4, log.getBizNo());
+            ps.setBigDecimal(5, log.getChangeQty());
+            ps.setBigDecimal(6, log.getAfterStockQty());
+            ps.setTimestamp(7, Timestamp.valueOf(log.getCreateTime()));
+        });
+    }
+
+    private static final class Buffer {
+        private final List<WmsStockLog> logs = new ArrayList<>();
+    }
+}
@@ -1,12 +1,12 @@
 package com.ordererp.backend.wms.service;
 
+import com.ordererp.backend.common.dto.CursorPageResponse;
 import com.ordererp.backend.wms.dto.WmsStockLogResponse;
 import com.ordererp.backend.wms.excel.WmsStockLogExcelRow;
 import com.ordererp.backend.wms.repository.WmsStockLogRepository;
 import java.time.LocalDateTime;
 import java.util.List;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
@@ -21,7 +21,36 @@ public class WmsStockLogService {
     public Page<WmsStockLogResponse> page(String keyword, Long warehouseId, Long productId,
             LocalDateTime startTime, LocalDateTime endTime, Pageable pageable) {
         return stockLogRepository.pageRows(keyword, warehouseId, productId, startTime, endTime, pageable)
-                .map(r -> new WmsStockLogResponse(
+                .map(WmsStockLogService::toResponse);
+    }
+
+    /**
+     * 游标分页：流水表数据量大，深分页用 offset 会越翻越慢；这里按 id 定位，每页耗时与页深无关。
+     * includeTotal=false 时不执行 count。
+     */
+    public CursorPageResponse<WmsStockLogResponse> seek(String keyword, Long warehouseId, Long productId,
+            LocalDateTime startTime, LocalDateTime endTime, Long afterId, Integer limit, boolean includeTotal) {
+        int size = CursorPageResponse.clampLimit(limit);
+        var rows = stockLogRepository.seekRows(keyword, warehouseId, productId, startTime, endTime, afterId, size + 1);
+        Long total = includeTotal
+                ? stockLogRepository.countRows(keyword, warehouseId, productId, startTime, endTime)
+                : null;
+        return CursorPageResponse.of(rows, size, WmsStockLogRepository.StockLogRow::getId,
+                WmsStockLogService::toResponse, total);
+    }
+
+    /**
+     * 导出取数：按 id 倒序取 afterId 之后的一批（供 Excel 流式导出逐批调用，不执行 count）。
+     */
+    public List<WmsStockLogResponse> exportBatch(String keyword, Long warehouseId, Long productId,
+            LocalDateTime startTime, LocalDateTime endTime, Long afterId, int limit) {
+        return stockLogRepository.seekRows(keyword, warehouseId, productId, startTime, endTime, afterId, limit).stream()
+                .map(WmsStockLogService::toResponse)
+                .toList();
+    }
+
+    private static WmsStockLogResponse toResponse(WmsStockLogRepository.StockLogRow r) {
+        return new WmsStockLogResponse(
                 r.getId(),
                 r.getWarehouseId(),
                 r.getWarehouseName(),
@@ -32,18 +61,11 @@ public class WmsStockLogService {
                 r.getBizNo(),
                 r.getChangeQty(),
                 r.getAfterStockQty(),
-                r.getCreateTime()));
-    }
-
-    public List<WmsStockLogExcelRow> export(String keyword, Long warehouseId, Long productId,
-            LocalDateTime startTime, LocalDateTime endTime) {
-        Page<WmsStockLogResponse> res = page(keyword, warehouseId, productId, startTime, endTime,
-                PageRequest.of(0, 50_000));
-        return res.getContent().stream().map(WmsStockLogService::toExcelRow).toList();
+                r.getCreateTime());
     }
 
     public static WmsStockLogExcelRow toExcelRow(WmsStockLogResponse r) {
-        // 导出 Excel 行：Controller 采用分页写出（流式）导出时，会按页把查询结果转换为 Excel 行。
+        // 导出 Excel 行：Controller 采用游标分批写出（流式）导出时，逐批把查询结果转换为 Excel 行。
         WmsStockLogExcelRow row = new WmsStockLogExcelRow();
         row.setCreateTime(r.createTime());
         row.setWarehouseName(r.warehouseName());
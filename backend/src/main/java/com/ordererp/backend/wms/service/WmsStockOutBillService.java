@@ -1,7 +1,9 @@
 package com.ordererp.backend.wms.service;
 
-import com.ordererp.backend.base.repository.BaseProductRepository;
-import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.base.service.BaseMasterDataCache;
+import com.ordererp.backend.common.metrics.DocTransitionMetrics;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import com.ordererp.backend.ledger.LedgerOutbox;
 import com.ordererp.backend.wms.dto.StockOutBillCreateRequest;
 import com.ordererp.backend.wms.dto.StockOutBillDetailResponse;
 import com.ordererp.backend.wms.dto.StockOutBillItemResponse;
@@ -16,17 +18,18 @@ import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.entity.WmsStockLog;
 import com.ordererp.backend.wms.repository.WmsIoBillDetailRepository;
 import com.ordererp.backend.wms.repository.WmsIoBillRepository;
-import com.ordererp.backend.wms.repository.WmsStockLogRepository;
 import com.ordererp.backend.wms.repository.WmsStockRepository;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -45,19 +48,29 @@ public class WmsStockOutBillService {
     private final WmsIoBillRepository billRepository;
     private final WmsIoBillDetailRepository billDetailRepository;
     private final WmsStockRepository stockRepository;
-    private final WmsStockLogRepository stockLogRepository;
-    private final BaseWarehouseRepository warehouseRepository;
-    private final BaseProductRepository productRepository;
+    private final WmsStockLogAppender stockLogAppender;
+    private final BaseMasterDataCache masterDataCache;
+    private final WmsStockLedger stockLedger;
+    private final DocNumberAllocator docNumbers;
+    private final DocTransitionMetrics transitionMetrics;
+    private final LedgerOutbox ledgerOutbox;
 
     public WmsStockOutBillService(WmsIoBillRepository billRepository, WmsIoBillDetailRepository billDetailRepository,
-            WmsStockRepository stockRepository, WmsStockLogRepository stockLogRepository,
-            BaseWarehouseRepository warehouseRepository, BaseProductRepository productRepository) {
+            WmsStockRepository stockRepository, WmsStockLogAppender stockLogAppender,
+            BaseMasterDataCache masterDataCache,
+            WmsStockLedger stockLedger,
+            DocNumberAllocator docNumbers,
+            DocTransitionMetrics transitionMetrics,
+            LedgerOutbox ledgerOutbox) {
         this.billRepository = billRepository;
         this.billDetailRepository = billDetailRepository;
         this.stockRepository = stockRepository;
-        this.stockLogRepository = stockLogRepository;
-        this.warehouseRepository = warehouseRepository;
-        this.productRepository = productRepository;
+        this.stockLogAppender = stockLogAppender;
+        this.masterDataCache = masterDataCache;
+        this.stockLedger = stockLedger;
+        this.docNumbers = docNumbers;
+        this.transitionMetrics = transitionMetrics;
+        this.ledgerOutbox = ledgerOutbox;
     }
 
     public Page<StockOutBillResponse> page(String keyword, Pageable pageable) {
@@ -112,9 +125,9 @@ public class WmsStockOutBillService {
             return new WmsBillPrecheckResponse(true, "already completed", List.of());
         }
 
-        var wh = warehouseRepository.findByIdAndDeleted(bill.getWarehouseId(), 0)
+        var wh = masterDataCache.getWarehouse(bill.getWarehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse not found"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             return new WmsBillPrecheckResponse(false, "warehouse disabled", List.of());
         }
 
@@ -128,7 +141,18 @@ public class WmsStockOutBillService {
         String message = "ok";
         Set<Long> seen = new HashSet<>();
 
-        var itemRows = billDetailRepository.listBillItemRows(bill.getId());
+        // 明细展示行与库存行都按批量查询后建索引，避免逐行查询/逐行线性扫描（N+1 与 O(n²)）。
+        Map<Long, WmsIoBillDetailRepository.BillItemRow> itemById = new HashMap<>();
+        for (var r : billDetailRepository.listBillItemRows(bill.getId())) {
+            itemById.put(r.getId(), r);
+        }
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                details.stream().map(WmsIoBillDetail::getProductId).toList());
+        Map<Long, WmsStock> stockByProductId = new HashMap<>();
+        for (WmsStock s : stockRepository.findByWarehouseIdAndProductIdIn(bill.getWarehouseId(),
+                details.stream().map(WmsIoBillDetail::getProductId).filter(Objects::nonNull).toList())) {
+            stockByProductId.put(s.getProductId(), s);
+        }
         for (WmsIoBillDetail d : details) {
             boolean lineOk = true;
             String lineMsg = "ok";
@@ -146,7 +170,7 @@ public class WmsStockOutBillService {
                 lineMsg = "qty must be positive";
             }
 
-            var item = itemRows.stream().filter(r -> Objects.equals(r.getId(), d.getId())).findFirst().orElse(null);
+            var item = itemById.get(d.getId());
             String productCode = item != null ? item.getProductCode() : null;
             String productName = item != null ? item.getProductName() : null;
             String unit = item != null ? item.getUnit() : null;
@@ -156,21 +180,20 @@ public class WmsStockOutBillService {
             BigDecimal available = BigDecimal.ZERO;
 
             if (d.getProductId() != null) {
-                var p = productRepository.findByIdAndDeleted(d.getProductId(), 0).orElse(null);
+                var p = products.get(d.getProductId());
                 if (p == null) {
                     lineOk = false;
                     lineMsg = "product not found";
-                } else if (p.getStatus() != null && p.getStatus() != 1) {
+                } else if (!p.enabled()) {
                     lineOk = false;
                     lineMsg = "product disabled";
                 } else {
-                    if (productCode == null) productCode = p.getProductCode();
-                    if (productName == null) productName = p.getProductName();
-                    if (unit == null) unit = p.getUnit();
+                    if (productCode == null) productCode = p.productCode();
+                    if (productName == null) productName = p.productName();
+                    if (unit == null) unit = p.unit();
                 }
 
-                WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(bill.getWarehouseId(), d.getProductId())
-                        .orElse(null);
+                WmsStock stock = stockByProductId.get(d.getProductId());
                 if (stock == null) {
                     lineOk = false;
                     lineMsg = "stock not found";
@@ -266,26 +289,29 @@ public class WmsStockOutBillService {
             rd.setRealQty(qty);
             billDetailRepository.save(rd);
 
-            WmsStock stock = increaseStockWithRetry(bill.getWarehouseId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.increase(bill.getWarehouseId(), d.getProductId(), qty);
             WmsStockLog log = new WmsStockLog();
             log.setWarehouseId(bill.getWarehouseId());
             log.setProductId(d.getProductId());
             log.setBizType("REVERSAL_OUT");
             log.setBizNo(reversal.getBillNo());
             log.setChangeQty(qty);
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(LocalDateTime.now());
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
         }
+        stockLogAppender.flush();
+        ledgerOutbox.reverse(LedgerOutbox.STOCK_OUT, bill.getId(), reversal.getBillNo(), LocalDate.now(),
+                reversal.getRemark());
 
         return new WmsReverseResponse(reversal.getId(), reversal.getBillNo());
     }
 
     @Transactional
     public StockOutBillResponse create(StockOutBillCreateRequest request, String createdBy) {
-        var wh = warehouseRepository.findByIdAndDeleted(request.warehouseId(), 0)
+        var wh = masterDataCache.getWarehouse(request.warehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse not found"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse disabled");
         }
 
@@ -301,11 +327,13 @@ public class WmsStockOutBillService {
         bill.setCreateTime(LocalDateTime.now());
         bill = billRepository.save(bill);
 
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                request.lines().stream().filter(Objects::nonNull).map(StockOutBillLineRequest::productId).toList());
         for (StockOutBillLineRequest line : request.lines()) {
-            var p = productRepository.findByIdAndDeleted(line.productId(), 0)
+            var p = Optional.ofNullable(products.get(line.productId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
                             "product not found: " + line.productId()));
-            if (p.getStatus() != null && p.getStatus() != 1) {
+            if (!p.enabled()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product disabled: " + line.productId());
             }
             WmsIoBillDetail d = new WmsIoBillDetail();
@@ -341,6 +369,10 @@ public class WmsStockOutBillService {
      */
     @Transactional
     public StockOutBillResponse execute(Long id) {
+        return transitionMetrics.record("wms_stock_out", "execute", () -> doExecute(id));
+    }
+
+    private StockOutBillResponse doExecute(Long id) {
         WmsIoBill bill = billRepository.findByIdForUpdate(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "bill not found"));
         if (!Objects.equals(bill.getType(), BILL_TYPE_STOCK_OUT)) {
@@ -360,9 +392,9 @@ public class WmsStockOutBillService {
                     row.getCreateTime());
         }
 
-        var wh = warehouseRepository.findByIdAndDeleted(bill.getWarehouseId(), 0)
+        var wh = masterDataCache.getWarehouse(bill.getWarehouseId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse not found"));
-        if (wh.getStatus() != null && wh.getStatus() != 1) {
+        if (!wh.enabled()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "warehouse disabled");
         }
 
@@ -372,7 +404,10 @@ public class WmsStockOutBillService {
         }
 
         // 先校验所有明细，再做任何库存变更（避免“部分成功、部分失败”）。
+        // 可用量校验由 WmsStockLedger 的条件更新原子完成：任一行不足则抛 400，整张单回滚。
         Set<Long> seen = new HashSet<>();
+        Map<Long, BaseMasterDataCache.ProductInfo> products = masterDataCache.getProducts(
+                details.stream().map(WmsIoBillDetail::getProductId).toList());
         for (WmsIoBillDetail d : details) {
             if (!seen.add(d.getProductId())) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "duplicate productId on bill: " + d.getProductId());
@@ -384,34 +419,21 @@ public class WmsStockOutBillService {
             if (qty.compareTo(BigDecimal.ZERO) <= 0) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid qty on bill detail: " + d.getId());
             }
-            var p = productRepository.findByIdAndDeleted(d.getProductId(), 0)
+            var p = Optional.ofNullable(products.get(d.getProductId()))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
                             "product not found: " + d.getProductId()));
-            if (p.getStatus() != null && p.getStatus() != 1) {
+            if (!p.enabled()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "product disabled: " + d.getProductId());
             }
-            WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(bill.getWarehouseId(), d.getProductId())
-                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                            "stock not found (warehouseId=" + bill.getWarehouseId() + ", productId=" + d.getProductId()
-                                    + ")"));
-            BigDecimal stockQty = safeQty(stock.getStockQty());
-            BigDecimal lockedQty = safeQty(stock.getLockedQty());
-            if (lockedQty.compareTo(BigDecimal.ZERO) < 0 || stockQty.compareTo(BigDecimal.ZERO) < 0) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid stock state");
-            }
-            if (lockedQty.compareTo(stockQty) > 0) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid lockedQty > stockQty");
-            }
-            BigDecimal available = stockQty.subtract(lockedQty);
-            if (available.compareTo(qty) < 0) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                        "insufficient stock (productId=" + d.getProductId() + ", available=" + available + ", required=" + qty + ")");
-            }
         }
 
+        // 出库成本按商品采购价估算（系统没有存货计价），与单据同一事务写入记账发件箱
+        BigDecimal costAmount = BigDecimal.ZERO;
         for (WmsIoBillDetail d : details) {
             BigDecimal qty = safeQty(d.getQty());
-            WmsStock stock = deductStockWithRetry(bill.getWarehouseId(), d.getProductId(), qty);
+            WmsStockLedger.StockQty stock = stockLedger.deduct(bill.getWarehouseId(), d.getProductId(), qty);
+            BigDecimal purchasePrice = products.get(d.getProductId()).purchasePrice();
+            if (purchasePrice != null) costAmount = costAmount.add(qty.multiply(purchasePrice));
             LocalDateTime now = LocalDateTime.now();
 
             d.setRealQty(qty);
@@ -423,13 +445,16 @@ public class WmsStockOutBillService {
             log.setBizType("STOCK_OUT");
             log.setBizNo(bill.getBillNo());
             log.setChangeQty(qty.negate());
-            log.setAfterStockQty(safeQty(stock.getStockQty()));
+            log.setAfterStockQty(stock.stockQty());
             log.setCreateTime(now);
-            stockLogRepository.save(log);
+            stockLogAppender.append(log);
         }
+        stockLogAppender.flush();
 
         bill.setStatus(STATUS_COMPLETED);
         billRepository.save(bill);
+        ledgerOutbox.publish(LedgerOutbox.STOCK_OUT, bill.getId(), bill.getBillNo(), LocalDate.now(), costAmount,
+                bill.getRemark());
 
         WmsIoBillRepository.BillRow row = billRepository.getBillRow(bill.getId());
         return new StockOutBillResponse(
@@ -444,78 +469,6 @@ public class WmsStockOutBillService {
                 row.getCreateTime());
     }
 
-    private WmsStock deductStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return deductStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock deductStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                        "stock not found (warehouseId=" + warehouseId + ", productId=" + productId + ")"));
-
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-        BigDecimal available = stockQty.subtract(lockedQty);
-        if (available.compareTo(qty) < 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "insufficient stock (available=" + available + ", required=" + qty + ")");
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        BigDecimal nextStockQty = stockQty.subtract(qty);
-        stock.setStockQty(nextStockQty);
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(now);
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
-    private WmsStock increaseStockWithRetry(Long warehouseId, Long productId, BigDecimal qty) {
-        int attempts = 0;
-        while (true) {
-            attempts++;
-            try {
-                return increaseStockOnce(warehouseId, productId, qty);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                if (attempts >= 3) throw e;
-            }
-        }
-    }
-
-    private WmsStock increaseStockOnce(Long warehouseId, Long productId, BigDecimal qty) {
-        LocalDateTime now = LocalDateTime.now();
-        WmsStock stock = stockRepository.findFirstByWarehouseIdAndProductId(warehouseId, productId).orElse(null);
-        if (stock == null) {
-            stock = new WmsStock();
-            stock.setWarehouseId(warehouseId);
-            stock.setProductId(productId);
-            stock.setStockQty(qty);
-            stock.setLockedQty(BigDecimal.ZERO);
-            stock.setVersion(0);
-            stock.setUpdateTime(now);
-            validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-            return stockRepository.saveAndFlush(stock);
-        }
-        BigDecimal stockQty = safeQty(stock.getStockQty());
-        BigDecimal lockedQty = safeQty(stock.getLockedQty());
-        validateStockInvariant(stockQty, lockedQty);
-
-        stock.setStockQty(stockQty.add(qty));
-        stock.setLockedQty(lockedQty);
-        stock.setUpdateTime(now);
-        validateStockInvariant(stock.getStockQty(), stock.getLockedQty());
-        return stockRepository.saveAndFlush(stock);
-    }
-
     private static void validateLines(List<StockOutBillLineRequest> lines) {
         Set<Long> seen = new HashSet<>();
         for (StockOutBillLineRequest line : lines) {
@@ -535,33 +488,17 @@ public class WmsStockOutBillService {
         return v == null ? BigDecimal.ZERO : v;
     }
 
-    private static void validateStockInvariant(BigDecimal stockQty, BigDecimal lockedQty) {
-        BigDecimal s = safeQty(stockQty);
-        BigDecimal l = safeQty(lockedQty);
-        if (s.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: stock_qty < 0");
-        }
-        if (l.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty < 0");
-        }
-        if (l.compareTo(s) > 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "invalid stock state: locked_qty > stock_qty");
-        }
-    }
-
     private static String trimToNull(String value) {
         if (value == null) return null;
         String s = value.trim();
         return s.isEmpty() ? null : s;
     }
 
-    private static String generateBillNo() {
+    private String generateBillNo() {
         return generateBillNo("SO");
     }
 
-    private static String generateBillNo(String prefix) {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        int rand = (int) (Math.random() * 9000) + 1000;
-        return prefix + ts + "-" + rand;
+    private String generateBillNo(String prefix) {
+        return docNumbers.next(prefix);
     }
 }
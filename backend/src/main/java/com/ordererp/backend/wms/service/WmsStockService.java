@@ -1,12 +1,12 @@
 package com.ordererp.backend.wms.service;
 
+import com.ordererp.backend.common.dto.CursorPageResponse;
 import com.ordererp.backend.wms.dto.WmsStockResponse;
 import com.ordererp.backend.wms.excel.WmsStockExcelRow;
 import com.ordererp.backend.wms.repository.WmsStockRepository;
 import java.math.BigDecimal;
 import java.util.List;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
@@ -19,34 +19,51 @@ public class WmsStockService {
     }
 
     public Page<WmsStockResponse> page(String keyword, Long warehouseId, Pageable pageable) {
-        return stockRepository.pageRows(keyword, warehouseId, pageable).map(r -> {
-            BigDecimal stockQty = r.getStockQty() == null ? BigDecimal.ZERO : r.getStockQty();
-            BigDecimal lockedQty = r.getLockedQty() == null ? BigDecimal.ZERO : r.getLockedQty();
-            BigDecimal qcQty = r.getQcQty() == null ? BigDecimal.ZERO : r.getQcQty();
-            BigDecimal available = stockQty.subtract(lockedQty);
-            return new WmsStockResponse(
-                    r.getId(),
-                    r.getWarehouseId(),
-                    r.getWarehouseName(),
-                    r.getProductId(),
-                    r.getProductCode(),
-                    r.getProductName(),
-                    r.getUnit(),
-                    stockQty,
-                    lockedQty,
-                    qcQty,
-                    available,
-                    r.getUpdateTime());
-        });
+        return stockRepository.pageRows(keyword, warehouseId, pageable).map(WmsStockService::toResponse);
     }
 
-    public List<WmsStockExcelRow> export(String keyword, Long warehouseId) {
-        Page<WmsStockResponse> res = page(keyword, warehouseId, PageRequest.of(0, 50_000));
-        return res.getContent().stream().map(this::toExcelRow).toList();
+    /**
+     * 游标分页：afterId 为上一页返回的 nextCursor（首页传 null）；includeTotal=false 时不执行 count。
+     */
+    public CursorPageResponse<WmsStockResponse> seek(String keyword, Long warehouseId, Long afterId, Integer limit,
+            boolean includeTotal) {
+        int size = CursorPageResponse.clampLimit(limit);
+        var rows = stockRepository.seekRows(keyword, warehouseId, afterId, size + 1);
+        Long total = includeTotal ? stockRepository.countRows(keyword, warehouseId) : null;
+        return CursorPageResponse.of(rows, size, WmsStockRepository.StockRow::getId, WmsStockService::toResponse, total);
+    }
+
+    /**
+     * 导出取数：按 id 倒序取 afterId 之后的一批（供 Excel 流式导出逐批调用，不执行 count）。
+     */
+    public List<WmsStockResponse> exportBatch(String keyword, Long warehouseId, Long afterId, int limit) {
+        return stockRepository.seekRows(keyword, warehouseId, afterId, limit).stream()
+                .map(WmsStockService::toResponse)
+                .toList();
+    }
+
+    private static WmsStockResponse toResponse(WmsStockRepository.StockRow r) {
+        BigDecimal stockQty = r.getStockQty() == null ? BigDecimal.ZERO : r.getStockQty();
+        BigDecimal lockedQty = r.getLockedQty() == null ? BigDecimal.ZERO : r.getLockedQty();
+        BigDecimal qcQty = r.getQcQty() == null ? BigDecimal.ZERO : r.getQcQty();
+        BigDecimal available = stockQty.subtract(lockedQty);
+        return new WmsStockResponse(
+                r.getId(),
+                r.getWarehouseId(),
+                r.getWarehouseName(),
+                r.getProductId(),
+                r.getProductCode(),
+                r.getProductName(),
+                r.getUnit(),
+                stockQty,
+                lockedQty,
+                qcQty,
+                available,
+                r.getUpdateTime());
     }
 
     public WmsStockExcelRow toExcelRow(WmsStockResponse r) {
-        // 导出 Excel 行：Controller 采用分页写出（流式）导出时，会按页把查询结果转换为 Excel 行。
+        // 导出 Excel 行：Controller 采用游标分批写出（流式）导出时，逐批把查询结果转换为 Excel 行。
         WmsStockExcelRow row = new WmsStockExcelRow();
         row.setWarehouseName(r.warehouseName());
         row.setProductCode(r.productCode());
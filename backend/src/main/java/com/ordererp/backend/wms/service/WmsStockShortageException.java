@@ -0,0 +1,34 @@
+package com.ordererp.backend.wms.service;
+
+import com.ordererp.backend.common.exception.DetailedStatusException;
+import com.ordererp.backend.wms.dto.WmsStockShortageLine;
+import java.util.List;
+import java.util.Map;
+import org.springframework.http.HttpStatus;
+
+/**
+ * 批量锁库失败：携带所有库存不足的 SKU，便于前端逐行提示（而不是只报第一行）。
+ * 响应体中以 "shortages" 字段返回。
+ */
+public class WmsStockShortageException extends DetailedStatusException {
+    private final List<WmsStockShortageLine> shortages;
+
+    public WmsStockShortageException(List<WmsStockShortageLine> shortages) {
+        super(HttpStatus.BAD_REQUEST, buildMessage(shortages), Map.of("shortages", List.copyOf(shortages)));
+        this.shortages = List.copyOf(shortages);
+    }
+
+    public List<WmsStockShortageLine> getShortages() {
+        return shortages;
+    }
+
+    private static String buildMessage(List<WmsStockShortageLine> shortages) {
+        StringBuilder sb = new StringBuilder("库存不足（").append(shortages.size()).append(" 个商品）");
+        for (WmsStockShortageLine s : shortages) {
+            sb.append("; productId=").append(s.productId())
+                    .append(", 可用=").append(s.availableQty())
+                    .append(", 需要=").append(s.requiredQty());
+        }
+        return sb.toString();
+    }
+}
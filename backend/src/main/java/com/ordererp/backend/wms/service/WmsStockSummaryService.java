@@ -0,0 +1,84 @@
+package com.ordererp.backend.wms.service;
+
+import com.ordererp.backend.common.dto.CursorPageResponse;
+import com.ordererp.backend.wms.dto.WmsLowStockResponse;
+import com.ordererp.backend.wms.dto.WmsStockDashboardResponse;
+import com.ordererp.backend.wms.repository.WmsStockSummaryRepository;
+import java.math.BigDecimal;
+import java.util.List;
+import org.springframework.stereotype.Service;
+
+/**
+ * 库存汇总查询：读取增量维护的汇总表，耗时只与结果行数有关（不扫描 wms_stock）。
+ */
+@Service
+public class WmsStockSummaryService {
+    private final WmsStockSummaryRepository summaryRepository;
+    private final WmsStockSummaryUpdater summaryUpdater;
+
+    public WmsStockSummaryService(WmsStockSummaryRepository summaryRepository, WmsStockSummaryUpdater summaryUpdater) {
+        this.summaryRepository = summaryRepository;
+        this.summaryUpdater = summaryUpdater;
+    }
+
+    /**
+     * 低库存预警：可用量低于商品 lowStock 的商品，按商品 id 倒序游标分页。
+     */
+    public CursorPageResponse<WmsLowStockResponse> lowStock(Long afterId, Integer limit, boolean includeTotal) {
+        summaryUpdater.flush();
+        int size = CursorPageResponse.clampLimit(limit);
+        var rows = summaryRepository.seekLowStock(afterId, size + 1);
+        Long total = includeTotal ? summaryRepository.countLowStock() : null;
+        return CursorPageResponse.of(rows, size, WmsStockSummaryRepository.LowStockRow::getProductId,
+                WmsStockSummaryService::toLowStockResponse, total);
+    }
+
+    /**
+     * 库存看板：全局合计 + 各仓库合计 + 低库存商品数。
+     */
+    public WmsStockDashboardResponse dashboard() {
+        summaryUpdater.flush();
+        List<WmsStockDashboardResponse.WarehouseTotal> warehouses = summaryRepository.listWarehouseTotals().stream()
+                .map(r -> new WmsStockDashboardResponse.WarehouseTotal(
+                        r.getWarehouseId(),
+                        r.getWarehouseName(),
+                        safeQty(r.getStockQty()),
+                        safeQty(r.getLockedQty()),
+                        safeQty(r.getQcQty()),
+                        safeQty(r.getAvailableQty())))
+                .toList();
+
+        BigDecimal stockQty = BigDecimal.ZERO;
+        BigDecimal lockedQty = BigDecimal.ZERO;
+        BigDecimal qcQty = BigDecimal.ZERO;
+        for (WmsStockDashboardResponse.WarehouseTotal w : warehouses) {
+            stockQty = stockQty.add(w.stockQty());
+            lockedQty = lockedQty.add(w.lockedQty());
+            qcQty = qcQty.add(w.qcQty());
+        }
+        return new WmsStockDashboardResponse(stockQty, lockedQty, qcQty, stockQty.subtract(lockedQty),
+                summaryRepository.countLowStock(), warehouses);
+    }
+
+    private static WmsLowStockResponse toLowStockResponse(WmsStockSummaryRepository.LowStockRow r) {
+        BigDecimal available = safeQty(r.getAvailableQty());
+        BigDecimal shortage = r.getLowStock() == null
+                ? BigDecimal.ZERO
+                : BigDecimal.valueOf(r.getLowStock()).subtract(available);
+        return new WmsLowStockResponse(
+                r.getProductId(),
+                r.getProductCode(),
+                r.getProductName(),
+                r.getUnit(),
+                r.getLowStock(),
+                safeQty(r.getStockQty()),
+                safeQty(r.getLockedQty()),
+                safeQty(r.getQcQty()),
+                available,
+                shortage);
+    }
+
+    private static BigDecimal safeQty(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+}
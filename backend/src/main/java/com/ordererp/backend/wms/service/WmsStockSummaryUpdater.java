@@ -0,0 +1,280 @@
+package com.ordererp.backend.wms.service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 库存汇总维护：把库存账本的数量差额累加到 wms_stock_product_summary_slot / wms_stock_warehouse_summary。
+ *
+ * <p>差额先在事务内按商品、按仓库合并，再在 {@link #flush}（或事务提交前）一次性写入：</p>
+ * <ul>
+ *   <li>同一单据多行同一商品只更新一次汇总行；</li>
+ *   <li>汇总行推迟到提交前、按 id 升序加锁，持锁时间最短，
+ *       且所有事务先锁库存行、后锁汇总行，加锁顺序一致，不会与库存行锁形成死锁；</li>
+ *   <li>仓库合计是同仓库所有事务共用的热点行：拆成 N 个槽位（{@code app.wms.summary.warehouse-slots}），
+ *       每个事务随机写其中一个，读取时按仓库求和，同仓库的并发事务不再排队等同一把行锁；</li>
+ *   <li>商品合计同理（同一商品在多个仓库出入库）：差额随机写入 wms_stock_product_summary_slot 的一个槽位
+ *       （{@code app.wms.summary.product-slots}），由 {@link #rollup} 定时并入 wms_stock_product_summary
+ *       （below_low 索引所在的表）后删除；低库存查询把尚未合并的差额一并算上。</li>
+ * </ul>
+ *
+ * <p>业务代码只需调用 {@link #add}，不要在处理中途 flush（否则汇总行会先于后续库存行加锁）；
+ * 汇总查询在读取前调用 {@link #flush}，保证同一事务内也能看到最新值。没有活动事务时直接写入。</p>
+ */
+@Component
+public class WmsStockSummaryUpdater {
+    private static final Logger log = LoggerFactory.getLogger(WmsStockSummaryUpdater.class);
+
+    private static final String PRODUCT_UPSERT_SQL = """
+            insert into wms_stock_product_summary_slot (product_id, slot, stock_qty, locked_qty, qc_qty, update_time)
+            values (?, ?, ?, ?, ?, ?)
+            on duplicate key update
+              stock_qty = stock_qty + values(stock_qty),
+              locked_qty = locked_qty + values(locked_qty),
+              qc_qty = qc_qty + values(qc_qty),
+              update_time = values(update_time)
+            """;
+
+    private static final String WAREHOUSE_UPSERT_SQL = """
+            insert into wms_stock_warehouse_summary (warehouse_id, slot, stock_qty, locked_qty, qc_qty, update_time)
+            values (?, ?, ?, ?, ?, ?)
+            on duplicate key update
+              stock_qty = stock_qty + values(stock_qty),
+              locked_qty = locked_qty + values(locked_qty),
+              qc_qty = qc_qty + values(qc_qty),
+              update_time = values(update_time)
+            """;
+
+    private static final String ROLLUP_CLAIM_SQL = """
+            select product_id, slot, stock_qty, locked_qty, qc_qty
+            from wms_stock_product_summary_slot
+            order by product_id, slot
+            limit ?
+            for update skip locked
+            """;
+
+    private static final String ROLLUP_MERGE_SQL = """
+            insert into wms_stock_product_summary (product_id, stock_qty, locked_qty, qc_qty, update_time)
+            values (?, ?, ?, ?, ?)
+            on duplicate key update
+              stock_qty = stock_qty + values(stock_qty),
+              locked_qty = locked_qty + values(locked_qty),
+              qc_qty = qc_qty + values(qc_qty),
+              update_time = values(update_time)
+            """;
+
+    private static final String ROLLUP_DELETE_SQL = """
+            delete from wms_stock_product_summary_slot where product_id = ? and slot = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate rollupTx;
+    private final int warehouseSlots;
+    private final int productSlots;
+    private final int rollupBatchSize;
+
+    public WmsStockSummaryUpdater(JdbcTemplate jdbcTemplate, PlatformTransactionManager txManager,
+            @Value("${app.wms.summary.warehouse-slots:8}") int warehouseSlots,
+            @Value("${app.wms.summary.product-slots:8}") int productSlots,
+            @Value("${app.wms.summary.rollup-batch-size:1000}") int rollupBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        // 读已提交：领取槽位行只加记录锁、不加间隙锁，不挡业务事务插入新的槽位行
+        this.rollupTx = new TransactionTemplate(txManager);
+        this.rollupTx.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.warehouseSlots = Math.max(1, warehouseSlots);
+        this.productSlots = Math.max(1, productSlots);
+        this.rollupBatchSize = Math.max(1, rollupBatchSize);
+    }
+
+    /**
+     * 记录一次库存数量变化（差额可正可负；null 视为 0）。
+     */
+    public void add(Long warehouseId, Long productId, BigDecimal stockDelta, BigDecimal lockedDelta,
+            BigDecimal qcDelta) {
+        if (warehouseId == null || productId == null) return;
+        Delta d = new Delta(safeQty(stockDelta), safeQty(lockedDelta), safeQty(qcDelta));
+        if (d.isZero()) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Pending single = new Pending();
+            single.merge(warehouseId, productId, d);
+            write(single);
+            return;
+        }
+        pending().merge(warehouseId, productId, d);
+    }
+
+    @Scheduled(fixedDelayString = "${app.wms.summary.rollup-interval-ms:10000}",
+            initialDelayString = "${app.wms.summary.rollup-interval-ms:10000}")
+    public void scheduledRollup() {
+        try {
+            rollup();
+        } catch (RuntimeException e) {
+            log.warn("wms stock product summary rollup failed", e);
+        }
+    }
+
+    /**
+     * 把商品汇总的槽位差额并入 wms_stock_product_summary 并删除槽位行，返回合并的槽位行数。
+     *
+     * <p>每批一个事务：{@code for update skip locked} 领取槽位行（未提交事务正在写的行跳过，下次再合并），
+     * 按商品合并后累加到商品汇总行，再删除已领取的槽位行。加锁顺序为槽位行 → 商品汇总行；业务事务只锁槽位行，
+     * 商品资料同步阈值只锁商品汇总行，不会形成环。</p>
+     */
+    public int rollup() {
+        int total = 0;
+        while (true) {
+            Integer merged = rollupTx.execute(status -> rollupBatch());
+            int n = merged == null ? 0 : merged;
+            total += n;
+            if (n < rollupBatchSize) break;
+        }
+        return total;
+    }
+
+    private int rollupBatch() {
+        List<SlotRow> rows = jdbcTemplate.query(ROLLUP_CLAIM_SQL, (rs, i) -> new SlotRow(rs.getLong(1), rs.getInt(2),
+                new Delta(safeQty(rs.getBigDecimal(3)), safeQty(rs.getBigDecimal(4)), safeQty(rs.getBigDecimal(5)))),
+                rollupBatchSize);
+        if (rows.isEmpty()) return 0;
+        Map<Long, Delta> byProduct = new TreeMap<>();
+        for (SlotRow r : rows) {
+            byProduct.merge(r.productId(), r.delta(), Delta::plus);
+        }
+        List<Map.Entry<Long, Delta>> merged = new ArrayList<>(byProduct.entrySet());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(ROLLUP_MERGE_SQL, merged, merged.size(), (ps, e) -> {
+            ps.setLong(1, e.getKey());
+            ps.setBigDecimal(2, e.getValue().stock());
+            ps.setBigDecimal(3, e.getValue().locked());
+            ps.setBigDecimal(4, e.getValue().qc());
+            ps.setTimestamp(5, now);
+        });
+        jdbcTemplate.batchUpdate(ROLLUP_DELETE_SQL, rows, rows.size(), (ps, r) -> {
+            ps.setLong(1, r.productId());
+            ps.setInt(2, r.slot());
+        });
+        return rows.size();
+    }
+
+    /**
+     * 把当前事务累计的差额写入汇总表（同一事务内随后的汇总查询即可看到）。
+     */
+    public void flush() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null || pending.isEmpty()) return;
+        write(pending.drain());
+    }
+
+    private Pending pending() {
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    flush();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(WmsStockSummaryUpdater.this);
+                }
+            });
+        }
+        return pending;
+    }
+
+    private void write(Pending pending) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        // TreeMap：按 id 升序写入，不同事务对汇总行的加锁顺序一致
+        upsertProducts(pending.byProduct, now);
+        upsertWarehouses(pending.byWarehouse, now);
+    }
+
+    private void upsertProducts(Map<Long, Delta> deltas, Timestamp now) {
+        if (deltas.isEmpty()) return;
+        List<Map.Entry<Long, Delta>> rows = new ArrayList<>(deltas.entrySet());
+        // 每个商品只写一个随机槽位：仍按商品 id 升序，每个商品一行锁
+        jdbcTemplate.batchUpdate(PRODUCT_UPSERT_SQL, rows, rows.size(), (ps, e) -> {
+            ps.setLong(1, e.getKey());
+            ps.setInt(2, ThreadLocalRandom.current().nextInt(productSlots));
+            ps.setBigDecimal(3, e.getValue().stock());
+            ps.setBigDecimal(4, e.getValue().locked());
+            ps.setBigDecimal(5, e.getValue().qc());
+            ps.setTimestamp(6, now);
+        });
+    }
+
+    private void upsertWarehouses(Map<Long, Delta> deltas, Timestamp now) {
+        if (deltas.isEmpty()) return;
+        List<Map.Entry<Long, Delta>> rows = new ArrayList<>(deltas.entrySet());
+        // 每个仓库只写一个随机槽位：仍按仓库 id 升序，每个仓库一行锁
+        jdbcTemplate.batchUpdate(WAREHOUSE_UPSERT_SQL, rows, rows.size(), (ps, e) -> {
+            ps.setLong(1, e.getKey());
+            ps.setInt(2, ThreadLocalRandom.current().nextInt(warehouseSlots));
+            ps.setBigDecimal(3, e.getValue().stock());
+            ps.setBigDecimal(4, e.getValue().locked());
+            ps.setBigDecimal(5, e.getValue().qc());
+            ps.setTimestamp(6, now);
+        });
+    }
+
+    private static BigDecimal safeQty(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+
+    private record SlotRow(Long productId, int slot, Delta delta) {
+    }
+
+    private record Delta(BigDecimal stock, BigDecimal locked, BigDecimal qc) {
+        Delta plus(Delta o) {
+            return new Delta(stock.add(o.stock), locked.add(o.locked), qc.add(o.qc));
+        }
+
+        boolean isZero() {
+            return stock.signum() == 0 && locked.signum() == 0 && qc.signum() == 0;
+        }
+    }
+
+    private static final class Pending {
+        private Map<Long, Delta> byProduct = new TreeMap<>();
+        private Map<Long, Delta> byWarehouse = new TreeMap<>();
+
+        void merge(Long warehouseId, Long productId, Delta d) {
+            byProduct.merge(productId, d, Delta::plus);
+            byWarehouse.merge(warehouseId, d, Delta::plus);
+        }
+
+        boolean isEmpty() {
+            return byProduct.isEmpty() && byWarehouse.isEmpty();
+        }
+
+        Pending drain() {
+            Pending copy = new Pending();
+            copy.byProduct = byProduct;
+            copy.byWarehouse = byWarehouse;
+            byProduct = new TreeMap<>();
+            byWarehouse = new TreeMap<>();
+            return copy;
+        }
+    }
+}
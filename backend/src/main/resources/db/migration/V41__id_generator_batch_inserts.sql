@@ -0,0 +1,17 @@
+-- Performance: table-backed id generator for high-volume detail tables
+--
+-- IDENTITY 主键会让 Hibernate 每条 insert 立即执行（需要回读自增 id），无法走 JDBC batch。
+-- 下面这些明细表改为 pooled table generator：一次取一段 id（allocationSize=50），insert 可按批发送。
+-- 初始值 = 当前 max(id) + 1 + 50，保证第一段分配不会与已有数据冲突。
+
+create table if not exists sys_id_generator (
+    gen_name varchar(64) not null comment '生成器名称（通常为表名）',
+    next_val bigint not null comment '下一个分配段的边界值',
+    primary key (gen_name)
+) engine=InnoDB default charset=utf8mb4 comment='主键分配表（pooled table generator）';
+
+insert into sys_id_generator (gen_name, next_val)
+select 'wms_io_bill_detail', coalesce(max(id), 0) + 51 from wms_io_bill_detail;
+
+insert into sys_id_generator (gen_name, next_val)
+select 'sal_ship_detail', coalesce(max(id), 0) + 51 from sal_ship_detail;
@@ -0,0 +1,77 @@
+-- Performance: incrementally maintained stock availability summary
+--
+-- 库存账本（WmsStockLedger）每次变更 wms_stock / wms_stock_qc 时，同一事务内把数量差额累加到下面的汇总表：
+-- - wms_stock_product_summary：按商品汇总（跨仓库）的实物/锁定/待检/可用数量，并带上商品的低库存阈值；
+-- - wms_stock_product_summary_slot：商品汇总的待合并差额。同一商品在不同仓库的出入库事务各自随机写一个槽位
+--   （app.wms.summary.product-slots），不在商品汇总行的行锁上排队；定时任务把差额并入 wms_stock_product_summary
+--   并删除槽位行，因此该表只有最近变动过的商品；
+-- - wms_stock_warehouse_summary：按仓库汇总的数量合计。每个仓库拆成 N 个槽位（app.wms.summary.warehouse-slots），
+--   同一仓库的出入库事务各自随机更新一个槽位，不在同一把行锁上排队；读取时按仓库求和（做法同 fin_account_balance_slot）。
+-- available_qty / below_low 为 stored 生成列，由数据库随数量变化自动维护；低库存查询只看 below_low 命中的商品
+-- 和有待合并差额的商品（按两表之和判断），不再扫描 wms_stock。
+
+create table if not exists wms_stock_product_summary (
+    product_id bigint not null comment '商品ID',
+    stock_qty decimal(18, 3) not null default 0.000 comment '实物库存（全部仓库）',
+    locked_qty decimal(18, 3) not null default 0.000 comment '锁定库存（全部仓库）',
+    qc_qty decimal(18, 3) not null default 0.000 comment '待检数量（全部仓库）',
+    available_qty decimal(18, 3) generated always as (stock_qty - locked_qty) stored comment '可用库存',
+    low_stock int default null comment '低库存阈值（取自 base_product，商品删除后为空）',
+    below_low tinyint generated always as (
+        case when low_stock is not null and low_stock > 0 and stock_qty - locked_qty < low_stock then 1 else 0 end
+    ) stored comment '1=可用量低于阈值',
+    update_time datetime default current_timestamp on update current_timestamp,
+    primary key (product_id),
+    key idx_wms_stock_product_summary_below (below_low, product_id)
+) engine=InnoDB default charset=utf8mb4 comment='库存汇总（按商品）';
+
+create table if not exists wms_stock_product_summary_slot (
+    product_id bigint not null comment '商品ID',
+    slot int not null comment '槽位号（0 .. 槽位数 - 1）',
+    stock_qty decimal(18, 3) not null default 0.000 comment '实物库存差额（待合并）',
+    locked_qty decimal(18, 3) not null default 0.000 comment '锁定库存差额（待合并）',
+    qc_qty decimal(18, 3) not null default 0.000 comment '待检数量差额（待合并）',
+    update_time datetime default current_timestamp on update current_timestamp,
+    primary key (product_id, slot)
+) engine=InnoDB default charset=utf8mb4 comment='库存汇总（按商品）待合并差额，分槽位，定时并入 wms_stock_product_summary';
+
+create table if not exists wms_stock_warehouse_summary (
+    warehouse_id bigint not null comment '仓库ID',
+    slot int not null default 0 comment '槽位号（0 .. 槽位数 - 1）',
+    stock_qty decimal(18, 3) not null default 0.000 comment '实物库存',
+    locked_qty decimal(18, 3) not null default 0.000 comment '锁定库存',
+    qc_qty decimal(18, 3) not null default 0.000 comment '待检数量',
+    available_qty decimal(18, 3) generated always as (stock_qty - locked_qty) stored comment '可用库存',
+    update_time datetime default current_timestamp on update current_timestamp,
+    primary key (warehouse_id, slot)
+) engine=InnoDB default charset=utf8mb4 comment='库存汇总（按仓库，分槽位，读取时按仓库求和）';
+
+-- 初始化：按现有库存与商品阈值回填（可重复执行；仓库合计回填到 0 号槽位）
+insert into wms_stock_product_summary (product_id, stock_qty, locked_qty, qc_qty, low_stock)
+select x.product_id, sum(x.stock_qty), sum(x.locked_qty), sum(x.qc_qty), max(x.low_stock)
+from (
+    select s.product_id, s.stock_qty, s.locked_qty, 0.000 as qc_qty, null as low_stock from wms_stock s
+    union all
+    select q.product_id, 0.000, 0.000, q.qc_qty, null from wms_stock_qc q
+    union all
+    select p.id, 0.000, 0.000, 0.000, case when coalesce(p.deleted, 0) = 0 then p.low_stock end from base_product p
+) x
+group by x.product_id
+on duplicate key update
+  stock_qty = values(stock_qty),
+  locked_qty = values(locked_qty),
+  qc_qty = values(qc_qty),
+  low_stock = values(low_stock);
+
+insert into wms_stock_warehouse_summary (warehouse_id, stock_qty, locked_qty, qc_qty)
+select x.warehouse_id, sum(x.stock_qty), sum(x.locked_qty), sum(x.qc_qty)
+from (
+    select s.warehouse_id, s.stock_qty, s.locked_qty, 0.000 as qc_qty from wms_stock s
+    union all
+    select q.warehouse_id, 0.000, 0.000, q.qc_qty from wms_stock_qc q
+) x
+group by x.warehouse_id
+on duplicate key update
+  stock_qty = values(stock_qty),
+  locked_qty = values(locked_qty),
+  qc_qty = values(qc_qty);
@@ -0,0 +1,57 @@
+-- Performance: incrementally maintained customer credit exposure
+--
+-- 信用额度校验以前每次审核都要跑 4 个聚合查询（AR 未收、未对账发货/退货、未发完订单），代价随客户历史增长。
+-- 这里按客户保存一行占用额度，由审核/发货/冲销、退货入库、对账单生成/作废、收款等业务在同一事务内按差额维护
+-- （SalCreditExposureUpdater）；额度校验只需对这一行 select ... for update。
+-- 口径与原聚合查询完全一致，可通过对账接口（SalCreditExposureReconciler）重算比对；
+-- 数量×单价最多 5 位小数，这里保留 5 位，避免逐笔累加产生舍入漂移。
+
+create table if not exists sal_credit_exposure (
+    customer_id bigint not null comment '客户ID（base_partner.id）',
+    outstanding_ar decimal(20, 5) not null default 0.00000 comment '应收对账单未收金额（状态 1-4）',
+    unbilled_ship decimal(20, 5) not null default 0.00000 comment '已发货、未纳入应收对账单的金额',
+    unbilled_return decimal(20, 5) not null default 0.00000 comment '已执行、未纳入应收对账单的退货金额（负数）',
+    open_orders decimal(20, 5) not null default 0.00000 comment '已审核/部分发货订单的未发货金额',
+    update_time datetime default current_timestamp on update current_timestamp,
+    primary key (customer_id)
+) engine=InnoDB default charset=utf8mb4 comment='客户信用额度占用';
+
+-- 初始化：按现有单据回填（可重复执行）
+insert into sal_credit_exposure (customer_id, outstanding_ar, unbilled_ship, unbilled_return, open_orders)
+select x.customer_id, sum(x.outstanding_ar), sum(x.unbilled_ship), sum(x.unbilled_return), sum(x.open_orders)
+from (
+    select b.customer_id,
+           greatest(coalesce(b.total_amount, 0.00) - coalesce(b.received_amount, 0.00), 0.00) as outstanding_ar,
+           0.00 as unbilled_ship, 0.00 as unbilled_return, 0.00 as open_orders
+    from sal_ar_bill b
+    where b.status in (1, 2, 3, 4)
+    union all
+    select s.customer_id, 0.00, d.qty * coalesce(od.price, 0.00), 0.00, 0.00
+    from sal_ship s
+    join sal_ship_detail d on d.ship_id = s.id
+    join sal_order_detail od on od.id = d.order_detail_id
+    left join sal_ar_doc_ref r on r.doc_type = 1 and r.doc_id = s.id
+    where (s.reverse_status is null or s.reverse_status = 0)
+      and s.ship_time is not null
+      and r.id is null
+    union all
+    select rt.customer_id, 0.00, 0.00, 0.00 - coalesce(rt.total_amount, 0.00), 0.00
+    from sal_return rt
+    left join sal_ar_doc_ref x on x.doc_type = 2 and x.doc_id = rt.id
+    where rt.status = 4
+      and rt.execute_time is not null
+      and x.id is null
+    union all
+    select o.customer_id, 0.00, 0.00, 0.00,
+           coalesce(d.price, 0.00) * greatest(coalesce(d.qty, 0.00) - coalesce(d.shipped_qty, 0.00), 0.00)
+    from sal_order o
+    join sal_order_detail d on d.order_id = o.id
+    where o.status in (2, 3)
+) x
+where x.customer_id is not null
+group by x.customer_id
+on duplicate key update
+  outstanding_ar = values(outstanding_ar),
+  unbilled_ship = values(unbilled_ship),
+  unbilled_return = values(unbilled_return),
+  open_orders = values(open_orders);
@@ -0,0 +1,13 @@
+-- Performance: segment-allocated document numbers
+--
+-- 以前各业务自己拼 前缀 + yyyyMMddHHmmss + "-" + 4 位随机数，同一秒内几百张单据就会撞唯一键（uk_*_no），整笔事务失败。
+-- 现在统一由 DocNumberAllocator 按前缀取号：每个节点一次从本表领取一段号码（默认 100 个）在内存中发放，
+-- 剩余不足时后台预取下一段。多节点各自领取不重叠的号段，号码唯一、单节点内递增；节点重启丢弃未用完的号段（允许跳号）。
+-- 新号码格式：前缀 + yyyyMMdd + "-" + 至少 6 位流水，与旧格式（14 位时间戳 / 4 位随机数）长度不同，不会与历史单号冲突。
+
+create table if not exists sys_doc_sequence (
+    seq_key varchar(64) not null comment '序列名（单据号前缀）',
+    next_val bigint not null comment '下一个未分配的流水号',
+    update_time datetime default current_timestamp on update current_timestamp,
+    primary key (seq_key)
+) engine=InnoDB default charset=utf8mb4 comment='单据号号段分配表';
@@ -0,0 +1,44 @@
+-- Purchase AP: month-end statement runs
+--
+-- 月结时一次为全部供应商生成应付对账单：按供应商并行、每个供应商独立事务。
+-- 批次（run）记录整体进度与耗时，明细（run_item）记录每个供应商的结果，前端轮询进度即可，不必等待整个请求返回。
+-- 运行中的批次 running_lock = 1，结束时置空；唯一键保证同一时刻最多一个运行中的批次，插入即抢占。
+-- 执行节点定时续期 heartbeat_time，心跳超时的批次在下次心跳检查或发起新批次时被标记为异常终止并释放抢占。
+
+create table if not exists pur_ap_bill_run (
+    id bigint not null auto_increment,
+    start_date date not null comment '对账起始日期（含）',
+    end_date date not null comment '对账截止日期（含）',
+    status tinyint not null default 1 comment '状态：1运行中 2已完成 3异常终止',
+    running_lock tinyint default null comment '运行中为 1，结束后为空（唯一键：同一时刻最多一个运行中的批次）',
+    total_suppliers int not null default 0 comment '待处理供应商数',
+    processed_suppliers int not null default 0 comment '已处理供应商数',
+    created_bills int not null default 0 comment '生成对账单数',
+    failed_suppliers int not null default 0 comment '失败供应商数',
+    total_amount decimal(16, 2) not null default 0.00 comment '生成对账单金额合计',
+    message varchar(512) default null,
+    create_by varchar(64) default null,
+    start_time datetime default null,
+    finish_time datetime default null,
+    elapsed_ms bigint default null comment '总耗时（毫秒）',
+    heartbeat_time datetime default null comment '执行节点心跳；运行中的批次心跳超时视为节点已退出',
+    primary key (id),
+    unique key uk_pur_ap_bill_run_running (running_lock),
+    key idx_pur_ap_bill_run_status (status, start_time)
+) engine=InnoDB default charset=utf8mb4 comment='应付对账月结批次';
+
+create table if not exists pur_ap_bill_run_item (
+    id bigint not null auto_increment,
+    run_id bigint not null comment '批次ID',
+    supplier_id bigint not null comment '供应商ID',
+    status tinyint not null comment '结果：2已生成 3失败',
+    bill_id bigint default null,
+    bill_no varchar(64) default null,
+    doc_count int not null default 0 comment '纳入单据数',
+    total_amount decimal(16, 2) default null,
+    message varchar(512) default null comment '失败原因',
+    elapsed_ms bigint default null comment '该供应商耗时（毫秒）',
+    create_time datetime default current_timestamp,
+    primary key (id),
+    unique key uk_pur_ap_bill_run_item (run_id, supplier_id)
+) engine=InnoDB default charset=utf8mb4 comment='应付对账月结批次明细（按供应商）';
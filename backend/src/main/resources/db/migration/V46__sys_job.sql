@@ -0,0 +1,28 @@
+-- System: background jobs
+--
+-- 耗时的导入、导出和对账单重算不再占用 Web 请求线程：请求只登记任务并立即返回任务 id，
+-- 任务在有界工作线程池中排队执行，前端按 id 轮询状态/进度，可取消；导出文件保存在服务端，完成后再下载。
+
+create table if not exists sys_job (
+    id bigint not null auto_increment,
+    job_type varchar(64) not null comment '任务类型，如 product-import / stock-log-export / ar-bill-regenerate',
+    title varchar(128) default null comment '任务说明（展示用）',
+    status tinyint not null default 1 comment '状态：1排队中 2运行中 3已完成 4失败 5已取消',
+    progress int not null default 0 comment '已处理数量（行/条）',
+    total int default null comment '总数量（未知为空）',
+    cancel_requested tinyint not null default 0 comment '是否已请求取消',
+    message varchar(512) default null comment '失败/取消原因',
+    result_json text default null comment '任务结果（JSON）',
+    file_name varchar(128) default null comment '结果文件下载名',
+    file_path varchar(255) default null comment '结果文件在任务目录下的文件名',
+    file_size bigint default null,
+    create_by varchar(64) default null,
+    create_time datetime default current_timestamp,
+    start_time datetime default null,
+    finish_time datetime default null,
+    elapsed_ms bigint default null comment '执行耗时（毫秒，不含排队）',
+    heartbeat_time datetime default null comment '执行节点心跳；排队/运行中的任务心跳超时视为节点已退出',
+    primary key (id),
+    key idx_sys_job_create_by (create_by, id),
+    key idx_sys_job_status (status, heartbeat_time)
+) engine=InnoDB default charset=utf8mb4 comment='后台任务';
@@ -0,0 +1,103 @@
+-- Base data: FULLTEXT (ngram) indexes for keyword search
+--
+-- 下拉选项（/options）优先走应用内存中的 n-gram 索引；索引未加载完成（启动预热中）或关闭时，
+-- 回退到这里的 FULLTEXT ngram 索引，代替无法使用索引的 like '%kw%' 全表扫描。
+-- ngram 分词长度取 MySQL 默认 ngram_token_size=2，单字关键词由编码前缀匹配兜底。
+-- 停用词表在建索引时与索引绑定：InnoDB 默认停用词（a / in / on / the / com …）会让 ngram 解析器丢弃包含它们的二元组，
+-- "in" "on" "co" 之类的编码片段就查不到，因此在本会话关闭停用词后建索引，建完恢复。
+-- 另外给 update_time 加索引：内存搜索索引定时按 update_time 增量同步其他节点的修改（BaseSearchIndex.refreshChanged）。
+-- Safe for already-initialized databases: indexes are added only when missing.
+
+set session innodb_ft_enable_stopword = 0;
+
+set @idx_exists := (
+  select count(*)
+  from information_schema.statistics
+  where table_schema = database()
+    and table_name = 'base_product'
+    and index_name = 'ft_base_product_keyword'
+);
+set @sql := if(@idx_exists = 0,
+  'alter table base_product add fulltext index ft_base_product_keyword (product_code, product_name) with parser ngram',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
+
+set @idx_exists := (
+  select count(*)
+  from information_schema.statistics
+  where table_schema = database()
+    and table_name = 'base_partner'
+    and index_name = 'ft_base_partner_keyword'
+);
+set @sql := if(@idx_exists = 0,
+  'alter table base_partner add fulltext index ft_base_partner_keyword (partner_code, partner_name) with parser ngram',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
+
+set @idx_exists := (
+  select count(*)
+  from information_schema.statistics
+  where table_schema = database()
+    and table_name = 'base_warehouse'
+    and index_name = 'ft_base_warehouse_keyword'
+);
+set @sql := if(@idx_exists = 0,
+  'alter table base_warehouse add fulltext index ft_base_warehouse_keyword (warehouse_code, warehouse_name) with parser ngram',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
+
+set session innodb_ft_enable_stopword = 1;
+
+set @idx_exists := (
+  select count(*)
+  from information_schema.statistics
+  where table_schema = database()
+    and table_name = 'base_product'
+    and index_name = 'idx_base_product_update_time'
+);
+set @sql := if(@idx_exists = 0,
+  'alter table base_product add index idx_base_product_update_time (update_time)',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
+
+set @idx_exists := (
+  select count(*)
+  from information_schema.statistics
+  where table_schema = database()
+    and table_name = 'base_partner'
+    and index_name = 'idx_base_partner_update_time'
+);
+set @sql := if(@idx_exists = 0,
+  'alter table base_partner add index idx_base_partner_update_time (update_time)',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
+
+set @idx_exists := (
+  select count(*)
+  from information_schema.statistics
+  where table_schema = database()
+    and table_name = 'base_warehouse'
+    and index_name = 'idx_base_warehouse_update_time'
+);
+set @sql := if(@idx_exists = 0,
+  'alter table base_warehouse add index idx_base_warehouse_update_time (update_time)',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
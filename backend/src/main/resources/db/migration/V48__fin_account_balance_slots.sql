@@ -0,0 +1,35 @@
+-- Performance: striped fund account balances + append-only movement journal
+--
+-- 以前每笔收付款都对 fin_account 行 select ... for update；不指定账户时都落在默认账户上，
+-- 月末批量收款、付款、调拨全部排队等这一把行锁。
+-- 现在余额拆成每个账户 N 个槽位（fin_account_balance_slot），收款随机加到一个槽位，付款从余额足够的槽位扣减；
+-- 单个槽位都不够时才锁住该账户全部槽位合并判断，仍保证账户总余额不为负（FinAccountBalanceEngine）。
+-- 每笔变动同时追加一行 fin_account_movement，定时汇总进 fin_account.balance（FinAccountBalanceRollup）：
+--   sum(槽位余额) = fin_account.balance + sum(未汇总的变动)
+-- 页面/下拉框显示的余额直接取槽位合计，不受汇总延迟影响。
+
+create table if not exists fin_account_balance_slot (
+    account_id bigint not null comment '资金账户ID（fin_account.id）',
+    slot int not null comment '槽位号（0 .. app.finance.balance.slots - 1）',
+    balance decimal(16, 2) not null default 0.00 comment '该槽位持有的部分余额（账户余额 = 各槽位之和）',
+    update_time datetime default current_timestamp,
+    primary key (account_id, slot)
+) engine=InnoDB default charset=utf8mb4 comment='资金账户余额槽位';
+
+create table if not exists fin_account_movement (
+    id bigint not null auto_increment,
+    account_id bigint not null comment '资金账户ID（fin_account.id）',
+    payment_id bigint null comment '收付款流水ID（fin_payment.id）',
+    amount decimal(16, 2) not null comment '带符号的变动额（+ 收款 / 付款作废，- 付款 / 收款作废）',
+    rolled tinyint not null default 0 comment '1 已汇总进 fin_account.balance',
+    create_time datetime default current_timestamp,
+    primary key (id),
+    key idx_fin_account_movement_rolled (rolled, id),
+    key idx_fin_account_movement_account (account_id, id)
+) engine=InnoDB default charset=utf8mb4 comment='资金账户变动日志（只追加）';
+
+-- 初始化：现有余额全部放进 0 号槽位（可重复执行）
+insert into fin_account_balance_slot (account_id, slot, balance)
+select a.id, 0, a.balance
+from fin_account a
+on duplicate key update balance = balance;
@@ -0,0 +1,66 @@
+-- Performance: per-day fund account movement totals for account statements
+--
+-- 对账单（期初余额 + 区间流水 + 逐笔余额 + 期末余额）以前只能从头扫 fin_payment 按类型求和。
+-- 这里按 (账户, 交易日期) 保存当天收款合计/付款合计，由余额汇总（FinAccountBalanceRollup）从变动日志累加：
+-- 作废流水的变动记在原流水的交易日期上，冲减当天的合计。
+-- 任意日期 D 的日初余额 = 当前余额 - 交易日期 >= D 的每日合计（含尚未汇总的变动），代价与天数相关，与流水笔数无关。
+
+alter table fin_account_movement
+    add column pay_type tinyint null comment '1收款 2付款（对应 fin_payment.type）' after amount,
+    add column biz_date date null comment '交易日期（fin_payment.pay_date；作废沿用原流水日期）' after pay_type;
+
+update fin_account_movement m
+join fin_payment p on p.id = m.payment_id
+set m.pay_type = p.type, m.biz_date = p.pay_date
+where m.biz_date is null;
+
+create table if not exists fin_account_daily (
+    account_id bigint not null comment '资金账户ID（fin_account.id）',
+    biz_date date not null comment '交易日期（fin_payment.pay_date）',
+    receipt_amount decimal(16, 2) not null default 0.00 comment '当日已完成收款合计',
+    payment_amount decimal(16, 2) not null default 0.00 comment '当日已完成付款合计',
+    update_time datetime default current_timestamp,
+    primary key (account_id, biz_date)
+) engine=InnoDB default charset=utf8mb4 comment='资金账户每日收付合计';
+
+-- 初始化 1：V48 之前的流水（没有变动日志），只计未作废的
+insert into fin_account_daily (account_id, biz_date, receipt_amount, payment_amount)
+select p.account_id, p.pay_date,
+       sum(case when p.type = 1 then p.amount else 0.00 end),
+       sum(case when p.type = 2 then p.amount else 0.00 end)
+from fin_payment p
+where p.status = 1
+  and not exists (select 1 from fin_account_movement m where m.payment_id = p.id)
+group by p.account_id, p.pay_date
+on duplicate key update
+  receipt_amount = receipt_amount + values(receipt_amount),
+  payment_amount = payment_amount + values(payment_amount);
+
+-- 初始化 2：已汇总进 fin_account.balance 的变动（未汇总的由下一次汇总累加）
+insert into fin_account_daily (account_id, biz_date, receipt_amount, payment_amount)
+select m.account_id, m.biz_date,
+       sum(case when m.pay_type = 1 then m.amount else 0.00 end),
+       sum(case when m.pay_type = 2 then 0.00 - m.amount else 0.00 end)
+from fin_account_movement m
+where m.rolled = 1
+  and m.biz_date is not null
+group by m.account_id, m.biz_date
+on duplicate key update
+  receipt_amount = receipt_amount + values(receipt_amount),
+  payment_amount = payment_amount + values(payment_amount);
+
+-- 对账单明细按 (账户, 交易日期, id) 顺序分页
+set @idx_exists := (
+  select count(*)
+  from information_schema.statistics
+  where table_schema = database()
+    and table_name = 'fin_payment'
+    and index_name = 'idx_fin_payment_account_date'
+);
+set @sql := if(@idx_exists = 0,
+  'alter table fin_payment add key idx_fin_payment_account_date (account_id, pay_date, id)',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
@@ -0,0 +1,53 @@
+-- Performance: per (account, month) ledger aggregates for trial balance / period balance queries
+--
+-- 试算平衡以前只能对整张 ledger_entry 按科目求和。这里按 (科目, 月份) 保存本期借方/贷方合计与期末余额
+-- （期末余额 = 截至该月末的累计 借方 - 贷方），分录新增/删除时在同一事务内按差额维护（LedgerPeriodBalanceUpdater）：
+-- 本月行累加借贷发生额，本月及以后各月的期末余额一起调整。没有发生额的月份不建行，查询时沿用最近一个月的期末余额。
+
+create table if not exists ledger_period_balance (
+    account_code varchar(64) not null comment '科目编码',
+    period int not null comment '会计期间（yyyymm）',
+    debit_total decimal(19, 2) not null default 0.00 comment '本期借方发生额',
+    credit_total decimal(19, 2) not null default 0.00 comment '本期贷方发生额',
+    closing_balance decimal(19, 2) not null default 0.00 comment '期末余额（截至本月末累计 借方 - 贷方）',
+    entry_count int not null default 0 comment '本期分录数',
+    update_time datetime default current_timestamp,
+    primary key (account_code, period),
+    key idx_ledger_period_balance_period (period)
+) engine=InnoDB default charset=utf8mb4 comment='科目期间余额（按科目、月份）';
+
+-- 初始化：按现有分录回填（可重复执行）
+insert into ledger_period_balance (account_code, period, debit_total, credit_total, closing_balance, entry_count)
+select x.account_code, x.period, x.debit_total, x.credit_total,
+       sum(x.debit_total - x.credit_total) over (partition by x.account_code order by x.period),
+       x.entry_count
+from (
+    select e.account_code,
+           year(e.entry_date) * 100 + month(e.entry_date) as period,
+           sum(e.debit) as debit_total,
+           sum(e.credit) as credit_total,
+           count(*) as entry_count
+    from ledger_entry e
+    group by e.account_code, year(e.entry_date) * 100 + month(e.entry_date)
+) x
+on duplicate key update
+  debit_total = values(debit_total),
+  credit_total = values(credit_total),
+  closing_balance = values(closing_balance),
+  entry_count = values(entry_count);
+
+-- 分录列表按科目 + 日期范围查询
+set @idx_exists := (
+  select count(*)
+  from information_schema.statistics
+  where table_schema = database()
+    and table_name = 'ledger_entry'
+    and index_name = 'idx_ledger_entry_account_date'
+);
+set @sql := if(@idx_exists = 0,
+  'alter table ledger_entry add key idx_ledger_entry_account_date (account_code, entry_date)',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
@@ -0,0 +1,35 @@
+-- Ledger: vouchers (balanced groups of entries) for bulk posting
+--
+-- 批量过账接口（LedgerPostingService）一次接收成千上万张凭证：凭证头 id 按批从 sys_doc_sequence 领取一段连续值
+-- （JDBC 批量 insert 不回读自增 id 也能返回每张凭证的 id），分录仍用自增 id 批量写入并记录所属凭证。
+-- external_id 为调用方提供的幂等键（可空），重复提交同一凭证时返回已有凭证。
+
+create table if not exists ledger_voucher (
+    id bigint not null comment '凭证ID（从 sys_doc_sequence 的 LEDGER_VOUCHER 号段领取）',
+    voucher_no varchar(64) not null comment '凭证号',
+    voucher_date date not null comment '凭证日期',
+    description varchar(255) null comment '摘要',
+    external_id varchar(128) null comment '调用方提供的幂等键',
+    line_count int not null comment '分录行数',
+    debit_total decimal(19, 2) not null comment '借方合计（= 贷方合计）',
+    created_at timestamp not null default current_timestamp comment '创建时间',
+    primary key (id),
+    unique key uk_ledger_voucher_no (voucher_no),
+    unique key uk_ledger_voucher_external (external_id),
+    key idx_ledger_voucher_date (voucher_date)
+) engine=InnoDB default charset=utf8mb4 comment='记账凭证';
+
+set @col_exists := (
+  select count(*)
+  from information_schema.columns
+  where table_schema = database()
+    and table_name = 'ledger_entry'
+    and column_name = 'voucher_id'
+);
+set @sql := if(@col_exists = 0,
+  'alter table ledger_entry add column voucher_id bigint null after id, add key idx_ledger_entry_voucher (voucher_id)',
+  'select 1'
+);
+prepare stmt from @sql;
+execute stmt;
+deallocate prepare stmt;
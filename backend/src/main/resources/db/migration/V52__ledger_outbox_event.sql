@@ -0,0 +1,30 @@
+-- Ledger: transactional outbox for auto-posting business events
+--
+-- 出库执行、采购入库、销售发货、应收收款、应付付款在各自的业务事务内往本表写一行事件（金额带符号，负数为冲销），
+-- 业务事务回滚则事件一起回滚，提交则一定留下事件；请求路径上只多一条 insert。
+-- 后台 LedgerOutboxRelay 按 id 顺序成批读取待处理事件（for update skip locked，多实例互不阻塞），
+-- 按 app.ledger.outbox.rules 的记账规则生成凭证并在同一事务内标记已处理。
+-- 凭证以 "OUTBOX-" + 事件 id 作为 ledger_voucher.external_id，重复转发同一事件只会得到同一张凭证。
+-- 整批过账事务抛异常时逐条重试；仍失败的事件累加 attempts、记下 last_error，并把 next_attempt_time 推后（指数退避），
+-- 领取时跳过未到时间的行；达到 app.ledger.outbox.max-attempts 次标记失败（status=3）。
+
+create table if not exists ledger_outbox_event (
+    id bigint not null auto_increment,
+    event_type varchar(32) not null comment '事件类型：STOCK_OUT出库 PURCHASE_IN采购入库 PURCHASE_RETURN采购退货 SALES_SHIP销售发货 SALES_COST销售成本 SALES_RETURN销售退货 SALES_RETURN_COST销售退货成本 AR_RECEIPT应收收款 AP_PAYMENT应付付款',
+    biz_id bigint null comment '来源单据ID（冲销按 event_type + biz_id 汇总）',
+    biz_no varchar(64) null comment '来源单据号（写入凭证摘要和分录辅助信息）',
+    event_date date not null comment '凭证日期',
+    amount decimal(19, 2) not null comment '金额（带符号，负数为冲销，转发时借贷方向对调）',
+    remark varchar(255) null comment '备注',
+    status tinyint not null default 0 comment '0待处理 1已过账 2已跳过（无记账规则） 3失败',
+    attempts int not null default 0 comment '转发失败次数',
+    next_attempt_time datetime(3) null comment '下次可领取时间（失败退避，空表示立即可领）',
+    voucher_id bigint null comment '生成的凭证ID（ledger_voucher.id）',
+    last_error varchar(500) null comment '跳过/失败原因',
+    create_time datetime(3) not null comment '事件写入时间',
+    process_time datetime(3) null comment '转发处理时间',
+    primary key (id),
+    -- 领取（LedgerOutboxRelay）：status = 0 按 id 顺序扫描，退避时间直接在索引上判断，未到时间的行不用回表
+    key idx_ledger_outbox_claim (status, id, next_attempt_time),
+    key idx_ledger_outbox_biz (event_type, biz_id)
+) engine=InnoDB default charset=utf8mb4 comment='记账发件箱（业务事件待转凭证）';
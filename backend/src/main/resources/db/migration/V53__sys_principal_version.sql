@@ -0,0 +1,12 @@
+-- Security: per-user principal version for validating cached principals across nodes
+--
+-- JwtAuthenticationFilter 按 token 缓存已认证用户（SysPrincipalCache）。本节点的失效是即时的，其他节点以前要等 TTL 过期。
+-- 用户资料/状态/角色、密码变更时在同一事务内把该用户的版本号加 1，角色授权变更时把全局版本（user_id = 0）加 1；
+-- 缓存命中前按主键读取 (0, 用户ID) 两行版本号之和，与缓存时的版本不一致即重新加载，任何节点都立即看到变化。
+
+create table if not exists sys_principal_version (
+    user_id bigint not null comment '用户ID（0 表示全局：角色授权变更）',
+    version bigint not null default 0 comment '版本号（每次变更加 1）',
+    update_time datetime default current_timestamp on update current_timestamp,
+    primary key (user_id)
+) engine=InnoDB default charset=utf8mb4 comment='已认证用户缓存版本';
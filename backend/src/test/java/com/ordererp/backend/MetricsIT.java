@@ -0,0 +1,214 @@
+package com.ordererp.backend;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ordererp.backend.base.entity.BasePartner;
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.sales.dto.SalOrderCreateRequest;
+import com.ordererp.backend.sales.service.SalOrderService;
+import com.ordererp.backend.wms.entity.WmsStock;
+import com.ordererp.backend.wms.repository.WmsStockRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Testcontainers
+/**
+ * 监控指标（Micrometer / Prometheus）：
+ * - 单据状态流转计时 erp.doc.transition 按结果（success / rejected）分别计数
+ * - 行锁查询（findByIdForUpdate）的仓库调用计时带固定桶直方图
+ * - /actuator/prometheus 只接受 scrape token：匿名、用户 JWT、错误 token 都被拒绝
+ */
+class MetricsIT {
+    static final String SCRAPE_TOKEN = "test-scrape-token";
+
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+        registry.add("app.metrics.scrape-token", () -> SCRAPE_TOKEN);
+    }
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    SalOrderService orderService;
+
+    @Autowired
+    BasePartnerRepository partnerRepository;
+
+    @Autowired
+    BaseWarehouseRepository warehouseRepository;
+
+    @Autowired
+    BaseProductRepository productRepository;
+
+    @Autowired
+    WmsStockRepository stockRepository;
+
+    @Test
+    @Transactional
+    void audit_transitions_are_timed_by_outcome_and_row_locks_have_a_histogram() {
+        BasePartner customer = createCustomer("CUS-TC-METRICS", new BigDecimal("20.00"));
+        BaseWarehouse wh = createWarehouse("WH-TC-METRICS");
+        BaseProduct p = createProduct("SKU-TC-METRICS");
+        prepareStock(wh.getId(), p.getId(), new BigDecimal("10.000"));
+        long successBefore = transitionCount("success");
+        long rejectedBefore = transitionCount("rejected");
+
+        var o1 = orderService.create(orderRequest(customer, wh, p, "tc metrics o1"), "tester");
+        orderService.audit(o1.id(), "auditor");
+        var o2 = orderService.create(orderRequest(customer, wh, p, "tc metrics o2"), "tester");
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> orderService.audit(o2.id(), "auditor"));
+        assertEquals(400, ex.getStatusCode().value());
+
+        assertEquals(successBefore + 1, transitionCount("success"));
+        assertEquals(rejectedBefore + 1, transitionCount("rejected"));
+
+        // 审核时 select ... for update 锁单据：该方法的调用计时发布固定桶直方图
+        Timer lockWait = meterRegistry.find("spring.data.repository.invocations")
+                .tag("method", "findByIdForUpdate")
+                .timer();
+        assertNotNull(lockWait);
+        assertTrue(lockWait.count() > 0);
+        assertTrue(lockWait.takeSnapshot().histogramCounts().length > 0);
+    }
+
+    @Test
+    void prometheus_scrape_requires_the_scrape_token() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().is4xxClientError());
+        mockMvc.perform(get("/actuator/prometheus").header("Authorization", "Bearer wrong-token"))
+                .andExpect(status().is4xxClientError());
+
+        // 登录用户（即使是管理员）的 JWT 不能用来抓取
+        String adminToken = loginAndGetToken("admin", "123456");
+        mockMvc.perform(get("/actuator/prometheus").header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isForbidden());
+
+        mockMvc.perform(get("/actuator/prometheus").header("Authorization", "Bearer " + SCRAPE_TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("jvm_memory_used_bytes")));
+
+        // scrape token 只授予抓取权限，不能访问业务接口
+        mockMvc.perform(get("/api/system/user/profile").header("Authorization", "Bearer " + SCRAPE_TOKEN))
+                .andExpect(status().is4xxClientError());
+    }
+
+    private long transitionCount(String outcome) {
+        Timer timer = meterRegistry.find("erp.doc.transition")
+                .tags("doc", "sal_order", "action", "audit", "outcome", outcome)
+                .timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private String loginAndGetToken(String username, String password) throws Exception {
+        String body = mockMvc.perform(post("/api/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+
+    private static SalOrderCreateRequest orderRequest(BasePartner customer, BaseWarehouse wh, BaseProduct p, String remark) {
+        return new SalOrderCreateRequest(customer.getId(), wh.getId(), LocalDate.now(), remark,
+                List.of(new SalOrderCreateRequest.SalOrderLineRequest(p.getId(), new BigDecimal("1.000"), new BigDecimal("12.00"))));
+    }
+
+    private void prepareStock(Long warehouseId, Long productId, BigDecimal qty) {
+        WmsStock stock = new WmsStock();
+        stock.setWarehouseId(warehouseId);
+        stock.setProductId(productId);
+        stock.setStockQty(qty);
+        stock.setLockedQty(BigDecimal.ZERO);
+        stock.setVersion(0);
+        stock.setUpdateTime(LocalDateTime.now());
+        stockRepository.saveAndFlush(stock);
+    }
+
+    private BasePartner createCustomer(String code, BigDecimal creditLimit) {
+        BasePartner p = new BasePartner();
+        p.setPartnerCode(code);
+        p.setPartnerName(code);
+        p.setType(2);
+        p.setCreditLimit(creditLimit);
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return partnerRepository.saveAndFlush(p);
+    }
+
+    private BaseWarehouse createWarehouse(String code) {
+        BaseWarehouse wh = new BaseWarehouse();
+        wh.setWarehouseCode(code);
+        wh.setWarehouseName(code);
+        wh.setStatus(1);
+        wh.setDeleted(0);
+        wh.setCreateTime(LocalDateTime.now());
+        wh.setUpdateTime(LocalDateTime.now());
+        return warehouseRepository.saveAndFlush(wh);
+    }
+
+    private BaseProduct createProduct(String code) {
+        BaseProduct p = new BaseProduct();
+        p.setProductCode(code);
+        p.setProductName(code);
+        p.setUnit("个");
+        p.setPurchasePrice(new BigDecimal("10.00"));
+        p.setSalePrice(new BigDecimal("12.00"));
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return productRepository.saveAndFlush(p);
+    }
+}
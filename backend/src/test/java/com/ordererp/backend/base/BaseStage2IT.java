@@ -2,23 +2,41 @@ package com.ordererp.backend.base;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.alibaba.excel.EasyExcel;
+import com.ordererp.backend.base.entity.BaseProduct;
 import com.ordererp.backend.base.excel.ProductExcelRow;
+import com.ordererp.backend.base.repository.BaseProductRepository;
 import com.ordererp.backend.base.service.BaseExcelService;
+import com.ordererp.backend.base.service.BaseMasterDataCache;
+import com.ordererp.backend.base.service.BaseSearchIndex;
+import com.ordererp.backend.common.dto.ImportResult;
+import com.ordererp.backend.common.search.FulltextPhrase;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
@@ -42,6 +60,10 @@ import org.testcontainers.junit.jupiter.Testcontainers;
  * 这一类测试关注点：
  * 1) 逻辑删除下的唯一键策略：同编码删除后是否能“复活”旧记录（而不是插入新行导致唯一键冲突）
  * 2) Excel 导出链路是否能生成有效的 xlsx 内容（避免线上出现“导出失败/下载失败”）
+ * 3) 下拉选项走内存关键字索引：增删后同步、按匹配质量排序
+ * 4) 主数据缓存：命中/未命中指标，修改后失效
+ * 5) 下拉选项回退查询（索引未就绪时）：单字编码前缀；FULLTEXT ngram 不受停用词影响，排序与内存索引一致
+ * 6) 内存索引按 update_time 增量同步：其他节点（这里直接改库模拟）的改名/停用也能反映到下拉选项
  */
 class BaseStage2IT {
     @Container
@@ -57,6 +79,8 @@ class BaseStage2IT {
         registry.add("spring.datasource.password", MYSQL::getPassword);
         registry.add("app.datasource.expected-database", () -> "erp_data");
         registry.add("app.datasource.fail-on-mismatch", () -> "true");
+        // 增量同步由用例手动触发，避免定时任务在断言前抢先执行
+        registry.add("app.search.delta-refresh-interval-ms", () -> "3600000");
     }
 
     @Autowired
@@ -68,6 +92,21 @@ class BaseStage2IT {
     @Autowired
     BaseExcelService excelService;
 
+    @Autowired
+    BaseProductRepository productRepository;
+
+    @Autowired
+    BaseSearchIndex searchIndex;
+
+    @Autowired
+    BaseMasterDataCache masterDataCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
     @Test
     void admin_can_create_delete_and_revive_product_by_code() throws Exception {
         // 用例：商品“逻辑删除 + 复活”策略是否正确
@@ -122,6 +161,182 @@ class BaseStage2IT {
         assertTrue(bytes.length > 100, "xlsx bytes should not be empty");
     }
 
+    @Test
+    void excel_import_streams_chunks_and_reports_row_errors() throws Exception {
+        // 用例：商品 Excel 导入按批（默认 1000 行）流式处理，跨批的新增/更新/错误统计正确
+        //
+        // 测试步骤：
+        // 1) 先创建 SKU-TC-IMP-EXIST，导入文件第 2 行更新它的名称
+        // 2) 第 3~2402 行是 2400 个新商品（跨 3 批）
+        // 3) 第 2403 行与第 8 行 SKU 重复（跨批查重），第 2404 行缺少商品名
+        String token = loginAndGetToken("admin", "123456");
+        createProduct(token, "SKU-TC-IMP-EXIST", "导入前名称");
+
+        List<ProductExcelRow> rows = new ArrayList<>();
+        rows.add(productRow("SKU-TC-IMP-EXIST", "导入后名称"));
+        for (int i = 0; i < 2400; i++) {
+            rows.add(productRow("SKU-TC-IMP-%05d".formatted(i), "导入商品" + i));
+        }
+        rows.add(productRow("SKU-TC-IMP-00005", "重复"));
+        rows.add(productRow("SKU-TC-IMP-NONAME", null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EasyExcel.write(out, ProductExcelRow.class).sheet("Products").doWrite(rows);
+        ImportResult result = excelService.importProducts(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(2403, result.total());
+        assertEquals(2400, result.inserted());
+        assertEquals(1, result.updated());
+        assertEquals(2, result.failed());
+        assertEquals(2403, result.errors().get(0).rowNum());
+        assertTrue(result.errors().get(0).message().contains("duplicate SKU"));
+        assertEquals(2404, result.errors().get(1).rowNum());
+
+        assertEquals("导入后名称", productRepository.findFirstByProductCode("SKU-TC-IMP-EXIST").orElseThrow().getProductName());
+        assertEquals("导入商品2399", productRepository.findFirstByProductCode("SKU-TC-IMP-02399").orElseThrow().getProductName());
+    }
+
+    @Test
+    void product_options_use_keyword_index_and_rank_matches() throws Exception {
+        // 用例：/options 走内存关键字索引
+        // - 索引在事务提交后异步刷新，所以这里轮询等待（通常毫秒级）
+        // - 排序：编码全等 > 编码前缀 > 编码包含；名称按 bigram 做“包含”匹配；已删除的商品不再出现
+        String token = loginAndGetToken("admin", "123456");
+        createProduct(token, "ABC-KWX-100", "索引测试其他");
+        createProduct(token, "KWX-100-B", "索引测试螺母");
+        createProduct(token, "KWX-100", "索引测试螺丝");
+        long deletedId = createProduct(token, "KWX-DEL", "索引测试删除").get("id").asLong();
+        mockMvc.perform(delete("/api/base/products/{id}", deletedId).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (searchIndex.searchProducts("kwx", 1).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(searchIndex.searchProducts("kwx", 1).isPresent(), "keyword index should finish loading");
+
+        JsonNode ranked = awaitOptions(token, "kwx-100", n -> n.size() == 3);
+        assertEquals("KWX-100", ranked.get(0).get("productCode").asText());
+        assertEquals("KWX-100-B", ranked.get(1).get("productCode").asText());
+        assertEquals("ABC-KWX-100", ranked.get(2).get("productCode").asText());
+
+        JsonNode byName = awaitOptions(token, "测试螺", n -> n.size() == 2);
+        assertEquals("KWX-100-B", byName.get(0).get("productCode").asText());
+
+        JsonNode deleted = awaitOptions(token, "KWX-DEL", n -> n.isEmpty());
+        assertEquals(0, deleted.size());
+    }
+
+    @Test
+    void option_fallback_queries_use_code_prefix_and_stopword_free_fulltext() throws Exception {
+        // 用例：内存索引未就绪时 /options 走的两条数据库查询
+        // - 单字关键词：只匹配编码前缀（走唯一索引），名称/编码中间包含该字的不算，停用的不返回
+        // - 两字及以上：FULLTEXT ngram 短语匹配；"in" 是 InnoDB 默认停用词，V47 关闭停用词建索引，也能查到
+        String token = loginAndGetToken("admin", "123456");
+        createProduct(token, "QPF-1", "前缀测试");
+        long disabledId = createProduct(token, "QPF-2", "前缀测试停用").get("id").asLong();
+        createProduct(token, "XQ-3", "前缀测试包含");
+        createProduct(token, "FTQ9", "全文测试");
+        createProduct(token, "FTQ9B", "全文测试");
+        createProduct(token, "ACC77", "FTQ9 配件");
+        long ftDisabledId = createProduct(token, "FTQ9C", "全文测试停用").get("id").asLong();
+        createProduct(token, "PWR-01", "Mains Cable");
+        jdbcTemplate.update("update base_product set status = 0 where id in (?, ?)", disabledId, ftDisabledId);
+
+        List<String> prefix = codes(productRepository.optionsByCodePrefix("q", PageRequest.of(0, 50)));
+        assertTrue(prefix.contains("QPF-1"));
+        assertFalse(prefix.contains("QPF-2"), "disabled products are not offered");
+        assertFalse(prefix.contains("XQ-3"), "single-character keywords match the code prefix only");
+        assertTrue(prefix.stream().allMatch(c -> c.toUpperCase().startsWith("Q")));
+
+        List<String> ranked = codes(productRepository.optionsFulltext("ftq9", FulltextPhrase.of("ftq9"), 10));
+        assertEquals(List.of("FTQ9", "FTQ9B", "ACC77"), ranked, "code equals > code prefix > name prefix; disabled excluded");
+
+        List<String> stopword = codes(productRepository.optionsFulltext("in", FulltextPhrase.of("in"), 50));
+        assertTrue(stopword.contains("PWR-01"), "stopword bigrams must stay searchable");
+    }
+
+    @Test
+    void keyword_index_pulls_changes_made_on_other_nodes() throws Exception {
+        // 用例：提交后刷新只覆盖本节点；其他节点的修改由按 update_time 的增量同步拉取
+        // - 这里绕过 Service 直接改库（没有提交后回调），模拟另一个节点的改名与停用
+        String token = loginAndGetToken("admin", "123456");
+        long renamedId = createProduct(token, "DELTA-1", "增量同步原名").get("id").asLong();
+        long disabledId = createProduct(token, "DELTA-2", "增量同步停用").get("id").asLong();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (searchIndex.searchProducts("delta", 1).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(searchIndex.searchProducts("delta", 1).isPresent(), "keyword index should finish loading");
+        assertEquals(2, awaitOptions(token, "增量同步", n -> n.size() == 2).size());
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update("update base_product set product_name = '增量同步新名', update_time = ? where id = ?", now, renamedId);
+        jdbcTemplate.update("update base_product set status = 0, update_time = ? where id = ?", now, disabledId);
+        searchIndex.refreshChanged();
+
+        JsonNode renamed = awaitOptions(token, "增量同步新名", n -> n.size() == 1);
+        assertEquals(1, renamed.size());
+        assertEquals("DELTA-1", renamed.get(0).get("productCode").asText());
+        assertEquals(0, awaitOptions(token, "增量同步原名", n -> n.isEmpty()).size());
+        assertEquals(0, awaitOptions(token, "DELTA-2", n -> n.isEmpty()).size());
+    }
+
+    @Test
+    void master_data_cache_reports_hits_misses_and_reloads_after_update() throws Exception {
+        // 用例：主数据缓存的命中/未命中计入 Micrometer（cache.gets，cache=product），修改商品后缓存失效、重新加载
+        String token = loginAndGetToken("admin", "123456");
+        long id = createProduct(token, "SKU-TC-CACHE-001", "缓存测试商品").get("id").asLong();
+
+        double hits = cacheGets("hit");
+        double misses = cacheGets("miss");
+        assertEquals("缓存测试商品", masterDataCache.getProduct(id).orElseThrow().productName());
+        assertEquals("缓存测试商品", masterDataCache.getProduct(id).orElseThrow().productName());
+        assertEquals(misses + 1, cacheGets("miss"), "first lookup loads from the database");
+        assertEquals(hits + 1, cacheGets("hit"), "second lookup is served from the cache");
+
+        mockMvc.perform(put("/api/base/products/{id}", id)
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"productName\": \"缓存测试商品-改名\"}"))
+                .andExpect(status().isOk());
+        assertEquals("缓存测试商品-改名", masterDataCache.getProduct(id).orElseThrow().productName());
+        assertEquals(misses + 2, cacheGets("miss"), "update invalidates the cached snapshot");
+        assertTrue(meterRegistry.get("cache.size").tag("cache", "product").gauge().value() >= 1);
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "product").tag("result", result).functionCounter().count();
+    }
+
+    private JsonNode awaitOptions(String token, String keyword, Predicate<JsonNode> done) throws Exception {
+        // 测试辅助：轮询 /options 直到满足条件（索引异步刷新），超时返回最后一次结果，由调用方断言
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (true) {
+            MvcResult res = mockMvc.perform(get("/api/base/products/options")
+                            .header("Authorization", "Bearer " + token)
+                            .param("keyword", keyword))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            JsonNode node = objectMapper.readTree(res.getResponse().getContentAsString());
+            if (done.test(node) || System.currentTimeMillis() > deadline) return node;
+            Thread.sleep(50);
+        }
+    }
+
+    private static List<String> codes(List<BaseProduct> rows) {
+        return rows.stream().map(BaseProduct::getProductCode).toList();
+    }
+
+    private static ProductExcelRow productRow(String productCode, String productName) {
+        ProductExcelRow r = new ProductExcelRow();
+        r.setProductCode(productCode);
+        r.setProductName(productName);
+        r.setUnit("个");
+        r.setStatus(1);
+        return r;
+    }
+
     private JsonNode createProduct(String token, String productCode, String productName) throws Exception {
         // 测试辅助：通过 HTTP 调用创建商品接口（走完整鉴权 + Controller + Service + JPA 落库）
         //
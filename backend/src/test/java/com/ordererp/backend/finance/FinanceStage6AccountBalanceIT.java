@@ -0,0 +1,254 @@
+package com.ordererp.backend.finance;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ordererp.backend.finance.dto.FinAccountCreateRequest;
+import com.ordererp.backend.finance.dto.FinAccountStatementResponse;
+import com.ordererp.backend.finance.service.FinAccountBalanceEngine;
+import com.ordererp.backend.finance.service.FinAccountBalanceRollup;
+import com.ordererp.backend.finance.service.FinAccountService;
+import com.ordererp.backend.finance.service.FinAccountStatementService;
+import com.ordererp.backend.finance.service.FinPaymentService;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@Testcontainers
+/**
+ * 资金账户余额槽位（FinAccountBalanceEngine）：并发收付款不丢更新、不透支，汇总后 fin_account.balance 与槽位合计一致；
+ * 对账单（FinAccountStatementService）在汇总前后给出相同的期初/期末/逐笔余额。
+ */
+class FinanceStage6AccountBalanceIT {
+    private static final int THREADS = 8;
+
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> THREADS + 2);
+    }
+
+    @Autowired
+    FinAccountService accountService;
+
+    @Autowired
+    FinPaymentService paymentService;
+
+    @Autowired
+    FinAccountBalanceEngine balanceEngine;
+
+    @Autowired
+    FinAccountBalanceRollup balanceRollup;
+
+    @Autowired
+    FinAccountStatementService statementService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong bizIds = new AtomicLong(System.currentTimeMillis());
+
+    @Test
+    void payment_larger_than_any_slot_consolidates_and_overdraft_is_rejected() {
+        Long accountId = accountService.create(
+                new FinAccountCreateRequest("BAL-SPLIT", null, BigDecimal.ZERO, null), "test").id();
+        for (int i = 0; i < 8; i++) {
+            record(accountId, FinPaymentService.TYPE_RECEIPT, "100.00");
+        }
+        assertEquals(0, new BigDecimal("800.00").compareTo(balanceEngine.balanceOf(accountId)));
+
+        record(accountId, FinPaymentService.TYPE_PAYMENT, "750.00");
+        assertEquals(0, new BigDecimal("50.00").compareTo(balanceEngine.balanceOf(accountId)));
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> record(accountId, FinPaymentService.TYPE_PAYMENT, "100.00"));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        assertTrue(ex.getReason() != null && ex.getReason().contains("当前余额：50.00"), ex.getReason());
+
+        // 作废收款会扣减余额：余额不够冲回时拒绝
+        long receiptBizId = record(accountId, FinPaymentService.TYPE_RECEIPT, "10.00");
+        record(accountId, FinPaymentService.TYPE_PAYMENT, "60.00");
+        ResponseStatusException cancelEx = assertThrows(ResponseStatusException.class,
+                () -> paymentService.cancelByBiz(FinPaymentService.BIZ_TYPE_MANUAL_RECEIPT, receiptBizId, "test"));
+        assertEquals(HttpStatus.CONFLICT, cancelEx.getStatusCode());
+        assertEquals(0, BigDecimal.ZERO.compareTo(balanceEngine.balanceOf(accountId)));
+
+        assertRolledUp(accountId, BigDecimal.ZERO);
+    }
+
+    @Test
+    void concurrent_receipts_and_payments_keep_balance_consistent() throws Exception {
+        BigDecimal opening = new BigDecimal("500.00");
+        Long accountId = accountService.create(
+                new FinAccountCreateRequest("BAL-STRESS", null, opening, null), "test").id();
+
+        Random random = new Random(20250601L);
+        AtomicInteger receipts = new AtomicInteger();
+        AtomicInteger payments = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tasks.add(() -> retrying(errors, () -> {
+                record(accountId, FinPaymentService.TYPE_RECEIPT, "10.00");
+                receipts.incrementAndGet();
+            }));
+        }
+        for (int i = 0; i < 300; i++) {
+            tasks.add(() -> retrying(errors, () -> {
+                try {
+                    record(accountId, FinPaymentService.TYPE_PAYMENT, "10.00");
+                    payments.incrementAndGet();
+                } catch (ResponseStatusException e) {
+                    if (e.getStatusCode() != HttpStatus.BAD_REQUEST) throw e;
+                    rejected.incrementAndGet();
+                }
+            }));
+        }
+        Collections.shuffle(tasks, random);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            tasks.forEach(pool::submit);
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES), "balance stress run timed out");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(errors.isEmpty(), () -> "unexpected errors: " + errors);
+        assertEquals(200, receipts.get());
+        assertEquals(300, payments.get() + rejected.get());
+        assertTrue(rejected.get() > 0, "expected some payments to hit the overdraft check");
+
+        BigDecimal expected = opening.add(BigDecimal.TEN.multiply(BigDecimal.valueOf(receipts.get() - payments.get())));
+        BigDecimal live = balanceEngine.balanceOf(accountId);
+        assertEquals(0, expected.compareTo(live), () -> "expected " + expected + " but slots sum to " + live);
+        Integer negativeSlots = jdbcTemplate.queryForObject(
+                "select count(*) from fin_account_balance_slot where account_id = ? and balance < 0",
+                Integer.class, accountId);
+        assertEquals(0, negativeSlots);
+
+        assertRolledUp(accountId, expected);
+    }
+
+    @Test
+    void statement_balances_come_from_daily_totals_before_and_after_rollup() {
+        Long accountId = accountService.create(
+                new FinAccountCreateRequest("BAL-STATEMENT", null, new BigDecimal("1000.00"), null), "test").id();
+        LocalDate today = LocalDate.now();
+        record(accountId, FinPaymentService.TYPE_RECEIPT, "100.00", today.minusDays(10));
+        record(accountId, FinPaymentService.TYPE_PAYMENT, "30.00", today.minusDays(5));
+        long canceled = record(accountId, FinPaymentService.TYPE_RECEIPT, "50.00", today.minusDays(5));
+        record(accountId, FinPaymentService.TYPE_PAYMENT, "20.00", today);
+        // 作废冲减原交易日（today-5）的合计，对账单里不再出现这笔
+        paymentService.cancelByBiz(FinPaymentService.BIZ_TYPE_MANUAL_RECEIPT, canceled, "test");
+
+        for (int round = 0; round < 2; round++) {
+            FinAccountStatementResponse week = statementService.statement(accountId, today.minusDays(7),
+                    today.minusDays(1), PageRequest.of(0, 50));
+            assertEquals(0, new BigDecimal("1100.00").compareTo(week.openingBalance()));
+            assertEquals(0, new BigDecimal("30.00").compareTo(week.paymentAmount()));
+            assertEquals(0, BigDecimal.ZERO.compareTo(week.receiptAmount()));
+            assertEquals(0, new BigDecimal("1070.00").compareTo(week.closingBalance()));
+            assertEquals(1, week.lines().content().size());
+            assertEquals(0, new BigDecimal("1070.00").compareTo(week.lines().content().get(0).balance()));
+
+            // 分页：第二页第一行之前的余额由每日合计推出，不依赖前一页
+            FinAccountStatementResponse paged = statementService.statement(accountId, today.minusDays(10), today,
+                    PageRequest.of(1, 1));
+            assertEquals(0, new BigDecimal("1000.00").compareTo(paged.openingBalance()));
+            assertEquals(0, new BigDecimal("1050.00").compareTo(paged.closingBalance()));
+            assertEquals(3, paged.lines().totalElements());
+            FinAccountStatementResponse.Line line = paged.lines().content().get(0);
+            assertEquals(0, new BigDecimal("30.00").compareTo(line.paymentAmount()));
+            assertEquals(0, new BigDecimal("1070.00").compareTo(line.balance()));
+
+            assertRolledUp(accountId, new BigDecimal("1050.00"));
+        }
+    }
+
+    private void assertRolledUp(Long accountId, BigDecimal expected) {
+        // 定时汇总可能同时在跑，多试几次直到没有未汇总的变动
+        for (int i = 0; i < 5 && unrolled(accountId) > 0; i++) {
+            balanceRollup.rollup();
+        }
+        assertEquals(0, unrolled(accountId));
+        BigDecimal rolled = jdbcTemplate.queryForObject(
+                "select balance from fin_account where id = ?", BigDecimal.class, accountId);
+        assertEquals(0, expected.compareTo(rolled), () -> "fin_account.balance " + rolled + " != " + expected);
+    }
+
+    private int unrolled(Long accountId) {
+        Integer n = jdbcTemplate.queryForObject(
+                "select count(*) from fin_account_movement where account_id = ? and rolled = 0",
+                Integer.class, accountId);
+        return n == null ? 0 : n;
+    }
+
+    private long record(Long accountId, int type, String amount) {
+        return record(accountId, type, amount, LocalDate.now());
+    }
+
+    private long record(Long accountId, int type, String amount, LocalDate payDate) {
+        long bizId = bizIds.incrementAndGet();
+        int bizType = type == FinPaymentService.TYPE_RECEIPT
+                ? FinPaymentService.BIZ_TYPE_MANUAL_RECEIPT
+                : FinPaymentService.BIZ_TYPE_MANUAL_PAYMENT;
+        paymentService.recordPayment("T-BAL-" + bizId, type, null, accountId, new BigDecimal(amount), bizType, bizId,
+                null, payDate, "test", null, "test");
+        return bizId;
+    }
+
+    /**
+     * 死锁/锁等待超时（ConcurrencyFailureException）由调用方重试，与 WmsStockConcurrencyIT 的口径一致。
+     */
+    private static void retrying(ConcurrentLinkedQueue<Throwable> errors, Runnable action) {
+        for (int attempt = 0; attempt < 5; attempt++) {
+            try {
+                action.run();
+                return;
+            } catch (ConcurrencyFailureException e) {
+                // retry
+            } catch (Throwable t) {
+                errors.add(t);
+                return;
+            }
+        }
+        errors.add(new IllegalStateException("gave up after repeated lock conflicts"));
+    }
+}
@@ -0,0 +1,200 @@
+package com.ordererp.backend.ledger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ordererp.backend.ledger.dto.LedgerEntryCreateRequest;
+import com.ordererp.backend.ledger.dto.LedgerPeriodBalanceResponse;
+import com.ordererp.backend.ledger.dto.LedgerTrialBalanceResponse;
+import com.ordererp.backend.ledger.dto.LedgerVoucherBatchRequest;
+import com.ordererp.backend.ledger.dto.LedgerVoucherBatchResponse;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@Testcontainers
+/**
+ * 科目月度余额（ledger_period_balance）：分录新增/删除（含补录以前月份）后，月度余额与试算平衡表
+ * 与直接从 ledger_entry 求和的结果一致；凭证批量过账（LedgerPostingService）分块写入、按 externalId 幂等。
+ */
+class LedgerBalanceIT {
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+        // 让批量过账分成多块提交
+        registry.add("app.ledger.posting.chunk-lines", () -> "100");
+    }
+
+    @Autowired
+    LedgerEntryService entryService;
+
+    @Autowired
+    LedgerBalanceService balanceService;
+
+    @Autowired
+    LedgerPostingService postingService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void period_balances_and_trial_balance_follow_entry_changes() {
+        // 三月、五月各一对平衡的分录，再补录一笔二月的，最后删掉三月的一笔
+        post("2024-03-10", "T1001", "100.00", "0");
+        LedgerEntry marchCredit = post("2024-03-10", "T6001", "0", "100.00");
+        post("2024-05-02", "T1001", "0", "40.00");
+        post("2024-05-02", "T2202", "40.00", "0");
+        post("2024-02-20", "T1001", "25.00", "0");
+        post("2024-02-20", "T6001", "0", "25.00");
+        entryService.delete(marchCredit.getId());
+
+        List<LedgerPeriodBalanceResponse> cash = balanceService.periodBalances("T1001",
+                YearMonth.of(2024, 1), YearMonth.of(2024, 12));
+        assertEquals(3, cash.size());
+        assertBalance(cash.get(0), "2024-02", "0", "25.00", "0", "25.00");
+        assertBalance(cash.get(1), "2024-03", "25.00", "100.00", "0", "125.00");
+        assertBalance(cash.get(2), "2024-05", "125.00", "0", "40.00", "85.00");
+
+        // 四月没有发生额：沿用三月期末余额；删掉的贷方分录让试算不平衡
+        LedgerTrialBalanceResponse april = balanceService.trialBalance(YearMonth.of(2024, 4));
+        assertEquals(0, BigDecimal.ZERO.compareTo(april.getDebitTotal()));
+        assertEquals(0, new BigDecimal("100.00").compareTo(april.getClosingTotal()));
+        assertTrue(!april.isBalanced());
+
+        post("2024-03-11", "T6001", "0", "100.00");
+        LedgerTrialBalanceResponse may = balanceService.trialBalance(YearMonth.of(2024, 5));
+        assertTrue(may.isBalanced());
+        assertEquals(0, new BigDecimal("40.00").compareTo(may.getDebitTotal()));
+        assertEquals(0, new BigDecimal("40.00").compareTo(may.getCreditTotal()));
+
+        // 与直接汇总 ledger_entry 的结果逐行比对
+        for (LedgerPeriodBalanceResponse line : may.getAccounts()) {
+            Map<String, Object> expected = jdbcTemplate.queryForMap("""
+                    select coalesce(sum(debit - credit), 0) as closing
+                    from ledger_entry
+                    where account_code = ? and entry_date < ?
+                    """, line.getAccountCode(), LocalDate.of(2024, 6, 1));
+            assertEquals(0, ((BigDecimal) expected.get("closing")).compareTo(line.getClosingBalance()),
+                    line.getAccountCode());
+        }
+    }
+
+    @Test
+    void voucher_batch_posts_in_chunks_and_is_idempotent() {
+        // 300 张平衡凭证（每张两行）+ 1 张借贷不平衡的，按 100 行一块提交
+        LedgerVoucherBatchRequest request = new LedgerVoucherBatchRequest();
+        List<LedgerVoucherBatchRequest.Voucher> vouchers = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            vouchers.add(voucher("IT-V-" + i, "2025-03-15", "V1001", "V6001", "10.00", "10.00"));
+        }
+        vouchers.add(5, voucher("IT-V-BAD", "2025-03-15", "V1001", "V6001", "10.00", "9.99"));
+        request.setVouchers(vouchers);
+
+        LedgerVoucherBatchResponse first = postingService.post(request);
+        assertEquals(300, first.getPosted());
+        assertEquals(1, first.getRejected());
+        assertEquals(600, first.getLineCount());
+        LedgerVoucherBatchResponse.Result bad = first.getResults().get(5);
+        assertEquals(LedgerVoucherBatchResponse.REJECTED, bad.getStatus());
+        assertTrue(bad.getErrors().get(0).contains("借贷不平衡"), bad.getErrors().toString());
+
+        Set<Long> voucherIds = new HashSet<>();
+        for (LedgerVoucherBatchResponse.Result r : first.getResults()) {
+            if (r.getVoucherId() != null) voucherIds.add(r.getVoucherId());
+        }
+        assertEquals(300, voucherIds.size());
+        Integer lines = jdbcTemplate.queryForObject("""
+                select count(*) from ledger_entry e join ledger_voucher v on v.id = e.voucher_id
+                where v.external_id like 'IT-V-%'
+                """, Integer.class);
+        assertEquals(600, lines);
+
+        List<LedgerPeriodBalanceResponse> cash = balanceService.periodBalances("V1001",
+                YearMonth.of(2025, 3), YearMonth.of(2025, 3));
+        assertBalance(cash.get(0), "2025-03", "0", "3000.00", "0", "3000.00");
+
+        // 重复提交：按 externalId 返回已有凭证，不再写分录
+        LedgerVoucherBatchResponse again = postingService.post(request);
+        assertEquals(0, again.getPosted());
+        assertEquals(300, again.getDuplicates());
+        assertEquals(first.getResults().get(0).getVoucherId(), again.getResults().get(0).getVoucherId());
+        assertEquals(0, new BigDecimal("3000.00").compareTo(balanceService.periodBalances("V1001",
+                YearMonth.of(2025, 3), YearMonth.of(2025, 3)).get(0).getDebit()));
+
+        // 整批模式：有一张不合法就都不写
+        LedgerVoucherBatchRequest atomic = new LedgerVoucherBatchRequest();
+        atomic.setAtomic(true);
+        atomic.setVouchers(List.of(
+                voucher("IT-A-1", "2025-03-16", "V1001", "V6001", "5.00", "5.00"),
+                voucher("IT-A-2", "2025-03-16", "V1001", "V6001", "5.00", "0")));
+        LedgerVoucherBatchResponse atomicResult = postingService.post(atomic);
+        assertEquals(0, atomicResult.getPosted());
+        assertEquals(LedgerVoucherBatchResponse.SKIPPED, atomicResult.getResults().get(0).getStatus());
+        assertEquals(LedgerVoucherBatchResponse.REJECTED, atomicResult.getResults().get(1).getStatus());
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from ledger_voucher where external_id like 'IT-A-%'", Integer.class));
+
+        // 凭证分录不能单独删除
+        Long lineId = jdbcTemplate.queryForObject("select min(id) from ledger_entry where voucher_id = ?",
+                Long.class, first.getResults().get(0).getVoucherId());
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> entryService.delete(lineId));
+        assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+    }
+
+    private static LedgerVoucherBatchRequest.Voucher voucher(String externalId, String date, String debitAccount,
+            String creditAccount, String debit, String credit) {
+        LedgerVoucherBatchRequest.Voucher v = new LedgerVoucherBatchRequest.Voucher();
+        v.setExternalId(externalId);
+        v.setVoucherDate(LocalDate.parse(date));
+        v.setLines(List.of(
+                new LedgerVoucherBatchRequest.Line(debitAccount, null, new BigDecimal(debit), BigDecimal.ZERO),
+                new LedgerVoucherBatchRequest.Line(creditAccount, null, BigDecimal.ZERO, new BigDecimal(credit))));
+        return v;
+    }
+
+    private LedgerEntry post(String date, String accountCode, String debit, String credit) {
+        LedgerEntryCreateRequest request = new LedgerEntryCreateRequest();
+        request.setEntryDate(LocalDate.parse(date));
+        request.setAccountCode(accountCode);
+        request.setDebit(new BigDecimal(debit));
+        request.setCredit(new BigDecimal(credit));
+        return entryService.create(request);
+    }
+
+    private static void assertBalance(LedgerPeriodBalanceResponse line, String period, String opening, String debit,
+            String credit, String closing) {
+        assertEquals(YearMonth.parse(period), line.getPeriod());
+        assertEquals(0, new BigDecimal(opening).compareTo(line.getOpeningBalance()), "opening " + period);
+        assertEquals(0, new BigDecimal(debit).compareTo(line.getDebit()), "debit " + period);
+        assertEquals(0, new BigDecimal(credit).compareTo(line.getCredit()), "credit " + period);
+        assertEquals(0, new BigDecimal(closing).compareTo(line.getClosingBalance()), "closing " + period);
+    }
+}
@@ -0,0 +1,420 @@
+package com.ordererp.backend.ledger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ordererp.backend.base.entity.BasePartner;
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.finance.dto.FinAccountCreateRequest;
+import com.ordererp.backend.finance.entity.FinPayment;
+import com.ordererp.backend.finance.service.FinAccountService;
+import com.ordererp.backend.finance.service.FinPaymentService;
+import com.ordererp.backend.purchase.dto.PurInboundCreateLineRequest;
+import com.ordererp.backend.purchase.dto.PurInboundCreateRequest;
+import com.ordererp.backend.purchase.dto.PurOrderCreateRequest;
+import com.ordererp.backend.purchase.dto.PurOrderInboundRequest;
+import com.ordererp.backend.purchase.dto.PurOrderLineRequest;
+import com.ordererp.backend.purchase.dto.PurReturnCreateRequest;
+import com.ordererp.backend.purchase.dto.PurReturnLineRequest;
+import com.ordererp.backend.purchase.service.PurInboundService;
+import com.ordererp.backend.purchase.service.PurOrderService;
+import com.ordererp.backend.purchase.service.PurReturnService;
+import com.ordererp.backend.sales.dto.SalOrderCreateRequest;
+import com.ordererp.backend.sales.service.SalOrderService;
+import com.ordererp.backend.sales.service.SalShipService;
+import com.ordererp.backend.wms.dto.StockOutBillCreateRequest;
+import com.ordererp.backend.wms.dto.StockOutBillLineRequest;
+import com.ordererp.backend.wms.entity.WmsStock;
+import com.ordererp.backend.wms.repository.WmsStockRepository;
+import com.ordererp.backend.wms.service.WmsStockOutBillService;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@Testcontainers
+/**
+ * 记账发件箱：业务事务内写事件，LedgerOutboxRelay 按规则转成凭证；作废冲销原金额，重复转发不重复记账，无规则的事件跳过。
+ * 出库/发货成本按商品采购价估算；整批失败时坏事件单独退避、最终标记失败，不卡住同批其他事件。
+ */
+class LedgerOutboxIT {
+    static final String POISON_ACCOUNT = "9999";
+
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+        // 测试里手动转发
+        registry.add("app.ledger.outbox.relay-interval-ms", () -> "3600000");
+        registry.add("app.ledger.outbox.max-attempts", () -> "2");
+        // 只用于坏事件测试的规则：借方科目的余额行预置到接近 decimal(19,2) 上限，过账时写余额溢出
+        registry.add("app.ledger.outbox.rules.poison-test.debit-account", () -> POISON_ACCOUNT);
+        registry.add("app.ledger.outbox.rules.poison-test.credit-account", () -> "1002");
+    }
+
+    @Autowired
+    FinAccountService accountService;
+
+    @Autowired
+    FinPaymentService paymentService;
+
+    @Autowired
+    LedgerOutbox outbox;
+
+    @Autowired
+    LedgerOutboxRelay relay;
+
+    @Autowired
+    PlatformTransactionManager txManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    WmsStockOutBillService stockOutBillService;
+
+    @Autowired
+    PurOrderService purOrderService;
+
+    @Autowired
+    PurInboundService purInboundService;
+
+    @Autowired
+    PurReturnService purReturnService;
+
+    @Autowired
+    SalOrderService salOrderService;
+
+    @Autowired
+    SalShipService salShipService;
+
+    @Autowired
+    BasePartnerRepository partnerRepository;
+
+    @Autowired
+    BaseWarehouseRepository warehouseRepository;
+
+    @Autowired
+    BaseProductRepository productRepository;
+
+    @Autowired
+    WmsStockRepository stockRepository;
+
+    @Test
+    void receipts_become_vouchers_and_cancel_reverses_them() {
+        Long accountId = accountService.create(
+                new FinAccountCreateRequest("OUTBOX-AR", null, BigDecimal.ZERO, null), "test").id();
+        FinPayment receipt = paymentService.recordPayment("T-OUTBOX-1", FinPaymentService.TYPE_RECEIPT, 1L, accountId,
+                new BigDecimal("120.00"), FinPaymentService.BIZ_TYPE_SALES_AR_RECEIPT, 9001L, "AR-9001",
+                LocalDate.of(2025, 6, 3), "bank", null, "test");
+
+        Long eventId = eventId(LedgerOutbox.AR_RECEIPT, receipt.getId(), 0);
+        relay.relay();
+        Long voucherId = assertPosted(eventId);
+        assertLine(voucherId, "1002", "120.00", "0.00");
+        assertLine(voucherId, "1122", "0.00", "120.00");
+
+        // 重新置为待处理再转发：按 externalId 取回同一张凭证，不重复写分录
+        jdbcTemplate.update("update ledger_outbox_event set status = 0, voucher_id = null where id = ?", eventId);
+        relay.relay();
+        assertEquals(voucherId, assertPosted(eventId));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "select count(*) from ledger_entry where voucher_id = ?", Integer.class, voucherId));
+
+        // 作废：写一条金额相反的事件，转发后借贷方向对调
+        paymentService.cancelByBiz(FinPaymentService.BIZ_TYPE_SALES_AR_RECEIPT, 9001L, "test");
+        Long reversalId = eventId(LedgerOutbox.AR_RECEIPT, receipt.getId(), 1);
+        relay.relay();
+        Long reversalVoucherId = assertPosted(reversalId);
+        assertLine(reversalVoucherId, "1122", "120.00", "0.00");
+        assertLine(reversalVoucherId, "1002", "0.00", "120.00");
+
+        BigDecimal cashNet = jdbcTemplate.queryForObject("""
+                select coalesce(sum(e.debit - e.credit), 0)
+                from ledger_entry e join ledger_outbox_event o on o.voucher_id = e.voucher_id
+                where o.biz_id = ? and o.event_type = ? and e.account_code = '1002'
+                """, BigDecimal.class, receipt.getId(), LedgerOutbox.AR_RECEIPT);
+        assertEquals(0, BigDecimal.ZERO.compareTo(cashNet));
+
+        assertTrue(meterRegistry.get("erp.ledger.outbox.lag").timer().count() >= 2);
+    }
+
+    @Test
+    void events_without_a_rule_are_skipped_and_do_not_block_the_batch() {
+        new TransactionTemplate(txManager).executeWithoutResult(status -> {
+            outbox.publish("UNMAPPED_EVENT", 1L, "X-1", LocalDate.of(2025, 6, 4), new BigDecimal("10.00"), null);
+            outbox.publish(LedgerOutbox.AP_PAYMENT, 77L, "AP-77", LocalDate.of(2025, 6, 4), new BigDecimal("10.00"),
+                    null);
+        });
+        Long skipped = eventId("UNMAPPED_EVENT", 1L, 0);
+        Long payment = eventId(LedgerOutbox.AP_PAYMENT, 77L, 0);
+        relay.relay();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "select status, voucher_id, last_error from ledger_outbox_event where id = ?", skipped);
+        assertEquals(LedgerOutboxRelay.STATUS_SKIPPED, ((Number) row.get("status")).intValue());
+        assertNull(row.get("voucher_id"));
+        assertTrue(String.valueOf(row.get("last_error")).contains("no posting rule"));
+        Long voucherId = assertPosted(payment);
+        assertLine(voucherId, "2202", "10.00", "0.00");
+        assertLine(voucherId, "1002", "0.00", "10.00");
+    }
+
+    @Test
+    void stock_out_cost_is_estimated_at_purchase_price_and_reverse_restores_it() {
+        BaseWarehouse wh = createWarehouse("WH-TC-OUTBOX-OUT");
+        BaseProduct p = createProduct("SKU-TC-OUTBOX-OUT", new BigDecimal("10.50"));
+        prepareStock(wh.getId(), p.getId(), new BigDecimal("5.000"));
+
+        Long billId = stockOutBillService.create(new StockOutBillCreateRequest(wh.getId(), "tc outbox out",
+                List.of(new StockOutBillLineRequest(p.getId(), new BigDecimal("3.000")))), "test").id();
+        stockOutBillService.execute(billId);
+        relay.relay();
+        Long voucherId = assertPosted(eventId(LedgerOutbox.STOCK_OUT, billId, 0));
+        assertLine(voucherId, "6602", "31.50", "0.00");
+        assertLine(voucherId, "1405", "0.00", "31.50");
+
+        // 冲销不重新计价：采购价改了也按原事件金额冲回
+        p.setPurchasePrice(new BigDecimal("99.00"));
+        productRepository.saveAndFlush(p);
+        stockOutBillService.reverse(billId, "test");
+        relay.relay();
+        Long reversalId = assertPosted(eventId(LedgerOutbox.STOCK_OUT, billId, 1));
+        assertLine(reversalId, "1405", "31.50", "0.00");
+        assertLine(reversalId, "6602", "0.00", "31.50");
+    }
+
+    @Test
+    void purchase_inbound_return_and_one_shot_inbound_are_posted_and_reverse_restores_them() {
+        BasePartner supplier = createPartner("SUP-TC-OUTBOX-PI", 1);
+        BaseWarehouse wh = createWarehouse("WH-TC-OUTBOX-PI");
+        BaseProduct p = createProduct("SKU-TC-OUTBOX-PI", new BigDecimal("8.00"));
+
+        // 入库单：按采购单价计，冲销金额相反
+        Long orderId = purOrderService.create(new PurOrderCreateRequest(supplier.getId(), null, "tc outbox pi",
+                List.of(new PurOrderLineRequest(p.getId(), new BigDecimal("10.00"), new BigDecimal("3.000")))), "test").id();
+        purOrderService.audit(orderId, "test");
+        Long inboundId = purInboundService.createFromOrder(orderId, new PurInboundCreateRequest("REQ-TC-OUTBOX-PI",
+                wh.getId(), null, List.of(new PurInboundCreateLineRequest(p.getId(), new BigDecimal("2.000")))), "test")
+                .inboundId();
+        purInboundService.iqcPassAndExecute(inboundId, "pass", "test");
+        relay.relay();
+        Long voucherId = assertPosted(eventId(LedgerOutbox.PURCHASE_IN, inboundId, 0));
+        assertLine(voucherId, "1405", "20.00", "0.00");
+        assertLine(voucherId, "2202", "0.00", "20.00");
+
+        purInboundService.reverse(inboundId, "test");
+        relay.relay();
+        Long reversalId = assertPosted(eventId(LedgerOutbox.PURCHASE_IN, inboundId, 1));
+        assertLine(reversalId, "2202", "20.00", "0.00");
+        assertLine(reversalId, "1405", "0.00", "20.00");
+
+        // 采购单一次性入库：没有入库单，事件按入库 WMS 单号记
+        Long oneShotId = purOrderService.create(new PurOrderCreateRequest(supplier.getId(), null, "tc outbox one shot",
+                List.of(new PurOrderLineRequest(p.getId(), new BigDecimal("12.00"), new BigDecimal("2.000")))), "test").id();
+        purOrderService.audit(oneShotId, "test");
+        String billNo = purOrderService.inbound(oneShotId, new PurOrderInboundRequest(wh.getId()), "test").wmsBillNo();
+        relay.relay();
+        Long oneShotVoucherId = assertPosted(jdbcTemplate.queryForObject(
+                "select id from ledger_outbox_event where event_type = ? and biz_no = ?", Long.class,
+                LedgerOutbox.PURCHASE_IN, billNo));
+        assertLine(oneShotVoucherId, "1405", "24.00", "0.00");
+        assertLine(oneShotVoucherId, "2202", "0.00", "24.00");
+
+        // 采购退货：按退货单价冲减应付与库存商品
+        Long returnId = purReturnService.create(new PurReturnCreateRequest(supplier.getId(), wh.getId(), null,
+                "tc outbox pr", List.of(new PurReturnLineRequest(p.getId(), new BigDecimal("12.00"),
+                        new BigDecimal("1.000")))), "test").id();
+        purReturnService.audit(returnId, "test");
+        purReturnService.execute(returnId, "test");
+        relay.relay();
+        Long returnVoucherId = assertPosted(eventId(LedgerOutbox.PURCHASE_RETURN, returnId, 0));
+        assertLine(returnVoucherId, "2202", "12.00", "0.00");
+        assertLine(returnVoucherId, "1405", "0.00", "12.00");
+    }
+
+    @Test
+    void sales_ship_posts_revenue_and_cost_and_reverse_restores_both() {
+        BasePartner customer = createPartner("CUS-TC-OUTBOX-SHIP", 2);
+        BaseWarehouse wh = createWarehouse("WH-TC-OUTBOX-SHIP");
+        BaseProduct p = createProduct("SKU-TC-OUTBOX-SHIP", new BigDecimal("7.25"));
+        prepareStock(wh.getId(), p.getId(), new BigDecimal("10.000"));
+
+        Long orderId = salOrderService.create(new SalOrderCreateRequest(customer.getId(), wh.getId(), LocalDate.now(),
+                "tc outbox ship", List.of(new SalOrderCreateRequest.SalOrderLineRequest(p.getId(),
+                        new BigDecimal("4.000"), new BigDecimal("12.00")))), "test").id();
+        salOrderService.audit(orderId, "test");
+        salOrderService.ship(orderId, "test");
+        Long shipId = salOrderService.listShips(orderId).get(0).id();
+        relay.relay();
+
+        // 收入按订单单价，成本按采购价 7.25 × 4
+        Long revenueId = assertPosted(eventId(LedgerOutbox.SALES_SHIP, shipId, 0));
+        assertLine(revenueId, "1122", "48.00", "0.00");
+        assertLine(revenueId, "6001", "0.00", "48.00");
+        Long costId = assertPosted(eventId(LedgerOutbox.SALES_COST, shipId, 0));
+        assertLine(costId, "6401", "29.00", "0.00");
+        assertLine(costId, "1405", "0.00", "29.00");
+
+        salShipService.reverse(shipId, "test");
+        relay.relay();
+        Long revenueReversalId = assertPosted(eventId(LedgerOutbox.SALES_SHIP, shipId, 1));
+        assertLine(revenueReversalId, "6001", "48.00", "0.00");
+        assertLine(revenueReversalId, "1122", "0.00", "48.00");
+        Long costReversalId = assertPosted(eventId(LedgerOutbox.SALES_COST, shipId, 1));
+        assertLine(costReversalId, "1405", "29.00", "0.00");
+        assertLine(costReversalId, "6401", "0.00", "29.00");
+    }
+
+    @Test
+    void a_poison_event_backs_off_then_fails_without_blocking_the_batch() {
+        LocalDate day = LocalDate.of(2025, 7, 8);
+        jdbcTemplate.update("""
+                insert into ledger_period_balance (account_code, period, closing_balance, update_time)
+                values (?, ?, 99999999999999999.00, now())
+                """, POISON_ACCOUNT, LedgerPeriodBalanceUpdater.periodOf(day));
+        new TransactionTemplate(txManager).executeWithoutResult(status -> {
+            outbox.publish("POISON_TEST", 501L, "P-501", day, new BigDecimal("10.00"), null);
+            outbox.publish(LedgerOutbox.AP_PAYMENT, 502L, "AP-502", day, new BigDecimal("15.00"), null);
+        });
+        Long poison = eventId("POISON_TEST", 501L, 0);
+        Long payment = eventId(LedgerOutbox.AP_PAYMENT, 502L, 0);
+        double failedBefore = meterRegistry.get("erp.ledger.outbox.failed").counter().count();
+
+        // 整批回滚后逐条重试：好事件过账，坏事件记下失败次数与原因并推迟
+        relay.relay();
+        Long voucherId = assertPosted(payment);
+        assertLine(voucherId, "2202", "15.00", "0.00");
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "select status, attempts, last_error from ledger_outbox_event where id = ?", poison);
+        assertEquals(0, ((Number) row.get("status")).intValue());
+        assertEquals(1, ((Number) row.get("attempts")).intValue());
+        assertNotNull(row.get("last_error"));
+        LocalDateTime nextAttempt = jdbcTemplate.queryForObject(
+                "select next_attempt_time from ledger_outbox_event where id = ?", LocalDateTime.class, poison);
+        assertTrue(nextAttempt != null && nextAttempt.isAfter(LocalDateTime.now()));
+
+        // 退避期内不再领取
+        relay.relay();
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "select attempts from ledger_outbox_event where id = ?", Integer.class, poison));
+
+        // 到期后再失败，达到 max-attempts（2）标记 FAILED
+        jdbcTemplate.update("update ledger_outbox_event set next_attempt_time = null where id = ?", poison);
+        relay.relay();
+        row = jdbcTemplate.queryForMap(
+                "select status, attempts, voucher_id from ledger_outbox_event where id = ?", poison);
+        assertEquals(LedgerOutboxRelay.STATUS_FAILED, ((Number) row.get("status")).intValue());
+        assertEquals(2, ((Number) row.get("attempts")).intValue());
+        assertNull(row.get("voucher_id"));
+        assertEquals(failedBefore + 1, meterRegistry.get("erp.ledger.outbox.failed").counter().count());
+    }
+
+    private Long eventId(String eventType, Long bizId, int nth) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "select id from ledger_outbox_event where event_type = ? and biz_id = ? order by id",
+                Long.class, eventType, bizId);
+        assertTrue(ids.size() > nth, () -> "expected outbox event #" + nth + " for " + eventType + ":" + bizId);
+        return ids.get(nth);
+    }
+
+    private Long assertPosted(Long eventId) {
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "select status, voucher_id from ledger_outbox_event where id = ?", eventId);
+        assertEquals(LedgerOutboxRelay.STATUS_POSTED, ((Number) row.get("status")).intValue());
+        assertNotNull(row.get("voucher_id"));
+        Long voucherId = ((Number) row.get("voucher_id")).longValue();
+        assertEquals(LedgerOutboxRelay.EXTERNAL_ID_PREFIX + eventId, jdbcTemplate.queryForObject(
+                "select external_id from ledger_voucher where id = ?", String.class, voucherId));
+        return voucherId;
+    }
+
+    private void prepareStock(Long warehouseId, Long productId, BigDecimal qty) {
+        WmsStock stock = new WmsStock();
+        stock.setWarehouseId(warehouseId);
+        stock.setProductId(productId);
+        stock.setStockQty(qty);
+        stock.setLockedQty(BigDecimal.ZERO);
+        stock.setVersion(0);
+        stock.setUpdateTime(LocalDateTime.now());
+        stockRepository.saveAndFlush(stock);
+    }
+
+    private BasePartner createPartner(String code, int type) {
+        BasePartner p = new BasePartner();
+        p.setPartnerCode(code);
+        p.setPartnerName(code);
+        p.setType(type);
+        p.setCreditLimit(new BigDecimal("100000.00"));
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return partnerRepository.saveAndFlush(p);
+    }
+
+    private BaseWarehouse createWarehouse(String code) {
+        BaseWarehouse wh = new BaseWarehouse();
+        wh.setWarehouseCode(code);
+        wh.setWarehouseName(code);
+        wh.setStatus(1);
+        wh.setDeleted(0);
+        wh.setCreateTime(LocalDateTime.now());
+        wh.setUpdateTime(LocalDateTime.now());
+        return warehouseRepository.saveAndFlush(wh);
+    }
+
+    private BaseProduct createProduct(String code, BigDecimal purchasePrice) {
+        BaseProduct p = new BaseProduct();
+        p.setProductCode(code);
+        p.setProductName(code);
+        p.setUnit("个");
+        p.setPurchasePrice(purchasePrice);
+        p.setSalePrice(new BigDecimal("12.00"));
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return productRepository.saveAndFlush(p);
+    }
+
+    private void assertLine(Long voucherId, String accountCode, String debit, String credit) {
+        Map<String, Object> line = jdbcTemplate.queryForMap(
+                "select debit, credit from ledger_entry where voucher_id = ? and account_code = ?",
+                voucherId, accountCode);
+        assertEquals(0, new BigDecimal(debit).compareTo((BigDecimal) line.get("debit")), accountCode + " debit");
+        assertEquals(0, new BigDecimal(credit).compareTo((BigDecimal) line.get("credit")), accountCode + " credit");
+    }
+}
@@ -0,0 +1,252 @@
+package com.ordererp.backend.purchase;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ordererp.backend.base.entity.BasePartner;
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.purchase.dto.PurApBillRunRequest;
+import com.ordererp.backend.purchase.dto.PurApBillRunResponse;
+import com.ordererp.backend.purchase.dto.PurOrderCreateRequest;
+import com.ordererp.backend.purchase.dto.PurOrderInboundRequest;
+import com.ordererp.backend.purchase.dto.PurOrderLineRequest;
+import com.ordererp.backend.purchase.service.PurApBillRunService;
+import com.ordererp.backend.purchase.service.PurOrderService;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@Testcontainers
+/**
+ * 应付对账月结批次（pur_ap_bill_run）集成测试：
+ * - 发起后后台生成对账单，结束后释放运行抢占，可再次发起
+ * - 另一个事务正在抢占（尚未提交）时发起：等待对方提交后返回 409，不会同时跑两个批次
+ * - 心跳新鲜的运行中批次阻止发起；心跳超时的批次被标记为异常终止，新批次可以发起
+ */
+class PurchaseApBillRunIT {
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+    }
+
+    @Autowired
+    PurApBillRunService runService;
+
+    @Autowired
+    PurOrderService orderService;
+
+    @Autowired
+    BasePartnerRepository partnerRepository;
+
+    @Autowired
+    BaseWarehouseRepository warehouseRepository;
+
+    @Autowired
+    BaseProductRepository productRepository;
+
+    @Autowired
+    PlatformTransactionManager txManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void run_generates_bills_in_background_and_releases_the_lock() throws Exception {
+        BasePartner supplier = createSupplier("SUP-RUN-1");
+        BaseWarehouse wh = createWarehouse("WH-RUN-1");
+        BaseProduct p = createProduct("SKU-RUN-1");
+        var order = orderService.create(new PurOrderCreateRequest(supplier.getId(), null, "run",
+                List.of(new PurOrderLineRequest(p.getId(), new BigDecimal("10.00"), new BigDecimal("3.000")))), "tester");
+        orderService.audit(order.id(), "tester");
+        orderService.inbound(order.id(), new PurOrderInboundRequest(wh.getId()), "tester");
+
+        LocalDate today = LocalDate.now();
+        PurApBillRunResponse started = runService.start(new PurApBillRunRequest(today, today, "month end"), "tester");
+        PurApBillRunResponse done = awaitFinished(started.id());
+        assertEquals(2, done.status());
+        var item = done.items().stream().filter(i -> i.supplierId().equals(supplier.getId())).findFirst().orElseThrow();
+        assertEquals(2, item.status());
+        assertNotNull(item.billId());
+        assertTrue(item.totalAmount().compareTo(new BigDecimal("30.00")) == 0);
+        assertNull(runningLock(started.id()), "finished run must release the run lock");
+
+        // 锁已释放：可以再次发起（单据已对账，本供应商不再出现）
+        PurApBillRunResponse again = awaitFinished(
+                runService.start(new PurApBillRunRequest(today, today, "again"), "tester").id());
+        assertEquals(2, again.status());
+        assertTrue(again.items().stream().noneMatch(i -> i.supplierId().equals(supplier.getId())));
+    }
+
+    @Test
+    void start_waits_for_an_in_flight_claim_and_then_conflicts() throws Exception {
+        // 另一个事务插入了运行中的批次但尚未提交：旧实现先 count 再插入，这里会看到 0 并再跑一个批次
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        Long[] heldId = new Long[1];
+        CompletableFuture<PurApBillRunResponse> contender;
+        CompletableFuture<Void> holder = new CompletableFuture<>();
+        CompletableFuture<Void> inserted = new CompletableFuture<>();
+        Thread holderThread = new Thread(() -> tx.executeWithoutResult(s -> {
+            heldId[0] = insertRunningRun(LocalDateTime.now());
+            inserted.complete(null);
+            holder.join();
+        }));
+        holderThread.start();
+        try {
+            inserted.get(10, TimeUnit.SECONDS);
+            LocalDate today = LocalDate.now();
+            contender = CompletableFuture.supplyAsync(
+                    () -> runService.start(new PurApBillRunRequest(today, today, "contender"), "tester"));
+            Thread.sleep(500);
+            assertFalse(contender.isDone(), "start must wait on the uncommitted claim");
+        } finally {
+            holder.complete(null);
+            holderThread.join(10_000);
+        }
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> contender.get(30, TimeUnit.SECONDS));
+        ResponseStatusException rse = assertInstanceOfStatus(e.getCause());
+        assertEquals(HttpStatus.CONFLICT, rse.getStatusCode());
+        assertEquals(1, countRunning(), "only the committed claim may be running");
+
+        releaseRun(heldId[0]);
+    }
+
+    @Test
+    void fresh_running_run_blocks_and_stale_run_is_recovered() throws Exception {
+        Long fresh = insertRunningRun(LocalDateTime.now());
+        LocalDate today = LocalDate.now();
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> runService.start(new PurApBillRunRequest(today, today, "blocked"), "tester"));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+
+        // 执行节点退出：心跳停在一小时前
+        jdbcTemplate.update("update pur_ap_bill_run set heartbeat_time = ? where id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusHours(1)), fresh);
+        PurApBillRunResponse recovered = awaitFinished(
+                runService.start(new PurApBillRunRequest(today, today, "recovered"), "tester").id());
+        assertEquals(2, recovered.status());
+
+        PurApBillRunResponse stale = runService.get(fresh);
+        assertEquals(3, stale.status());
+        assertNotNull(stale.message());
+        assertNull(runningLock(fresh));
+    }
+
+    private PurApBillRunResponse awaitFinished(Long runId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            PurApBillRunResponse run = runService.get(runId);
+            if (run.status() != 1) return run;
+            Thread.sleep(100);
+        }
+        throw new AssertionError("run " + runId + " did not finish");
+    }
+
+    private Long insertRunningRun(LocalDateTime heartbeat) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    insert into pur_ap_bill_run (start_date, end_date, status, running_lock, start_time, heartbeat_time)
+                    values (current_date, current_date, 1, 1, ?, ?)
+                    """, Statement.RETURN_GENERATED_KEYS);
+            ps.setTimestamp(1, Timestamp.valueOf(heartbeat));
+            ps.setTimestamp(2, Timestamp.valueOf(heartbeat));
+            return ps;
+        }, keys);
+        return keys.getKey().longValue();
+    }
+
+    private void releaseRun(Long id) {
+        jdbcTemplate.update("update pur_ap_bill_run set status = 3, running_lock = null where id = ?", id);
+    }
+
+    private Integer runningLock(Long id) {
+        return jdbcTemplate.queryForObject("select running_lock from pur_ap_bill_run where id = ?", Integer.class, id);
+    }
+
+    private int countRunning() {
+        return jdbcTemplate.queryForObject("select count(*) from pur_ap_bill_run where status = 1", Integer.class);
+    }
+
+    private static ResponseStatusException assertInstanceOfStatus(Throwable t) {
+        assertTrue(t instanceof ResponseStatusException, () -> "unexpected failure: " + t);
+        return (ResponseStatusException) t;
+    }
+
+    private BasePartner createSupplier(String code) {
+        BasePartner p = new BasePartner();
+        p.setPartnerCode(code);
+        p.setPartnerName(code);
+        p.setType(1);
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return partnerRepository.saveAndFlush(p);
+    }
+
+    private BaseWarehouse createWarehouse(String code) {
+        BaseWarehouse wh = new BaseWarehouse();
+        wh.setWarehouseCode(code);
+        wh.setWarehouseName(code);
+        wh.setStatus(1);
+        wh.setDeleted(0);
+        wh.setCreateTime(LocalDateTime.now());
+        wh.setUpdateTime(LocalDateTime.now());
+        return warehouseRepository.saveAndFlush(wh);
+    }
+
+    private BaseProduct createProduct(String code) {
+        BaseProduct p = new BaseProduct();
+        p.setProductCode(code);
+        p.setProductName(code);
+        p.setUnit("个");
+        p.setPurchasePrice(new BigDecimal("10.00"));
+        p.setSalePrice(new BigDecimal("12.00"));
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return productRepository.saveAndFlush(p);
+    }
+}
@@ -5,23 +5,28 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.ordererp.backend.base.entity.BasePartner;
 import com.ordererp.backend.base.entity.BaseProduct;
 import com.ordererp.backend.base.entity.BaseWarehouse;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
 import com.ordererp.backend.base.repository.BaseProductRepository;
 import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.sales.dto.SalArBillBatchRequest;
 import com.ordererp.backend.sales.dto.SalArBillCreateRequest;
 import com.ordererp.backend.sales.dto.SalArInvoiceCreateRequest;
 import com.ordererp.backend.sales.dto.SalArReceiptCreateRequest;
 import com.ordererp.backend.sales.dto.SalOrderCreateRequest;
 import com.ordererp.backend.sales.dto.SalReturnCreateRequest;
 import com.ordererp.backend.sales.dto.SalReturnLineRequest;
+import com.ordererp.backend.sales.service.SalArBillBatchService;
 import com.ordererp.backend.sales.service.SalArBillService;
 import com.ordererp.backend.sales.service.SalOrderService;
 import com.ordererp.backend.sales.service.SalReturnService;
 import com.ordererp.backend.sales.repository.SalShipDetailRepository;
 import com.ordererp.backend.sales.repository.SalShipRepository;
+import com.ordererp.backend.system.dto.SysJobResponse;
+import com.ordererp.backend.system.service.SysJobService;
 import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.repository.WmsStockRepository;
 import java.math.BigDecimal;
@@ -50,6 +55,7 @@ import org.testcontainers.mysql.MySQLContainer;
  * - AR 对账单：按客户 + 周期汇总 ship(+) + return(-)，并通过 doc_ref 防重复对账
  * - 审核后允许登记收款/发票；收款累计影响状态（已审核/部分已收/已结清）
  * - 已发生收款/开票后禁止作废
+ * - 按期间批量生成：请求立即返回后台任务，任务完成后结果中包含各客户生成的对账单；参数错误同步返回 400
  */
 class SalesStage5ArBillIT {
     @Container
@@ -94,6 +100,12 @@ class SalesStage5ArBillIT {
     @Autowired
     WmsStockRepository stockRepository;
 
+    @Autowired
+    SalArBillBatchService batchService;
+
+    @Autowired
+    SysJobService jobService;
+
     @Test
     @Transactional
     void sales_ar_bill_flow_create_audit_receipt_invoice_and_doc_lock() {
@@ -157,6 +169,8 @@ class SalesStage5ArBillIT {
         ResponseStatusException ex = assertThrows(ResponseStatusException.class,
                 () -> arBillService.create(new SalArBillCreateRequest(customer.getId(), today, today, "tc ar2"), "tester"));
         assertEquals(400, ex.getStatusCode().value());
+        // 不再笼统失败：提示中指出单据已被哪张对账单占用
+        assertTrue(ex.getReason().contains(bill.billNo()), ex.getReason());
 
         var auditedBill = arBillService.audit(bill.id(), "auditor");
         assertEquals(2, auditedBill.status());
@@ -188,6 +202,56 @@ class SalesStage5ArBillIT {
         assertEquals(400, cancelEx.getStatusCode().value());
     }
 
+    @Test
+    void generate_batch_runs_as_background_job() throws Exception {
+        // 不加 @Transactional：后台任务线程只能看到已提交的数据
+        BasePartner customer = createCustomer("CUS-TC-AR-BATCH");
+        BaseWarehouse wh = createWarehouse("WH-TC-AR-BATCH");
+        BaseProduct p = createProduct("SKU-TC-AR-BATCH");
+
+        WmsStock stock = new WmsStock();
+        stock.setWarehouseId(wh.getId());
+        stock.setProductId(p.getId());
+        stock.setStockQty(new BigDecimal("10.000"));
+        stock.setLockedQty(BigDecimal.ZERO);
+        stock.setVersion(0);
+        stock.setUpdateTime(LocalDateTime.now());
+        stockRepository.saveAndFlush(stock);
+
+        var order = orderService.create(new SalOrderCreateRequest(customer.getId(), wh.getId(), LocalDate.now(),
+                "tc batch", List.of(new SalOrderCreateRequest.SalOrderLineRequest(p.getId(), new BigDecimal("3.000"),
+                        new BigDecimal("12.00")))), "tester");
+        orderService.audit(order.id(), "auditor");
+        orderService.ship(order.id(), "shipper");
+
+        LocalDate today = LocalDate.now();
+        ResponseStatusException bad = assertThrows(ResponseStatusException.class,
+                () -> batchService.start(new SalArBillBatchRequest(today, today.minusDays(1), null), "tester"));
+        assertEquals(400, bad.getStatusCode().value());
+
+        SysJobResponse job = batchService.start(new SalArBillBatchRequest(today, today, "tc batch"), "tester");
+        assertNotNull(job.id());
+        assertEquals("ar-bill-batch", job.jobType());
+
+        for (int i = 0; i < 100 && job.status() < SysJobService.STATUS_SUCCEEDED; i++) {
+            Thread.sleep(100);
+            job = jobService.get(job.id(), "tester");
+        }
+        assertEquals(SysJobService.STATUS_SUCCEEDED, job.status(), () -> "job should succeed");
+        assertTrue(job.total() != null && job.total() >= 1);
+        assertEquals(job.total(), job.progress());
+
+        JsonNode result = job.result();
+        assertEquals(job.total().intValue(), result.get("customers").asInt());
+        JsonNode bill = null;
+        for (JsonNode b : result.get("bills")) {
+            if (b.get("customerId").asLong() == customer.getId()) bill = b;
+        }
+        assertNotNull(bill, "batch result should contain the customer's bill");
+        assertTrue(new BigDecimal("36.00").compareTo(bill.get("totalAmount").decimalValue()) == 0);
+        assertEquals(1, bill.get("docCount").asInt());
+    }
+
     private BasePartner createCustomer(String code) {
         BasePartner p = new BasePartner();
         p.setPartnerCode(code);
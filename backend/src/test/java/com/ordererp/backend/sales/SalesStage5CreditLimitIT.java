@@ -10,7 +10,13 @@ import com.ordererp.backend.base.entity.BaseWarehouse;
 import com.ordererp.backend.base.repository.BasePartnerRepository;
 import com.ordererp.backend.base.repository.BaseProductRepository;
 import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.sales.dto.SalArBillCreateRequest;
+import com.ordererp.backend.sales.dto.SalArReceiptCreateRequest;
 import com.ordererp.backend.sales.dto.SalOrderCreateRequest;
+import com.ordererp.backend.sales.service.SalArBillService;
+import com.ordererp.backend.sales.service.SalCreditExposureReconciler;
+import com.ordererp.backend.sales.service.SalCreditExposureUpdater;
+import com.ordererp.backend.sales.service.SalCreditService;
 import com.ordererp.backend.sales.service.SalOrderService;
 import com.ordererp.backend.wms.entity.WmsStock;
 import com.ordererp.backend.wms.repository.WmsStockRepository;
@@ -21,6 +27,7 @@ import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.transaction.annotation.Transactional;
@@ -37,6 +44,7 @@ import org.testcontainers.mysql.MySQLContainer;
  * 覆盖点：
  * - base_partner.credit_limit > 0 时启用额度控制
  * - 审核销售订单前做额度校验：已欠款/未对账发货/未发完订单占用 + 本次新增 <= credit_limit
+ * - 占用按差额维护（sal_credit_exposure），对账可发现并修复漂移
  */
 class SalesStage5CreditLimitIT {
     @Container
@@ -69,6 +77,21 @@ class SalesStage5CreditLimitIT {
     @Autowired
     WmsStockRepository stockRepository;
 
+    @Autowired
+    SalArBillService arBillService;
+
+    @Autowired
+    SalCreditService creditService;
+
+    @Autowired
+    SalCreditExposureUpdater exposureUpdater;
+
+    @Autowired
+    SalCreditExposureReconciler exposureReconciler;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
     @Test
     @Transactional
     void credit_limit_blocks_audit_when_over_limit() {
@@ -119,6 +142,55 @@ class SalesStage5CreditLimitIT {
         assertEquals(400, ex.getStatusCode().value());
     }
 
+    @Test
+    @Transactional
+    void credit_exposure_tracks_documents_and_reconciles() {
+        BasePartner customer = createCustomer("CUS-TC-CR-EXP", new BigDecimal("100.00"));
+        BaseWarehouse wh = createWarehouse("WH-TC-CR-EXP");
+        BaseProduct p = createProduct("SKU-TC-CR-EXP");
+        prepareStock(wh.getId(), p.getId(), new BigDecimal("10.000"));
+
+        var order = orderService.create(new SalOrderCreateRequest(
+                customer.getId(),
+                wh.getId(),
+                LocalDate.now(),
+                "tc credit exposure",
+                List.of(new SalOrderCreateRequest.SalOrderLineRequest(p.getId(), new BigDecimal("2.000"), new BigDecimal("12.00")))), "tester");
+        orderService.audit(order.id(), "auditor");
+        exposureUpdater.flush();
+        var afterAudit = creditService.getUsage(customer.getId());
+        assertEquals(0, new BigDecimal("24.00").compareTo(afterAudit.openOrderReservedAmount()));
+        assertEquals(0, new BigDecimal("24.00").compareTo(afterAudit.usedAmount()));
+
+        // 发货：未发完订单 -> 未对账发货
+        orderService.ship(order.id(), "shipper");
+        exposureUpdater.flush();
+        var afterShip = creditService.getUsage(customer.getId());
+        assertEquals(0, BigDecimal.ZERO.compareTo(afterShip.openOrderReservedAmount()));
+        assertEquals(0, new BigDecimal("24.00").compareTo(afterShip.unbilledNetAmount()));
+
+        // 对账 + 收款：未对账发货 -> AR 未收，收款冲减
+        LocalDate today = LocalDate.now();
+        var bill = arBillService.create(new SalArBillCreateRequest(customer.getId(), today, today, "tc credit exposure"), "tester");
+        arBillService.audit(bill.id(), "auditor");
+        arBillService.addReceipt(bill.id(), new SalArReceiptCreateRequest(today, new BigDecimal("10.00"), null, "bank", "part"), "cashier");
+        exposureUpdater.flush();
+        var afterReceipt = creditService.getUsage(customer.getId());
+        assertEquals(0, BigDecimal.ZERO.compareTo(afterReceipt.unbilledNetAmount()));
+        assertEquals(0, new BigDecimal("14.00").compareTo(afterReceipt.outstandingArAmount()));
+        assertEquals(0, new BigDecimal("14.00").compareTo(afterReceipt.usedAmount()));
+
+        var clean = exposureReconciler.reconcile(false);
+        assertEquals(0, clean.driftCustomers());
+
+        // 人为制造漂移：对账报告并修复
+        jdbcTemplate.update("update sal_credit_exposure set open_orders = 99.00 where customer_id = ?", customer.getId());
+        var repaired = exposureReconciler.reconcile(true);
+        assertEquals(1, repaired.driftCustomers());
+        assertEquals(customer.getId(), repaired.drifts().get(0).customerId());
+        assertEquals(0, new BigDecimal("14.00").compareTo(creditService.getUsage(customer.getId()).usedAmount()));
+    }
+
     private void prepareStock(Long warehouseId, Long productId, BigDecimal qty) {
         WmsStock stock = new WmsStock();
         stock.setWarehouseId(warehouseId);
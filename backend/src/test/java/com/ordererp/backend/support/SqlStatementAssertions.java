@@ -0,0 +1,45 @@
+package com.ordererp.backend.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ordererp.backend.common.metrics.SqlStatementStats;
+
+/**
+ * 在集成测试里固定接口/服务方法执行的 SQL 语句数，防止改动引入逐行查询（N+1）。
+ *
+ * <p>只统计调用线程上执行的语句（MockMvc 与直接调用 Service 都在测试线程里执行）。
+ * 主数据缓存（BaseMasterDataCache）命中与否会影响语句数，固定精确值前先调用一次预热。</p>
+ */
+public final class SqlStatementAssertions {
+    private SqlStatementAssertions() {
+    }
+
+    @FunctionalInterface
+    public interface SqlAction<T> {
+        T run() throws Exception;
+    }
+
+    public static <T> Captured<T> capture(SqlAction<T> action) throws Exception {
+        try (SqlStatementStats stats = SqlStatementStats.open()) {
+            T result = action.run();
+            return new Captured<>(result, stats.statements(), stats.elapsedMillis());
+        }
+    }
+
+    public static <T> T assertStatementCount(int expected, SqlAction<T> action) throws Exception {
+        Captured<T> captured = capture(action);
+        assertEquals(expected, captured.statements(), "SQL statements executed");
+        return captured.result();
+    }
+
+    public static <T> T assertMaxStatements(int max, SqlAction<T> action) throws Exception {
+        Captured<T> captured = capture(action);
+        assertTrue(captured.statements() <= max,
+                "expected at most " + max + " SQL statements but executed " + captured.statements());
+        return captured.result();
+    }
+
+    public record Captured<T>(T result, int statements, long elapsedMillis) {
+    }
+}
@@ -0,0 +1,73 @@
+package com.ordererp.backend.system;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@Testcontainers
+/**
+ * 单据号分配与连接池：主连接池只有 1 个连接且已被业务事务占用时，事务内领号（含号段耗尽后的同步领取、批量 reserve）
+ * 走专用连接池，不等待主连接池。
+ */
+class DocNumberPoolIT {
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+        // 领号若仍向主连接池借第二个连接，会在这里等满超时后失败
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "1");
+        registry.add("spring.datasource.hikari.connection-timeout", () -> "10000");
+        // 号段小一些：事务内要经历多次号段耗尽
+        registry.add("app.doc-no.segment-size", () -> "10");
+    }
+
+    @Autowired
+    DocNumberAllocator docNumbers;
+
+    @Autowired
+    PlatformTransactionManager txManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void allocating_inside_a_transaction_does_not_take_a_second_pool_connection() {
+        List<String> numbers = new TransactionTemplate(txManager).execute(status -> {
+            // 先执行一条语句：业务事务占住主连接池唯一的连接
+            jdbcTemplate.queryForObject("select 1", Integer.class);
+            List<String> out = new ArrayList<>();
+            for (int i = 0; i < 35; i++) {
+                out.add(docNumbers.next("ITPOOL"));
+            }
+            out.add("BATCH-" + docNumbers.reserve("ITPOOL-BATCH", 50));
+            return out;
+        });
+        assertNotNull(numbers);
+        assertEquals(36, new HashSet<>(numbers).size(), "numbers must be unique: " + numbers);
+    }
+}
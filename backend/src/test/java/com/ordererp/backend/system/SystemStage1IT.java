@@ -2,21 +2,34 @@ package com.ordererp.backend.system;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ordererp.backend.common.sequence.DocNumberAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
@@ -42,6 +55,8 @@ import org.testcontainers.junit.jupiter.Testcontainers;
  * 1) 未登录是否会被拦截？
  * 2) 登录后是否能拿到 token，并使用 token 访问受保护资源？
  * 3) 不同用户（不同角色/权限）是否能正确放行/拒绝对应接口？
+ * 4) 角色权限/用户角色变化后，已缓存的登录用户（同一 token）是否立即看到新权限？
+ * 5) 菜单路由的 ETag 是否在未变化时返回 304、菜单变化后返回 200？
  * 
  * //测试方法：进入backend目录打开命令行运行：mvn -U test -Dtest=SystemStage1IT
  * 
@@ -68,6 +83,12 @@ class SystemStage1IT {
     @Autowired
     ObjectMapper objectMapper;
 
+    @Autowired
+    DocNumberAllocator docNumbers;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
     @Test
     void unauthorized_requests_are_rejected() throws Exception {
         // 用例：未登录访问“必须登录”的接口应该被拦截（401 或 403 都算拦截成功）
@@ -164,6 +185,233 @@ class SystemStage1IT {
         assertFalse(body.contains("base:product:add"), "manager should not have base:product:add");
     }
 
+    @Test
+    void doc_numbers_are_unique_under_concurrency() throws Exception {
+        // 用例：多线程同时取同一前缀的单据号，不重复；单个线程拿到的流水严格递增
+        //
+        // 说明：
+        // - 旧实现是 时间戳 + 4 位随机数，同一秒内并发建单会撞唯一键；
+        // - 线程数 * 每线程取号数 远大于默认号段大小（100），覆盖号段用完后的续领/预取。
+        int threads = 8;
+        int perThread = 500;
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    long last = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        String no = docNumbers.next("ITSEQ");
+                        assertTrue(no.startsWith("ITSEQ"), "unexpected doc no: " + no);
+                        assertTrue(seen.add(no), "duplicate doc no: " + no);
+                        long seq = Long.parseLong(no.substring(no.lastIndexOf('-') + 1));
+                        assertTrue(seq > last, "sequence should increase within a thread");
+                        last = seq;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(threads * perThread, seen.size());
+    }
+
+    @Test
+    void export_job_runs_in_background_and_file_is_downloadable() throws Exception {
+        // 用例：库存流水后台导出：提交后立即返回任务，轮询到完成后可下载文件；其他用户看不到该任务
+        String token = loginAndGetToken("admin", "123456");
+
+        MvcResult submitted = mockMvc.perform(post("/api/wms/stock-logs/export-job")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn();
+        long jobId = objectMapper.readTree(submitted.getResponse().getContentAsString()).get("id").asLong();
+
+        JsonNode job = null;
+        for (int i = 0; i < 100; i++) {
+            MvcResult res = mockMvc.perform(get("/api/jobs/{id}", jobId).header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            job = objectMapper.readTree(res.getResponse().getContentAsString());
+            if (job.get("status").asInt() >= 3) break;
+            Thread.sleep(200);
+        }
+        assertNotNull(job);
+        assertEquals(3, job.get("status").asInt(), "job should succeed: " + job);
+        assertTrue(job.get("fileAvailable").asBoolean());
+
+        MvcResult file = mockMvc.perform(get("/api/jobs/{id}/file", jobId).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertTrue(file.getResponse().getContentAsByteArray().length > 100, "xlsx bytes should not be empty");
+
+        String managerToken = loginAndGetToken("manager", "123456");
+        mockMvc.perform(get("/api/jobs/{id}", jobId).header("Authorization", "Bearer " + managerToken))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void synchronous_export_runs_on_the_job_pool() throws Exception {
+        // 用例：同步导出接口仍直接返回文件，但在后台任务线程池中执行（受 app.job.workers 约束），并留下任务记录
+        String token = loginAndGetToken("admin", "123456");
+
+        MvcResult file = mockMvc.perform(get("/api/wms/stock-logs/export").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertTrue(file.getResponse().getContentAsByteArray().length > 100, "xlsx bytes should not be empty");
+
+        MvcResult recent = mockMvc.perform(get("/api/jobs").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonNode latest = objectMapper.readTree(recent.getResponse().getContentAsString()).get(0);
+        assertEquals("stock-log-export", latest.get("jobType").asText());
+        assertEquals(3, latest.get("status").asInt(), "job should be recorded as succeeded: " + latest);
+    }
+
+    @Test
+    void permission_changes_invalidate_cached_principal() throws Exception {
+        // 用例：token 对应的用户/权限已缓存，角色权限或用户角色变化后，同一个 token 的下一次请求立即看到新权限
+        //
+        // 说明：
+        // - 新建独立的角色和用户，避免改动种子数据影响其他用例；
+        // - 9001 = dashboard:view（概览），9111 = base:product:add（商品新增）。
+        String adminToken = loginAndGetToken("admin", "123456");
+        long roleId = createRole(adminToken, "it_principal_cache", List.of(9001L));
+        long userId = createUser(adminToken, "it_principal_cache", roleId);
+        String token = loginAndGetToken("it_principal_cache", "123456");
+
+        List<String> perms = perms(token);
+        assertTrue(perms.contains("dashboard:view"));
+        assertFalse(perms.contains("base:product:add"));
+        // 第二次请求走缓存，结果不变
+        assertEquals(perms, perms(token));
+
+        // 角色授权变化：同一个 token 立刻拿到新权限
+        mockMvc.perform(put("/api/system/roles/{id}/menus", roleId)
+                        .header("Authorization", "Bearer " + adminToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"menuIds\":[9001,9111]}"))
+                .andExpect(status().isOk());
+        assertTrue(perms(token).contains("base:product:add"), "role menu change must evict cached principal");
+
+        // 用户角色变化：移除角色后权限随之消失
+        mockMvc.perform(put("/api/system/users/{id}", userId)
+                        .header("Authorization", "Bearer " + adminToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"roleIds\":[]}"))
+                .andExpect(status().isOk());
+        List<String> after = perms(token);
+        assertFalse(after.contains("dashboard:view"), "user role change must evict cached principal");
+        assertFalse(after.contains("base:product:add"));
+    }
+
+    @Test
+    void permission_version_bumped_by_another_node_reloads_cached_principal() throws Exception {
+        // 用例：其他节点修改了用户角色（本节点缓存未被显式失效），只要权限版本加 1，本节点下一次请求即看到新权限
+        String adminToken = loginAndGetToken("admin", "123456");
+        long roleId = createRole(adminToken, "it_principal_version", List.of(9001L));
+        long userId = createUser(adminToken, "it_principal_version", roleId);
+        String token = loginAndGetToken("it_principal_version", "123456");
+        assertTrue(perms(token).contains("dashboard:view"));
+
+        // 直接改库、不加版本：仍命中缓存
+        jdbcTemplate.update("delete from sys_user_role where user_id = ?", userId);
+        assertTrue(perms(token).contains("dashboard:view"), "unchanged version should keep the cached principal");
+
+        // 其他节点的 SysPrincipalCache.invalidateUser 会在同一事务内把版本加 1
+        jdbcTemplate.update("""
+                insert into sys_principal_version (user_id, version) values (?, 1)
+                on duplicate key update version = version + 1
+                """, userId);
+        assertFalse(perms(token).contains("dashboard:view"), "version bump must reload the cached principal");
+    }
+
+    @Test
+    void menu_routers_answer_if_none_match_with_304_until_menus_change() throws Exception {
+        // 用例：路由树带 ETag；未变化时携带 If-None-Match 返回 304，角色菜单变化后返回 200 和新的 ETag
+        String adminToken = loginAndGetToken("admin", "123456");
+        long roleId = createRole(adminToken, "it_menu_etag", List.of(9001L));
+        createUser(adminToken, "it_menu_etag", roleId);
+        String token = loginAndGetToken("it_menu_etag", "123456");
+
+        MvcResult first = mockMvc.perform(get("/api/system/menu/routers").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+        JsonNode routers = objectMapper.readTree(first.getResponse().getContentAsString());
+        assertTrue(jsonContainsPath(routers, "/dashboard"));
+        assertFalse(jsonContainsPath(routers, "/base/product"));
+
+        MvcResult notModified = mockMvc.perform(get("/api/system/menu/routers")
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andReturn();
+        assertEquals(0, notModified.getResponse().getContentAsByteArray().length, "304 must not carry a body");
+
+        // 角色新增“基础资料/商品管理”菜单：旧 ETag 不再匹配
+        mockMvc.perform(put("/api/system/roles/{id}/menus", roleId)
+                        .header("Authorization", "Bearer " + adminToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"menuIds\":[9001,9100,9101]}"))
+                .andExpect(status().isOk());
+
+        MvcResult changed = mockMvc.perform(get("/api/system/menu/routers")
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andReturn();
+        String newEtag = changed.getResponse().getHeader("ETag");
+        assertNotNull(newEtag);
+        assertFalse(etag.equals(newEtag), "menu change must produce a new ETag");
+        assertTrue(jsonContainsPath(objectMapper.readTree(changed.getResponse().getContentAsString()), "/base/product"));
+
+        mockMvc.perform(get("/api/system/menu/routers")
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", newEtag))
+                .andExpect(status().isNotModified());
+    }
+
+    private List<String> perms(String token) throws Exception {
+        MvcResult res = mockMvc.perform(get("/api/system/user/perms").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn();
+        List<String> perms = new ArrayList<>();
+        objectMapper.readTree(res.getResponse().getContentAsString()).forEach(n -> perms.add(n.asText()));
+        return perms;
+    }
+
+    private long createRole(String adminToken, String roleKey, List<Long> menuIds) throws Exception {
+        MvcResult res = mockMvc.perform(post("/api/system/roles")
+                        .header("Authorization", "Bearer " + adminToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"roleName\":\"" + roleKey + "\",\"roleKey\":\"" + roleKey + "\",\"status\":1}"))
+                .andExpect(status().isOk())
+                .andReturn();
+        long roleId = objectMapper.readTree(res.getResponse().getContentAsString()).get("id").asLong();
+        mockMvc.perform(put("/api/system/roles/{id}/menus", roleId)
+                        .header("Authorization", "Bearer " + adminToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("menuIds", menuIds))))
+                .andExpect(status().isOk());
+        return roleId;
+    }
+
+    private long createUser(String adminToken, String username, long roleId) throws Exception {
+        MvcResult res = mockMvc.perform(post("/api/system/users")
+                        .header("Authorization", "Bearer " + adminToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"" + username + "\",\"password\":\"123456\",\"status\":1,"
+                                + "\"roleIds\":[" + roleId + "]}"))
+                .andExpect(status().isOk())
+                .andReturn();
+        return objectMapper.readTree(res.getResponse().getContentAsString()).get("id").asLong();
+    }
+
     private String loginAndGetToken(String username, String password) throws Exception {
         // 测试辅助方法：调用登录接口并解析 token
         //
@@ -1,5 +1,7 @@
 package com.ordererp.backend.wms;
 
+import static com.ordererp.backend.support.SqlStatementAssertions.assertStatementCount;
+import static com.ordererp.backend.support.SqlStatementAssertions.capture;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -23,13 +25,16 @@ import com.ordererp.backend.wms.repository.WmsStockRepository;
 import com.ordererp.backend.wms.service.WmsCheckBillService;
 import com.ordererp.backend.wms.service.WmsStockInBillService;
 import com.ordererp.backend.wms.service.WmsStockOutBillService;
+import com.ordererp.backend.wms.service.WmsStockSummaryService;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.transaction.annotation.Transactional;
@@ -39,6 +44,7 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.mysql.MySQLContainer;
 
 @SpringBootTest
+@ActiveProfiles("test")
 @Testcontainers
 /**
  * 第三阶段（WMS Core）“工程化与健壮性拓展”集成测试（Testcontainers + MySQL）。
@@ -48,6 +54,7 @@ import org.testcontainers.mysql.MySQLContainer;
  * - 并发基础防护：冲销通过 DB 唯一约束 + 代码兜底返回 existing（这里用“重复调用”验证幂等语义）
  * - 业务校验：库存不足时应返回 400（BAD_REQUEST）
  * - 盘点模型升级：实盘数量（counted_qty）执行后生成调整单并写入流水；重复执行仍幂等
+ * - 查询次数：出库单预检查的 SQL 语句数不随明细行数增长（无 N+1）
  *
  * 说明：
  * - 测试会启动一个临时 MySQL 容器，并通过 Flyway 自动迁移建表。
@@ -93,6 +100,9 @@ class WmsStage3HardeningIT {
     @Autowired
     WmsCheckBillDetailRepository checkBillDetailRepository;
 
+    @Autowired
+    WmsStockSummaryService stockSummaryService;
+
     @Test
     @Transactional
     void stockInExecute_isIdempotent() {
@@ -200,6 +210,72 @@ class WmsStage3HardeningIT {
         assertEquals(exec1.stockOutBillNo(), exec2.stockOutBillNo());
     }
 
+    @Test
+    @Transactional
+    void stockSummary_tracksMutations_andLowStock() {
+        // 用例 5：库存汇总随库存变更在同一事务内维护；可用量低于 lowStock 时出现在低库存预警中
+        BaseWarehouse wh = createWarehouse("WH-TC-SUM");
+        BaseProduct p = createProduct("SKU-TC-SUM");
+        p.setLowStock(5);
+        productRepository.saveAndFlush(p);
+        productRepository.syncStockSummaryLowStock(p.getId());
+
+        var in1 = stockInBillService.create(new StockInBillCreateRequest(
+                wh.getId(),
+                "tc summary",
+                List.of(new StockInBillLineRequest(p.getId(), new BigDecimal("2.000")))), "tester");
+        stockInBillService.execute(in1.id());
+
+        var low = stockSummaryService.lowStock(null, 500, true);
+        var row = low.content().stream().filter(r -> r.productId().equals(p.getId())).findFirst().orElseThrow();
+        assertTrue(row.availableQty().compareTo(new BigDecimal("2.000")) == 0);
+        assertTrue(row.shortageQty().compareTo(new BigDecimal("3.000")) == 0);
+
+        var in2 = stockInBillService.create(new StockInBillCreateRequest(
+                wh.getId(),
+                "tc summary",
+                List.of(new StockInBillLineRequest(p.getId(), new BigDecimal("10.000")))), "tester");
+        stockInBillService.execute(in2.id());
+
+        low = stockSummaryService.lowStock(null, 500, false);
+        assertTrue(low.content().stream().noneMatch(r -> r.productId().equals(p.getId())));
+
+        var dashboard = stockSummaryService.dashboard();
+        var whTotal = dashboard.warehouses().stream()
+                .filter(w -> w.warehouseId().equals(wh.getId()))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(whTotal.stockQty().compareTo(new BigDecimal("12.000")) == 0);
+        assertTrue(whTotal.availableQty().compareTo(new BigDecimal("12.000")) == 0);
+    }
+
+    @Test
+    @Transactional
+    void stockOutPrecheck_statementCountDoesNotGrowWithLines() throws Exception {
+        // 用例 6：预检查批量读取商品/库存，3 行与 12 行的单据执行的语句数相同
+        BaseWarehouse wh = createWarehouse("WH-TC-SQL");
+        List<StockOutBillLineRequest> smallLines = new ArrayList<>();
+        List<StockOutBillLineRequest> largeLines = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            BaseProduct p = createProduct("SKU-TC-SQL-" + i);
+            upsertStock(wh.getId(), p.getId(), new BigDecimal("10.000"));
+            var line = new StockOutBillLineRequest(p.getId(), new BigDecimal("1.000"));
+            largeLines.add(line);
+            if (i < 3) smallLines.add(line);
+        }
+        var small = stockOutBillService.create(new StockOutBillCreateRequest(wh.getId(), "tc sql small", smallLines), "tester");
+        var large = stockOutBillService.create(new StockOutBillCreateRequest(wh.getId(), "tc sql large", largeLines), "tester");
+
+        // 先各跑一次，预热主数据缓存，之后的语句数只取决于 SQL 形状
+        stockOutBillService.precheckExecute(small.id());
+        stockOutBillService.precheckExecute(large.id());
+
+        int smallStatements = capture(() -> stockOutBillService.precheckExecute(small.id())).statements();
+        var result = assertStatementCount(smallStatements, () -> stockOutBillService.precheckExecute(large.id()));
+        assertTrue(result.ok());
+        assertEquals(12, result.lines().size());
+    }
+
     private BaseWarehouse createWarehouse(String code) {
         // 测试辅助：创建启用仓库（deleted=0/status=1）
         BaseWarehouse wh = new BaseWarehouse();
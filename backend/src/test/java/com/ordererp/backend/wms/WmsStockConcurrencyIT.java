@@ -0,0 +1,441 @@
+package com.ordererp.backend.wms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ordererp.backend.base.entity.BasePartner;
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.repository.BasePartnerRepository;
+import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.sales.dto.SalOrderCreateRequest;
+import com.ordererp.backend.sales.dto.SalShipResponse;
+import com.ordererp.backend.sales.service.SalOrderService;
+import com.ordererp.backend.sales.service.SalShipService;
+import com.ordererp.backend.wms.dto.StockInBillCreateRequest;
+import com.ordererp.backend.wms.dto.StockInBillLineRequest;
+import com.ordererp.backend.wms.dto.StockOutBillCreateRequest;
+import com.ordererp.backend.wms.dto.StockOutBillLineRequest;
+import com.ordererp.backend.wms.service.WmsStockInBillService;
+import com.ordererp.backend.wms.service.WmsStockOutBillService;
+import com.ordererp.backend.wms.service.WmsStockSummaryUpdater;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@Testcontainers
+/**
+ * 库存并发压测（Testcontainers + MySQL）：几百个审核/发货/作废/发货冲销/出库执行并发打在少数热点 SKU 上，
+ * 结束后校验库存不变量，并输出各操作的吞吐、p50/p99 延迟和拒绝/冲突/错误计数（日志 "stock stress"）。
+ *
+ * 校验的不变量（每个热点 SKU）：
+ * - stock_qty >= locked_qty >= 0
+ * - stock_qty = 该 SKU 全部 wms_stock_log.change_qty 之和（库存只能通过写流水的路径变化）
+ * - locked_qty = 已审核/部分发货销售单的未发数量之和（锁库与订单状态一致）
+ *
+ * 计数口径：
+ * - rejected：业务校验拒绝（4xx，如库存不足、状态不允许），属于正常竞争结果
+ * - conflict：死锁/锁等待超时/乐观锁冲突（ConcurrencyFailureException），调用方应重试；服务端不自动重试
+ * - error：其他异常，出现即失败
+ *
+ * 另有仓库合计的并发用例：同一仓库、互不相同的商品并发入库，只共享仓库汇总；
+ * 汇总拆成槽位后应无冲突，且各槽位之和与 wms_stock 合计一致。
+ *
+ * 规模可通过系统属性调整，便于对比加锁方式改动前后的数据：
+ *   mvn test "-Dtest=WmsStockConcurrencyIT" "-Dstress.orders=400" "-Dstress.threads=16"
+ */
+class WmsStockConcurrencyIT {
+    private static final Logger log = LoggerFactory.getLogger(WmsStockConcurrencyIT.class);
+
+    private static final int ORDERS = Integer.getInteger("stress.orders", 150);
+    private static final int THREADS = Integer.getInteger("stress.threads", 8);
+    private static final int HOT_SKUS = 3;
+    private static final BigDecimal INITIAL_STOCK = new BigDecimal("300.000");
+
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+        // 线程数超过默认连接池（10）时，测的就是等连接而不是等行锁了
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> Math.max(10, THREADS + 2));
+        // 商品汇总的槽位合并由用例自己触发
+        registry.add("app.wms.summary.rollup-interval-ms", () -> "3600000");
+    }
+
+    @Autowired
+    BaseWarehouseRepository warehouseRepository;
+
+    @Autowired
+    BaseProductRepository productRepository;
+
+    @Autowired
+    BasePartnerRepository partnerRepository;
+
+    @Autowired
+    WmsStockInBillService stockInBillService;
+
+    @Autowired
+    WmsStockOutBillService stockOutBillService;
+
+    @Autowired
+    WmsStockSummaryUpdater summaryUpdater;
+
+    @Autowired
+    SalOrderService orderService;
+
+    @Autowired
+    SalShipService shipService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void contended_audits_ships_and_reversals_keep_stock_invariants() throws Exception {
+        // 不加 @Transactional：每个操作必须真实提交，行锁竞争才会发生
+        Random random = new Random(20250101L);
+        BaseWarehouse wh = createWarehouse("WH-STRESS");
+        BasePartner customer = createCustomer("CUS-STRESS");
+        List<Long> skus = new ArrayList<>();
+        for (int i = 0; i < HOT_SKUS; i++) {
+            skus.add(createProduct("SKU-STRESS-" + i).getId());
+        }
+
+        // 期初库存走入库单，保证流水之和 = 库存
+        var in = stockInBillService.create(new StockInBillCreateRequest(wh.getId(), "stress seed",
+                skus.stream().map(id -> new StockInBillLineRequest(id, INITIAL_STOCK)).toList()), "stress");
+        stockInBillService.execute(in.id());
+
+        // 订单与出库单先建成草稿（不计入压测），行内 SKU 顺序随机，制造交叉加锁
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            List<Long> lineSkus = new ArrayList<>(skus);
+            Collections.shuffle(lineSkus, random);
+            int lineCount = 1 + random.nextInt(HOT_SKUS);
+            List<SalOrderCreateRequest.SalOrderLineRequest> lines = new ArrayList<>();
+            for (Long sku : lineSkus.subList(0, lineCount)) {
+                lines.add(new SalOrderCreateRequest.SalOrderLineRequest(sku, qty(1 + random.nextInt(4)),
+                        new BigDecimal("2.00")));
+            }
+            orderIds.add(orderService.create(new SalOrderCreateRequest(customer.getId(), wh.getId(), LocalDate.now(),
+                    "stress " + i, lines), "stress").id());
+        }
+        List<Long> stockOutIds = new ArrayList<>();
+        for (int i = 0; i < ORDERS / 4; i++) {
+            Long sku = skus.get(random.nextInt(HOT_SKUS));
+            stockOutIds.add(stockOutBillService.create(new StockOutBillCreateRequest(wh.getId(), "stress out " + i,
+                    List.of(new StockOutBillLineRequest(sku, qty(1 + random.nextInt(3))))), "stress").id());
+        }
+
+        // 任务：每张订单一条“审核 -> 发货 -> (30%) 冲销”链；另有 20% 的订单被并发作废，与链上的操作抢同一行
+        Stats stats = new Stats();
+        List<Runnable> tasks = new ArrayList<>();
+        for (Long orderId : orderIds) {
+            boolean reverse = random.nextInt(10) < 3;
+            tasks.add(() -> {
+                if (!stats.call("audit", () -> orderService.audit(orderId, "stress"))) return;
+                if (!stats.call("ship", () -> orderService.ship(orderId, "stress"))) return;
+                if (reverse) {
+                    for (SalShipResponse s : orderService.listShips(orderId)) {
+                        stats.call("reverse", () -> shipService.reverse(s.id(), "stress"));
+                    }
+                }
+            });
+            if (random.nextInt(10) < 2) {
+                tasks.add(() -> stats.call("cancel", () -> orderService.cancel(orderId, "stress")));
+            }
+        }
+        for (Long billId : stockOutIds) {
+            tasks.add(() -> stats.call("stock_out", () -> stockOutBillService.execute(billId)));
+        }
+        Collections.shuffle(tasks, random);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long startNanos = System.nanoTime();
+        try {
+            tasks.forEach(pool::submit);
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES), "stress run timed out");
+        } finally {
+            pool.shutdownNow();
+        }
+        stats.report(System.nanoTime() - startNanos);
+
+        assertTrue(stats.errors.isEmpty(), () -> "unexpected errors: " + stats.errors);
+        assertTrue(stats.succeeded("audit") > 0);
+        assertTrue(stats.succeeded("ship") > 0);
+
+        for (Long sku : skus) {
+            Map<String, Object> stock = jdbcTemplate.queryForMap(
+                    "select stock_qty, locked_qty from wms_stock where warehouse_id = ? and product_id = ?",
+                    wh.getId(), sku);
+            BigDecimal stockQty = (BigDecimal) stock.get("stock_qty");
+            BigDecimal lockedQty = (BigDecimal) stock.get("locked_qty");
+            BigDecimal logged = jdbcTemplate.queryForObject("""
+                    select coalesce(sum(change_qty), 0) from wms_stock_log
+                    where warehouse_id = ? and product_id = ?
+                    """, BigDecimal.class, wh.getId(), sku);
+            BigDecimal reserved = jdbcTemplate.queryForObject("""
+                    select coalesce(sum(d.qty - coalesce(d.shipped_qty, 0)), 0)
+                    from sal_order_detail d
+                    join sal_order o on o.id = d.order_id
+                    where o.warehouse_id = ? and d.product_id = ? and o.status in (2, 3)
+                    """, BigDecimal.class, wh.getId(), sku);
+
+            String at = "sku " + sku + ": stock=" + stockQty + " locked=" + lockedQty;
+            assertTrue(lockedQty.signum() >= 0, at);
+            assertTrue(stockQty.compareTo(lockedQty) >= 0, at);
+            assertEquals(0, stockQty.compareTo(logged), at + " logged=" + logged);
+            assertEquals(0, lockedQty.compareTo(reserved), at + " reserved=" + reserved);
+        }
+    }
+
+    @Test
+    void warehouse_summary_slots_stay_exact_under_concurrent_stock_ins() throws Exception {
+        // 库存行各不相同，唯一的共享行是仓库汇总：未拆槽位时这些事务会在提交前排队等同一行锁
+        BaseWarehouse wh = createWarehouse("WH-SUM-STRESS");
+        int perThread = 15;
+        List<Long> billIds = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Long productId = createProduct("SKU-SUM-STRESS-" + t).getId();
+            for (int i = 0; i < perThread; i++) {
+                billIds.add(stockInBillService.create(new StockInBillCreateRequest(wh.getId(), "summary stress",
+                        List.of(new StockInBillLineRequest(productId, qty(1)))), "stress").id());
+            }
+        }
+        Collections.shuffle(billIds, new Random(20250102L));
+
+        Stats stats = new Stats();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long startNanos = System.nanoTime();
+        try {
+            for (Long billId : billIds) {
+                pool.submit(() -> stats.call("summary_stock_in", () -> stockInBillService.execute(billId)));
+            }
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES), "summary stress run timed out");
+        } finally {
+            pool.shutdownNow();
+        }
+        stats.report(System.nanoTime() - startNanos);
+
+        assertTrue(stats.errors.isEmpty(), () -> "unexpected errors: " + stats.errors);
+        assertEquals(billIds.size(), stats.succeeded("summary_stock_in"), "stock-ins should not conflict");
+
+        BigDecimal stockTotal = jdbcTemplate.queryForObject(
+                "select coalesce(sum(stock_qty), 0) from wms_stock where warehouse_id = ?", BigDecimal.class, wh.getId());
+        BigDecimal summaryTotal = jdbcTemplate.queryForObject(
+                "select coalesce(sum(stock_qty), 0) from wms_stock_warehouse_summary where warehouse_id = ?",
+                BigDecimal.class, wh.getId());
+        assertEquals(0, stockTotal.compareTo(qty(billIds.size())), "stock=" + stockTotal);
+        assertEquals(0, summaryTotal.compareTo(stockTotal), "summary=" + summaryTotal + " stock=" + stockTotal);
+
+        Integer slots = jdbcTemplate.queryForObject(
+                "select count(*) from wms_stock_warehouse_summary where warehouse_id = ?", Integer.class, wh.getId());
+        assertTrue(slots > 1, "updates should spread over several slots, got " + slots);
+    }
+
+    @Test
+    void product_summary_slots_stay_exact_and_roll_up() throws Exception {
+        // 同一商品在各自的仓库入库：库存行各不相同，唯一的共享行是商品汇总
+        Long productId = createProduct("SKU-PSUM-STRESS").getId();
+        int perThread = 15;
+        List<Long> billIds = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Long warehouseId = createWarehouse("WH-PSUM-STRESS-" + t).getId();
+            for (int i = 0; i < perThread; i++) {
+                billIds.add(stockInBillService.create(new StockInBillCreateRequest(warehouseId, "product summary stress",
+                        List.of(new StockInBillLineRequest(productId, qty(1)))), "stress").id());
+            }
+        }
+        Collections.shuffle(billIds, new Random(20250103L));
+
+        Stats stats = new Stats();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long startNanos = System.nanoTime();
+        try {
+            for (Long billId : billIds) {
+                pool.submit(() -> stats.call("product_summary_stock_in", () -> stockInBillService.execute(billId)));
+            }
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES), "product summary stress run timed out");
+        } finally {
+            pool.shutdownNow();
+        }
+        stats.report(System.nanoTime() - startNanos);
+
+        assertTrue(stats.errors.isEmpty(), () -> "unexpected errors: " + stats.errors);
+        assertEquals(billIds.size(), stats.succeeded("product_summary_stock_in"), "stock-ins should not conflict");
+
+        BigDecimal total = qty(billIds.size());
+        Integer slots = jdbcTemplate.queryForObject(
+                "select count(*) from wms_stock_product_summary_slot where product_id = ?", Integer.class, productId);
+        assertTrue(slots > 1, "updates should spread over several slots, got " + slots);
+        assertEquals(0, productSummaryTotal(productId).compareTo(total), "before rollup");
+
+        assertTrue(summaryUpdater.rollup() >= slots);
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from wms_stock_product_summary_slot where product_id = ?", Integer.class, productId));
+        BigDecimal rolledUp = jdbcTemplate.queryForObject(
+                "select stock_qty from wms_stock_product_summary where product_id = ?", BigDecimal.class, productId);
+        assertEquals(0, rolledUp.compareTo(total), "rolled up=" + rolledUp);
+    }
+
+    /**
+     * 商品汇总行 + 尚未合并的槽位差额。
+     */
+    private BigDecimal productSummaryTotal(Long productId) {
+        return jdbcTemplate.queryForObject("""
+                select coalesce((select stock_qty from wms_stock_product_summary where product_id = ?), 0)
+                     + coalesce((select sum(stock_qty) from wms_stock_product_summary_slot where product_id = ?), 0)
+                """, BigDecimal.class, productId, productId);
+    }
+
+    private static BigDecimal qty(int n) {
+        return BigDecimal.valueOf(n).setScale(3);
+    }
+
+    /**
+     * 按操作类型汇总的计数与延迟（纳秒）。
+     */
+    private static final class Stats {
+        final Map<String, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>();
+        final Map<String, AtomicLong> succeeded = new ConcurrentHashMap<>();
+        final Map<String, AtomicLong> rejected = new ConcurrentHashMap<>();
+        final Map<String, AtomicLong> conflicts = new ConcurrentHashMap<>();
+        final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 执行一次操作并记录结果，返回是否成功。
+         */
+        boolean call(String op, Runnable action) {
+            long start = System.nanoTime();
+            try {
+                action.run();
+                counter(succeeded, op).incrementAndGet();
+                return true;
+            } catch (ResponseStatusException e) {
+                if (e.getStatusCode().is4xxClientError()) {
+                    counter(rejected, op).incrementAndGet();
+                } else {
+                    errors.add(op + ": " + e);
+                }
+                return false;
+            } catch (ConcurrencyFailureException e) {
+                counter(conflicts, op).incrementAndGet();
+                return false;
+            } catch (RuntimeException e) {
+                errors.add(op + ": " + e);
+                return false;
+            } finally {
+                latencies.computeIfAbsent(op, k -> new ConcurrentLinkedQueue<>()).add(System.nanoTime() - start);
+            }
+        }
+
+        long succeeded(String op) {
+            return counter(succeeded, op).get();
+        }
+
+        void report(long elapsedNanos) {
+            long total = latencies.values().stream().mapToLong(ConcurrentLinkedQueue::size).sum();
+            log.info("stock stress: threads={} orders={} ops={} elapsedMs={} throughput={}/s",
+                    THREADS, ORDERS, total, elapsedNanos / 1_000_000, total * 1_000_000_000L / Math.max(1, elapsedNanos));
+            for (Map.Entry<String, ConcurrentLinkedQueue<Long>> e : new TreeMap<>(latencies).entrySet()) {
+                List<Long> sorted = new ArrayList<>(e.getValue());
+                Collections.sort(sorted);
+                String op = e.getKey();
+                log.info("stock stress: op={} calls={} ok={} rejected={} conflict={} p50Ms={} p99Ms={} maxMs={}",
+                        op, sorted.size(), succeeded(op), counter(rejected, op).get(), counter(conflicts, op).get(),
+                        millis(percentile(sorted, 50)), millis(percentile(sorted, 99)),
+                        millis(sorted.get(sorted.size() - 1)));
+            }
+            errors.forEach(err -> log.error("stock stress error: {}", err));
+        }
+
+        private static AtomicLong counter(Map<String, AtomicLong> counters, String op) {
+            return counters.computeIfAbsent(op, k -> new AtomicLong());
+        }
+
+        private static long percentile(List<Long> sorted, int p) {
+            int index = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+            return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+        }
+
+        private static String millis(long nanos) {
+            return String.format("%.2f", nanos / 1_000_000.0);
+        }
+    }
+
+    private BaseWarehouse createWarehouse(String code) {
+        BaseWarehouse wh = new BaseWarehouse();
+        wh.setWarehouseCode(code);
+        wh.setWarehouseName(code);
+        wh.setStatus(1);
+        wh.setDeleted(0);
+        wh.setCreateTime(LocalDateTime.now());
+        wh.setUpdateTime(LocalDateTime.now());
+        return warehouseRepository.saveAndFlush(wh);
+    }
+
+    private BaseProduct createProduct(String code) {
+        BaseProduct p = new BaseProduct();
+        p.setProductCode(code);
+        p.setProductName(code);
+        p.setUnit("个");
+        p.setPurchasePrice(new BigDecimal("1.00"));
+        p.setSalePrice(new BigDecimal("2.00"));
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return productRepository.saveAndFlush(p);
+    }
+
+    private BasePartner createCustomer(String code) {
+        // credit_limit 为空：不启用额度控制，避免额度校验掩盖库存竞争
+        BasePartner p = new BasePartner();
+        p.setPartnerCode(code);
+        p.setPartnerName(code);
+        p.setType(2);
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return partnerRepository.saveAndFlush(p);
+    }
+}
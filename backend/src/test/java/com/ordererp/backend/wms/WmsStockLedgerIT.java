@@ -0,0 +1,314 @@
+package com.ordererp.backend.wms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.common.exception.GlobalExceptionHandler;
+import com.ordererp.backend.common.metrics.SqlStatementStats;
+import com.ordererp.backend.wms.dto.WmsStockShortageLine;
+import com.ordererp.backend.wms.service.WmsStockLedger;
+import com.ordererp.backend.wms.service.WmsStockShortageException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers
+/**
+ * 库存账本（WmsStockLedger）：各类数量变更的结果、每次变更只有条件更新 + 读回两条语句，以及库存行不存在/数量不足时的报错（按最新值）；
+ * 批量锁库列出全部不足的 SKU（响应体 shortages），且按键排序加锁，行顺序相反的并发审核不会死锁。
+ */
+class WmsStockLedgerIT {
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+    }
+
+    @Autowired
+    WmsStockLedger ledger;
+
+    @Autowired
+    BaseWarehouseRepository warehouseRepository;
+
+    @Autowired
+    BaseProductRepository productRepository;
+
+    @Autowired
+    GlobalExceptionHandler exceptionHandler;
+
+    @Autowired
+    PlatformTransactionManager txManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void mutations_apply_guarded_updates_and_read_back_the_row() {
+        Long wh = createWarehouse("WH-LEDGER-1").getId();
+        Long p = createProduct("SKU-LEDGER-1").getId();
+
+        // 首次入库：update 未命中后走 upsert 建行
+        WmsStockLedger.StockQty created = inTx(() -> ledger.increase(wh, p, new BigDecimal("10")));
+        assertQty("10", "0", created);
+
+        assertQty("12", "0", twoStatements(() -> ledger.increase(wh, p, new BigDecimal("2"))));
+        assertQty("9", "0", twoStatements(() -> ledger.deduct(wh, p, new BigDecimal("3"))));
+        assertQty("9", "5", twoStatements(() -> ledger.lock(wh, p, new BigDecimal("5"))));
+        assertQty("7", "3", twoStatements(() -> ledger.deductLocked(wh, p, new BigDecimal("2"))));
+        assertQty("7", "2", twoStatements(() -> ledger.unlock(wh, p, new BigDecimal("1"))));
+        assertQty("8", "3", twoStatements(() -> ledger.increaseAndLock(wh, p, new BigDecimal("1"))));
+        assertStock(wh, p, "8", "3");
+
+        assertEquals(0, new BigDecimal("4").compareTo(inTx(() -> ledger.increaseQc(wh, p, new BigDecimal("4")))));
+        assertEquals(0, new BigDecimal("1.5").compareTo(
+                twoStatements(() -> ledger.decreaseQc(wh, p, new BigDecimal("2.5")))));
+        assertEquals(0, new BigDecimal("1.5").compareTo(jdbcTemplate.queryForObject(
+                "select qc_qty from wms_stock_qc where warehouse_id = ? and product_id = ?", BigDecimal.class, wh, p)));
+
+        // 待检先于实物出现时，库存行也要存在（库存查询能看到）
+        Long qcOnly = createProduct("SKU-LEDGER-QC").getId();
+        inTx(() -> ledger.increaseQc(wh, qcOnly, new BigDecimal("3")));
+        assertStock(wh, qcOnly, "0", "0");
+    }
+
+    @Test
+    void missing_rows_and_shortages_are_rejected_without_changing_stock() {
+        Long wh = createWarehouse("WH-LEDGER-2").getId();
+        Long p = createProduct("SKU-LEDGER-2").getId();
+        Long missing = createProduct("SKU-LEDGER-MISSING").getId();
+        ledger.increase(wh, p, new BigDecimal("5"));
+        ledger.lock(wh, p, new BigDecimal("3"));
+        ledger.increaseQc(wh, p, new BigDecimal("1"));
+
+        assertRejected(HttpStatus.BAD_REQUEST, "该仓库无此商品库存记录",
+                () -> ledger.deduct(wh, missing, BigDecimal.ONE));
+        assertRejected(HttpStatus.BAD_REQUEST, "该仓库无此商品库存记录",
+                () -> ledger.lock(wh, missing, BigDecimal.ONE));
+        assertRejected(HttpStatus.BAD_REQUEST, "该仓库无此商品库存记录",
+                () -> ledger.increaseAndLock(wh, missing, BigDecimal.ONE));
+
+        assertRejected(HttpStatus.BAD_REQUEST, "库存不足，当前可用: 2",
+                () -> ledger.deduct(wh, p, new BigDecimal("3")));
+        assertRejected(HttpStatus.BAD_REQUEST, "库存不足，当前可用: 2",
+                () -> ledger.lock(wh, p, new BigDecimal("3")));
+        assertRejected(HttpStatus.CONFLICT, "locked_qty < 0",
+                () -> ledger.unlock(wh, p, new BigDecimal("4")));
+        assertRejected(HttpStatus.CONFLICT, "locked_qty < required",
+                () -> ledger.deductLocked(wh, p, new BigDecimal("4")));
+        assertRejected(HttpStatus.BAD_REQUEST, "qty must be positive",
+                () -> ledger.increase(wh, p, new BigDecimal("-1")));
+
+        assertRejected(HttpStatus.CONFLICT, "QC stock bucket missing",
+                () -> ledger.decreaseQc(wh, missing, BigDecimal.ONE));
+        assertRejected(HttpStatus.CONFLICT, "QC qty insufficient",
+                () -> ledger.decreaseQc(wh, p, new BigDecimal("2")));
+
+        assertStock(wh, p, "5", "3");
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from wms_stock where warehouse_id = ? and product_id = ?", Integer.class, wh, missing));
+    }
+
+    @Test
+    void shortage_message_reports_the_latest_committed_quantity() {
+        Long wh = createWarehouse("WH-LEDGER-STALE").getId();
+        Long p = createProduct("SKU-LEDGER-STALE").getId();
+        ledger.increase(wh, p, new BigDecimal("5"));
+
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            // 本事务先做一次普通读，建立一致性读快照（可用 5）；随后另一个事务提交锁库 4。
+            // 扣减 3 失败时报出的应是最新可用量 1，而不是快照里的 5。
+            assertRejected(HttpStatus.BAD_REQUEST, "库存不足，当前可用: 1", () -> inTx(() -> {
+                jdbcTemplate.queryForObject("select stock_qty from wms_stock where warehouse_id = ? and product_id = ?",
+                        BigDecimal.class, wh, p);
+                try {
+                    other.submit(() -> ledger.lock(wh, p, new BigDecimal("4"))).get(30, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return ledger.deduct(wh, p, new BigDecimal("3"));
+            }));
+        } finally {
+            other.shutdownNow();
+        }
+        assertStock(wh, p, "5", "4");
+    }
+
+    @Test
+    void lock_all_reports_every_shortage_and_locks_nothing() {
+        Long wh = createWarehouse("WH-LEDGER-3").getId();
+        Long a = createProduct("SKU-LEDGER-A").getId();
+        Long b = createProduct("SKU-LEDGER-B").getId();
+        Long c = createProduct("SKU-LEDGER-C").getId();
+        ledger.increase(wh, a, new BigDecimal("5"));
+        ledger.increase(wh, b, new BigDecimal("1"));
+
+        // 同一 SKU 多行合并后校验（A 共需 4，可用 5）；B、C 不足，按 (warehouseId, productId) 顺序全部列出
+        WmsStockShortageException ex = assertThrows(WmsStockShortageException.class, () -> ledger.lockAll(List.of(
+                new WmsStockLedger.StockLine(wh, c, BigDecimal.ONE),
+                new WmsStockLedger.StockLine(wh, a, new BigDecimal("3")),
+                new WmsStockLedger.StockLine(wh, b, new BigDecimal("2")),
+                new WmsStockLedger.StockLine(wh, a, BigDecimal.ONE))));
+        assertEquals(List.of(b, c), ex.getShortages().stream().map(WmsStockShortageLine::productId).toList());
+        assertEquals(0, new BigDecimal("2").compareTo(ex.getShortages().get(0).requiredQty()));
+        assertEquals(0, BigDecimal.ONE.compareTo(ex.getShortages().get(0).availableQty()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(ex.getShortages().get(1).availableQty()));
+        assertStock(wh, a, "5", "0");
+
+        // 响应体：message 之外带 shortages 明细
+        MockHttpServletRequest req = new MockHttpServletRequest("POST", "/api/sales/orders/1/audit");
+        ResponseEntity<Map<String, Object>> resp = exceptionHandler.handleDetailed(ex, req);
+        assertEquals(400, resp.getStatusCode().value());
+        Map<String, Object> body = resp.getBody();
+        assertEquals(400, body.get("status"));
+        assertTrue(String.valueOf(body.get("message")).startsWith("库存不足（2 个商品）"));
+        assertEquals("/api/sales/orders/1/audit", body.get("path"));
+        assertEquals(ex.getShortages(), body.get("shortages"));
+
+        ledger.lockAll(List.of(
+                new WmsStockLedger.StockLine(wh, a, new BigDecimal("3")),
+                new WmsStockLedger.StockLine(wh, a, BigDecimal.ONE)));
+        assertStock(wh, a, "5", "4");
+    }
+
+    @Test
+    void lock_all_with_lines_in_opposite_orders_does_not_deadlock() throws Exception {
+        Long wh = createWarehouse("WH-LEDGER-4").getId();
+        List<Long> skus = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Long p = createProduct("SKU-LEDGER-ORDER-" + i).getId();
+            ledger.increase(wh, p, new BigDecimal("100"));
+            skus.add(p);
+        }
+        List<Long> reversed = new ArrayList<>(skus);
+        Collections.reverse(reversed);
+
+        // 各线程按相反的行顺序锁同一批 SKU，并在持锁期间逐行释放；加锁按键排序时不会互相等待成环
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<Long> order = t % 2 == 0 ? skus : reversed;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    inTx(() -> {
+                        ledger.lockAll(order.stream()
+                                .map(p -> new WmsStockLedger.StockLine(wh, p, BigDecimal.ONE)).toList());
+                        order.forEach(p -> ledger.unlock(wh, p, BigDecimal.ONE));
+                        return null;
+                    });
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES));
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        for (Long p : skus) {
+            assertStock(wh, p, "100", "0");
+        }
+    }
+
+    private <T> T inTx(Supplier<T> action) {
+        return new TransactionTemplate(txManager).execute(status -> action.get());
+    }
+
+    /**
+     * 在外层事务内执行一次变更并断言只发出两条语句：条件更新 + 读回该行（汇总差额在提交前写入，不计入）。
+     */
+    private <T> T twoStatements(Supplier<T> action) {
+        return inTx(() -> {
+            try (SqlStatementStats stats = SqlStatementStats.open()) {
+                T result = action.get();
+                assertEquals(2, stats.statements(), "SQL statements per stock mutation");
+                return result;
+            }
+        });
+    }
+
+    private static void assertRejected(HttpStatus status, String reason, Runnable action) {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, action::run);
+        assertEquals(status.value(), ex.getStatusCode().value());
+        assertTrue(ex.getReason() != null && ex.getReason().contains(reason), () -> "unexpected reason: " + ex.getReason());
+    }
+
+    private static void assertQty(String stockQty, String lockedQty, WmsStockLedger.StockQty actual) {
+        assertEquals(0, new BigDecimal(stockQty).compareTo(actual.stockQty()), "stock_qty");
+        assertEquals(0, new BigDecimal(lockedQty).compareTo(actual.lockedQty()), "locked_qty");
+    }
+
+    private void assertStock(Long warehouseId, Long productId, String stockQty, String lockedQty) {
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "select stock_qty, locked_qty from wms_stock where warehouse_id = ? and product_id = ?",
+                warehouseId, productId);
+        assertQty(stockQty, lockedQty, new WmsStockLedger.StockQty(
+                (BigDecimal) row.get("stock_qty"), (BigDecimal) row.get("locked_qty")));
+    }
+
+    private BaseWarehouse createWarehouse(String code) {
+        BaseWarehouse wh = new BaseWarehouse();
+        wh.setWarehouseCode(code);
+        wh.setWarehouseName(code);
+        wh.setStatus(1);
+        wh.setDeleted(0);
+        wh.setCreateTime(LocalDateTime.now());
+        wh.setUpdateTime(LocalDateTime.now());
+        return warehouseRepository.saveAndFlush(wh);
+    }
+
+    private BaseProduct createProduct(String code) {
+        BaseProduct p = new BaseProduct();
+        p.setProductCode(code);
+        p.setProductName(code);
+        p.setUnit("个");
+        p.setPurchasePrice(new BigDecimal("1.00"));
+        p.setSalePrice(new BigDecimal("2.00"));
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return productRepository.saveAndFlush(p);
+    }
+}
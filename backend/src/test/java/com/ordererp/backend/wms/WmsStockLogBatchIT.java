@@ -0,0 +1,198 @@
+package com.ordererp.backend.wms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ordererp.backend.base.entity.BaseProduct;
+import com.ordererp.backend.base.entity.BaseWarehouse;
+import com.ordererp.backend.base.repository.BaseProductRepository;
+import com.ordererp.backend.base.repository.BaseWarehouseRepository;
+import com.ordererp.backend.common.metrics.SqlStatementStats;
+import com.ordererp.backend.wms.dto.StockInBillCreateRequest;
+import com.ordererp.backend.wms.dto.StockInBillLineRequest;
+import com.ordererp.backend.wms.entity.WmsStockLog;
+import com.ordererp.backend.wms.service.WmsStockInBillService;
+import com.ordererp.backend.wms.service.WmsStockLogAppender;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers
+/**
+ * 批量写入（V41 / WmsStockLogAppender）：
+ * - 库存流水在事务内缓存，提交前一次批量写入；回滚时缓存丢弃，不会带到同线程的下一个事务
+ * - 明细表改为 pooled table generator 后，分配的 id 不与已有行冲突，跨分配段也不重复
+ */
+class WmsStockLogBatchIT {
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+    }
+
+    @Autowired
+    WmsStockLogAppender appender;
+
+    @Autowired
+    WmsStockInBillService stockInBillService;
+
+    @Autowired
+    BaseWarehouseRepository warehouseRepository;
+
+    @Autowired
+    BaseProductRepository productRepository;
+
+    @Autowired
+    PlatformTransactionManager txManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void buffered_logs_are_written_in_one_batch_before_commit() {
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+
+        // 不显式 flush：提交前由事务同步器补写
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < 120; i++) {
+                appender.append(log("LOG-AUTO", i));
+            }
+            assertEquals(0, countLogs("LOG-AUTO"), "logs stay buffered until flush/commit");
+        });
+        assertEquals(120, countLogs("LOG-AUTO"));
+
+        // 显式 flush：一次批量语句，同一事务内随后即可查到
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < 120; i++) {
+                appender.append(log("LOG-FLUSH", i));
+            }
+            try (SqlStatementStats stats = SqlStatementStats.open()) {
+                appender.flush();
+                assertEquals(1, stats.statements(), "buffered logs are sent as one JDBC batch");
+            }
+            assertEquals(120, countLogs("LOG-FLUSH"));
+        });
+        assertEquals(120, countLogs("LOG-FLUSH"));
+    }
+
+    @Test
+    void rollback_discards_buffered_logs() {
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < 5; i++) {
+                appender.append(log("LOG-ROLLBACK", i));
+            }
+            status.setRollbackOnly();
+        });
+        assertEquals(0, countLogs("LOG-ROLLBACK"));
+
+        // 同一线程的下一个事务拿到的是新缓存，不会把上次回滚的流水一起写入
+        tx.executeWithoutResult(status -> appender.append(log("LOG-AFTER-ROLLBACK", 0)));
+        assertEquals(1, countLogs("LOG-AFTER-ROLLBACK"));
+        assertEquals(0, countLogs("LOG-ROLLBACK"));
+    }
+
+    @Test
+    void table_generated_detail_ids_do_not_collide_with_existing_rows() {
+        // V41 把初值设在已有 max(id) 之上：pooled 优化器第一段从 next_val - (allocationSize - 1) 开始
+        for (String table : List.of("wms_io_bill_detail", "sal_ship_detail")) {
+            long nextVal = jdbcTemplate.queryForObject(
+                    "select next_val from sys_id_generator where gen_name = ?", Long.class, table);
+            long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from " + table, Long.class);
+            assertTrue(nextVal - 49 > maxId, () -> table + " generator starts inside existing ids");
+        }
+
+        BaseWarehouse wh = createWarehouse("WH-IDGEN");
+        List<StockInBillLineRequest> lines = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            lines.add(new StockInBillLineRequest(createProduct("SKU-IDGEN-" + i).getId(), BigDecimal.ONE));
+        }
+        long maxBefore = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from wms_io_bill_detail", Long.class);
+
+        // 60 行跨越两个分配段（allocationSize = 50）
+        var first = stockInBillService.create(new StockInBillCreateRequest(wh.getId(), "idgen 1", lines), "test");
+        var second = stockInBillService.create(new StockInBillCreateRequest(wh.getId(), "idgen 2", lines), "test");
+
+        List<Long> ids = new ArrayList<>(detailIds(first.id()));
+        ids.addAll(detailIds(second.id()));
+        assertEquals(120, ids.size());
+        assertEquals(120, new HashSet<>(ids).size(), "detail ids must be unique");
+        assertTrue(ids.stream().allMatch(id -> id > maxBefore), "detail ids must be above pre-existing rows");
+        long nextVal = jdbcTemplate.queryForObject(
+                "select next_val from sys_id_generator where gen_name = 'wms_io_bill_detail'", Long.class);
+        assertTrue(ids.stream().allMatch(id -> id <= nextVal), "generator must stay ahead of assigned ids");
+
+        // 执行入库：流水经批量写入，每行一条
+        stockInBillService.execute(first.id());
+        assertEquals(60, countLogs(first.billNo()));
+    }
+
+    private List<Long> detailIds(Long billId) {
+        return jdbcTemplate.queryForList("select id from wms_io_bill_detail where bill_id = ?", Long.class, billId);
+    }
+
+    private int countLogs(String bizNo) {
+        return jdbcTemplate.queryForObject("select count(*) from wms_stock_log where biz_no = ?", Integer.class, bizNo);
+    }
+
+    private static WmsStockLog log(String bizNo, int i) {
+        WmsStockLog log = new WmsStockLog();
+        log.setWarehouseId(1L);
+        log.setProductId(1000L + i);
+        log.setBizType("TEST");
+        log.setBizNo(bizNo);
+        log.setChangeQty(BigDecimal.ONE);
+        log.setAfterStockQty(BigDecimal.valueOf(i));
+        return log;
+    }
+
+    private BaseWarehouse createWarehouse(String code) {
+        BaseWarehouse wh = new BaseWarehouse();
+        wh.setWarehouseCode(code);
+        wh.setWarehouseName(code);
+        wh.setStatus(1);
+        wh.setDeleted(0);
+        wh.setCreateTime(LocalDateTime.now());
+        wh.setUpdateTime(LocalDateTime.now());
+        return warehouseRepository.saveAndFlush(wh);
+    }
+
+    private BaseProduct createProduct(String code) {
+        BaseProduct p = new BaseProduct();
+        p.setProductCode(code);
+        p.setProductName(code);
+        p.setUnit("个");
+        p.setPurchasePrice(new BigDecimal("1.00"));
+        p.setSalePrice(new BigDecimal("2.00"));
+        p.setStatus(1);
+        p.setDeleted(0);
+        p.setCreateTime(LocalDateTime.now());
+        p.setUpdateTime(LocalDateTime.now());
+        return productRepository.saveAndFlush(p);
+    }
+}
@@ -0,0 +1,166 @@
+package com.ordererp.backend.wms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.alibaba.excel.EasyExcel;
+import com.ordererp.backend.common.dto.CursorPageResponse;
+import com.ordererp.backend.common.excel.ExcelStreamExporter;
+import com.ordererp.backend.wms.dto.WmsStockLogResponse;
+import com.ordererp.backend.wms.excel.WmsStockLogExcelRow;
+import com.ordererp.backend.wms.service.WmsStockLogService;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mysql.MySQLContainer;
+
+@SpringBootTest
+@Testcontainers
+/**
+ * 库存流水游标分页：
+ * - 大量流水 create_time 完全相同时，按 id 游标翻页不重不漏，结果与 offset 分页一致
+ * - 翻页过程中插入新流水，后续页不受影响（offset 分页会整体后移、出现重复行）
+ * - 流式导出按 id 游标分批（批大小调小到 7，跨多批且末批不满），导出行与 offset 分页结果逐行一致
+ */
+class WmsStockLogPagingIT {
+    @Container
+    static final MySQLContainer MYSQL = new MySQLContainer("mysql:8.0.36")
+            .withDatabaseName("erp_data")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void mysqlProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("app.datasource.expected-database", () -> "erp_data");
+        registry.add("app.datasource.fail-on-mismatch", () -> "true");
+        registry.add("app.excel.export.batch-size", () -> "7");
+    }
+
+    @Autowired
+    WmsStockLogService stockLogService;
+
+    @Autowired
+    ExcelStreamExporter excelExporter;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void cursor_pages_over_tied_create_time_are_disjoint_and_complete() {
+        LocalDateTime sameTime = LocalDateTime.of(2024, 3, 1, 10, 0, 0);
+        insertLogs("PAGE-TIE", 25, sameTime);
+
+        List<Long> offsetIds = stockLogService.page("PAGE-TIE", null, null, null, null, PageRequest.of(0, 100))
+                .map(WmsStockLogResponse::id)
+                .getContent();
+        assertEquals(25, offsetIds.size());
+
+        CursorPageResponse<WmsStockLogResponse> first = stockLogService.seek("PAGE-TIE", null, null, null, null,
+                null, 10, true);
+        assertEquals(10, first.content().size());
+        assertTrue(first.hasMore());
+        assertEquals(25L, first.totalElements());
+        assertEquals(lastId(first), first.nextCursor());
+
+        // 翻页中途写入一条同样命中关键字的新流水（id 更大、时间相同）：游标之后的页不受影响
+        insertLogs("PAGE-TIE-NEW", 1, sameTime);
+
+        List<Long> cursorIds = new ArrayList<>(ids(first));
+        List<CursorPageResponse<WmsStockLogResponse>> pages = new ArrayList<>(List.of(first));
+        Long cursor = first.nextCursor();
+        while (cursor != null) {
+            CursorPageResponse<WmsStockLogResponse> page = stockLogService.seek("PAGE-TIE", null, null, null, null,
+                    cursor, 10, false);
+            assertNull(page.totalElements(), "count only runs when includeTotal=true");
+            pages.add(page);
+            cursorIds.addAll(ids(page));
+            cursor = page.nextCursor();
+        }
+
+        assertEquals(List.of(10, 10, 5), pages.stream().map(p -> p.content().size()).toList());
+        assertTrue(pages.get(1).hasMore());
+        assertEquals(lastId(pages.get(1)), pages.get(1).nextCursor());
+        assertFalse(pages.get(2).hasMore());
+        assertNull(pages.get(2).nextCursor());
+
+        assertEquals(cursorIds.size(), new HashSet<>(cursorIds).size(), "cursor pages must not overlap");
+        assertEquals(offsetIds, cursorIds, "cursor walk must match offset order, with no gaps");
+        for (int i = 1; i < cursorIds.size(); i++) {
+            assertTrue(cursorIds.get(i - 1) > cursorIds.get(i), "ids must be strictly descending");
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void keyset_export_matches_offset_export() {
+        List<Object[]> args = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            args.add(new Object[] {1L, 2000L + i, "TEST", String.format("EXP-KS-%03d", i), 1, i,
+                    Timestamp.valueOf(LocalDateTime.of(2024, 3, 2, 9, 0).plusMinutes(i % 3))});
+        }
+        jdbcTemplate.batchUpdate("""
+                insert into wms_stock_log (warehouse_id, product_id, biz_type, biz_no, change_qty, after_stock_qty, create_time)
+                values (?, ?, ?, ?, ?, ?, ?)
+                """, args);
+
+        // 旧导出方式：offset 分页逐页取（这里一页取完，作为期望顺序）
+        List<String> offsetBizNos = stockLogService.page("EXP-KS", null, null, null, null, PageRequest.of(0, 100))
+                .map(WmsStockLogResponse::bizNo)
+                .getContent();
+        assertEquals(23, offsetBizNos.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> batchTotals = new ArrayList<>();
+        long rows = excelExporter.export(out, "StockLogs", WmsStockLogExcelRow.class,
+                (afterId, limit) -> stockLogService.exportBatch("EXP-KS", null, null, null, null, afterId, limit),
+                WmsStockLogResponse::id, WmsStockLogService::toExcelRow, batchTotals::add);
+
+        assertEquals(23, rows);
+        assertEquals(List.of(7L, 14L, 21L, 23L), batchTotals, "export must run in keyset batches of 7");
+
+        // 读回 xlsx（首行为表头）：BizNo 列逐行与 offset 结果一致
+        List<Object> sheet = EasyExcel.read(new ByteArrayInputStream(out.toByteArray())).sheet().doReadSync();
+        List<String> exportedBizNos = sheet.stream()
+                .map(row -> ((Map<Integer, String>) row).get(5))
+                .toList();
+        assertEquals(offsetBizNos, exportedBizNos);
+    }
+
+    private void insertLogs(String bizNo, int count, LocalDateTime createTime) {
+        List<Object[]> args = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            args.add(new Object[] {1L, 1000L + i, "TEST", bizNo, 1, i, Timestamp.valueOf(createTime)});
+        }
+        jdbcTemplate.batchUpdate("""
+                insert into wms_stock_log (warehouse_id, product_id, biz_type, biz_no, change_qty, after_stock_qty, create_time)
+                values (?, ?, ?, ?, ?, ?, ?)
+                """, args);
+    }
+
+    private static List<Long> ids(CursorPageResponse<WmsStockLogResponse> page) {
+        return page.content().stream().map(WmsStockLogResponse::id).toList();
+    }
+
+    private static Long lastId(CursorPageResponse<WmsStockLogResponse> page) {
+        return page.content().get(page.content().size() - 1).id();
+    }
+}